@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.benchmarks;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.carmatechnologies.commons.jmx.Instrumentation;
+import com.carmatechnologies.commons.jmx.InstrumentationLevel;
+import com.carmatechnologies.commons.jmx.JmxConcurrentMap;
+import com.carmatechnologies.commons.jmx.JmxLinkedBlockingQueue;
+import com.carmatechnologies.commons.jmx.MBeans;
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+
+/**
+ * Compares calls on undecorated data structures with the same calls on their JMX decorators, for each {@link InstrumentationLevel}.
+ * <p>
+ * Each level runs in its own forked JVM, so that the JIT folds the level set in {@link #setUp()} exactly as it would in production. Run with:
+ * 
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar InstrumentationBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class InstrumentationBenchmark {
+	private static final int KEYS = 1024;
+	private static final int KEY_MASK = KEYS - 1;
+
+	/** {@code UNWRAPPED} benchmarks the raw data structures, any other value is the {@link InstrumentationLevel} of the decorators. */
+	@Param({ "UNWRAPPED", "OFF", "COUNTERS", "FULL" })
+	public String level;
+
+	private ConcurrentMap<Integer, Integer> map;
+	private Queue<Integer> queue;
+	private Integer[] keys;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		final ConcurrentHashMap<Integer, Integer> rawMap = new ConcurrentHashMap<Integer, Integer>();
+		final LinkedBlockingQueue<Integer> rawQueue = new LinkedBlockingQueue<Integer>();
+		if ("UNWRAPPED".equals(level)) {
+			map = rawMap;
+			queue = rawQueue;
+		} else {
+			Instrumentation.setLevel(InstrumentationLevel.valueOf(level));
+			map = new JmxConcurrentMap<Integer, Integer>(rawMap, new Builder().property("name", "InstrumentationBenchmarkMap"));
+			queue = new JmxLinkedBlockingQueue<Integer>(rawQueue, new Builder().property("name", "InstrumentationBenchmarkQueue"));
+		}
+
+		keys = new Integer[KEYS];
+		for (int i = 0; i < KEYS; ++i) {
+			keys[i] = i;
+			map.put(keys[i], i);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		MBeans.unregisterAll();
+	}
+
+	private Integer nextKey() {
+		return keys[ThreadLocalRandom.current().nextInt() & KEY_MASK];
+	}
+
+	@Benchmark
+	public Integer mapGet() {
+		return map.get(nextKey());
+	}
+
+	@Benchmark
+	public Integer mapPut() {
+		final Integer key = nextKey();
+		return map.put(key, key);
+	}
+
+	@Benchmark
+	public Integer queueOfferPoll() {
+		queue.offer(nextKey());
+		return queue.poll();
+	}
+}
@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.IJmxArrayQueue;
+
+// HotSpot may reorder the fields declared by a class, but lays out superclasses' fields first: each index is therefore declared in its own class,
+// between classes declaring 128 bytes of padding, i.e. two cache lines, as adjacent lines may be prefetched together.
+abstract class ArrayQueuePad0<E> extends AbstractQueue<E> {
+	long p00, p01, p02, p03, p04, p05, p06, p07, p08, p09, p0a, p0b, p0c, p0d, p0e, p0f;
+}
+
+abstract class ArrayQueueProducerIndex<E> extends ArrayQueuePad0<E> {
+	volatile long producerIndex;
+}
+
+abstract class ArrayQueuePad1<E> extends ArrayQueueProducerIndex<E> {
+	long p10, p11, p12, p13, p14, p15, p16, p17, p18, p19, p1a, p1b, p1c, p1d, p1e, p1f;
+}
+
+abstract class ArrayQueueConsumerIndex<E> extends ArrayQueuePad1<E> {
+	volatile long consumerIndex;
+}
+
+abstract class ArrayQueuePad2<E> extends ArrayQueueConsumerIndex<E> {
+	long p20, p21, p22, p23, p24, p25, p26, p27, p28, p29, p2a, p2b, p2c, p2d, p2e, p2f;
+}
+
+/**
+ * Bounded, lock-free, array-based queue exposed via JMX, for a single consumer thread. Producer and consumer indices are padded to avoid false
+ * sharing, and only ever read, never written, by JMX. Null elements are NOT permitted, and removing arbitrary elements is NOT supported.
+ */
+public abstract class AbstractJmxArrayQueue<E> extends ArrayQueuePad2<E> implements BlockingQueue<E>, IJmxArrayQueue {
+	@SuppressWarnings("rawtypes")
+	static final AtomicLongFieldUpdater<ArrayQueueProducerIndex> PRODUCER_INDEX = AtomicLongFieldUpdater.newUpdater(ArrayQueueProducerIndex.class,
+			"producerIndex");
+	@SuppressWarnings("rawtypes")
+	static final AtomicLongFieldUpdater<ArrayQueueConsumerIndex> CONSUMER_INDEX = AtomicLongFieldUpdater.newUpdater(ArrayQueueConsumerIndex.class,
+			"consumerIndex");
+
+	final AtomicReferenceArray<E> buffer;
+	final int mask;
+	private final int capacity;
+	private final WaitStrategy waitStrategy;
+	private final ObjectName objectName;
+	private volatile ItemRenderer renderer = ItemRenderer.DEFAULT;
+
+	AbstractJmxArrayQueue(final int capacity, final WaitStrategy waitStrategy, final Builder builder) throws InstanceAlreadyExistsException,
+			MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		checkArgument(capacity > 0 && capacity <= (1 << 30), "Capacity must be between 1 and 2^30, but was: " + capacity);
+		checkNotNull(waitStrategy, "Wait strategy must NOT be null.");
+		checkNotNull(builder, "MBean builder must NOT be null.");
+		this.capacity = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = this.capacity - 1;
+		this.buffer = new AtomicReferenceArray<E>(this.capacity);
+		this.waitStrategy = waitStrategy;
+		this.objectName = new ObjectName(builder.mbean(this).objectName());
+		MBeans.register(builder);
+	}
+
+	/**
+	 * Sets the renderer used to expose this queue's items via JMX, instead of calling {@code toString()} on every item.
+	 */
+	public AbstractJmxArrayQueue<E> renderer(final ItemRenderer renderer) {
+		checkNotNull(renderer, "Item renderer must NOT be null.");
+		this.renderer = renderer;
+		return this;
+	}
+
+	final int offsetOf(final long index) {
+		return (int) index & mask;
+	}
+
+	/**
+	 * Single-consumer poll: only ever called by the consumer thread.
+	 */
+	@Override
+	public E poll() {
+		final long index = consumerIndex;
+		final int offset = offsetOf(index);
+		E e = buffer.get(offset);
+		if (e == null) {
+			if (index == producerIndex)
+				return null;
+			// A producer claimed this slot but has NOT stored its element yet:
+			do {
+				e = buffer.get(offset);
+			} while (e == null);
+		}
+		buffer.lazySet(offset, null);
+		CONSUMER_INDEX.lazySet(this, index + 1);
+		return e;
+	}
+
+	@Override
+	public E peek() {
+		final long index = consumerIndex;
+		final E e = buffer.get(offsetOf(index));
+		if (e != null || index == producerIndex)
+			return e;
+		return buffer.get(offsetOf(index));
+	}
+
+	@Override
+	public void put(final E e) throws InterruptedException {
+		checkNotNull(e, "Element must NOT be null.");
+		for (int attempt = 0; !offer(e); ++attempt) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			waitStrategy.idle(attempt);
+		}
+	}
+
+	@Override
+	public boolean offer(final E e, final long timeout, final TimeUnit unit) throws InterruptedException {
+		checkNotNull(e, "Element must NOT be null.");
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (int attempt = 0; !offer(e); ++attempt) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (System.nanoTime() - deadline >= 0)
+				return false;
+			waitStrategy.idle(attempt);
+		}
+		return true;
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		E e;
+		for (int attempt = 0; (e = poll()) == null; ++attempt) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			waitStrategy.idle(attempt);
+		}
+		return e;
+	}
+
+	@Override
+	public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		E e;
+		for (int attempt = 0; (e = poll()) == null; ++attempt) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (System.nanoTime() - deadline >= 0)
+				return null;
+			waitStrategy.idle(attempt);
+		}
+		return e;
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c, final int maxElements) {
+		checkNotNull(c, "Collection to drain to must NOT be null.");
+		checkArgument(c != this, "Queue must NOT be drained to itself.");
+		int drained = 0;
+		E e;
+		while (drained < maxElements && (e = poll()) != null) {
+			c.add(e);
+			++drained;
+		}
+		return drained;
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	/**
+	 * Reads both indices without writing any shared state, i.e. without slowing down producers or the consumer.
+	 */
+	@Override
+	public int size() {
+		long after = consumerIndex;
+		long before;
+		long producer;
+		do {
+			before = after;
+			producer = producerIndex;
+			after = consumerIndex;
+		} while (before != after);
+		return (int) Math.max(0, Math.min(producer - after, capacity));
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return consumerIndex == producerIndex;
+	}
+
+	/**
+	 * @return a weakly consistent iterator, which does NOT support removal.
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		final long consumer = consumerIndex;
+		final long producer = Math.min(producerIndex, consumer + capacity);
+		final List<E> snapshot = new ArrayList<E>((int) Math.max(0, producer - consumer));
+		for (long index = consumer; index < producer; ++index) {
+			final E e = buffer.get(offsetOf(index));
+			if (e != null)
+				snapshot.add(e);
+		}
+		return Collections.unmodifiableList(snapshot).iterator();
+	}
+
+	@Override
+	public ObjectName objectName() {
+		return objectName;
+	}
+
+	@Override
+	public int getSize() {
+		return size();
+	}
+
+	@Override
+	public List<String> getItems() {
+		return renderer.renderItems(this, size());
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public long getProducerIndex() {
+		return producerIndex;
+	}
+
+	@Override
+	public long getConsumerIndex() {
+		return consumerIndex;
+	}
+}
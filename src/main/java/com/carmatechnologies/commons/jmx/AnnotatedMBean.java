@@ -0,0 +1,429 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.Descriptor;
+import javax.management.DynamicMBean;
+import javax.management.ImmutableDescriptor;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import com.carmatechnologies.commons.jmx.annotations.JmxAttribute;
+import com.carmatechnologies.commons.jmx.annotations.JmxMBean;
+import com.carmatechnologies.commons.jmx.annotations.JmxMetric;
+import com.carmatechnologies.commons.jmx.annotations.JmxOperation;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * {@link DynamicMBean} exposing the {@link JmxAttribute}, {@link JmxMetric} and {@link JmxOperation} annotated members of an object, which
+ * {@link MBeans#register(MBeans.Builder)} registers instead of the object itself. Members are introspected once per class, and compiled into
+ * {@link MethodHandle}s, so that reading an attribute or invoking an operation does NOT involve reflection.
+ */
+final class AnnotatedMBean implements DynamicMBean {
+	private static final ClassValue<Metadata> METADATA = new ClassValue<Metadata>() {
+		@Override
+		protected Metadata computeValue(final Class<?> type) {
+			return new Metadata(type);
+		}
+	};
+
+	private final Object mbean;
+	private final Metadata metadata;
+
+	AnnotatedMBean(final Object mbean) {
+		this.mbean = mbean;
+		this.metadata = METADATA.get(mbean.getClass());
+	}
+
+	/**
+	 * @return {@code true} if the provided object is NOT an MBean by itself, but has annotated members.
+	 * @throws IllegalArgumentException
+	 *             if the provided object both implements a standard MBean or MXBean interface, and has annotated members.
+	 */
+	static boolean isAnnotated(final Object mbean) {
+		return (mbean != null) && !(mbean instanceof DynamicMBean) && !METADATA.get(mbean.getClass()).isEmpty();
+	}
+
+	@Override
+	public Object getAttribute(final String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+		final MethodHandle getter = metadata.getters.get(attribute);
+		if (getter == null)
+			throw new AttributeNotFoundException("No readable attribute '" + attribute + "' in " + metadata.info.getClassName());
+		try {
+			return (Object) getter.invokeExact(mbean);
+		} catch (Throwable t) {
+			throw wrap(t);
+		}
+	}
+
+	@Override
+	public void setAttribute(final Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException,
+			ReflectionException {
+		final MethodHandle setter = metadata.setters.get(attribute.getName());
+		if (setter == null)
+			throw new AttributeNotFoundException("No writable attribute '" + attribute.getName() + "' in " + metadata.info.getClassName());
+		try {
+			setter.invokeExact(mbean, attribute.getValue());
+		} catch (ClassCastException | NullPointerException e) {
+			throw new InvalidAttributeValueException("Invalid value for attribute '" + attribute.getName() + "': " + attribute.getValue());
+		} catch (Throwable t) {
+			throw wrap(t);
+		}
+	}
+
+	@Override
+	public AttributeList getAttributes(final String[] attributes) {
+		final AttributeList list = new AttributeList(attributes.length);
+		for (final String attribute : attributes) {
+			try {
+				list.add(new Attribute(attribute, getAttribute(attribute)));
+			} catch (Exception e) {
+				// As per DynamicMBean's contract, attributes which cannot be read are omitted.
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public AttributeList setAttributes(final AttributeList attributes) {
+		final AttributeList list = new AttributeList(attributes.size());
+		for (final Attribute attribute : attributes.asList()) {
+			try {
+				setAttribute(attribute);
+				list.add(attribute);
+			} catch (Exception e) {
+				// As per DynamicMBean's contract, attributes which cannot be set are omitted.
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public Object invoke(final String actionName, final Object[] params, final String[] signature) throws MBeanException, ReflectionException {
+		final MethodHandle operation = metadata.operations.get(Metadata.keyOf(actionName, (signature == null) ? new String[0] : signature));
+		if (operation == null)
+			throw new ReflectionException(new NoSuchMethodException(actionName), "No operation '" + actionName + "' in "
+					+ metadata.info.getClassName());
+		try {
+			return (Object) operation.invokeExact(mbean, (params == null) ? new Object[0] : params);
+		} catch (Throwable t) {
+			throw wrap(t);
+		}
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		return metadata.info;
+	}
+
+	/**
+	 * Unchecked exceptions are propagated as is, for the MBean server to wrap them, and checked exceptions are wrapped in {@link MBeanException}s.
+	 */
+	private static MBeanException wrap(final Throwable t) {
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+		return new MBeanException((Exception) t);
+	}
+
+	/**
+	 * Per-class MBeanInfo and compiled handles, for which the target object is the first argument, typed as {@code Object}.
+	 */
+	private static final class Metadata {
+		private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+		private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+		private static final Set<Class<?>> EXPOSED_AS_IS = ImmutableSet.<Class<?>> of(boolean.class, byte.class, short.class, int.class, long.class,
+				float.class, double.class, char.class, Boolean.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class,
+				Character.class, String.class, Date.class, BigDecimal.class, BigInteger.class, ObjectName.class);
+		private static final MethodHandle STRING_VALUE_OF;
+		private static final MethodHandle ATOMIC_LONG_GET;
+		private static final MethodHandle ATOMIC_INTEGER_GET;
+
+		static {
+			final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			try {
+				STRING_VALUE_OF = lookup.findStatic(String.class, "valueOf", MethodType.methodType(String.class, Object.class));
+				ATOMIC_LONG_GET = lookup.findVirtual(AtomicLong.class, "get", MethodType.methodType(long.class));
+				ATOMIC_INTEGER_GET = lookup.findVirtual(AtomicInteger.class, "get", MethodType.methodType(int.class));
+			} catch (ReflectiveOperationException e) {
+				throw new ExceptionInInitializerError(e);
+			}
+		}
+
+		private final MBeanInfo info;
+		private final Map<String, MethodHandle> getters;
+		private final Map<String, MethodHandle> setters;
+		private final Map<String, MethodHandle> operations;
+
+		Metadata(final Class<?> type) {
+			final Map<String, AttributeBuilder> attributes = new LinkedHashMap<String, AttributeBuilder>();
+			final Map<String, MethodHandle> operations = new LinkedHashMap<String, MethodHandle>();
+			final List<MBeanOperationInfo> operationInfos = new ArrayList<MBeanOperationInfo>();
+			try {
+				for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+					for (final Field field : c.getDeclaredFields())
+						addField(field, attributes);
+					for (final Method method : c.getDeclaredMethods())
+						addMethod(method, attributes, operations, operationInfos);
+				}
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("Failed to expose annotated members of " + type.getName(), e);
+			}
+
+			final ImmutableMap.Builder<String, MethodHandle> getters = ImmutableMap.builder();
+			final ImmutableMap.Builder<String, MethodHandle> setters = ImmutableMap.builder();
+			final List<MBeanAttributeInfo> attributeInfos = new ArrayList<MBeanAttributeInfo>();
+			for (final AttributeBuilder attribute : attributes.values()) {
+				if (attribute.getter != null)
+					getters.put(attribute.name, attribute.getter);
+				if (attribute.setter != null)
+					setters.put(attribute.name, attribute.setter);
+				attributeInfos.add(attribute.info());
+			}
+			this.getters = getters.build();
+			this.setters = setters.build();
+			this.operations = ImmutableMap.copyOf(operations);
+			final JmxMBean description = type.getAnnotation(JmxMBean.class);
+			this.info = new MBeanInfo(type.getName(), (description == null) ? "" : description.description(), attributeInfos.toArray(new MBeanAttributeInfo[attributeInfos.size()]),
+					new MBeanConstructorInfo[0], operationInfos.toArray(new MBeanOperationInfo[operationInfos.size()]), new MBeanNotificationInfo[0]);
+			checkArgument(isEmpty() || !implementsMBeanInterface(type), "Type '" + type.getName()
+					+ "' both implements an MBean or MXBean interface and has JMX annotated members, which can NOT be mixed.");
+		}
+
+		private static boolean implementsMBeanInterface(final Class<?> type) {
+			try {
+				WeakMBeans.mbeanInterfaceOf(type);
+				return true;
+			} catch (IllegalArgumentException e) {
+				return false;
+			}
+		}
+
+		boolean isEmpty() {
+			return info.getAttributes().length == 0 && info.getOperations().length == 0;
+		}
+
+		static String keyOf(final String name, final String[] signature) {
+			final StringBuilder key = new StringBuilder(name).append('(');
+			for (int i = 0; i < signature.length; ++i)
+				key.append((i == 0) ? "" : ",").append(signature[i]);
+			return key.append(')').toString();
+		}
+
+		private static void addField(final Field field, final Map<String, AttributeBuilder> attributes) throws IllegalAccessException {
+			final JmxAttribute attribute = field.getAnnotation(JmxAttribute.class);
+			final JmxMetric metric = field.getAnnotation(JmxMetric.class);
+			if (attribute == null && metric == null)
+				return;
+			checkArgument(!Modifier.isStatic(field.getModifiers()), "Static field '" + field + "' can NOT be exposed via JMX.");
+			field.setAccessible(true);
+			final MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandle getter = lookup.unreflectGetter(field);
+
+			if (metric != null) {
+				if (field.getType() == AtomicLong.class)
+					getter = MethodHandles.filterReturnValue(getter, ATOMIC_LONG_GET);
+				else if (field.getType() == AtomicInteger.class)
+					getter = MethodHandles.filterReturnValue(getter, ATOMIC_INTEGER_GET);
+				checkNumeric(getter.type().returnType(), field);
+				attributeFor(nameOf(metric.name(), field.getName()), attributes).metric(metric).getter(getter);
+			} else {
+				final AttributeBuilder builder = attributeFor(nameOf(attribute.name(), field.getName()), attributes).describe(attribute.description());
+				builder.getter(getter);
+				if (attribute.writable()) {
+					checkArgument(!Modifier.isFinal(field.getModifiers()), "Final field '" + field + "' can NOT be writable via JMX.");
+					builder.setter(lookup.unreflectSetter(field));
+				}
+			}
+		}
+
+		private static void addMethod(final Method method, final Map<String, AttributeBuilder> attributes, final Map<String, MethodHandle> operations,
+				final List<MBeanOperationInfo> operationInfos) throws IllegalAccessException {
+			final JmxAttribute attribute = method.getAnnotation(JmxAttribute.class);
+			final JmxMetric metric = method.getAnnotation(JmxMetric.class);
+			final JmxOperation operation = method.getAnnotation(JmxOperation.class);
+			if (attribute == null && metric == null && operation == null)
+				return;
+			checkArgument(!Modifier.isStatic(method.getModifiers()), "Static method '" + method + "' can NOT be exposed via JMX.");
+			method.setAccessible(true);
+			final MethodHandle handle = MethodHandles.lookup().unreflect(method);
+			final Class<?>[] parameters = method.getParameterTypes();
+
+			if (operation != null) {
+				final String name = operation.name().isEmpty() ? method.getName() : operation.name();
+				final String[] signature = new String[parameters.length];
+				final MBeanParameterInfo[] parameterInfos = new MBeanParameterInfo[parameters.length];
+				for (int i = 0; i < parameters.length; ++i) {
+					signature[i] = parameters[i].getName();
+					parameterInfos[i] = new MBeanParameterInfo("p" + (i + 1), signature[i], "");
+				}
+				final String key = keyOf(name, signature);
+				checkArgument(!operations.containsKey(key), "Duplicate JMX operation: " + key);
+				MethodHandle exposed = handle;
+				if (exposedType(method.getReturnType()) == String.class && method.getReturnType() != String.class)
+					exposed = MethodHandles.filterReturnValue(handle.asType(handle.type().changeReturnType(Object.class)), STRING_VALUE_OF);
+				operations.put(key, exposed.asType(MethodType.genericMethodType(parameters.length + 1)).asSpreader(Object[].class, parameters.length));
+				operationInfos.add(new MBeanOperationInfo(name, operation.description(), parameterInfos, exposedType(method.getReturnType()).getName(),
+						operation.impact()));
+			} else if (metric != null) {
+				checkArgument(parameters.length == 0, "Metric '" + method + "' must NOT take any parameter.");
+				checkNumeric(method.getReturnType(), method);
+				attributeFor(nameOf(metric.name(), propertyOf(method)), attributes).metric(metric).getter(handle);
+			} else if (parameters.length == 0 && method.getReturnType() != void.class) {
+				attributeFor(nameOf(attribute.name(), propertyOf(method)), attributes).describe(attribute.description()).getter(handle)
+						.is(method.getName().startsWith("is"));
+			} else if (parameters.length == 1 && method.getReturnType() == void.class) {
+				attributeFor(nameOf(attribute.name(), propertyOf(method)), attributes).describe(attribute.description()).setter(handle);
+			} else {
+				throw new IllegalArgumentException("Method '" + method + "' is neither a getter nor a setter, and can NOT be a JMX attribute.");
+			}
+		}
+
+		private static AttributeBuilder attributeFor(final String name, final Map<String, AttributeBuilder> attributes) {
+			AttributeBuilder attribute = attributes.get(name);
+			if (attribute == null) {
+				attribute = new AttributeBuilder(name);
+				attributes.put(name, attribute);
+			}
+			return attribute;
+		}
+
+		private static String nameOf(final String annotated, final String property) {
+			final String name = annotated.isEmpty() ? property : annotated;
+			return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		}
+
+		private static String propertyOf(final Method method) {
+			final String name = method.getName();
+			for (final String prefix : new String[] { "get", "set", "is" }) {
+				if (name.startsWith(prefix) && name.length() > prefix.length() && Character.isUpperCase(name.charAt(prefix.length())))
+					return name.substring(prefix.length());
+			}
+			return name;
+		}
+
+		private static void checkNumeric(final Class<?> type, final Object member) {
+			final boolean numeric = (type.isPrimitive() && type != boolean.class && type != char.class && type != void.class)
+					|| Number.class.isAssignableFrom(type);
+			checkArgument(numeric, "Metric '" + member + "' must be numeric, but is: " + type.getName());
+		}
+
+		/**
+		 * Values of types a generic JMX client may NOT know are exposed as strings.
+		 */
+		private static Class<?> exposedType(final Class<?> type) {
+			return (type == void.class || EXPOSED_AS_IS.contains(type)) ? type : String.class;
+		}
+
+		private static final class AttributeBuilder {
+			private final String name;
+			private String description = "";
+			private Class<?> type;
+			private MethodHandle getter;
+			private MethodHandle setter;
+			private boolean is = false;
+			private Descriptor descriptor = ImmutableDescriptor.EMPTY_DESCRIPTOR;
+
+			AttributeBuilder(final String name) {
+				this.name = name;
+			}
+
+			AttributeBuilder describe(final String description) {
+				if (!description.isEmpty())
+					this.description = description;
+				return this;
+			}
+
+			AttributeBuilder metric(final JmxMetric metric) {
+				describe(metric.description());
+				final List<String> fields = new ArrayList<String>();
+				fields.add("metricType=" + metric.type().name().toLowerCase());
+				if (!metric.unit().isEmpty())
+					fields.add("units=" + metric.unit());
+				this.descriptor = new ImmutableDescriptor(fields.toArray(new String[fields.size()]));
+				return this;
+			}
+
+			AttributeBuilder getter(final MethodHandle handle) {
+				checkArgument(getter == null, "Duplicate getter for JMX attribute '" + name + "'");
+				final Class<?> returnType = handle.type().returnType();
+				setType(returnType);
+				MethodHandle exposed = handle;
+				if (exposedType(returnType) == String.class && returnType != String.class)
+					exposed = MethodHandles.filterReturnValue(handle.asType(handle.type().changeReturnType(Object.class)), STRING_VALUE_OF);
+				this.getter = exposed.asType(GETTER);
+				return this;
+			}
+
+			AttributeBuilder setter(final MethodHandle handle) {
+				checkArgument(setter == null, "Duplicate setter for JMX attribute '" + name + "'");
+				final Class<?> parameterType = handle.type().parameterType(1);
+				checkArgument(exposedType(parameterType) == parameterType, "Type of writable JMX attribute '" + name + "' is NOT supported: "
+						+ parameterType.getName());
+				setType(parameterType);
+				this.setter = handle.asType(SETTER);
+				return this;
+			}
+
+			AttributeBuilder is(final boolean is) {
+				this.is = is && (type == boolean.class);
+				return this;
+			}
+
+			private void setType(final Class<?> type) {
+				checkArgument(this.type == null || this.type == type, "Getter and setter of JMX attribute '" + name + "' have different types: "
+						+ this.type + " and " + type);
+				this.type = type;
+			}
+
+			MBeanAttributeInfo info() {
+				return new MBeanAttributeInfo(name, exposedType(type).getName(), description, getter != null, setter != null, is, descriptor);
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSetMultimap;
+
+/**
+ * Collects the {@link NumericAttributes} of all MBeans registered via {@link MBeans}, caching the names of each MBean's numeric attributes.
+ */
+final class AttributeCollector {
+	private static final Logger LOGGER = LoggerFactory.getLogger(AttributeCollector.class);
+
+	interface Sink {
+		void accept(ObjectName objectName, String attribute, Number value);
+	}
+
+	private final ConcurrentMap<ObjectName, String[]> attributeNames = new ConcurrentHashMap<ObjectName, String[]>();
+	private final ObjectName excluded;
+
+	/**
+	 * @param excluded name of an MBean NOT to collect attributes of, typically the collecting MBean itself.
+	 */
+	AttributeCollector(final ObjectName excluded) {
+		this.excluded = excluded;
+	}
+
+	/**
+	 * @return the names of all currently registered MBeans.
+	 */
+	Set<ObjectName> collect(final Sink sink) {
+		final ImmutableSetMultimap<ObjectName, MBeanServer> registrations = MBeans.registrations();
+		for (final ObjectName name : registrations.keySet()) {
+			if (!name.equals(excluded))
+				collect(registrations.get(name).iterator().next(), name, sink);
+		}
+		attributeNames.keySet().retainAll(registrations.keySet());
+		return registrations.keySet();
+	}
+
+	private void collect(final MBeanServer server, final ObjectName name, final Sink sink) {
+		try {
+			String[] names = attributeNames.get(name);
+			if (names == null) {
+				names = NumericAttributes.namesOf(server, name);
+				attributeNames.put(name, names);
+			}
+
+			for (final Entry<String, Number> value : NumericAttributes.collect(server, name, names).entrySet())
+				sink.accept(name, value.getKey(), value.getValue());
+		} catch (Exception e) {
+			LOGGER.debug("Failed to collect attributes of MBean '" + name + "'", e);
+		}
+	}
+}
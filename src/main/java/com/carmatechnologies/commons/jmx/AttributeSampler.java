@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.IAttributeSampler;
+import com.carmatechnologies.commons.jmx.mbeans.Sample;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Periodically samples the numeric attributes of all MBeans registered via {@link MBeans}, e.g. {@code Size}, counters or latency percentiles,
+ * and keeps their recent history in memory, exposed via JMX. Each attribute's history is a {@link TimeSeries} of compressed samples using at most 4
+ * blocks of 512 bytes, i.e. about 2KB, and at most {@link #maxSeries(int)} attributes are sampled.
+ */
+public class AttributeSampler implements IAttributeSampler, Closeable {
+	public static final int DEFAULT_MAX_SERIES = 10000;
+	private static final int BLOCKS = 4;
+	private static final int BLOCK_BYTES = 512;
+
+	private final ConcurrentMap<ObjectName, ConcurrentMap<String, TimeSeries>> series = new ConcurrentHashMap<ObjectName, ConcurrentMap<String, TimeSeries>>();
+	private final AtomicInteger seriesCount = new AtomicInteger();
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+			.setNameFormat("commons-jmx-sampler-%d").build());
+	private final long intervalMillis;
+	private final ObjectName objectName;
+	private final AttributeCollector collector;
+	private volatile int maxSeries = DEFAULT_MAX_SERIES;
+
+	public AttributeSampler(final long interval, final TimeUnit unit) throws InstanceAlreadyExistsException, MBeanRegistrationException,
+			NotCompliantMBeanException, MalformedObjectNameException {
+		this(interval, unit, new Builder());
+	}
+
+	public AttributeSampler(final long interval, final TimeUnit unit, final Builder builder) throws InstanceAlreadyExistsException,
+			MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		checkArgument(interval > 0, "Sampling interval must be strictly positive, but was: " + interval);
+		checkNotNull(unit, "Sampling interval's time unit must NOT be null.");
+		checkNotNull(builder, "MBean builder must NOT be null.");
+		this.intervalMillis = unit.toMillis(interval);
+		this.objectName = new ObjectName(builder.mbean(this).objectName());
+		this.collector = new AttributeCollector(objectName);
+		MBeans.register(builder);
+		executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				sample();
+			}
+		}, interval, interval, unit);
+	}
+
+	/**
+	 * Sets the maximum number of sampled attributes, across all MBeans, attributes beyond this limit NOT being sampled.
+	 */
+	public AttributeSampler maxSeries(final int maxSeries) {
+		checkArgument(maxSeries > 0, "Maximum number of series must be strictly positive, but was: " + maxSeries);
+		this.maxSeries = maxSeries;
+		return this;
+	}
+
+	/**
+	 * Samples all numeric attributes now. Called every interval, but may also be called to force a sample.
+	 */
+	public void sample() {
+		final long now = System.currentTimeMillis();
+		forgetUnregistered(collector.collect(new AttributeCollector.Sink() {
+			@Override
+			public void accept(final ObjectName name, final String attribute, final Number value) {
+				final TimeSeries timeSeries = seriesFor(name, attribute);
+				if (timeSeries != null)
+					timeSeries.add(now, value.doubleValue());
+			}
+		}));
+	}
+
+	private TimeSeries seriesFor(final ObjectName name, final String attribute) {
+		ConcurrentMap<String, TimeSeries> attributes = series.get(name);
+		if (attributes == null) {
+			attributes = new ConcurrentHashMap<String, TimeSeries>();
+			final ConcurrentMap<String, TimeSeries> existing = series.putIfAbsent(name, attributes);
+			if (existing != null)
+				attributes = existing;
+		}
+
+		TimeSeries timeSeries = attributes.get(attribute);
+		if (timeSeries == null) {
+			if (seriesCount.get() >= maxSeries)
+				return null;
+			timeSeries = new TimeSeries(BLOCKS, BLOCK_BYTES);
+			final TimeSeries existing = attributes.putIfAbsent(attribute, timeSeries);
+			if (existing != null)
+				return existing;
+			seriesCount.incrementAndGet();
+		}
+		return timeSeries;
+	}
+
+	private void forgetUnregistered(final Set<ObjectName> registered) {
+		final Iterator<Entry<ObjectName, ConcurrentMap<String, TimeSeries>>> iterator = series.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Entry<ObjectName, ConcurrentMap<String, TimeSeries>> entry = iterator.next();
+			if (!registered.contains(entry.getKey())) {
+				iterator.remove();
+				seriesCount.addAndGet(-entry.getValue().size());
+			}
+		}
+	}
+
+	/**
+	 * Stops sampling and unregisters this sampler.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		MBeans.unregister(objectName);
+	}
+
+	public ObjectName objectName() {
+		return objectName;
+	}
+
+	@Override
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return seriesCount.get();
+	}
+
+	@Override
+	public long getMemoryBytes() {
+		return (long) seriesCount.get() * TimeSeries.sizeInBytes(BLOCKS, BLOCK_BYTES);
+	}
+
+	@Override
+	public Set<String> sampledMBeans() {
+		final Set<String> names = new TreeSet<String>();
+		for (final ObjectName name : series.keySet())
+			names.add(name.toString());
+		return names;
+	}
+
+	@Override
+	public Set<String> sampledAttributes(final String objectName) {
+		final Map<String, TimeSeries> attributes = series.get(parse(objectName));
+		return (attributes == null) ? Collections.<String> emptySet() : new TreeSet<String>(attributes.keySet());
+	}
+
+	@Override
+	public List<Sample> history(final String objectName, final String attribute) {
+		return samplesSince(objectName, attribute, Long.MIN_VALUE);
+	}
+
+	@Override
+	public List<Sample> recentHistory(final String objectName, final String attribute, final long millis) {
+		return samplesSince(objectName, attribute, System.currentTimeMillis() - millis);
+	}
+
+	private List<Sample> samplesSince(final String objectName, final String attribute, final long timestamp) {
+		final Map<String, TimeSeries> attributes = series.get(parse(objectName));
+		final TimeSeries timeSeries = (attributes == null || attribute == null) ? null : attributes.get(attribute);
+		return (timeSeries == null) ? Collections.<Sample> emptyList() : timeSeries.samplesSince(timestamp);
+	}
+
+	private static ObjectName parse(final String objectName) {
+		checkNotNull(objectName, "Object name must NOT be null.");
+		try {
+			return new ObjectName(objectName);
+		} catch (MalformedObjectNameException e) {
+			throw new IllegalArgumentException("Invalid object name: '" + objectName + "'", e);
+		}
+	}
+}
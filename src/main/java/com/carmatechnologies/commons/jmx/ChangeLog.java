@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free, log of the keys changed in a map, each change being stamped with a new version, so that clients can only read the entries
+ * changed since the last version they read. Changes are logged after having been applied to the map, so that reading the map after reading the
+ * log always reflects them.
+ */
+final class ChangeLog {
+	private static final Object RESET = new Object();
+
+	private final AtomicLong version = new AtomicLong();
+	private final AtomicReferenceArray<Change> ring;
+	private final int mask;
+
+	ChangeLog(final int capacity) {
+		checkArgument(capacity > 0, "Capacity must be strictly positive, but was: " + capacity);
+		final int size = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.ring = new AtomicReferenceArray<Change>(size);
+		this.mask = size - 1;
+	}
+
+	long version() {
+		return version.get();
+	}
+
+	int capacity() {
+		return ring.length();
+	}
+
+	/**
+	 * Versions stored in a slot only ever increase: a writer delayed between reserving its version and logging it never overwrites a newer change,
+	 * so that an older version in a slot always means that the expected change is NOT logged yet.
+	 */
+	void record(final Object key) {
+		final long v = version.incrementAndGet();
+		final int slot = (int) (v & mask);
+		final Change change = new Change(v, key);
+		Change previous;
+		do {
+			previous = ring.get(slot);
+			if (previous != null && previous.version > v)
+				return; // Already overwritten by a newer change: readers will resynchronise.
+		} while (!ring.compareAndSet(slot, previous, change));
+	}
+
+	/**
+	 * Records that all keys may have changed, e.g. after the map has been cleared, which forces clients to resynchronise.
+	 */
+	void reset() {
+		record(RESET);
+	}
+
+	/**
+	 * @return the keys changed after version {@code since}, up to the first change NOT logged yet, or {@code null} if some of these changes are no
+	 *         longer logged, in which case clients must read the whole map again.
+	 */
+	Changes changesSince(final long since) {
+		final long current = version.get();
+		if (since < 0 || since > current || current - since > ring.length())
+			return null;
+
+		final Set<Object> keys = new LinkedHashSet<Object>();
+		long v = since;
+		while (v < current) {
+			final Change change = ring.get((int) ((v + 1) & mask));
+			if (change == null || change.version <= v)
+				break; // Version v + 1 is reserved but NOT logged yet: the next read will resume from v.
+			if (change.version != v + 1 || change.key == RESET)
+				return null;
+			keys.add(change.key);
+			++v;
+		}
+		return new Changes(v, keys);
+	}
+
+	private static final class Change {
+		private final long version;
+		private final Object key;
+
+		Change(final long version, final Object key) {
+			this.version = version;
+			this.key = key;
+		}
+	}
+
+	static final class Changes {
+		private final long version;
+		private final Set<Object> keys;
+
+		Changes(final long version, final Set<Object> keys) {
+			this.version = version;
+			this.keys = keys;
+		}
+
+		long version() {
+			return version;
+		}
+
+		Set<Object> keys() {
+			return keys;
+		}
+	}
+}
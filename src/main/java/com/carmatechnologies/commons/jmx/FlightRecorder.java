@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.IFlightRecorder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Periodically appends the numeric attributes of all MBeans registered via {@link MBeans} to a memory-mapped ring file. As pages of the file are
+ * written back by the OS, even if the JVM crashes or is killed, the file can then be read using {@link FlightRecordingReader}.
+ * <p>
+ * File layout (big-endian):
+ * <ul>
+ * <li>header of {@value #HEADER_BYTES} bytes: magic, version, capacity (in records), dictionary size (in bytes), number of series, used
+ * dictionary bytes and total number of records written,</li>
+ * <li>dictionary of series: id (int), object name and attribute name (both as an unsigned short length followed by UTF-8 bytes),</li>
+ * <li>ring of {@code capacity} records of {@value #RECORD_BYTES} bytes: timestamp in milliseconds (long), series id (int) and value (double).</li>
+ * </ul>
+ * A previous recording found at the same location, e.g. the one of a crashed JVM, is moved to {@code <file>.previous} rather than overwritten.
+ */
+public class FlightRecorder implements IFlightRecorder, Closeable {
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+	public static final int DEFAULT_DICTIONARY_BYTES = 1 << 18;
+
+	static final int MAGIC = 0x434A4652;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 64;
+	static final int RECORD_BYTES = 20;
+	static final int MAGIC_OFFSET = 0;
+	static final int VERSION_OFFSET = 4;
+	static final int CAPACITY_OFFSET = 8;
+	static final int DICTIONARY_BYTES_OFFSET = 12;
+	static final int SERIES_COUNT_OFFSET = 16;
+	static final int DICTIONARY_END_OFFSET = 20;
+	static final int RECORD_COUNT_OFFSET = 24;
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FlightRecorder.class);
+
+	private final Map<String, Integer> seriesIds = new HashMap<String, Integer>();
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+			.setNameFormat("commons-jmx-flight-recorder-%d").build());
+	private final File file;
+	private final long intervalMillis;
+	private final int capacity;
+	private final int dictionaryBytes;
+	private final RandomAccessFile raf;
+	private final MappedByteBuffer buffer;
+	private final ObjectName objectName;
+	private final AttributeCollector collector;
+	private int dictionaryEnd = 0;
+	private volatile int seriesCount = 0;
+	private volatile long recordCount = 0;
+	private volatile long droppedCount = 0;
+	private volatile boolean closed = false;
+
+	public FlightRecorder(final File file, final long interval, final TimeUnit unit) throws IOException, InstanceAlreadyExistsException,
+			MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		this(file, interval, unit, DEFAULT_CAPACITY, DEFAULT_DICTIONARY_BYTES, new Builder());
+	}
+
+	public FlightRecorder(final File file, final long interval, final TimeUnit unit, final int capacity, final int dictionaryBytes,
+			final Builder builder) throws IOException, InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException,
+			MalformedObjectNameException {
+		checkNotNull(file, "Flight recording file must NOT be null.");
+		checkArgument(interval > 0, "Recording interval must be strictly positive, but was: " + interval);
+		checkNotNull(unit, "Recording interval's time unit must NOT be null.");
+		checkArgument(capacity > 0, "Capacity must be strictly positive, but was: " + capacity);
+		checkArgument(dictionaryBytes > 0, "Dictionary size must be strictly positive, but was: " + dictionaryBytes);
+		checkNotNull(builder, "MBean builder must NOT be null.");
+		this.file = file;
+		this.intervalMillis = unit.toMillis(interval);
+		this.capacity = capacity;
+		this.dictionaryBytes = dictionaryBytes;
+
+		if (file.exists())
+			Files.move(file.toPath(), new File(file.getPath() + ".previous").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		final long length = HEADER_BYTES + dictionaryBytes + (long) capacity * RECORD_BYTES;
+		checkArgument(length <= Integer.MAX_VALUE, "Flight recording file must NOT exceed 2GB, but would be " + length + " bytes long.");
+		this.raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+			this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+			buffer.putInt(VERSION_OFFSET, VERSION);
+			buffer.putInt(CAPACITY_OFFSET, capacity);
+			buffer.putInt(DICTIONARY_BYTES_OFFSET, dictionaryBytes);
+			buffer.putInt(SERIES_COUNT_OFFSET, 0);
+			buffer.putInt(DICTIONARY_END_OFFSET, 0);
+			buffer.putLong(RECORD_COUNT_OFFSET, 0);
+			// Written last, so that a partially initialized file is NOT mistaken for a recording:
+			buffer.putInt(MAGIC_OFFSET, MAGIC);
+
+			this.objectName = new ObjectName(builder.mbean(this).objectName());
+			this.collector = new AttributeCollector(objectName);
+			MBeans.register(builder);
+		} catch (Exception e) {
+			// Closing the file also releases the mapping once the buffer is garbage-collected, as Java 7 cannot unmap it explicitly.
+			executor.shutdownNow();
+			try {
+				raf.close();
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+		executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				record();
+			}
+		}, interval, interval, unit);
+	}
+
+	/**
+	 * Records all numeric attributes now. Called every interval, but may also be called to force a recording.
+	 */
+	public synchronized void record() {
+		if (closed)
+			return;
+
+		final long now = System.currentTimeMillis();
+		collector.collect(new AttributeCollector.Sink() {
+			@Override
+			public void accept(final ObjectName name, final String attribute, final Number value) {
+				final int id = idOf(name.toString(), attribute);
+				if (id < 0)
+					++droppedCount;
+				else
+					append(now, id, value.doubleValue());
+			}
+		});
+	}
+
+	private int idOf(final String objectName, final String attribute) {
+		final String key = objectName + '\n' + attribute;
+		final Integer id = seriesIds.get(key);
+		if (id != null)
+			return id;
+
+		final byte[] name = utf8(objectName);
+		final byte[] attributeName = utf8(attribute);
+		final int entryBytes = 4 + 2 + name.length + 2 + attributeName.length;
+		if (dictionaryEnd + entryBytes > dictionaryBytes)
+			return -1;
+
+		final int newId = seriesIds.size();
+		int position = HEADER_BYTES + dictionaryEnd;
+		buffer.putInt(position, newId);
+		position += 4;
+		position = putString(position, name);
+		putString(position, attributeName);
+		dictionaryEnd += entryBytes;
+		seriesIds.put(key, newId);
+		// Publish the entry only once fully written:
+		buffer.putInt(DICTIONARY_END_OFFSET, dictionaryEnd);
+		buffer.putInt(SERIES_COUNT_OFFSET, seriesIds.size());
+		seriesCount = seriesIds.size();
+		return newId;
+	}
+
+	private static byte[] utf8(final String value) {
+		final byte[] bytes = value.getBytes(UTF_8);
+		return (bytes.length <= 0xFFFF) ? bytes : Arrays.copyOf(bytes, 0xFFFF);
+	}
+
+	private int putString(final int position, final byte[] bytes) {
+		buffer.putShort(position, (short) bytes.length);
+		for (int i = 0; i < bytes.length; ++i)
+			buffer.put(position + 2 + i, bytes[i]);
+		return position + 2 + bytes.length;
+	}
+
+	private void append(final long timestamp, final int id, final double value) {
+		final int position = HEADER_BYTES + dictionaryBytes + (int) (recordCount % capacity) * RECORD_BYTES;
+		buffer.putLong(position, timestamp);
+		buffer.putInt(position + 8, id);
+		buffer.putDouble(position + 12, value);
+		// Publish the record only once fully written:
+		recordCount = recordCount + 1;
+		buffer.putLong(RECORD_COUNT_OFFSET, recordCount);
+	}
+
+	/**
+	 * Stops recording, flushes the file to disk, and unregisters this recorder.
+	 */
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+		synchronized (this) {
+			closed = true;
+			buffer.force();
+			raf.close();
+		}
+		MBeans.unregister(objectName);
+		LOGGER.info("Flight recording of " + recordCount + " records written to '" + file + "'");
+	}
+
+	public ObjectName objectName() {
+		return objectName;
+	}
+
+	@Override
+	public String getFile() {
+		return file.getAbsolutePath();
+	}
+
+	@Override
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return seriesCount;
+	}
+
+	@Override
+	public long getDroppedCount() {
+		return droppedCount;
+	}
+}
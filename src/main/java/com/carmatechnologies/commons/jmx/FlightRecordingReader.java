@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.carmatechnologies.commons.jmx.FlightRecorder.CAPACITY_OFFSET;
+import static com.carmatechnologies.commons.jmx.FlightRecorder.DICTIONARY_BYTES_OFFSET;
+import static com.carmatechnologies.commons.jmx.FlightRecorder.DICTIONARY_END_OFFSET;
+import static com.carmatechnologies.commons.jmx.FlightRecorder.HEADER_BYTES;
+import static com.carmatechnologies.commons.jmx.FlightRecorder.MAGIC;
+import static com.carmatechnologies.commons.jmx.FlightRecorder.MAGIC_OFFSET;
+import static com.carmatechnologies.commons.jmx.FlightRecorder.RECORD_BYTES;
+import static com.carmatechnologies.commons.jmx.FlightRecorder.RECORD_COUNT_OFFSET;
+import static com.carmatechnologies.commons.jmx.FlightRecorder.UTF_8;
+import static com.carmatechnologies.commons.jmx.FlightRecorder.VERSION;
+import static com.carmatechnologies.commons.jmx.FlightRecorder.VERSION_OFFSET;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline reader of files written by {@link FlightRecorder}, e.g. after a crash. From the command line:
+ * 
+ * <pre>
+ * java -cp commons-jmx.jar com.carmatechnologies.commons.jmx.FlightRecordingReader &lt;file&gt; [minutes]
+ * </pre>
+ * 
+ * dumps, one per line, the records of the last {@code minutes} minutes of the recording (all records by default).
+ */
+public final class FlightRecordingReader {
+	private FlightRecordingReader() {
+		// Pure utility class, do NOT instantiate.
+	}
+
+	public static final class Record {
+		private final long timestamp;
+		private final String objectName;
+		private final String attribute;
+		private final double value;
+
+		Record(final long timestamp, final String objectName, final String attribute, final double value) {
+			this.timestamp = timestamp;
+			this.objectName = objectName;
+			this.attribute = attribute;
+			this.value = value;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public String getObjectName() {
+			return objectName;
+		}
+
+		public String getAttribute() {
+			return attribute;
+		}
+
+		public double getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS").format(new Date(timestamp)) + "\t" + objectName + "\t" + attribute + "\t" + value;
+		}
+	}
+
+	/**
+	 * @return the records of the last {@code millis} milliseconds of the recording, i.e. relative to its most recent record, oldest first.
+	 */
+	public static List<Record> read(final File file, final long millis) throws IOException {
+		final ByteBuffer buffer;
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		if (buffer.limit() < HEADER_BYTES || buffer.getInt(MAGIC_OFFSET) != MAGIC)
+			throw new IOException("'" + file + "' is NOT a flight recording.");
+		if (buffer.getInt(VERSION_OFFSET) != VERSION)
+			throw new IOException("Unsupported flight recording version: " + buffer.getInt(VERSION_OFFSET));
+
+		final int capacity = buffer.getInt(CAPACITY_OFFSET);
+		final int dictionaryBytes = buffer.getInt(DICTIONARY_BYTES_OFFSET);
+		final Map<Integer, String[]> series = readDictionary(buffer, buffer.getInt(DICTIONARY_END_OFFSET));
+		final long count = buffer.getLong(RECORD_COUNT_OFFSET);
+		// Once the ring has wrapped, the oldest record may have been partially overwritten when the JVM stopped:
+		final long first = (count > capacity) ? count - capacity + 1 : 0;
+
+		final List<Record> records = new ArrayList<Record>();
+		long newest = Long.MIN_VALUE;
+		for (long i = first; i < count; ++i) {
+			final int position = HEADER_BYTES + dictionaryBytes + (int) (i % capacity) * RECORD_BYTES;
+			final String[] names = series.get(buffer.getInt(position + 8));
+			if (names == null)
+				continue;
+			final long timestamp = buffer.getLong(position);
+			records.add(new Record(timestamp, names[0], names[1], buffer.getDouble(position + 12)));
+			newest = Math.max(newest, timestamp);
+		}
+
+		final List<Record> recent = new ArrayList<Record>();
+		for (final Record record : records) {
+			if (newest - record.getTimestamp() <= millis)
+				recent.add(record);
+		}
+		return recent;
+	}
+
+	private static Map<Integer, String[]> readDictionary(final ByteBuffer buffer, final int dictionaryEnd) {
+		final Map<Integer, String[]> series = new HashMap<Integer, String[]>();
+		int position = HEADER_BYTES;
+		while (position < HEADER_BYTES + dictionaryEnd) {
+			final int id = buffer.getInt(position);
+			position += 4;
+			final String objectName = getString(buffer, position);
+			position += 2 + (buffer.getShort(position) & 0xFFFF);
+			final String attribute = getString(buffer, position);
+			position += 2 + (buffer.getShort(position) & 0xFFFF);
+			series.put(id, new String[] { objectName, attribute });
+		}
+		return series;
+	}
+
+	private static String getString(final ByteBuffer buffer, final int position) {
+		final byte[] bytes = new byte[buffer.getShort(position) & 0xFFFF];
+		for (int i = 0; i < bytes.length; ++i)
+			bytes[i] = buffer.get(position + 2 + i);
+		return new String(bytes, UTF_8);
+	}
+
+	public static void dump(final File file, final long millis, final PrintStream out) throws IOException {
+		for (final Record record : read(file, millis))
+			out.println(record);
+	}
+
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: " + FlightRecordingReader.class.getName() + " <file> [minutes]");
+			System.exit(1);
+		}
+		final long millis = (args.length == 2) ? TimeUnit.MINUTES.toMillis(Long.parseLong(args[1])) : Long.MAX_VALUE;
+		dump(new File(args[0]), millis, System.out);
+	}
+}
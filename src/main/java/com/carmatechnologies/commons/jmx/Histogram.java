@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.carmatechnologies.commons.jmx.mbeans.HistogramSnapshot;
+
+/**
+ * Thread-safe histogram of non-negative values, using power-of-two buckets. Percentiles are therefore approximated by the upper bound of the
+ * bucket they fall into, while count, mean, min and max are exact. Buckets are only allocated once the first value is recorded.
+ */
+public final class Histogram {
+	private static final int BUCKETS = Long.SIZE;
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+	private volatile AtomicLongArray buckets;
+
+	public void record(final long value) {
+		final long v = (value < 0) ? 0 : value;
+		buckets().incrementAndGet(bucketOf(v));
+		count.incrementAndGet();
+		sum.addAndGet(v);
+		updateMin(v);
+		updateMax(v);
+	}
+
+	private AtomicLongArray buckets() {
+		AtomicLongArray current = buckets;
+		if (current == null) {
+			synchronized (this) {
+				current = buckets;
+				if (current == null)
+					buckets = current = new AtomicLongArray(BUCKETS);
+			}
+		}
+		return current;
+	}
+
+	private static int bucketOf(final long value) {
+		return (value == 0) ? 0 : (BUCKETS - Long.numberOfLeadingZeros(value)) - 1;
+	}
+
+	private static long upperBoundOf(final int bucket) {
+		return (bucket == BUCKETS - 1) ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1;
+	}
+
+	private void updateMin(final long value) {
+		long current;
+		while (value < (current = min.get()) && !min.compareAndSet(current, value))
+			;
+	}
+
+	private void updateMax(final long value) {
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value))
+			;
+	}
+
+	public long count() {
+		return count.get();
+	}
+
+	public synchronized void reset() {
+		buckets = null;
+		count.set(0);
+		sum.set(0);
+		min.set(Long.MAX_VALUE);
+		max.set(Long.MIN_VALUE);
+	}
+
+	public HistogramSnapshot snapshot() {
+		final AtomicLongArray current = buckets;
+		final long n = count.get();
+		if (current == null || n == 0)
+			return new HistogramSnapshot(0, 0, 0, 0, 0, 0, 0, 0);
+
+		final long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			counts[i] = current.get(i);
+			total += counts[i];
+		}
+		final long lowest = min.get();
+		final long highest = max.get();
+		return new HistogramSnapshot(n, lowest, highest, (double) sum.get() / n, percentile(counts, total, 0.50, highest),
+				percentile(counts, total, 0.90, highest), percentile(counts, total, 0.99, highest), percentile(counts, total, 0.999, highest));
+	}
+
+	private static long percentile(final long[] counts, final long total, final double quantile, final long max) {
+		final long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; ++i) {
+			seen += counts[i];
+			if (seen >= rank && counts[i] > 0)
+				return Math.min(upperBoundOf(i), max);
+		}
+		return max;
+	}
+}
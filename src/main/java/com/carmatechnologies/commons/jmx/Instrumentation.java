@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide instrumentation level shared by all decorators.
+ * <p>
+ * The current level is held by a {@link MutableCallSite} rather than a volatile field: once JIT-compiled, reading the level is folded into a
+ * constant and changing it de-optimises the dependent code. With {@link InstrumentationLevel#OFF}, decorated calls therefore cost about the same
+ * as calls on the undecorated data structure, see {@code InstrumentationBenchmark} in the {@code benchmarks} module.
+ * <p>
+ * The initial level can be set using the {@value #LEVEL_PROPERTY} system property, and changed at runtime via {@link InstrumentationControl}.
+ */
+public final class Instrumentation {
+	public static final String LEVEL_PROPERTY = "com.carmatechnologies.commons.jmx.instrumentation";
+	private static final InstrumentationLevel DEFAULT_LEVEL = InstrumentationLevel.OFF;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(Instrumentation.class);
+	private static final MutableCallSite LEVEL = new MutableCallSite(MethodType.methodType(InstrumentationLevel.class));
+	private static final MethodHandle LEVEL_INVOKER = LEVEL.dynamicInvoker();
+
+	static {
+		setLevel(initialLevel());
+	}
+
+	private Instrumentation() {
+		// Pure utility class, do NOT instantiate.
+	}
+
+	private static InstrumentationLevel initialLevel() {
+		final String level = System.getProperty(LEVEL_PROPERTY);
+		if (level == null || level.isEmpty())
+			return DEFAULT_LEVEL;
+
+		try {
+			return InstrumentationLevel.valueOf(level.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			LOGGER.warn("Invalid instrumentation level '" + level + "', defaulting to " + DEFAULT_LEVEL + ".");
+			return DEFAULT_LEVEL;
+		}
+	}
+
+	public static InstrumentationLevel level() {
+		try {
+			return (InstrumentationLevel) LEVEL_INVOKER.invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalStateException("Failed to read the current instrumentation level.", e);
+		}
+	}
+
+	public static boolean isOff() {
+		return level() == InstrumentationLevel.OFF;
+	}
+
+	public static boolean isFull() {
+		return level() == InstrumentationLevel.FULL;
+	}
+
+	public static synchronized void setLevel(final InstrumentationLevel level) {
+		checkNotNull(level, "Instrumentation level must NOT be null.");
+		LEVEL.setTarget(MethodHandles.constant(InstrumentationLevel.class, level));
+		MutableCallSite.syncAll(new MutableCallSite[] { LEVEL });
+		LOGGER.info("Instrumentation level set to " + level + ".");
+	}
+}
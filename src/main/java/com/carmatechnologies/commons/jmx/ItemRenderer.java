@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.google.common.base.Utf8;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Renders the items of decorated data structures for {@code getItems()}, using a pluggable {@link ItemFormatter}, an optional per-item character
+ * cap, an optional total response budget (in UTF-8 bytes) and an optional cache of rendered items.
+ */
+public final class ItemRenderer {
+	public static final String ELLIPSIS = "...";
+	public static final int UNLIMITED = Integer.MAX_VALUE;
+	private static final int UNKNOWN_SIZE = -1;
+	public static final ItemFormatter TO_STRING = new ItemFormatter() {
+		@Override
+		public String format(final Object item) {
+			return String.valueOf(item);
+		}
+	};
+
+	/**
+	 * Renders every item using {@code toString()}, without any limit nor cache.
+	 */
+	public static final ItemRenderer DEFAULT = new Builder().build();
+
+	private final ItemFormatter formatter;
+	private final int maxItemLength;
+	private final long maxTotalBytes;
+	private final Cache<Object, Rendering> cache;
+
+	private ItemRenderer(final Builder builder) {
+		this.formatter = builder.formatter;
+		this.maxItemLength = builder.maxItemLength;
+		this.maxTotalBytes = builder.maxTotalBytes;
+		this.cache = builder.cacheRenderings ? CacheBuilder.newBuilder().weakKeys().<Object, Rendering> build() : null;
+	}
+
+	public String render(final Object item) {
+		return rendering(item).text;
+	}
+
+	private Rendering rendering(final Object item) {
+		if (cache == null || item == null)
+			return newRendering(item);
+
+		Rendering rendering = cache.getIfPresent(item);
+		if (rendering == null) {
+			rendering = newRendering(item);
+			cache.put(item, rendering);
+		}
+		return rendering;
+	}
+
+	private Rendering newRendering(final Object item) {
+		String text = formatter.format(item);
+		if (text == null)
+			text = "null";
+		if (text.length() > maxItemLength) {
+			int end = maxItemLength - ELLIPSIS.length();
+			if (Character.isHighSurrogate(text.charAt(end - 1)))
+				--end;
+			text = text.substring(0, end) + ELLIPSIS;
+		}
+		return new Rendering(text);
+	}
+
+	public List<String> renderItems(final Iterable<?> items, final int size) {
+		final List<String> rendered = new ArrayList<String>();
+		long bytes = 0;
+		for (final Object item : items) {
+			final Rendering rendering = rendering(item);
+			bytes += rendering.bytes;
+			if (bytes > maxTotalBytes) {
+				rendered.add(omitted(size - rendered.size()));
+				break;
+			}
+			rendered.add(rendering.text);
+		}
+		return rendered;
+	}
+
+	/**
+	 * Keys rendered the same way, e.g. once truncated, are told apart by a {@code #n} suffix, so that no entry is lost. Omitted entries, if any,
+	 * are reported under the {@value #ELLIPSIS} key, which is reserved: a key rendered as such is suffixed too.
+	 */
+	public Map<String, String> renderEntries(final Iterable<? extends Entry<?, ?>> entries, final int size) {
+		return renderEntries(entries.iterator(), Integer.MAX_VALUE, size);
+	}
+
+	/**
+	 * Renders at most the first {@code limit} entries, e.g. of a range, as {@link #renderEntries(Iterable, int)} does, but without counting the
+	 * entries of a view whose size is expensive to compute: the {@value #ELLIPSIS} entry then only tells that some entries were omitted.
+	 */
+	public Map<String, String> renderFirstEntries(final Iterable<? extends Entry<?, ?>> entries, final int limit) {
+		checkArgument(limit > 0, "Limit must be strictly positive, but was: " + limit);
+		return renderEntries(entries.iterator(), limit, UNKNOWN_SIZE);
+	}
+
+	private Map<String, String> renderEntries(final Iterator<? extends Entry<?, ?>> entries, final int limit, final int size) {
+		final Map<String, String> rendered = new LinkedHashMap<String, String>();
+		long bytes = 0;
+		for (int count = 0; entries.hasNext(); ++count) {
+			if (count == limit) {
+				rendered.put(ELLIPSIS, omitted(size, count));
+				break;
+			}
+			final Entry<?, ?> entry = entries.next();
+			final Rendering key = rendering(entry.getKey());
+			final Rendering value = rendering(entry.getValue());
+			bytes += key.bytes + value.bytes;
+			if (bytes > maxTotalBytes) {
+				rendered.put(ELLIPSIS, omitted(size, count));
+				break;
+			}
+			rendered.put(uniqueKey(key.text, rendered.keySet()), value.text);
+		}
+		return rendered;
+	}
+
+	/**
+	 * @return the provided rendered key, suffixed by {@code #n} if already taken, or if it is the reserved {@value #ELLIPSIS} key.
+	 */
+	static String uniqueKey(final String key, final Set<String> taken) {
+		if (!ELLIPSIS.equals(key) && !taken.contains(key))
+			return key;
+		int n = 2;
+		while (taken.contains(key + "#" + n))
+			++n;
+		return key + "#" + n;
+	}
+
+	private static String omitted(final int count) {
+		return ELLIPSIS + " " + Math.max(count, 1) + " more item(s) omitted";
+	}
+
+	private static String omitted(final int size, final int rendered) {
+		return (size == UNKNOWN_SIZE) ? ELLIPSIS + " more item(s) omitted" : omitted(size - rendered);
+	}
+
+	private static final class Rendering {
+		private final String text;
+		private final int bytes;
+
+		private Rendering(final String text) {
+			this.text = text;
+			this.bytes = encodedLength(text);
+		}
+
+		private static int encodedLength(final String text) {
+			try {
+				return Utf8.encodedLength(text);
+			} catch (IllegalArgumentException e) {
+				// Unpaired surrogate: fall back on the worst case.
+				return 3 * text.length();
+			}
+		}
+	}
+
+	public static final class Builder {
+		private ItemFormatter formatter = TO_STRING;
+		private int maxItemLength = UNLIMITED;
+		private long maxTotalBytes = Long.MAX_VALUE;
+		private boolean cacheRenderings = false;
+
+		public Builder formatter(final ItemFormatter formatter) {
+			checkNotNull(formatter, "Item formatter must NOT be null.");
+			this.formatter = formatter;
+			return this;
+		}
+
+		/**
+		 * Truncates rendered items longer than the provided number of characters, the last ones being replaced by {@value ItemRenderer#ELLIPSIS}.
+		 */
+		public Builder maxItemLength(final int maxItemLength) {
+			checkArgument(maxItemLength > ELLIPSIS.length(), "Maximum item length must be greater than " + ELLIPSIS.length() + ".");
+			this.maxItemLength = maxItemLength;
+			return this;
+		}
+
+		/**
+		 * Stops rendering items once the provided number of UTF-8 bytes is reached, and adds a last item telling how many items have been omitted.
+		 */
+		public Builder maxTotalBytes(final long maxTotalBytes) {
+			checkArgument(maxTotalBytes > 0, "Maximum total bytes must be strictly positive.");
+			this.maxTotalBytes = maxTotalBytes;
+			return this;
+		}
+
+		/**
+		 * Caches rendered items, keyed by identity and weakly referenced, so that unchanged items are only formatted once. Only enable this if
+		 * items, keys and values are immutable, or at least their rendering is: mutations of a cached item will NOT be reflected.
+		 */
+		public Builder cacheRenderings() {
+			this.cacheRenderings = true;
+			return this;
+		}
+
+		public ItemRenderer build() {
+			return new ItemRenderer(this);
+		}
+	}
+}
@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams JDK Flight Recorder events within the process, e.g. lock contention, GC, safepoints and allocation samples, and aggregates each event
+ * type into a {@link JfrEventSummary}, registered as an MXBean named after the event, e.g.
+ * {@code com.carmatechnologies.commons.jmx:type=JfrEventSummary,name=jdk.JavaMonitorEnter}. JMX-only environments thereby get continuous,
+ * low-overhead profiling signals.
+ * <p>
+ * This library targets Java 7, so JFR's {@code RecordingStream} (Java 14+) is used reflectively: check {@link #isAvailable()} first.
+ */
+public final class JfrEventBridge implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(JfrEventBridge.class);
+
+	private final Object stream;
+	private final Map<String, JfrEventSummary> summaries = new LinkedHashMap<String, JfrEventSummary>();
+	private final List<ObjectName> objectNames = new ArrayList<ObjectName>();
+
+	/**
+	 * @return {@code true} if the current runtime supports JFR event streaming, i.e. Java 14+ with the {@code jdk.jfr} module.
+	 */
+	public static boolean isAvailable() {
+		return Jfr.AVAILABLE;
+	}
+
+	private JfrEventBridge(final Builder builder) throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException,
+			MalformedObjectNameException {
+		if (!Jfr.AVAILABLE)
+			throw new UnsupportedOperationException("JFR event streaming requires Java 14 or later.");
+		this.stream = Jfr.newStream();
+		try {
+			for (final EventSpec spec : builder.events.values()) {
+				final JfrEventSummary summary = new JfrEventSummary(spec.name, builder.slotMillis, builder.slotCount);
+				summaries.put(spec.name, summary);
+				Jfr.subscribe(stream, spec, summary);
+			}
+			for (final JfrEventSummary summary : summaries.values()) {
+				objectNames.add(MBeans.register(new MBeans.Builder(summary).property("name", summary.getEventName())));
+			}
+		} catch (Exception e) {
+			close();
+			throw e;
+		}
+		Jfr.start(stream);
+	}
+
+	public JfrEventSummary summary(final String eventName) {
+		return summaries.get(eventName);
+	}
+
+	public List<ObjectName> objectNames() {
+		return objectNames;
+	}
+
+	/**
+	 * Stops streaming events and unregisters all summaries.
+	 */
+	@Override
+	public void close() {
+		Jfr.close(stream);
+		for (final ObjectName objectName : objectNames)
+			MBeans.unregister(objectName);
+	}
+
+	private static final class EventSpec {
+		private final String name;
+		private final String keyField;
+		private final String weightField;
+		private final long thresholdNanos;
+		private final String throttle;
+
+		EventSpec(final String name, final String keyField, final String weightField, final long thresholdNanos, final String throttle) {
+			this.name = name;
+			this.keyField = keyField;
+			this.weightField = weightField;
+			this.thresholdNanos = thresholdNanos;
+			this.throttle = throttle;
+		}
+	}
+
+	public static final class Builder {
+		private final Map<String, EventSpec> events = new LinkedHashMap<String, EventSpec>();
+		private long slotMillis = 1000;
+		private int slotCount = 60;
+
+		/**
+		 * Streams lock contention ({@code jdk.JavaMonitorEnter} over 10ms, keyed by monitor class), garbage collections ({@code jdk.GarbageCollection},
+		 * keyed by collector), safepoints ({@code jdk.SafepointBegin}) and allocation samples ({@code jdk.ObjectAllocationSample}, keyed by
+		 * allocated class, weighted by allocated bytes, and throttled to 150 samples per second).
+		 */
+		public Builder defaults() {
+			event("jdk.JavaMonitorEnter", "monitorClass", null, 10, TimeUnit.MILLISECONDS);
+			event("jdk.GarbageCollection", "name", null, 0, TimeUnit.MILLISECONDS);
+			event("jdk.SafepointBegin", null, null, 0, TimeUnit.MILLISECONDS);
+			event("jdk.ObjectAllocationSample", "objectClass", "weight", 0, TimeUnit.MILLISECONDS);
+			return throttle("jdk.ObjectAllocationSample", "150/s");
+		}
+
+		/**
+		 * Streams the provided event type, keying events by the value of the provided field, e.g. a class, and weighting them by the value of the
+		 * provided numeric field, if any.
+		 */
+		public Builder event(final String name, final String keyField, final String weightField, final long threshold, final TimeUnit unit) {
+			checkNotNull(name, "Event name must NOT be null.");
+			checkArgument(threshold >= 0, "Threshold must be positive, but was: " + threshold);
+			checkNotNull(unit, "Threshold's time unit must NOT be null.");
+			events.put(name, new EventSpec(name, keyField, weightField, unit.toNanos(threshold), null));
+			return this;
+		}
+
+		/**
+		 * Limits how many events of the provided, already added, type are emitted, e.g. {@code "150/s"}, for event types which support JFR's
+		 * {@code throttle} setting.
+		 */
+		public Builder throttle(final String name, final String rate) {
+			final EventSpec spec = events.get(name);
+			checkArgument(spec != null, "Event '" + name + "' must be added before being throttled.");
+			checkNotNull(rate, "Throttling rate must NOT be null.");
+			events.put(name, new EventSpec(name, spec.keyField, spec.weightField, spec.thresholdNanos, rate));
+			return this;
+		}
+
+		/**
+		 * Aggregates events over {@code count} slots of the provided length, e.g. 60 slots of 1 second for a rolling minute.
+		 */
+		public Builder windows(final int count, final long length, final TimeUnit unit) {
+			checkArgument(count > 0, "Number of windows must be strictly positive, but was: " + count);
+			checkArgument(length > 0, "Window length must be strictly positive, but was: " + length);
+			checkNotNull(unit, "Window length's time unit must NOT be null.");
+			checkArgument(unit.toMillis(length) > 0, "Window length must be at least 1ms.");
+			this.slotCount = count;
+			this.slotMillis = unit.toMillis(length);
+			return this;
+		}
+
+		public JfrEventBridge build() throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException,
+				MalformedObjectNameException {
+			checkArgument(!events.isEmpty(), "At least one event must be streamed.");
+			return new JfrEventBridge(this);
+		}
+	}
+
+	/**
+	 * Reflective access to {@code jdk.jfr.consumer}, resolved once.
+	 */
+	private static final class Jfr {
+		private static final boolean AVAILABLE;
+		private static Class<?> streamClass;
+		private static Class<?> consumerClass;
+		private static Class<?> recordedClass;
+		private static Class<?> recordedThread;
+		private static Method enable;
+		private static Method withThreshold;
+		private static Method withoutStackTrace;
+		private static Method with;
+		private static Method onEvent;
+		private static Method startAsync;
+		private static Method close;
+		private static Method getDuration;
+		private static Method getStartTime;
+		private static Method toEpochMilli;
+		private static Method hasField;
+		private static Method getValue;
+		private static Method className;
+		private static Method threadName;
+		private static Method toNanos;
+		private static Method ofNanos;
+
+		static {
+			boolean available;
+			try {
+				streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+				consumerClass = Class.forName("java.util.function.Consumer");
+				final Class<?> settings = Class.forName("jdk.jfr.EventSettings");
+				final Class<?> event = Class.forName("jdk.jfr.consumer.RecordedEvent");
+				final Class<?> duration = Class.forName("java.time.Duration");
+				recordedClass = Class.forName("jdk.jfr.consumer.RecordedClass");
+				recordedThread = Class.forName("jdk.jfr.consumer.RecordedThread");
+				enable = streamClass.getMethod("enable", String.class);
+				withThreshold = settings.getMethod("withThreshold", duration);
+				withoutStackTrace = settings.getMethod("withoutStackTrace");
+				with = settings.getMethod("with", String.class, String.class);
+				onEvent = streamClass.getMethod("onEvent", String.class, consumerClass);
+				startAsync = streamClass.getMethod("startAsync");
+				close = streamClass.getMethod("close");
+				getDuration = event.getMethod("getDuration");
+				getStartTime = event.getMethod("getStartTime");
+				toEpochMilli = Class.forName("java.time.Instant").getMethod("toEpochMilli");
+				hasField = event.getMethod("hasField", String.class);
+				getValue = event.getMethod("getValue", String.class);
+				className = recordedClass.getMethod("getName");
+				threadName = recordedThread.getMethod("getJavaName");
+				toNanos = duration.getMethod("toNanos");
+				ofNanos = duration.getMethod("ofNanos", long.class);
+				available = true;
+			} catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+				available = false;
+			}
+			AVAILABLE = available;
+		}
+
+		static Object newStream() {
+			try {
+				return streamClass.getConstructor().newInstance();
+			} catch (InvocationTargetException e) {
+				throw new IllegalStateException("Failed to create JFR recording stream.", e.getCause());
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Failed to create JFR recording stream.", e);
+			}
+		}
+
+		static void subscribe(final Object stream, final EventSpec spec, final JfrEventSummary summary) {
+			// Summaries never use stack traces, which are the most expensive part of most events to record.
+			final Object settings = call(withoutStackTrace, call(enable, stream, spec.name));
+			if (spec.thresholdNanos > 0)
+				call(withThreshold, settings, call(ofNanos, null, spec.thresholdNanos));
+			if (spec.throttle != null)
+				call(with, settings, "throttle", spec.throttle);
+			final Object consumer = Proxy.newProxyInstance(consumerClass.getClassLoader(), new Class<?>[] { consumerClass }, new InvocationHandler() {
+				@Override
+				public Object invoke(final Object proxy, final Method method, final Object[] args) {
+					if ("accept".equals(method.getName())) {
+						record(spec, summary, args[0]);
+						return null;
+					}
+					if ("hashCode".equals(method.getName()))
+						return System.identityHashCode(proxy);
+					if ("equals".equals(method.getName()))
+						return proxy == args[0];
+					return "JfrConsumer[" + spec.name + "]";
+				}
+			});
+			call(onEvent, stream, spec.name, consumer);
+		}
+
+		private static void record(final EventSpec spec, final JfrEventSummary summary, final Object event) {
+			try {
+				final long durationNanos = (Long) call(toNanos, call(getDuration, event));
+				final String key = (spec.keyField == null) ? null : render(field(event, spec.keyField));
+				final Object weight = (spec.weightField == null) ? null : field(event, spec.weightField);
+				final long startMillis = (Long) call(toEpochMilli, call(getStartTime, event));
+				summary.record(key, durationNanos, (weight instanceof Number) ? ((Number) weight).longValue() : 0, startMillis);
+			} catch (RuntimeException e) {
+				LOGGER.debug("Failed to record JFR event '" + spec.name + "'.", e);
+			}
+		}
+
+		private static Object field(final Object event, final String field) {
+			return ((Boolean) call(hasField, event, field)) ? call(getValue, event, field) : null;
+		}
+
+		private static String render(final Object value) {
+			if (value == null)
+				return null;
+			if (recordedClass.isInstance(value))
+				return (String) call(className, value);
+			if (recordedThread.isInstance(value))
+				return (String) call(threadName, value);
+			return String.valueOf(value);
+		}
+
+		static void start(final Object stream) {
+			call(startAsync, stream);
+		}
+
+		static void close(final Object stream) {
+			call(close, stream);
+		}
+
+		private static Object call(final Method method, final Object target, final Object... args) {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				throw new IllegalStateException("Failed to call JFR method '" + method.getName() + "'.", cause);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Failed to call JFR method '" + method.getName() + "'.", e);
+			}
+		}
+	}
+}
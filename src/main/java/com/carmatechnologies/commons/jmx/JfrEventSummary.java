@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.carmatechnologies.commons.jmx.mbeans.IJfrEventSummary;
+
+/**
+ * Aggregates events of a single type into a ring of fixed-length time slots, e.g. 60 slots of 1 second, each of which keeps a count, durations,
+ * weights, and the totals of at most {@link #MAX_KEYS_PER_SLOT} keys. Memory is therefore bounded whatever the rate of events. Events are recorded
+ * by a single thread, while readers may run concurrently.
+ * <p>
+ * Keys are counted using the Space-Saving algorithm: once a slot is full, a new key replaces the key with the smallest total and inherits it.
+ * Any key whose total exceeds {@code 1 / MAX_KEYS_PER_SLOT} of its slot's total is therefore kept, whenever it first appears, while totals
+ * are over-estimated by at most the total of the replaced key.
+ */
+public final class JfrEventSummary implements IJfrEventSummary {
+	public static final int MAX_KEYS_PER_SLOT = 16;
+
+	private static final Comparator<Entry<String, Long>> BY_VALUE = new Comparator<Entry<String, Long>>() {
+		@Override
+		public int compare(final Entry<String, Long> left, final Entry<String, Long> right) {
+			return Long.compare(left.getValue(), right.getValue());
+		}
+	};
+
+	private final String eventName;
+	private final long slotMillis;
+	private final Slot[] slots;
+
+	JfrEventSummary(final String eventName, final long slotMillis, final int slotCount) {
+		checkNotNull(eventName, "Event name must NOT be null.");
+		checkArgument(slotMillis > 0, "Slot length must be strictly positive, but was: " + slotMillis);
+		checkArgument(slotCount > 0, "Number of slots must be strictly positive, but was: " + slotCount);
+		this.eventName = eventName;
+		this.slotMillis = slotMillis;
+		this.slots = new Slot[slotCount];
+		for (int i = 0; i < slotCount; ++i)
+			slots[i] = new Slot();
+	}
+
+	synchronized void record(final String key, final long durationNanos, final long weight, final long timeMillis) {
+		final long epoch = timeMillis / slotMillis;
+		final Slot slot = slots[(int) (epoch % slots.length)];
+		if (slot.epoch > epoch)
+			return; // Older than the window, e.g. streamed late: dropped rather than resetting a newer slot.
+		if (slot.epoch != epoch)
+			slot.reset(epoch);
+		++slot.count;
+		slot.totalDurationNanos += durationNanos;
+		slot.maxDurationNanos = Math.max(slot.maxDurationNanos, durationNanos);
+		slot.totalWeight += weight;
+		if (key != null)
+			slot.add(key, (weight > 0) ? weight : durationNanos);
+	}
+
+	private boolean isLive(final Slot slot, final long nowMillis) {
+		final long epoch = nowMillis / slotMillis;
+		return slot.epoch > epoch - slots.length && slot.epoch <= epoch;
+	}
+
+	@Override
+	public String getEventName() {
+		return eventName;
+	}
+
+	@Override
+	public long getWindowMillis() {
+		return slotMillis * slots.length;
+	}
+
+	@Override
+	public long getCount() {
+		return count(System.currentTimeMillis());
+	}
+
+	synchronized long count(final long nowMillis) {
+		long count = 0;
+		for (final Slot slot : slots) {
+			if (isLive(slot, nowMillis))
+				count += slot.count;
+		}
+		return count;
+	}
+
+	@Override
+	public double getEventsPerSecond() {
+		return getCount() * 1000.0 / getWindowMillis();
+	}
+
+	@Override
+	public synchronized long getTotalDurationNanos() {
+		final long now = System.currentTimeMillis();
+		long total = 0;
+		for (final Slot slot : slots) {
+			if (isLive(slot, now))
+				total += slot.totalDurationNanos;
+		}
+		return total;
+	}
+
+	@Override
+	public synchronized long getMaxDurationNanos() {
+		final long now = System.currentTimeMillis();
+		long max = 0;
+		for (final Slot slot : slots) {
+			if (isLive(slot, now))
+				max = Math.max(max, slot.maxDurationNanos);
+		}
+		return max;
+	}
+
+	@Override
+	public synchronized long getTotalWeight() {
+		final long now = System.currentTimeMillis();
+		long total = 0;
+		for (final Slot slot : slots) {
+			if (isLive(slot, now))
+				total += slot.totalWeight;
+		}
+		return total;
+	}
+
+	@Override
+	public Map<String, Long> topKeys(final int limit) {
+		return topKeys(limit, System.currentTimeMillis());
+	}
+
+	synchronized Map<String, Long> topKeys(final int limit, final long nowMillis) {
+		final Map<String, Long> totals = new HashMap<String, Long>();
+		for (final Slot slot : slots) {
+			if (!isLive(slot, nowMillis))
+				continue;
+			for (final Entry<String, Long> key : slot.keys.entrySet()) {
+				final Long total = totals.get(key.getKey());
+				totals.put(key.getKey(), (total == null) ? key.getValue() : total + key.getValue());
+			}
+		}
+
+		final TopN<Entry<String, Long>> top = new TopN<Entry<String, Long>>(limit, BY_VALUE);
+		for (final Entry<String, Long> total : totals.entrySet())
+			top.offer(total);
+		final Map<String, Long> largestFirst = new LinkedHashMap<String, Long>();
+		for (final Entry<String, Long> total : top.largestFirst())
+			largestFirst.put(total.getKey(), total.getValue());
+		return largestFirst;
+	}
+
+	private static final class Slot {
+		private final Map<String, Long> keys = new HashMap<String, Long>();
+		private long epoch = Long.MIN_VALUE;
+		private long count;
+		private long totalDurationNanos;
+		private long maxDurationNanos;
+		private long totalWeight;
+
+		void reset(final long epoch) {
+			this.epoch = epoch;
+			count = 0;
+			totalDurationNanos = 0;
+			maxDurationNanos = 0;
+			totalWeight = 0;
+			keys.clear();
+		}
+
+		void add(final String key, final long score) {
+			final Long total = keys.get(key);
+			if (total != null) {
+				keys.put(key, total + score);
+			} else if (keys.size() < MAX_KEYS_PER_SLOT) {
+				keys.put(key, score);
+			} else {
+				Entry<String, Long> smallest = null;
+				for (final Entry<String, Long> candidate : keys.entrySet()) {
+					if (smallest == null || candidate.getValue() < smallest.getValue())
+						smallest = candidate;
+				}
+				final long inherited = smallest.getValue();
+				keys.remove(smallest.getKey());
+				keys.put(key, inherited + score);
+			}
+		}
+	}
+}
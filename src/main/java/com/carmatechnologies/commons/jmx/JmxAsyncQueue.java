@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.HistogramSnapshot;
+import com.carmatechnologies.commons.jmx.mbeans.IJmxAsyncQueue;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Bounded queue for asynchronous consumers and producers, exposed via JMX: {@link #takeAsync()} and {@link #offerAsync(Object)} return futures,
+ * completed by the thread offering the next element or taking the next element respectively, instead of parking a thread per waiter. Futures
+ * are completed outside of the queue's lock, so their listeners may safely call the queue again, and cancelling a pending future withdraws it.
+ */
+public class JmxAsyncQueue<E> extends AbstractQueue<E> implements IJmxAsyncQueue {
+	private final Object lock = new Object();
+	private final ArrayDeque<E> items = new ArrayDeque<E>();
+	private final Queue<Waiter<E>> takers = new ArrayDeque<Waiter<E>>();
+	private final Queue<Waiter<Void>> offerers = new ArrayDeque<Waiter<Void>>();
+	private final int capacity;
+	private final ObjectName objectName;
+	private final Histogram takeCompletion = new Histogram();
+	private final Histogram offerCompletion = new Histogram();
+	private volatile ItemRenderer renderer = ItemRenderer.DEFAULT;
+
+	public JmxAsyncQueue(final int capacity) throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException,
+			MalformedObjectNameException {
+		this(capacity, new Builder());
+	}
+
+	public JmxAsyncQueue(final int capacity, final Builder builder) throws InstanceAlreadyExistsException, MBeanRegistrationException,
+			NotCompliantMBeanException, MalformedObjectNameException {
+		checkArgument(capacity > 0, "Capacity must be strictly positive, but was: " + capacity);
+		checkNotNull(builder, "MBean builder must NOT be null.");
+		this.capacity = capacity;
+		this.objectName = new ObjectName(builder.mbean(this).objectName());
+		MBeans.register(builder);
+	}
+
+	/**
+	 * Sets the renderer used to expose this queue's items via JMX, instead of calling {@code toString()} on every item.
+	 */
+	public JmxAsyncQueue<E> renderer(final ItemRenderer renderer) {
+		checkNotNull(renderer, "Item renderer must NOT be null.");
+		this.renderer = renderer;
+		return this;
+	}
+
+	/**
+	 * @return a future completed with the head of this queue, immediately if this queue is not empty, otherwise once an element is offered.
+	 *         Pending takes are completed in order.
+	 */
+	public ListenableFuture<E> takeAsync() {
+		final E e;
+		final Waiter<Void> unblocked;
+		synchronized (lock) {
+			e = items.poll();
+			if (e == null) {
+				final Waiter<E> taker = new Waiter<E>(null, takers);
+				takers.add(taker);
+				return taker;
+			}
+			unblocked = admitOfferer();
+		}
+		complete(unblocked, null, offerCompletion);
+		return Futures.immediateFuture(e);
+	}
+
+	/**
+	 * @return a future completed once the provided element has been inserted or handed over to a pending take, immediately if this queue is not
+	 *         full. Pending offers are completed in order.
+	 */
+	public ListenableFuture<Void> offerAsync(final E e) {
+		checkNotNull(e, "Element must NOT be null.");
+		final Waiter<E> taker;
+		synchronized (lock) {
+			taker = claimTaker();
+			if (taker == null) {
+				if (items.size() < capacity) {
+					items.add(e);
+				} else {
+					final Waiter<Void> offerer = new Waiter<Void>(e, offerers);
+					offerers.add(offerer);
+					return offerer;
+				}
+			}
+		}
+		complete(taker, e, takeCompletion);
+		return Futures.immediateFuture(null);
+	}
+
+	@Override
+	public boolean offer(final E e) {
+		checkNotNull(e, "Element must NOT be null.");
+		final Waiter<E> taker;
+		synchronized (lock) {
+			taker = claimTaker();
+			if (taker == null) {
+				if (items.size() >= capacity)
+					return false;
+				items.add(e);
+				return true;
+			}
+		}
+		complete(taker, e, takeCompletion);
+		return true;
+	}
+
+	@Override
+	public E poll() {
+		final E e;
+		final Waiter<Void> unblocked;
+		synchronized (lock) {
+			e = items.poll();
+			if (e == null)
+				return null;
+			unblocked = admitOfferer();
+		}
+		complete(unblocked, null, offerCompletion);
+		return e;
+	}
+
+	@Override
+	public E peek() {
+		synchronized (lock) {
+			return items.peek();
+		}
+	}
+
+	@Override
+	public int size() {
+		synchronized (lock) {
+			return items.size();
+		}
+	}
+
+	/**
+	 * @return an iterator over a snapshot of this queue, which does NOT support removal.
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		synchronized (lock) {
+			return Collections.unmodifiableList(new ArrayList<E>(items)).iterator();
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock, when this queue may no longer be full.
+	 */
+	private Waiter<Void> admitOfferer() {
+		Waiter<Void> offerer;
+		while ((offerer = offerers.poll()) != null) {
+			if (offerer.claim()) {
+				items.add(offerer.element);
+				return offerer;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Must be called while holding the lock.
+	 */
+	private Waiter<E> claimTaker() {
+		Waiter<E> taker;
+		while ((taker = takers.poll()) != null) {
+			if (taker.claim())
+				return taker;
+		}
+		return null;
+	}
+
+	private <T> void complete(final Waiter<T> waiter, final T value, final Histogram completion) {
+		if (waiter == null)
+			return;
+		if (waiter.start != QueueStats.NOT_TIMED)
+			completion.record(System.nanoTime() - waiter.start);
+		waiter.complete(value);
+	}
+
+	@Override
+	public ObjectName objectName() {
+		return objectName;
+	}
+
+	@Override
+	public int getSize() {
+		return size();
+	}
+
+	@Override
+	public List<String> getItems() {
+		final List<E> snapshot;
+		synchronized (lock) {
+			snapshot = new ArrayList<E>(items);
+		}
+		return renderer.renderItems(snapshot, snapshot.size());
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public int getPendingTakeCount() {
+		synchronized (lock) {
+			return takers.size();
+		}
+	}
+
+	@Override
+	public int getPendingOfferCount() {
+		synchronized (lock) {
+			return offerers.size();
+		}
+	}
+
+	@Override
+	public HistogramSnapshot getTakeCompletionNanos() {
+		return takeCompletion.snapshot();
+	}
+
+	@Override
+	public HistogramSnapshot getOfferCompletionNanos() {
+		return offerCompletion.snapshot();
+	}
+
+	/**
+	 * Pending take or offer. Whoever first claims it, either the thread completing it or the thread cancelling it, owns it: this guarantees an
+	 * element is never handed over to a cancelled take, nor inserted for a cancelled offer.
+	 */
+	private final class Waiter<T> extends AbstractFuture<T> {
+		private final AtomicBoolean claimed = new AtomicBoolean();
+		private final E element;
+		private final Queue<Waiter<T>> waiters;
+		private final long start = QueueStats.start();
+
+		Waiter(final E element, final Queue<Waiter<T>> waiters) {
+			this.element = element;
+			this.waiters = waiters;
+		}
+
+		boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		void complete(final T value) {
+			set(value);
+		}
+
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			if (!claim())
+				return false;
+			synchronized (lock) {
+				waiters.remove(this);
+			}
+			return super.cancel(mayInterruptIfRunning);
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.IJmxCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * JMX decorator for Guava {@link Cache}s, exposing their {@link CacheStats} and allowing to invalidate entries. Make sure the decorated cache
+ * has been built using {@link com.google.common.cache.CacheBuilder#recordStats()}, otherwise all statistics remain at zero.
+ */
+public class JmxCache<K, V> implements Cache<K, V>, IJmxCache {
+	private final Cache<K, V> cache;
+	private final KeyParser<K> keyParser;
+	private final ObjectName objectName;
+	private volatile ItemRenderer renderer = ItemRenderer.DEFAULT;
+
+	public JmxCache(final Cache<K, V> cache, final KeyParser<K> keyParser) throws InstanceAlreadyExistsException, MBeanRegistrationException,
+			NotCompliantMBeanException, MalformedObjectNameException {
+		checkNotNull(cache, "Cache must NOT be null in order to be JMX-decorated.");
+		checkNotNull(keyParser, "Key parser must NOT be null.");
+		this.cache = cache;
+		this.keyParser = keyParser;
+		final Builder builder = new Builder(this);
+		this.objectName = new ObjectName(builder.objectName());
+		MBeans.register(builder);
+	}
+
+	public JmxCache(final Cache<K, V> cache, final KeyParser<K> keyParser, final Builder builder) throws InstanceAlreadyExistsException,
+			MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		checkNotNull(cache, "Cache must NOT be null in order to be JMX-decorated.");
+		checkNotNull(keyParser, "Key parser must NOT be null.");
+		checkNotNull(builder, "MBean builder must NOT be null.");
+		this.cache = cache;
+		this.keyParser = keyParser;
+		this.objectName = new ObjectName(builder.mbean(this).objectName());
+		MBeans.register(builder);
+	}
+
+	/**
+	 * Sets the renderer used to expose this cache's entries via JMX, instead of calling {@code toString()} on every key and value.
+	 */
+	public JmxCache<K, V> renderer(final ItemRenderer renderer) {
+		checkNotNull(renderer, "Item renderer must NOT be null.");
+		this.renderer = renderer;
+		return this;
+	}
+
+	@Override
+	public V getIfPresent(final Object key) {
+		return cache.getIfPresent(key);
+	}
+
+	@Override
+	public V get(final K key, final Callable<? extends V> loader) throws ExecutionException {
+		return cache.get(key, loader);
+	}
+
+	@Override
+	public ImmutableMap<K, V> getAllPresent(final Iterable<?> keys) {
+		return cache.getAllPresent(keys);
+	}
+
+	@Override
+	public void put(final K key, final V value) {
+		cache.put(key, value);
+	}
+
+	@Override
+	public void putAll(final Map<? extends K, ? extends V> m) {
+		cache.putAll(m);
+	}
+
+	@Override
+	public void invalidate(final Object key) {
+		cache.invalidate(key);
+	}
+
+	@Override
+	public void invalidateAll(final Iterable<?> keys) {
+		cache.invalidateAll(keys);
+	}
+
+	@Override
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public long size() {
+		return cache.size();
+	}
+
+	@Override
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	@Override
+	public ConcurrentMap<K, V> asMap() {
+		return cache.asMap();
+	}
+
+	@Override
+	public void cleanUp() {
+		cache.cleanUp();
+	}
+
+	@Override
+	public ObjectName objectName() {
+		return objectName;
+	}
+
+	@Override
+	public int getSize() {
+		return (int) Math.min(cache.size(), Integer.MAX_VALUE);
+	}
+
+	@Override
+	public Map<String, String> getItems() {
+		final ConcurrentMap<K, V> map = cache.asMap();
+		return renderer.renderEntries(map.entrySet(), map.size());
+	}
+
+	@Override
+	public long getEstimatedSize() {
+		return cache.size();
+	}
+
+	@Override
+	public long getRequestCount() {
+		return cache.stats().requestCount();
+	}
+
+	@Override
+	public long getHitCount() {
+		return cache.stats().hitCount();
+	}
+
+	@Override
+	public double getHitRate() {
+		return cache.stats().hitRate();
+	}
+
+	@Override
+	public long getMissCount() {
+		return cache.stats().missCount();
+	}
+
+	@Override
+	public double getMissRate() {
+		return cache.stats().missRate();
+	}
+
+	@Override
+	public long getLoadCount() {
+		return cache.stats().loadCount();
+	}
+
+	@Override
+	public long getLoadSuccessCount() {
+		return cache.stats().loadSuccessCount();
+	}
+
+	@Override
+	public long getLoadExceptionCount() {
+		return cache.stats().loadExceptionCount();
+	}
+
+	@Override
+	public double getLoadExceptionRate() {
+		return cache.stats().loadExceptionRate();
+	}
+
+	@Override
+	public long getTotalLoadTimeNanos() {
+		return cache.stats().totalLoadTime();
+	}
+
+	@Override
+	public double getAverageLoadPenaltyNanos() {
+		return cache.stats().averageLoadPenalty();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return cache.stats().evictionCount();
+	}
+
+	@Override
+	public void invalidateKey(final String key) {
+		cache.invalidate(keyParser.parse(key));
+	}
+}
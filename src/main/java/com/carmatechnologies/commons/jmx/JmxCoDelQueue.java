@@ -0,0 +1,493 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.HistogramSnapshot;
+import com.carmatechnologies.commons.jmx.mbeans.IJmxCoDelQueue;
+
+/**
+ * Bounded blocking queue, exposed via JMX, applying CoDel ("Controlled Delay") on dequeue: once the sojourn time of dequeued elements has stayed
+ * above {@link #getTargetMillis() target} for a whole {@link #getIntervalMillis() interval}, elements are dropped, at an increasing rate, until it
+ * goes back below target. Under overload, this keeps the standing queue delay, and therefore tail latency, around target, while absorbing bursts
+ * shorter than an interval. Dropped elements are handed to the {@link DropHandler}, e.g. to reply with an error, and optionally, elements can be
+ * rejected upfront while dropping.
+ * <p>
+ * Capacity is only a safety net against memory exhaustion: size it well above the expected standing queue.
+ */
+public class JmxCoDelQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>, IJmxCoDelQueue {
+	public static final long DEFAULT_TARGET_MILLIS = 5;
+	public static final long DEFAULT_INTERVAL_MILLIS = 100;
+	private static final Logger LOGGER = LoggerFactory.getLogger(JmxCoDelQueue.class);
+
+	private final LinkedBlockingQueue<Timestamped<E>> queue;
+	private final int capacity;
+	private final ObjectName objectName;
+	private final QueueStats stats = new QueueStats();
+	private final Histogram sojourn = new Histogram();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final List<Timestamped<E>> drops = new ArrayList<Timestamped<E>>();
+	private volatile long targetNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TARGET_MILLIS);
+	private volatile long intervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INTERVAL_MILLIS);
+	private volatile ItemRenderer renderer = ItemRenderer.DEFAULT;
+	private volatile DropHandler<? super E> dropHandler;
+	private volatile boolean rejectWhileDropping = false;
+
+	// CoDel state, guarded by lock:
+	private volatile boolean dropping = false;
+	private long firstAboveTime = 0;
+	private long dropNext = 0;
+	private int count = 0;
+	private int lastCount = 0;
+
+	// Statistics, written while holding lock:
+	private volatile long dequeued = 0;
+	private volatile long dropped = 0;
+	private long windowStart = System.nanoTime();
+	private long windowMinSojourn = Long.MAX_VALUE;
+	private long windowDrops = 0;
+	private volatile long standingDelayNanos = 0;
+	private volatile double dropsPerSecond = 0;
+
+	public interface DropHandler<E> {
+		/**
+		 * Called, outside of the queue's lock, by the consumer thread which dropped the provided element.
+		 */
+		void dropped(E element, long sojournNanos);
+	}
+
+	public JmxCoDelQueue(final int capacity) throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException,
+			MalformedObjectNameException {
+		this(capacity, new Builder());
+	}
+
+	public JmxCoDelQueue(final int capacity, final Builder builder) throws InstanceAlreadyExistsException, MBeanRegistrationException,
+			NotCompliantMBeanException, MalformedObjectNameException {
+		checkArgument(capacity > 0, "Capacity must be strictly positive, but was: " + capacity);
+		checkNotNull(builder, "MBean builder must NOT be null.");
+		this.capacity = capacity;
+		this.queue = new LinkedBlockingQueue<Timestamped<E>>(capacity);
+		this.objectName = new ObjectName(builder.mbean(this).objectName());
+		MBeans.register(builder);
+	}
+
+	/**
+	 * Sets the renderer used to expose this queue's items via JMX, instead of calling {@code toString()} on every item.
+	 */
+	public JmxCoDelQueue<E> renderer(final ItemRenderer renderer) {
+		checkNotNull(renderer, "Item renderer must NOT be null.");
+		this.renderer = renderer;
+		return this;
+	}
+
+	public JmxCoDelQueue<E> dropHandler(final DropHandler<? super E> dropHandler) {
+		checkNotNull(dropHandler, "Drop handler must NOT be null.");
+		this.dropHandler = dropHandler;
+		return this;
+	}
+
+	/**
+	 * Rejects offered elements, instead of only dropping dequeued ones, while dropping, so that producers can shed load before doing any work.
+	 */
+	public JmxCoDelQueue<E> rejectWhileDropping(final boolean rejectWhileDropping) {
+		this.rejectWhileDropping = rejectWhileDropping;
+		return this;
+	}
+
+	private boolean isRejecting() {
+		return rejectWhileDropping && dropping;
+	}
+
+	private boolean inserted(final boolean inserted, final long start) {
+		if (!Instrumentation.isOff())
+			stats.recordInsert(inserted, start);
+		return inserted;
+	}
+
+	@Override
+	public boolean offer(final E e) {
+		checkNotNull(e, "Element must NOT be null.");
+		final long start = QueueStats.start();
+		if (isRejecting())
+			return inserted(false, start);
+		return inserted(queue.offer(new Timestamped<E>(e, System.nanoTime())), start);
+	}
+
+	@Override
+	public boolean offer(final E e, final long timeout, final TimeUnit unit) throws InterruptedException {
+		checkNotNull(e, "Element must NOT be null.");
+		final long start = QueueStats.start();
+		if (isRejecting())
+			return inserted(false, start);
+		return inserted(queue.offer(new Timestamped<E>(e, System.nanoTime()), timeout, unit), start);
+	}
+
+	@Override
+	public void put(final E e) throws InterruptedException {
+		checkNotNull(e, "Element must NOT be null.");
+		final long start = QueueStats.start();
+		queue.put(new Timestamped<E>(e, System.nanoTime()));
+		inserted(true, start);
+	}
+
+	@Override
+	public E poll() {
+		final long start = QueueStats.start();
+		return removed(dequeue(queue.poll()), start);
+	}
+
+	@Override
+	public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		final long start = QueueStats.start();
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (true) {
+			final Timestamped<E> head = dequeue(queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+			if (head != null || deadline - System.nanoTime() <= 0)
+				return removed(head, start);
+		}
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		final long start = QueueStats.start();
+		while (true) {
+			final Timestamped<E> head = dequeue(queue.take());
+			if (head != null)
+				return removed(head, start);
+		}
+	}
+
+	private E removed(final Timestamped<E> head, final long start) {
+		if (!Instrumentation.isOff())
+			stats.recordRemove(head != null, start);
+		return (head == null) ? null : head.element;
+	}
+
+	/**
+	 * Applies CoDel to the provided head, just removed from the underlying queue, possibly dropping it and following elements.
+	 * 
+	 * @return the element to hand over to the consumer, or {@code null} if the queue is empty, possibly after dropping elements.
+	 */
+	private Timestamped<E> dequeue(final Timestamped<E> head) {
+		final List<Timestamped<E>> dropped;
+		final Timestamped<E> delivered;
+		lock.lock();
+		try {
+			delivered = control(head, System.nanoTime());
+			if (drops.isEmpty()) {
+				dropped = null;
+			} else {
+				dropped = new ArrayList<Timestamped<E>>(drops);
+				drops.clear();
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (dropped != null)
+			notifyDrops(dropped);
+		return delivered;
+	}
+
+	private Timestamped<E> control(final Timestamped<E> head, final long now) {
+		Timestamped<E> entry = head;
+		if (entry == null)
+			return empty();
+
+		boolean okToDrop = okToDrop(entry, now);
+		if (dropping) {
+			if (!okToDrop) {
+				dropping = false;
+			} else {
+				while (now - dropNext >= 0 && dropping) {
+					drop(entry);
+					++count;
+					entry = queue.poll();
+					if (entry == null)
+						return empty();
+					if (okToDrop(entry, now))
+						dropNext = controlLaw(dropNext, count);
+					else
+						dropping = false;
+				}
+			}
+		} else if (okToDrop) {
+			drop(entry);
+			entry = queue.poll();
+			if (entry == null)
+				return empty();
+			okToDrop(entry, now);
+			dropping = true;
+			// Start dropping faster if dropping stopped recently, as the queue is most likely still overloaded:
+			final int delta = count - lastCount;
+			count = (delta > 1 && now - dropNext < 16 * intervalNanos) ? delta : 1;
+			dropNext = controlLaw(now, count);
+			lastCount = count;
+		}
+		++dequeued;
+		return entry;
+	}
+
+	private Timestamped<E> empty() {
+		firstAboveTime = 0;
+		dropping = false;
+		return null;
+	}
+
+	private boolean okToDrop(final Timestamped<E> entry, final long now) {
+		final long sojournNanos = now - entry.enqueued;
+		record(sojournNanos, now);
+		// Never drop the last element, as an empty queue has no standing delay:
+		if (sojournNanos < targetNanos || queue.isEmpty()) {
+			firstAboveTime = 0;
+			return false;
+		}
+		if (firstAboveTime == 0) {
+			firstAboveTime = now + intervalNanos;
+			return false;
+		}
+		return now - firstAboveTime >= 0;
+	}
+
+	private long controlLaw(final long time, final int count) {
+		return time + (long) (intervalNanos / Math.sqrt(count));
+	}
+
+	private void drop(final Timestamped<E> entry) {
+		++dropped;
+		++windowDrops;
+		drops.add(entry);
+	}
+
+	private void record(final long sojournNanos, final long now) {
+		if (!Instrumentation.isOff())
+			sojourn.record(sojournNanos);
+		final long elapsed = now - windowStart;
+		if (elapsed >= intervalNanos) {
+			standingDelayNanos = (windowMinSojourn == Long.MAX_VALUE) ? 0 : windowMinSojourn;
+			dropsPerSecond = windowDrops * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+			windowStart = now;
+			windowMinSojourn = sojournNanos;
+			windowDrops = 0;
+		} else if (sojournNanos < windowMinSojourn) {
+			windowMinSojourn = sojournNanos;
+		}
+	}
+
+	private void notifyDrops(final List<Timestamped<E>> dropped) {
+		final DropHandler<? super E> handler = dropHandler;
+		if (handler == null)
+			return;
+		final long now = System.nanoTime();
+		for (final Timestamped<E> entry : dropped) {
+			try {
+				handler.dropped(entry.element, now - entry.enqueued);
+			} catch (RuntimeException e) {
+				LOGGER.error("Drop handler failed on '" + objectName + "'.", e);
+			}
+		}
+	}
+
+	@Override
+	public E peek() {
+		final Timestamped<E> head = queue.peek();
+		return (head == null) ? null : head.element;
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c, final int maxElements) {
+		checkNotNull(c, "Collection must NOT be null.");
+		checkArgument(c != this, "Queue must NOT be drained to itself.");
+		int drained = 0;
+		E e;
+		while (drained < maxElements && (e = poll()) != null) {
+			c.add(e);
+			++drained;
+		}
+		return drained;
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return queue.remainingCapacity();
+	}
+
+	@Override
+	public int size() {
+		return queue.size();
+	}
+
+	@Override
+	public void clear() {
+		queue.clear();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		final Iterator<Timestamped<E>> iterator = queue.iterator();
+		return new Iterator<E>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public E next() {
+				return iterator.next().element;
+			}
+
+			@Override
+			public void remove() {
+				iterator.remove();
+			}
+		};
+	}
+
+	@Override
+	public ObjectName objectName() {
+		return objectName;
+	}
+
+	@Override
+	public int getSize() {
+		return queue.size();
+	}
+
+	@Override
+	public List<String> getItems() {
+		return renderer.renderItems(this, queue.size());
+	}
+
+	@Override
+	public long getInsertCount() {
+		return stats.insertions();
+	}
+
+	@Override
+	public long getRejectCount() {
+		return stats.rejections();
+	}
+
+	@Override
+	public long getRemoveCount() {
+		return stats.removals();
+	}
+
+	@Override
+	public HistogramSnapshot getInsertLatencyNanos() {
+		return stats.insertLatency().snapshot();
+	}
+
+	@Override
+	public HistogramSnapshot getRemoveLatencyNanos() {
+		return stats.removeLatency().snapshot();
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public long getTargetMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(targetNanos);
+	}
+
+	@Override
+	public void setTargetMillis(final long targetMillis) {
+		checkArgument(targetMillis > 0, "Target must be strictly positive, but was: " + targetMillis);
+		targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+	}
+
+	@Override
+	public long getIntervalMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(intervalNanos);
+	}
+
+	@Override
+	public void setIntervalMillis(final long intervalMillis) {
+		checkArgument(intervalMillis > 0, "Interval must be strictly positive, but was: " + intervalMillis);
+		intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+	}
+
+	@Override
+	public boolean isDropping() {
+		return dropping;
+	}
+
+	@Override
+	public long getDropCount() {
+		return dropped;
+	}
+
+	@Override
+	public double getDropRatio() {
+		final long drops = dropped;
+		final long total = drops + dequeued;
+		return (total == 0) ? 0 : (double) drops / total;
+	}
+
+	@Override
+	public double getDropsPerSecond() {
+		return dropsPerSecond;
+	}
+
+	@Override
+	public long getStandingDelayNanos() {
+		return standingDelayNanos;
+	}
+
+	@Override
+	public HistogramSnapshot getSojournNanos() {
+		return sojourn.snapshot();
+	}
+
+	private static final class Timestamped<E> {
+		private final E element;
+		private final long enqueued;
+
+		Timestamped(final E element, final long enqueued) {
+			this.element = element;
+			this.enqueued = enqueued;
+		}
+	}
+}
@@ -15,12 +15,20 @@
  ******************************************************************************/
 package com.carmatechnologies.commons.jmx;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import javax.management.InstanceAlreadyExistsException;
@@ -30,16 +38,30 @@ import javax.management.NotCompliantMBeanException;
 import javax.management.ObjectName;
 
 import com.carmatechnologies.commons.jmx.MBeans.Builder;
-import com.carmatechnologies.commons.jmx.mbeans.IJmxMap;
+import com.carmatechnologies.commons.jmx.mbeans.HistogramSnapshot;
+import com.carmatechnologies.commons.jmx.mbeans.IJmxConcurrentMap;
+import com.carmatechnologies.commons.jmx.mbeans.MapChanges;
+
+public class JmxConcurrentMap<K, V> implements ConcurrentMap<K, V>, IJmxConcurrentMap {
+	private static final Comparator<Entry<?, ?>> BY_NUMERIC_VALUE = new Comparator<Entry<?, ?>>() {
+		@Override
+		public int compare(final Entry<?, ?> left, final Entry<?, ?> right) {
+			return Double.compare(((Number) left.getValue()).doubleValue(), ((Number) right.getValue()).doubleValue());
+		}
+	};
 
-public class JmxConcurrentMap<K, V> implements ConcurrentMap<K, V>, IJmxMap {
 	private final ConcurrentMap<K, V> map;
 	private final ObjectName objectName;
+	private final MapStats stats = new MapStats();
+	private volatile ItemRenderer renderer = ItemRenderer.DEFAULT;
+	private final ChangeLog changes;
+	private final ConcurrentMap<String, Comparator<? super V>> valueComparators = new ConcurrentHashMap<String, Comparator<? super V>>();
 
 	public JmxConcurrentMap(final ConcurrentMap<K, V> concurrentMap) throws InstanceAlreadyExistsException, MBeanRegistrationException,
 			NotCompliantMBeanException, MalformedObjectNameException {
 		checkNotNull(concurrentMap, "Concurrent map must NOT be null in order to be JMX-decorated.");
 		this.map = concurrentMap;
+		this.changes = null;
 		final Builder builder = new Builder(this);
 		this.objectName = new ObjectName(builder.objectName());
 		MBeans.register(builder);
@@ -47,21 +69,94 @@ public class JmxConcurrentMap<K, V> implements ConcurrentMap<K, V>, IJmxMap {
 
 	public JmxConcurrentMap(final ConcurrentMap<K, V> concurrentMap, final Builder builder) throws InstanceAlreadyExistsException, MBeanRegistrationException,
 			NotCompliantMBeanException, MalformedObjectNameException {
+		this(concurrentMap, builder, null);
+	}
+
+	/**
+	 * Also tracks the keys changed via this decorator, so that JMX clients can only read the entries changed since the last time they read this
+	 * map, see {@link #getChangesSince(long)}. At most {@code trackedChanges} (rounded up to a power of two) changes are tracked: clients reading
+	 * less often than that have to read the whole map again. Changes made via the {@link #entrySet()}, {@link #keySet()} and {@link #values()}
+	 * views, or directly on the decorated map, are NOT tracked.
+	 */
+	public JmxConcurrentMap(final ConcurrentMap<K, V> concurrentMap, final Builder builder, final int trackedChanges)
+			throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		this(concurrentMap, builder, new ChangeLog(trackedChanges));
+	}
+
+	private JmxConcurrentMap(final ConcurrentMap<K, V> concurrentMap, final Builder builder, final ChangeLog changes)
+			throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
 		checkNotNull(concurrentMap, "Concurrent map must NOT be null in order to be JMX-decorated.");
 		checkNotNull(builder, "MBean builder must NOT be null.");
 		this.map = concurrentMap;
+		this.changes = changes;
 		this.objectName = new ObjectName(builder.mbean(this).objectName());
 		MBeans.register(builder);
 	}
 
+	/**
+	 * Decorates the provided map WITHOUT registering an MBean for it: the map is instead exposed as the provided member of the provided group.
+	 */
+	public JmxConcurrentMap(final ConcurrentMap<K, V> concurrentMap, final JmxGroup group, final String member) {
+		checkNotNull(concurrentMap, "Concurrent map must NOT be null in order to be JMX-decorated.");
+		checkNotNull(group, "JMX group must NOT be null.");
+		this.map = concurrentMap;
+		this.changes = null;
+		this.objectName = group.objectName();
+		group.join(member, this);
+	}
+
+	/**
+	 * Sets the renderer used to expose this map's entries via JMX, instead of calling {@code toString()} on every key and value.
+	 */
+	public JmxConcurrentMap<K, V> renderer(final ItemRenderer renderer) {
+		checkNotNull(renderer, "Item renderer must NOT be null.");
+		this.renderer = renderer;
+		return this;
+	}
+
+	/**
+	 * Registers a comparator of values, e.g. comparing the sizes of collection values, under the provided name, so that JMX clients can get the
+	 * largest entries according to it, see {@link #topBy(String, int)}.
+	 */
+	public JmxConcurrentMap<K, V> valueComparator(final String name, final Comparator<? super V> comparator) {
+		checkNotNull(name, "Comparator name must NOT be null.");
+		checkNotNull(comparator, "Comparator must NOT be null.");
+		valueComparators.put(name, comparator);
+		return this;
+	}
+
+	/**
+	 * Records a change of the provided key, if changes are tracked.
+	 */
+	void changed(final Object key) {
+		if (changes != null)
+			changes.record(key);
+	}
+
+	ItemRenderer renderer() {
+		return renderer;
+	}
+
+	MapStats stats() {
+		return stats;
+	}
+
 	@Override
 	public void clear() {
 		map.clear();
+		if (changes != null)
+			changes.reset();
 	}
 
 	@Override
 	public boolean containsKey(final Object key) {
-		return map.containsKey(key);
+		if (Instrumentation.isOff())
+			return map.containsKey(key);
+
+		final long start = MapStats.start();
+		final boolean contained = map.containsKey(key);
+		stats.recordRead(contained, start);
+		return contained;
 	}
 
 	@Override
@@ -76,7 +171,13 @@ public class JmxConcurrentMap<K, V> implements ConcurrentMap<K, V>, IJmxMap {
 
 	@Override
 	public V get(final Object key) {
-		return map.get(key);
+		if (Instrumentation.isOff())
+			return map.get(key);
+
+		final long start = MapStats.start();
+		final V value = map.get(key);
+		stats.recordRead(value != null, start);
+		return value;
 	}
 
 	@Override
@@ -91,17 +192,43 @@ public class JmxConcurrentMap<K, V> implements ConcurrentMap<K, V>, IJmxMap {
 
 	@Override
 	public V put(final K key, final V value) {
-		return map.put(key, value);
+		if (Instrumentation.isOff()) {
+			final V previous = map.put(key, value);
+			changed(key);
+			return previous;
+		}
+
+		final long start = MapStats.start();
+		final V previous = map.put(key, value);
+		stats.recordWrite(start);
+		changed(key);
+		return previous;
 	}
 
 	@Override
 	public void putAll(final Map<? extends K, ? extends V> m) {
 		map.putAll(m);
+		if (changes != null) {
+			for (final K key : m.keySet())
+				changed(key);
+		}
 	}
 
 	@Override
 	public V remove(final Object key) {
-		return map.remove(key);
+		if (Instrumentation.isOff()) {
+			final V previous = map.remove(key);
+			if (previous != null)
+				changed(key);
+			return previous;
+		}
+
+		final long start = MapStats.start();
+		final V previous = map.remove(key);
+		stats.recordRemoval(previous != null, start);
+		if (previous != null)
+			changed(key);
+		return previous;
 	}
 
 	@Override
@@ -116,22 +243,70 @@ public class JmxConcurrentMap<K, V> implements ConcurrentMap<K, V>, IJmxMap {
 
 	@Override
 	public V putIfAbsent(final K key, final V value) {
-		return map.putIfAbsent(key, value);
+		if (Instrumentation.isOff()) {
+			final V previous = map.putIfAbsent(key, value);
+			if (previous == null)
+				changed(key);
+			return previous;
+		}
+
+		final long start = MapStats.start();
+		final V previous = map.putIfAbsent(key, value);
+		stats.recordWrite(start);
+		if (previous == null)
+			changed(key);
+		return previous;
 	}
 
 	@Override
 	public boolean remove(final Object key, final Object value) {
-		return map.remove(key, value);
+		if (Instrumentation.isOff()) {
+			final boolean removed = map.remove(key, value);
+			if (removed)
+				changed(key);
+			return removed;
+		}
+
+		final long start = MapStats.start();
+		final boolean removed = map.remove(key, value);
+		stats.recordRemoval(removed, start);
+		if (removed)
+			changed(key);
+		return removed;
 	}
 
 	@Override
 	public V replace(final K key, final V value) {
-		return map.replace(key, value);
+		if (Instrumentation.isOff()) {
+			final V previous = map.replace(key, value);
+			if (previous != null)
+				changed(key);
+			return previous;
+		}
+
+		final long start = MapStats.start();
+		final V previous = map.replace(key, value);
+		stats.recordWrite(start);
+		if (previous != null)
+			changed(key);
+		return previous;
 	}
 
 	@Override
 	public boolean replace(final K key, final V oldValue, final V newValue) {
-		return map.replace(key, oldValue, newValue);
+		if (Instrumentation.isOff()) {
+			final boolean replaced = map.replace(key, oldValue, newValue);
+			if (replaced)
+				changed(key);
+			return replaced;
+		}
+
+		final long start = MapStats.start();
+		final boolean replaced = map.replace(key, oldValue, newValue);
+		stats.recordWrite(start);
+		if (replaced)
+			changed(key);
+		return replaced;
 	}
 
 	@Override
@@ -144,12 +319,110 @@ public class JmxConcurrentMap<K, V> implements ConcurrentMap<K, V>, IJmxMap {
 		return objectName;
 	}
 
+	@Override
+	public long getHitCount() {
+		return stats.hits();
+	}
+
+	@Override
+	public long getMissCount() {
+		return stats.misses();
+	}
+
+	@Override
+	public long getWriteCount() {
+		return stats.writes();
+	}
+
+	@Override
+	public long getRemoveCount() {
+		return stats.removals();
+	}
+
+	@Override
+	public HistogramSnapshot getReadLatencyNanos() {
+		return stats.readLatency().snapshot();
+	}
+
+	@Override
+	public HistogramSnapshot getWriteLatencyNanos() {
+		return stats.writeLatency().snapshot();
+	}
+
 	@Override
 	public Map<String, String> getItems() {
-		final Map<String, String> items = new LinkedHashMap<String, String>();
-		for (final Entry<K, V> kvp : map.entrySet()) {
-			items.put(kvp.getKey().toString(), kvp.getValue().toString());
+		return renderer.renderEntries(map.entrySet(), map.size());
+	}
+
+	@Override
+	public long getChangeVersion() {
+		return (changes == null) ? 0 : changes.version();
+	}
+
+	@Override
+	public MapChanges getChangesSince(final long version) {
+		final ChangeLog.Changes delta = (changes == null) ? null : changes.changesSince(version);
+		if (delta == null) {
+			// Read the version first, so that changes made while rendering entries are read again next time.
+			final long current = (changes == null) ? 0 : changes.version();
+			final Map<String, String> all = renderer.renderEntries(map.entrySet(), map.size());
+			return new MapChanges(current, true, all.containsKey(ItemRenderer.ELLIPSIS), all, Collections.<String> emptyList());
+		}
+
+		final Map<String, String> upserted = new LinkedHashMap<String, String>();
+		final List<String> removed = new ArrayList<String>();
+		final Set<String> rendered = new HashSet<String>();
+		for (final Object key : delta.keys()) {
+			final V value = map.get(key);
+			final String renderedKey = ItemRenderer.uniqueKey(renderer.render(key), rendered);
+			rendered.add(renderedKey);
+			if (value == null)
+				removed.add(renderedKey);
+			else
+				upserted.put(renderedKey, renderer.render(value));
+		}
+		return new MapChanges(delta.version(), false, false, upserted, removed);
+	}
+
+	@Override
+	public Map<String, String> topByValue(final int limit) {
+		final TopN<Entry<K, V>> largest = new TopN<Entry<K, V>>(limit, BY_NUMERIC_VALUE);
+		for (final Entry<K, V> entry : map.entrySet()) {
+			if (entry.getValue() instanceof Number)
+				largest.offer(entry);
 		}
-		return items;
+		return render(largest);
+	}
+
+	@Override
+	public Map<String, String> topBy(final String comparator, final int limit) {
+		final Comparator<? super V> byValue = (comparator == null) ? null : valueComparators.get(comparator);
+		checkArgument(byValue != null, "Unknown comparator '" + comparator + "', available comparators are: " + valueComparators.keySet());
+		final TopN<Entry<K, V>> largest = new TopN<Entry<K, V>>(limit, new Comparator<Entry<K, V>>() {
+			@Override
+			public int compare(final Entry<K, V> left, final Entry<K, V> right) {
+				return byValue.compare(left.getValue(), right.getValue());
+			}
+		});
+		for (final Entry<K, V> entry : map.entrySet())
+			largest.offer(entry);
+		return render(largest);
+	}
+
+	/**
+	 * Only renders the selected entries, so that the cost of rendering does NOT depend on the size of the map.
+	 */
+	private Map<String, String> render(final TopN<Entry<K, V>> largest) {
+		final Map<String, String> top = new LinkedHashMap<String, String>();
+		for (final Entry<K, V> entry : largest.largestFirst())
+			top.put(ItemRenderer.uniqueKey(renderer.render(entry.getKey()), top.keySet()), renderer.render(entry.getValue()));
+		return top;
+	}
+
+	@Override
+	public List<String> getValueComparators() {
+		final List<String> names = new ArrayList<String>(valueComparators.keySet());
+		Collections.sort(names);
+		return names;
 	}
 }
@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentNavigableMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.IJmxNavigableMap;
+
+/**
+ * JMX decorator for sorted concurrent maps, e.g. {@link java.util.concurrent.ConcurrentSkipListMap}. On top of {@link JmxConcurrentMap}'s
+ * attributes, exposes the first/last keys and bounded range views, so that only the relevant window of a large map is traversed.
+ */
+public class JmxConcurrentNavigableMap<K, V> extends JmxConcurrentMap<K, V> implements ConcurrentNavigableMap<K, V>, IJmxNavigableMap {
+	private final ConcurrentNavigableMap<K, V> map;
+	private final KeyParser<K> keyParser;
+
+	public JmxConcurrentNavigableMap(final ConcurrentNavigableMap<K, V> concurrentMap, final KeyParser<K> keyParser)
+			throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		super(checkKeyParser(concurrentMap, keyParser));
+		this.map = concurrentMap;
+		this.keyParser = keyParser;
+	}
+
+	public JmxConcurrentNavigableMap(final ConcurrentNavigableMap<K, V> concurrentMap, final KeyParser<K> keyParser, final Builder builder)
+			throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		super(checkKeyParser(concurrentMap, keyParser), builder);
+		this.map = concurrentMap;
+		this.keyParser = keyParser;
+	}
+
+	/**
+	 * Also tracks changed keys, see {@link JmxConcurrentMap#JmxConcurrentMap(java.util.concurrent.ConcurrentMap, Builder, int)}.
+	 */
+	public JmxConcurrentNavigableMap(final ConcurrentNavigableMap<K, V> concurrentMap, final KeyParser<K> keyParser, final Builder builder,
+			final int trackedChanges) throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException,
+			MalformedObjectNameException {
+		super(checkKeyParser(concurrentMap, keyParser), builder, trackedChanges);
+		this.map = concurrentMap;
+		this.keyParser = keyParser;
+	}
+
+	/**
+	 * Checks the key parser before the superclass' constructor registers the MBean, which would otherwise remain registered.
+	 */
+	private static <K, V> ConcurrentNavigableMap<K, V> checkKeyParser(final ConcurrentNavigableMap<K, V> concurrentMap, final KeyParser<K> keyParser) {
+		checkNotNull(keyParser, "Key parser must NOT be null.");
+		return concurrentMap;
+	}
+
+	@Override
+	public JmxConcurrentNavigableMap<K, V> renderer(final ItemRenderer renderer) {
+		super.renderer(renderer);
+		return this;
+	}
+
+	@Override
+	public JmxConcurrentNavigableMap<K, V> valueComparator(final String name, final Comparator<? super V> comparator) {
+		super.valueComparator(name, comparator);
+		return this;
+	}
+
+	@Override
+	public Comparator<? super K> comparator() {
+		return map.comparator();
+	}
+
+	@Override
+	public K firstKey() {
+		return map.firstKey();
+	}
+
+	@Override
+	public K lastKey() {
+		return map.lastKey();
+	}
+
+	@Override
+	public Entry<K, V> lowerEntry(final K key) {
+		return map.lowerEntry(key);
+	}
+
+	@Override
+	public K lowerKey(final K key) {
+		return map.lowerKey(key);
+	}
+
+	@Override
+	public Entry<K, V> floorEntry(final K key) {
+		return map.floorEntry(key);
+	}
+
+	@Override
+	public K floorKey(final K key) {
+		return map.floorKey(key);
+	}
+
+	@Override
+	public Entry<K, V> ceilingEntry(final K key) {
+		return map.ceilingEntry(key);
+	}
+
+	@Override
+	public K ceilingKey(final K key) {
+		return map.ceilingKey(key);
+	}
+
+	@Override
+	public Entry<K, V> higherEntry(final K key) {
+		return map.higherEntry(key);
+	}
+
+	@Override
+	public K higherKey(final K key) {
+		return map.higherKey(key);
+	}
+
+	@Override
+	public Entry<K, V> firstEntry() {
+		return map.firstEntry();
+	}
+
+	@Override
+	public Entry<K, V> lastEntry() {
+		return map.lastEntry();
+	}
+
+	@Override
+	public Entry<K, V> pollFirstEntry() {
+		if (Instrumentation.isOff()) {
+			final Entry<K, V> entry = map.pollFirstEntry();
+			if (entry != null)
+				changed(entry.getKey());
+			return entry;
+		}
+
+		final long start = MapStats.start();
+		final Entry<K, V> entry = map.pollFirstEntry();
+		stats().recordRemoval(entry != null, start);
+		if (entry != null)
+			changed(entry.getKey());
+		return entry;
+	}
+
+	@Override
+	public Entry<K, V> pollLastEntry() {
+		if (Instrumentation.isOff()) {
+			final Entry<K, V> entry = map.pollLastEntry();
+			if (entry != null)
+				changed(entry.getKey());
+			return entry;
+		}
+
+		final long start = MapStats.start();
+		final Entry<K, V> entry = map.pollLastEntry();
+		stats().recordRemoval(entry != null, start);
+		if (entry != null)
+			changed(entry.getKey());
+		return entry;
+	}
+
+	@Override
+	public ConcurrentNavigableMap<K, V> subMap(final K fromKey, final boolean fromInclusive, final K toKey, final boolean toInclusive) {
+		return map.subMap(fromKey, fromInclusive, toKey, toInclusive);
+	}
+
+	@Override
+	public ConcurrentNavigableMap<K, V> headMap(final K toKey, final boolean inclusive) {
+		return map.headMap(toKey, inclusive);
+	}
+
+	@Override
+	public ConcurrentNavigableMap<K, V> tailMap(final K fromKey, final boolean inclusive) {
+		return map.tailMap(fromKey, inclusive);
+	}
+
+	@Override
+	public ConcurrentNavigableMap<K, V> subMap(final K fromKey, final K toKey) {
+		return map.subMap(fromKey, toKey);
+	}
+
+	@Override
+	public ConcurrentNavigableMap<K, V> headMap(final K toKey) {
+		return map.headMap(toKey);
+	}
+
+	@Override
+	public ConcurrentNavigableMap<K, V> tailMap(final K fromKey) {
+		return map.tailMap(fromKey);
+	}
+
+	@Override
+	public ConcurrentNavigableMap<K, V> descendingMap() {
+		return map.descendingMap();
+	}
+
+	@Override
+	public NavigableSet<K> navigableKeySet() {
+		return map.navigableKeySet();
+	}
+
+	@Override
+	public NavigableSet<K> keySet() {
+		return map.keySet();
+	}
+
+	@Override
+	public NavigableSet<K> descendingKeySet() {
+		return map.descendingKeySet();
+	}
+
+	@Override
+	public String getFirstKey() {
+		final Entry<K, V> first = map.firstEntry();
+		return (first == null) ? null : renderer().render(first.getKey());
+	}
+
+	@Override
+	public String getLastKey() {
+		final Entry<K, V> last = map.lastEntry();
+		return (last == null) ? null : renderer().render(last.getKey());
+	}
+
+	@Override
+	public int countRange(final String fromKey, final String toKey) {
+		return map.subMap(keyParser.parse(fromKey), keyParser.parse(toKey)).size();
+	}
+
+	@Override
+	public Map<String, String> subMapItems(final String fromKey, final String toKey, final int limit) {
+		return render(map.subMap(keyParser.parse(fromKey), keyParser.parse(toKey)), limit);
+	}
+
+	@Override
+	public Map<String, String> headMapItems(final String toKey, final int limit) {
+		return render(map.headMap(keyParser.parse(toKey)), limit);
+	}
+
+	@Override
+	public Map<String, String> tailMapItems(final String fromKey, final int limit) {
+		return render(map.tailMap(keyParser.parse(fromKey)), limit);
+	}
+
+	private Map<String, String> render(final ConcurrentNavigableMap<K, V> view, final int limit) {
+		checkArgument(limit > 0, "Limit must be strictly positive.");
+		return renderer().renderFirstEntries(view.entrySet(), limit);
+	}
+}
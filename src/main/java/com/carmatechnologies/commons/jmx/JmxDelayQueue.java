@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.HistogramSnapshot;
+import com.carmatechnologies.commons.jmx.mbeans.IJmxDelayQueue;
+
+/**
+ * JMX decorator for {@link DelayQueue}s, exposing, on top of the usual queue attributes, the delay before the next expiry, the number of expired
+ * elements not taken yet, and the lateness of taken elements, i.e. how long after their expiry they have been taken. Like other statistics,
+ * lateness is only recorded when {@link Instrumentation} is on.
+ */
+public class JmxDelayQueue<E extends Delayed> extends DelayQueue<E> implements BlockingQueue<E>, IJmxDelayQueue {
+	private final DelayQueue<E> queue;
+	private final ObjectName objectName;
+	private final QueueStats stats = new QueueStats();
+	private final Histogram lateness = new Histogram();
+	private volatile ItemRenderer renderer = ItemRenderer.DEFAULT;
+
+	public JmxDelayQueue(final DelayQueue<E> queue) throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException,
+			MalformedObjectNameException {
+		checkNotNull(queue, "Delay queue must NOT be null in order to be JMX-decorated.");
+		this.queue = queue;
+		final Builder builder = new Builder(this);
+		this.objectName = new ObjectName(builder.objectName());
+		MBeans.register(builder);
+	}
+
+	public JmxDelayQueue(final DelayQueue<E> queue, final Builder builder) throws InstanceAlreadyExistsException, MBeanRegistrationException,
+			NotCompliantMBeanException, MalformedObjectNameException {
+		checkNotNull(queue, "Delay queue must NOT be null in order to be JMX-decorated.");
+		checkNotNull(builder, "MBean builder must NOT be null.");
+		this.queue = queue;
+		this.objectName = new ObjectName(builder.mbean(this).objectName());
+		MBeans.register(builder);
+	}
+
+	/**
+	 * Sets the renderer used to expose this queue's items via JMX, instead of calling {@code toString()} on every item.
+	 */
+	public JmxDelayQueue<E> renderer(final ItemRenderer renderer) {
+		checkNotNull(renderer, "Item renderer must NOT be null.");
+		this.renderer = renderer;
+		return this;
+	}
+
+	private E removed(final E item, final long start) {
+		stats.recordRemove(item != null, start);
+		if (item != null)
+			lateness.record(-item.getDelay(TimeUnit.NANOSECONDS));
+		return item;
+	}
+
+	@Override
+	public E element() {
+		return queue.element();
+	}
+
+	@Override
+	public E peek() {
+		return queue.peek();
+	}
+
+	@Override
+	public E poll() {
+		if (Instrumentation.isOff())
+			return queue.poll();
+
+		final long start = QueueStats.start();
+		return removed(queue.poll(), start);
+	}
+
+	@Override
+	public E remove() {
+		if (Instrumentation.isOff())
+			return queue.remove();
+
+		final long start = QueueStats.start();
+		return removed(queue.remove(), start);
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c, final int maxElements) {
+		if (Instrumentation.isOff())
+			return queue.drainTo(c, maxElements);
+
+		checkArgument(c != this && c != queue, "Queue must NOT be drained to itself.");
+		final List<E> drained = new ArrayList<E>();
+		queue.drainTo(drained, maxElements);
+		for (final E item : drained)
+			lateness.record(-item.getDelay(TimeUnit.NANOSECONDS));
+		stats.recordRemovals(drained.size());
+		c.addAll(drained);
+		return drained.size();
+	}
+
+	@Override
+	public boolean offer(final E e) {
+		if (Instrumentation.isOff())
+			return queue.offer(e);
+
+		final long start = QueueStats.start();
+		final boolean inserted = queue.offer(e);
+		stats.recordInsert(inserted, start);
+		return inserted;
+	}
+
+	@Override
+	public boolean offer(final E e, final long timeout, final TimeUnit unit) {
+		return offer(e);
+	}
+
+	@Override
+	public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		if (Instrumentation.isOff())
+			return queue.poll(timeout, unit);
+
+		final long start = QueueStats.start();
+		return removed(queue.poll(timeout, unit), start);
+	}
+
+	@Override
+	public void put(final E e) {
+		offer(e);
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return queue.remainingCapacity();
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		if (Instrumentation.isOff())
+			return queue.take();
+
+		final long start = QueueStats.start();
+		return removed(queue.take(), start);
+	}
+
+	@Override
+	public boolean add(final E e) {
+		return offer(e);
+	}
+
+	@Override
+	public boolean addAll(final Collection<? extends E> c) {
+		checkArgument(c != this && c != queue, "Queue must NOT be added to itself.");
+		boolean modified = false;
+		for (final E e : c) {
+			if (add(e))
+				modified = true;
+		}
+		return modified;
+	}
+
+	@Override
+	public void clear() {
+		queue.clear();
+	}
+
+	@Override
+	public boolean contains(final Object o) {
+		return queue.contains(o);
+	}
+
+	@Override
+	public boolean containsAll(final Collection<?> c) {
+		return queue.containsAll(c);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	@Override
+	public boolean remove(final Object o) {
+		return queue.remove(o);
+	}
+
+	@Override
+	public boolean removeAll(final Collection<?> c) {
+		return queue.removeAll(c);
+	}
+
+	@Override
+	public boolean retainAll(final Collection<?> c) {
+		return queue.retainAll(c);
+	}
+
+	@Override
+	public int size() {
+		return queue.size();
+	}
+
+	@Override
+	public Object[] toArray() {
+		return queue.toArray();
+	}
+
+	@Override
+	public <T> T[] toArray(final T[] a) {
+		return queue.toArray(a);
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return queue.iterator();
+	}
+
+	@Override
+	public String toString() {
+		return queue.toString();
+	}
+
+	@Override
+	public ObjectName objectName() {
+		return objectName;
+	}
+
+	@Override
+	public int getSize() {
+		return queue.size();
+	}
+
+	@Override
+	public List<String> getItems() {
+		return renderer.renderItems(queue, queue.size());
+	}
+
+	@Override
+	public long getInsertCount() {
+		return stats.insertions();
+	}
+
+	@Override
+	public long getRejectCount() {
+		return stats.rejections();
+	}
+
+	@Override
+	public long getRemoveCount() {
+		return stats.removals();
+	}
+
+	@Override
+	public HistogramSnapshot getInsertLatencyNanos() {
+		return stats.insertLatency().snapshot();
+	}
+
+	@Override
+	public HistogramSnapshot getRemoveLatencyNanos() {
+		return stats.removeLatency().snapshot();
+	}
+
+	@Override
+	public Long getNextExpiryDelayMillis() {
+		final E head = queue.peek();
+		return (head == null) ? null : head.getDelay(TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public int getExpiredCount() {
+		int expired = 0;
+		for (final E item : queue) {
+			if (item.getDelay(TimeUnit.NANOSECONDS) <= 0)
+				++expired;
+		}
+		return expired;
+	}
+
+	@Override
+	public HistogramSnapshot getLatenessNanos() {
+		return lateness.snapshot();
+	}
+}
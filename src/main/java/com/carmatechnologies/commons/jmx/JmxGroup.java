@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.IJmxDataStructure;
+import com.carmatechnologies.commons.jmx.mbeans.IJmxGroup;
+import com.carmatechnologies.commons.jmx.mbeans.IJmxMap;
+import com.carmatechnologies.commons.jmx.mbeans.IJmxSequence;
+
+/**
+ * Roll-up MBean shared by many decorated data structures, e.g. one map per tenant, which then do NOT register MBeans of their own. This saves one
+ * registration, {@link ObjectName} and MBean server entry per data structure, while still exposing the summed size, the largest members and
+ * per-member lookups by name.
+ */
+public class JmxGroup implements IJmxGroup {
+	private static final Comparator<Entry<String, Integer>> BY_SIZE = new Comparator<Entry<String, Integer>>() {
+		@Override
+		public int compare(final Entry<String, Integer> left, final Entry<String, Integer> right) {
+			return left.getValue().compareTo(right.getValue());
+		}
+	};
+
+	private final ConcurrentMap<String, IJmxDataStructure> members = new ConcurrentHashMap<String, IJmxDataStructure>();
+	private final ObjectName objectName;
+
+	public JmxGroup() throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		final Builder builder = new Builder(this);
+		this.objectName = new ObjectName(builder.objectName());
+		MBeans.register(builder);
+	}
+
+	public JmxGroup(final Builder builder) throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException,
+			MalformedObjectNameException {
+		checkNotNull(builder, "MBean builder must NOT be null.");
+		this.objectName = new ObjectName(builder.mbean(this).objectName());
+		MBeans.register(builder);
+	}
+
+	void join(final String name, final IJmxDataStructure member) {
+		checkNotNull(name, "Member name must NOT be null.");
+		checkArgument(members.putIfAbsent(name, member) == null, "Group '" + objectName + "' already has a member named '" + name + "'.");
+	}
+
+	/**
+	 * Removes the provided member from this group, e.g. once the corresponding data structure is no longer used.
+	 */
+	public boolean remove(final String name) {
+		return (name != null) && (members.remove(name) != null);
+	}
+
+	@Override
+	public ObjectName objectName() {
+		return objectName;
+	}
+
+	@Override
+	public int getSize() {
+		long size = 0;
+		for (final IJmxDataStructure member : members.values())
+			size += member.getSize();
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int getMemberCount() {
+		return members.size();
+	}
+
+	@Override
+	public Map<String, Integer> topMembers(final int limit) {
+		final TopN<Entry<String, Integer>> largest = new TopN<Entry<String, Integer>>(limit, BY_SIZE);
+		for (final Entry<String, IJmxDataStructure> member : members.entrySet())
+			largest.offer(new SimpleImmutableEntry<String, Integer>(member.getKey(), member.getValue().getSize()));
+
+		final Map<String, Integer> top = new LinkedHashMap<String, Integer>();
+		for (final Entry<String, Integer> member : largest.largestFirst())
+			top.put(member.getKey(), member.getValue());
+		return top;
+	}
+
+	@Override
+	public Integer memberSize(final String name) {
+		final IJmxDataStructure member = (name == null) ? null : members.get(name);
+		return (member == null) ? null : member.getSize();
+	}
+
+	@Override
+	public List<String> memberItems(final String name) {
+		final IJmxDataStructure member = (name == null) ? null : members.get(name);
+		if (member instanceof IJmxSequence)
+			return ((IJmxSequence) member).getItems();
+		if (member instanceof IJmxMap) {
+			final List<String> items = new ArrayList<String>();
+			for (final Entry<String, String> entry : ((IJmxMap) member).getItems().entrySet())
+				items.add(entry.getKey() + "=" + entry.getValue());
+			return items;
+		}
+		return null;
+	}
+}
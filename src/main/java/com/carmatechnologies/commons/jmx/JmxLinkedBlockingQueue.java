@@ -15,9 +15,9 @@
  ******************************************************************************/
 package com.carmatechnologies.commons.jmx;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -33,13 +33,16 @@ import javax.management.NotCompliantMBeanException;
 import javax.management.ObjectName;
 
 import com.carmatechnologies.commons.jmx.MBeans.Builder;
-import com.carmatechnologies.commons.jmx.mbeans.IJmxSequence;
+import com.carmatechnologies.commons.jmx.mbeans.HistogramSnapshot;
+import com.carmatechnologies.commons.jmx.mbeans.IJmxBlockingQueue;
 
-public class JmxLinkedBlockingQueue<E> extends LinkedBlockingQueue<E> implements Iterable<E>, Collection<E>, BlockingQueue<E>, Queue<E>, IJmxSequence {
+public class JmxLinkedBlockingQueue<E> extends LinkedBlockingQueue<E> implements Iterable<E>, Collection<E>, BlockingQueue<E>, Queue<E>, IJmxBlockingQueue {
 	private static final long serialVersionUID = 2961777229338139054L;
 
 	private final LinkedBlockingQueue<E> queue;
 	private final ObjectName objectName;
+	private final transient QueueStats stats = new QueueStats();
+	private transient volatile ItemRenderer renderer = ItemRenderer.DEFAULT;
 
 	public JmxLinkedBlockingQueue(final LinkedBlockingQueue<E> queue) throws InstanceAlreadyExistsException, MBeanRegistrationException,
 			NotCompliantMBeanException, MalformedObjectNameException {
@@ -59,6 +62,26 @@ public class JmxLinkedBlockingQueue<E> extends LinkedBlockingQueue<E> implements
 		MBeans.register(builder);
 	}
 
+	/**
+	 * Decorates the provided queue WITHOUT registering an MBean for it: the queue is instead exposed as the provided member of the provided group.
+	 */
+	public JmxLinkedBlockingQueue(final LinkedBlockingQueue<E> queue, final JmxGroup group, final String member) {
+		checkNotNull(queue, "Linked blocking queue must NOT be null in order to be JMX-decorated.");
+		checkNotNull(group, "JMX group must NOT be null.");
+		this.queue = queue;
+		this.objectName = group.objectName();
+		group.join(member, this);
+	}
+
+	/**
+	 * Sets the renderer used to expose this queue's items via JMX, instead of calling {@code toString()} on every item.
+	 */
+	public JmxLinkedBlockingQueue<E> renderer(final ItemRenderer renderer) {
+		checkNotNull(renderer, "Item renderer must NOT be null.");
+		this.renderer = renderer;
+		return this;
+	}
+
 	@Override
 	public E element() {
 		return queue.element();
@@ -71,42 +94,121 @@ public class JmxLinkedBlockingQueue<E> extends LinkedBlockingQueue<E> implements
 
 	@Override
 	public E poll() {
-		return queue.poll();
+		if (Instrumentation.isOff())
+			return queue.poll();
+
+		final long start = QueueStats.start();
+		final E item = queue.poll();
+		stats.recordRemove(item != null, start);
+		return item;
 	}
 
 	@Override
 	public E remove() {
-		return queue.remove();
+		if (Instrumentation.isOff())
+			return queue.remove();
+
+		final long start = QueueStats.start();
+		final E item = queue.remove();
+		stats.recordRemove(true, start);
+		return item;
 	}
 
 	@Override
 	public int drainTo(Collection<? super E> c) {
-		return queue.drainTo(c);
+		if (Instrumentation.isOff())
+			return queue.drainTo(c);
+
+		final int drained = queue.drainTo(c);
+		stats.recordRemovals(drained);
+		return drained;
 	}
 
 	@Override
 	public int drainTo(Collection<? super E> c, int maxElements) {
-		return queue.drainTo(c, maxElements);
+		if (Instrumentation.isOff())
+			return queue.drainTo(c, maxElements);
+
+		final int drained = queue.drainTo(c, maxElements);
+		stats.recordRemovals(drained);
+		return drained;
+	}
+
+	/**
+	 * Drains, into the provided collection, between {@code minElements} and {@code maxElements} elements, waiting up to the provided timeout for
+	 * at least {@code minElements} to be available, like Guava's {@code Queues.drain}. Elements already available are transferred in bulk, i.e.
+	 * taking the queue's lock once, rather than once per element.
+	 * 
+	 * @return the number of drained elements, possibly less than {@code minElements} if the timeout elapsed.
+	 */
+	public int drain(final Collection<? super E> c, final int minElements, final int maxElements, final long timeout, final TimeUnit unit)
+			throws InterruptedException {
+		checkNotNull(c, "Collection to drain to must NOT be null.");
+		checkArgument(c != this && c != queue, "Queue must NOT be drained to itself.");
+		checkArgument(0 <= minElements && minElements <= maxElements, "Invalid batch size, expected: 0 <= minElements <= maxElements, but got: "
+				+ minElements + " and " + maxElements);
+		checkNotNull(unit, "Time unit must NOT be null.");
+
+		final long start = System.nanoTime();
+		final long deadline = start + unit.toNanos(timeout);
+		int drained = queue.drainTo(c, maxElements);
+		while (drained < minElements) {
+			final E e = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			if (e == null)
+				break;
+			c.add(e);
+			++drained;
+			drained += queue.drainTo(c, maxElements - drained);
+		}
+
+		if (!Instrumentation.isOff())
+			stats.recordDrain(drained, start);
+		return drained;
 	}
 
 	@Override
 	public boolean offer(E e) {
-		return queue.offer(e);
+		if (Instrumentation.isOff())
+			return queue.offer(e);
+
+		final long start = QueueStats.start();
+		final boolean inserted = queue.offer(e);
+		stats.recordInsert(inserted, start);
+		return inserted;
 	}
 
 	@Override
 	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
-		return queue.offer(e, timeout, unit);
+		if (Instrumentation.isOff())
+			return queue.offer(e, timeout, unit);
+
+		final long start = QueueStats.start();
+		final boolean inserted = queue.offer(e, timeout, unit);
+		stats.recordInsert(inserted, start);
+		return inserted;
 	}
 
 	@Override
 	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
-		return queue.poll(timeout, unit);
+		if (Instrumentation.isOff())
+			return queue.poll(timeout, unit);
+
+		final long start = QueueStats.start();
+		final E item = queue.poll(timeout, unit);
+		stats.recordRemove(item != null, start);
+		return item;
 	}
 
 	@Override
 	public void put(E e) throws InterruptedException {
+		if (Instrumentation.isOff()) {
+			queue.put(e);
+			return;
+		}
+
+		final long start = QueueStats.start();
 		queue.put(e);
+		stats.recordInsert(true, start);
 	}
 
 	@Override
@@ -116,17 +218,43 @@ public class JmxLinkedBlockingQueue<E> extends LinkedBlockingQueue<E> implements
 
 	@Override
 	public E take() throws InterruptedException {
-		return queue.take();
+		if (Instrumentation.isOff())
+			return queue.take();
+
+		final long start = QueueStats.start();
+		final E item = queue.take();
+		stats.recordRemove(true, start);
+		return item;
 	}
 
 	@Override
 	public boolean add(E e) {
-		return queue.add(e);
+		if (Instrumentation.isOff())
+			return queue.add(e);
+
+		final long start = QueueStats.start();
+		try {
+			queue.add(e);
+		} catch (IllegalStateException full) {
+			stats.recordInsert(false, start);
+			throw full;
+		}
+		stats.recordInsert(true, start);
+		return true;
 	}
 
 	@Override
 	public boolean addAll(Collection<? extends E> c) {
-		return queue.addAll(c);
+		if (Instrumentation.isOff())
+			return queue.addAll(c);
+
+		checkArgument(c != this && c != queue, "Queue must NOT be added to itself.");
+		boolean modified = false;
+		for (final E e : c) {
+			if (add(e))
+				modified = true;
+		}
+		return modified;
 	}
 
 	@Override
@@ -194,12 +322,48 @@ public class JmxLinkedBlockingQueue<E> extends LinkedBlockingQueue<E> implements
 		return queue.size();
 	}
 
+	@Override
+	public long getInsertCount() {
+		return stats.insertions();
+	}
+
+	@Override
+	public long getRejectCount() {
+		return stats.rejections();
+	}
+
+	@Override
+	public long getRemoveCount() {
+		return stats.removals();
+	}
+
+	@Override
+	public HistogramSnapshot getInsertLatencyNanos() {
+		return stats.insertLatency().snapshot();
+	}
+
+	@Override
+	public HistogramSnapshot getRemoveLatencyNanos() {
+		return stats.removeLatency().snapshot();
+	}
+
+	@Override
+	public long getDrainCount() {
+		return stats.drains();
+	}
+
+	@Override
+	public HistogramSnapshot getDrainBatchSize() {
+		return stats.drainBatchSize().snapshot();
+	}
+
+	@Override
+	public HistogramSnapshot getDrainWaitNanos() {
+		return stats.drainWait().snapshot();
+	}
+
 	@Override
 	public List<String> getItems() {
-		final List<String> items = new ArrayList<String>();
-		for (final E item : queue) {
-			items.add(item.toString());
-		}
-		return items;
+		return renderer.renderItems(queue, queue.size());
 	}
 }
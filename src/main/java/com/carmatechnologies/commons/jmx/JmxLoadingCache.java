@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import java.util.concurrent.ExecutionException;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * JMX decorator for Guava {@link LoadingCache}s, see {@link JmxCache}.
+ */
+public class JmxLoadingCache<K, V> extends JmxCache<K, V> implements LoadingCache<K, V> {
+	private final LoadingCache<K, V> cache;
+
+	public JmxLoadingCache(final LoadingCache<K, V> cache, final KeyParser<K> keyParser) throws InstanceAlreadyExistsException,
+			MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		super(cache, keyParser);
+		this.cache = cache;
+	}
+
+	public JmxLoadingCache(final LoadingCache<K, V> cache, final KeyParser<K> keyParser, final Builder builder)
+			throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		super(cache, keyParser, builder);
+		this.cache = cache;
+	}
+
+	@Override
+	public JmxLoadingCache<K, V> renderer(final ItemRenderer renderer) {
+		super.renderer(renderer);
+		return this;
+	}
+
+	@Override
+	public V get(final K key) throws ExecutionException {
+		return cache.get(key);
+	}
+
+	@Override
+	public V getUnchecked(final K key) {
+		return cache.getUnchecked(key);
+	}
+
+	@Override
+	public ImmutableMap<K, V> getAll(final Iterable<? extends K> keys) throws ExecutionException {
+		return cache.getAll(keys);
+	}
+
+	@Override
+	@Deprecated
+	public V apply(final K key) {
+		return cache.apply(key);
+	}
+
+	@Override
+	public void refresh(final K key) {
+		cache.refresh(key);
+	}
+}
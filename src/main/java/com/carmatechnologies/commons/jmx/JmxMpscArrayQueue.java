@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+
+/**
+ * Bounded, lock-free, array-based queue for many producer threads and a single consumer thread, exposed via JMX. Producers claim slots by
+ * compare-and-swapping the producer index, then publish their element with an ordered store.
+ */
+public class JmxMpscArrayQueue<E> extends AbstractJmxArrayQueue<E> {
+	/**
+	 * @param capacity rounded up to the next power of two.
+	 */
+	public JmxMpscArrayQueue(final int capacity) throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException,
+			MalformedObjectNameException {
+		this(capacity, WaitStrategy.PARKING, new Builder());
+	}
+
+	public JmxMpscArrayQueue(final int capacity, final Builder builder) throws InstanceAlreadyExistsException, MBeanRegistrationException,
+			NotCompliantMBeanException, MalformedObjectNameException {
+		this(capacity, WaitStrategy.PARKING, builder);
+	}
+
+	public JmxMpscArrayQueue(final int capacity, final WaitStrategy waitStrategy, final Builder builder) throws InstanceAlreadyExistsException,
+			MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		super(capacity, waitStrategy, builder);
+	}
+
+	@Override
+	public boolean offer(final E e) {
+		checkNotNull(e, "Element must NOT be null.");
+		long index;
+		do {
+			index = producerIndex;
+			if (index - consumerIndex >= getCapacity())
+				return false;
+		} while (!PRODUCER_INDEX.compareAndSet(this, index, index + 1));
+		buffer.lazySet(offsetOf(index), e);
+		return true;
+	}
+}
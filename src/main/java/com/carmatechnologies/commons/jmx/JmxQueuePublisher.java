@@ -0,0 +1,387 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.IJmxQueuePublisher;
+import com.carmatechnologies.commons.jmx.mbeans.SubscriberStats;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Publishes the elements of a {@link JmxLinkedBlockingQueue} to subscribers, following the Reactive Streams contract: each element is delivered
+ * to a single subscriber, and only as requested by subscribers. A single thread per publisher waits for demand, acquires up to a batch of the
+ * next subscriber's (round-robin) outstanding demand, drains at most that many elements from the queue, and signals them to this subscriber, so
+ * that no thread polls the queue per subscriber, and no element is drained without a subscriber to receive it.
+ * <p>
+ * {@link Subscriber} and {@link Subscription} mirror {@code java.util.concurrent.Flow}'s interfaces, which are NOT available on Java 7: bridging
+ * them to {@code Flow} or to {@code org.reactivestreams} only takes a one-line adapter each.
+ */
+public class JmxQueuePublisher<E> implements IJmxQueuePublisher, Closeable {
+	public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+	private static final long IDLE_WAIT_MILLIS = 100;
+	private static final Logger LOGGER = LoggerFactory.getLogger(JmxQueuePublisher.class);
+
+	public interface Subscriber<T> {
+		void onSubscribe(Subscription subscription);
+
+		void onNext(T item);
+
+		void onError(Throwable throwable);
+
+		void onComplete();
+	}
+
+	public interface Subscription {
+		void request(long n);
+
+		void cancel();
+	}
+
+	private final JmxLinkedBlockingQueue<E> queue;
+	private final int maxBatchSize;
+	private final ObjectName objectName;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition demandAvailable = lock.newCondition();
+	private final List<QueueSubscription> subscriptions = new ArrayList<QueueSubscription>();
+	private final AtomicLong ids = new AtomicLong();
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true)
+			.setNameFormat("commons-jmx-publisher-%d").build());
+	private volatile boolean closed = false;
+	private volatile Thread drainer;
+	private int next = 0;
+
+	public JmxQueuePublisher(final JmxLinkedBlockingQueue<E> queue) throws InstanceAlreadyExistsException, MBeanRegistrationException,
+			NotCompliantMBeanException, MalformedObjectNameException {
+		this(queue, DEFAULT_MAX_BATCH_SIZE, new Builder());
+	}
+
+	public JmxQueuePublisher(final JmxLinkedBlockingQueue<E> queue, final int maxBatchSize, final Builder builder)
+			throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		checkNotNull(queue, "Published queue must NOT be null.");
+		checkArgument(maxBatchSize > 0, "Maximum batch size must be strictly positive, but was: " + maxBatchSize);
+		checkNotNull(builder, "MBean builder must NOT be null.");
+		this.queue = queue;
+		this.maxBatchSize = maxBatchSize;
+		this.objectName = new ObjectName(builder.mbean(this).objectName());
+		MBeans.register(builder);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				drainLoop();
+			}
+		});
+	}
+
+	/**
+	 * Subscribes the provided subscriber, which first receives its subscription via {@link Subscriber#onSubscribe(Subscription)}, and then
+	 * elements, once requested. If this publisher is closed, the subscriber is completed immediately.
+	 */
+	public void subscribe(final Subscriber<? super E> subscriber) {
+		checkNotNull(subscriber, "Subscriber must NOT be null.");
+		final QueueSubscription subscription = new QueueSubscription(ids.incrementAndGet(), subscriber);
+		subscriber.onSubscribe(subscription);
+		lock.lock();
+		try {
+			if (!closed) {
+				subscriptions.add(subscription);
+				return;
+			}
+		} finally {
+			lock.unlock();
+		}
+		subscriber.onComplete();
+	}
+
+	private void drainLoop() {
+		drainer = Thread.currentThread();
+		final List<E> batch = new ArrayList<E>(maxBatchSize);
+		try {
+			QueueSubscription subscription;
+			while ((subscription = awaitDemand()) != null) {
+				if (batch.isEmpty()) {
+					final int acquired = subscription.tryAcquire(maxBatchSize);
+					if (acquired > 0) {
+						queue.drain(batch, 1, acquired, IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+						subscription.release(acquired - batch.size());
+						deliver(subscription, batch);
+					}
+				} else {
+					// Elements left by a subscriber which cancelled, or failed, mid-batch go to the next subscriber(s) first, in order.
+					deliverUpToDemand(subscription, batch);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (!batch.isEmpty())
+				LOGGER.error("Dropped " + batch.size() + " element(s) drained from " + queue.objectName()
+						+ " for a subscriber which cancelled before receiving them, as no other subscriber requested them before closing: " + batch);
+			completeAll();
+		}
+	}
+
+	/**
+	 * @return the next subscriber with outstanding demand, after waiting for one if necessary, or {@code null} once closed.
+	 */
+	private QueueSubscription awaitDemand() throws InterruptedException {
+		while (!closed) {
+			final List<QueueSubscription> failed = new ArrayList<QueueSubscription>();
+			lock.lock();
+			try {
+				for (final Iterator<QueueSubscription> i = subscriptions.iterator(); i.hasNext();) {
+					final QueueSubscription subscription = i.next();
+					if (subscription.cancelled) {
+						i.remove();
+						if (subscription.failure != null)
+							failed.add(subscription);
+					}
+				}
+				final int size = subscriptions.size();
+				for (int i = 0; i < size && failed.isEmpty(); ++i) {
+					final QueueSubscription subscription = subscriptions.get((next + i) % size);
+					if (subscription.outstanding.get() > 0) {
+						next = (next + i + 1) % size;
+						return subscription;
+					}
+				}
+				if (failed.isEmpty())
+					demandAvailable.await(IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			} finally {
+				lock.unlock();
+			}
+			for (final QueueSubscription subscription : failed)
+				subscription.subscriber.onError(subscription.failure);
+		}
+		return null;
+	}
+
+	/**
+	 * Signals the provided batch, drained for the provided subscriber's already acquired demand, unless it cancels meanwhile.
+	 */
+	private void deliver(final QueueSubscription subscription, final List<E> batch) {
+		int delivered = 0;
+		while (delivered < batch.size() && !subscription.cancelled)
+			onNext(subscription, batch.get(delivered++));
+		batch.subList(0, delivered).clear();
+	}
+
+	private void deliverUpToDemand(final QueueSubscription subscription, final List<E> batch) {
+		int delivered = 0;
+		while (delivered < batch.size() && subscription.tryAcquire(1) > 0)
+			onNext(subscription, batch.get(delivered++));
+		batch.subList(0, delivered).clear();
+	}
+
+	private void onNext(final QueueSubscription subscription, final E e) {
+		try {
+			subscription.subscriber.onNext(e);
+		} catch (RuntimeException ex) {
+			LOGGER.warn("Subscriber " + subscription.subscriber + " failed to handle " + e + ", and has therefore been cancelled.", ex);
+			subscription.cancel();
+		}
+		subscription.delivered.incrementAndGet();
+	}
+
+	private void completeAll() {
+		final List<QueueSubscription> completed;
+		lock.lock();
+		try {
+			closed = true;
+			completed = new ArrayList<QueueSubscription>(subscriptions);
+			subscriptions.clear();
+		} finally {
+			lock.unlock();
+		}
+		for (final QueueSubscription subscription : completed) {
+			if (!subscription.cancelled)
+				subscription.subscriber.onComplete();
+		}
+	}
+
+	/**
+	 * Stops publishing: the batch being delivered, if any, is delivered in full, all subscribers are completed, and elements NOT drained yet are
+	 * left in the queue. Waits for the publishing thread to stop, unless called by a subscriber from this thread.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		lock.lock();
+		try {
+			demandAvailable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		executor.shutdown();
+		if (Thread.currentThread() != drainer) {
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		MBeans.unregister(objectName);
+	}
+
+	public ObjectName objectName() {
+		return objectName;
+	}
+
+	@Override
+	public ObjectName getQueue() {
+		return queue.objectName();
+	}
+
+	@Override
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	@Override
+	public int getBacklog() {
+		return queue.size();
+	}
+
+	@Override
+	public int getSubscriberCount() {
+		lock.lock();
+		try {
+			return subscriptions.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public List<SubscriberStats> getSubscribers() {
+		final List<QueueSubscription> snapshot;
+		lock.lock();
+		try {
+			snapshot = new ArrayList<QueueSubscription>(subscriptions);
+		} finally {
+			lock.unlock();
+		}
+		final List<SubscriberStats> stats = new ArrayList<SubscriberStats>(snapshot.size());
+		for (final QueueSubscription subscription : snapshot)
+			stats.add(new SubscriberStats(subscription.id, String.valueOf(subscription.subscriber), subscription.requested.get(),
+					subscription.delivered.get(), subscription.outstanding.get()));
+		return stats;
+	}
+
+	private final class QueueSubscription implements Subscription {
+		private final long id;
+		private final Subscriber<? super E> subscriber;
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicLong delivered = new AtomicLong();
+		private final AtomicLong outstanding = new AtomicLong();
+		private volatile boolean cancelled = false;
+		private volatile Throwable failure;
+
+		QueueSubscription(final long id, final Subscriber<? super E> subscriber) {
+			this.id = id;
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(final long n) {
+			if (n <= 0) {
+				// As per the Reactive Streams specification (rule 3.9), signalled via onError rather than thrown.
+				failure = new IllegalArgumentException("Requested demand must be strictly positive, but was: " + n);
+				cancel();
+			} else {
+				add(requested, n);
+				add(outstanding, n);
+			}
+			lock.lock();
+			try {
+				demandAvailable.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Adds to the provided counter, saturating at {@link Long#MAX_VALUE}, which stands for an unbounded demand.
+		 */
+		private void add(final AtomicLong counter, final long n) {
+			long current;
+			do {
+				current = counter.get();
+				if (current == Long.MAX_VALUE)
+					return;
+			} while (!counter.compareAndSet(current, (current + n < 0) ? Long.MAX_VALUE : current + n));
+		}
+
+		/**
+		 * Consumes up to the provided units of demand, none if cancelled.
+		 * 
+		 * @return the units of demand consumed.
+		 */
+		int tryAcquire(final int max) {
+			long current;
+			int acquired;
+			do {
+				current = outstanding.get();
+				if (cancelled || current <= 0)
+					return 0;
+				if (current == Long.MAX_VALUE)
+					return max;
+				acquired = (int) Math.min(current, max);
+			} while (!outstanding.compareAndSet(current, current - acquired));
+			return acquired;
+		}
+
+		/**
+		 * Gives back demand acquired but NOT used, e.g. as fewer elements than requested were available.
+		 */
+		void release(final int n) {
+			if (n > 0)
+				add(outstanding, n);
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		@Override
+		public String toString() {
+			return "Subscription #" + id + " of " + subscriber;
+		}
+	}
+}
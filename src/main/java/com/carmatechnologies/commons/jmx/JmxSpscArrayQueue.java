@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+
+/**
+ * Bounded, lock-free, array-based queue for a single producer thread and a single consumer thread, exposed via JMX. Neither producer nor consumer
+ * use any compare-and-swap: both only publish their progress with ordered stores.
+ */
+public class JmxSpscArrayQueue<E> extends AbstractJmxArrayQueue<E> {
+	/**
+	 * @param capacity rounded up to the next power of two.
+	 */
+	public JmxSpscArrayQueue(final int capacity) throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException,
+			MalformedObjectNameException {
+		this(capacity, WaitStrategy.PARKING, new Builder());
+	}
+
+	public JmxSpscArrayQueue(final int capacity, final Builder builder) throws InstanceAlreadyExistsException, MBeanRegistrationException,
+			NotCompliantMBeanException, MalformedObjectNameException {
+		this(capacity, WaitStrategy.PARKING, builder);
+	}
+
+	public JmxSpscArrayQueue(final int capacity, final WaitStrategy waitStrategy, final Builder builder) throws InstanceAlreadyExistsException,
+			MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		super(capacity, waitStrategy, builder);
+	}
+
+	/**
+	 * Single-producer offer: only ever called by the producer thread.
+	 */
+	@Override
+	public boolean offer(final E e) {
+		checkNotNull(e, "Element must NOT be null.");
+		final long index = producerIndex;
+		final int offset = offsetOf(index);
+		if (buffer.get(offset) != null)
+			return false;
+		buffer.lazySet(offset, e);
+		PRODUCER_INDEX.lazySet(this, index + 1);
+		return true;
+	}
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+public final class KeyParsers {
+	private static final KeyParser<String> STRINGS = new KeyParser<String>() {
+		@Override
+		public String parse(final String key) {
+			return key;
+		}
+	};
+
+	private static final KeyParser<Integer> INTEGERS = new KeyParser<Integer>() {
+		@Override
+		public Integer parse(final String key) {
+			return Integer.valueOf(key.trim());
+		}
+	};
+
+	private static final KeyParser<Long> LONGS = new KeyParser<Long>() {
+		@Override
+		public Long parse(final String key) {
+			return Long.valueOf(key.trim());
+		}
+	};
+
+	private KeyParsers() {
+		// Pure utility class, do NOT instantiate.
+	}
+
+	public static KeyParser<String> strings() {
+		return STRINGS;
+	}
+
+	public static KeyParser<Integer> integers() {
+		return INTEGERS;
+	}
+
+	public static KeyParser<Long> longs() {
+		return LONGS;
+	}
+}
@@ -0,0 +1,470 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import javax.management.remote.MBeanServerForwarder;
+import javax.security.auth.Subject;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.AccessStats;
+import com.carmatechnologies.commons.jmx.mbeans.IMBeanServerProfiler;
+
+/**
+ * Profiles accesses to MBeans, e.g. monitoring agents polling {@code Items} on large maps far too often: for each MBean and attribute or operation,
+ * it records the number of calls, their latency, and the estimated size of their responses, as well as which callers made them.
+ * <p>
+ * Only accesses made through this profiler's forwarders are recorded: install {@link #forwarder()} on a
+ * {@link javax.management.remote.JMXConnectorServer} to profile remote clients, or use {@link #wrap(MBeanServer)}, e.g. on
+ * {@link MBeans#platformServer()}, to profile in-process ones. Accesses to the profiler itself are NOT recorded.
+ */
+public class MBeanServerProfiler implements IMBeanServerProfiler, Closeable {
+	public static final int DEFAULT_MAX_PROFILED = 10000;
+	public static final int MAX_CALLERS = 1000;
+	static final String LOCAL_CALLER = "local";
+	static final String OTHER_CALLERS = "other";
+	private static final int MAX_DEPTH = 8;
+
+	private static final Comparator<Access> BY_COUNT = new Comparator<Access>() {
+		@Override
+		public int compare(final Access left, final Access right) {
+			return Long.compare(left.count.get(), right.count.get());
+		}
+	};
+
+	private static final Comparator<Access> BY_TOTAL_TIME = new Comparator<Access>() {
+		@Override
+		public int compare(final Access left, final Access right) {
+			return Long.compare(left.totalNanos.get(), right.totalNanos.get());
+		}
+	};
+
+	private static final Comparator<Access> BY_RESPONSE_BYTES = new Comparator<Access>() {
+		@Override
+		public int compare(final Access left, final Access right) {
+			return Long.compare(left.totalResponseBytes.get(), right.totalResponseBytes.get());
+		}
+	};
+
+	private final ConcurrentMap<ObjectName, ConcurrentMap<String, Access>> accesses = new ConcurrentHashMap<ObjectName, ConcurrentMap<String, Access>>();
+	private final ConcurrentMap<String, AtomicLong> callers = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicInteger profiledCount = new AtomicInteger();
+	private final AtomicLong callCount = new AtomicLong();
+	private final ObjectName objectName;
+	private volatile int maxProfiled = DEFAULT_MAX_PROFILED;
+
+	public MBeanServerProfiler() throws InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException,
+			MalformedObjectNameException {
+		this(new Builder());
+	}
+
+	public MBeanServerProfiler(final Builder builder) throws InstanceAlreadyExistsException, MBeanRegistrationException,
+			NotCompliantMBeanException, MalformedObjectNameException {
+		checkNotNull(builder, "MBean builder must NOT be null.");
+		this.objectName = new ObjectName(builder.mbean(this).objectName());
+		MBeans.register(builder);
+	}
+
+	/**
+	 * Sets the maximum number of profiled (MBean, member, access) triples, accesses beyond this limit only being counted per caller.
+	 */
+	public MBeanServerProfiler maxProfiled(final int maxProfiled) {
+		checkArgument(maxProfiled > 0, "Maximum number of profiled accesses must be strictly positive, but was: " + maxProfiled);
+		this.maxProfiled = maxProfiled;
+		return this;
+	}
+
+	/**
+	 * Creates a forwarder recording all accesses to MBeans before passing them on to the server set via
+	 * {@link MBeanServerForwarder#setMBeanServer(MBeanServer)}, e.g. by {@link javax.management.remote.JMXConnectorServer#setMBeanServerForwarder}.
+	 */
+	public MBeanServerForwarder forwarder() {
+		return (MBeanServerForwarder) Proxy.newProxyInstance(MBeanServerForwarder.class.getClassLoader(),
+				new Class<?>[] { MBeanServerForwarder.class }, new ProfilingHandler(this));
+	}
+
+	/**
+	 * @return a view of the provided server recording all accesses to its MBeans.
+	 */
+	public MBeanServer wrap(final MBeanServer server) {
+		checkNotNull(server, "MBean server must NOT be null.");
+		final MBeanServerForwarder forwarder = forwarder();
+		forwarder.setMBeanServer(server);
+		return forwarder;
+	}
+
+	/**
+	 * Counts a call, made by the current caller, which is returned.
+	 */
+	String called() {
+		final String caller = caller();
+		countCaller(caller);
+		callCount.incrementAndGet();
+		return caller;
+	}
+
+	void record(final ObjectName name, final String member, final String access, final long nanos, final Object response, final boolean failed,
+			final String caller) {
+		if (name == null || member == null || name.equals(objectName))
+			return;
+
+		final Access stats = accessFor(name, member, access);
+		if (stats != null)
+			stats.record(nanos, failed ? 0 : estimateBytes(response, 0), failed, caller);
+	}
+
+	private Access accessFor(final ObjectName name, final String member, final String access) {
+		ConcurrentMap<String, Access> members = accesses.get(name);
+		if (members == null) {
+			members = new ConcurrentHashMap<String, Access>();
+			final ConcurrentMap<String, Access> existing = accesses.putIfAbsent(name, members);
+			if (existing != null)
+				members = existing;
+		}
+
+		final String key = access + ' ' + member;
+		Access stats = members.get(key);
+		if (stats == null) {
+			if (profiledCount.get() >= maxProfiled)
+				return null;
+			stats = new Access(name, member, access);
+			final Access existing = members.putIfAbsent(key, stats);
+			if (existing != null)
+				return existing;
+			profiledCount.incrementAndGet();
+		}
+		return stats;
+	}
+
+	private void countCaller(final String caller) {
+		AtomicLong count = callers.get(caller);
+		if (count == null) {
+			final String key = (callers.size() < MAX_CALLERS) ? caller : OTHER_CALLERS;
+			count = callers.get(key);
+			if (count == null) {
+				final AtomicLong created = new AtomicLong();
+				count = callers.putIfAbsent(key, created);
+				if (count == null)
+					count = created;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	private static String caller() {
+		try {
+			final Subject subject = currentSubject();
+			if (subject != null) {
+				for (final Principal principal : subject.getPrincipals())
+					return principal.getName();
+			}
+		} catch (UnsupportedOperationException | SecurityException e) {
+			// Subjects are not available on this runtime, fall back on the client host.
+		}
+		try {
+			return RemoteServer.getClientHost();
+		} catch (ServerNotActiveException e) {
+			return LOCAL_CALLER;
+		}
+	}
+
+	/**
+	 * The only way to get the authenticated JMX subject on Java 7, although deprecated for removal since Java 17, its replacement
+	 * {@code Subject.current()} only being available since Java 18. {@code AccessController} is NOT imported, as importing it warns too.
+	 */
+	@SuppressWarnings("removal")
+	private static Subject currentSubject() {
+		return Subject.getSubject(java.security.AccessController.getContext());
+	}
+
+	/**
+	 * Estimates the size of the provided response, counting two bytes per character and eight per primitive value, and walking through arrays,
+	 * collections, maps and open data. This is far cheaper than serialising it, while good enough to spot expensive attributes.
+	 */
+	static long estimateBytes(final Object value, final int depth) {
+		if (value == null)
+			return 0;
+		if (value instanceof CharSequence)
+			return 2L * ((CharSequence) value).length();
+		if (value instanceof Number || value instanceof Boolean || value instanceof Character)
+			return 8;
+		if (depth >= MAX_DEPTH)
+			return 8;
+		if (value instanceof Attribute)
+			return estimateBytes(((Attribute) value).getValue(), depth + 1);
+		if (value instanceof ObjectName)
+			return 2L * ((ObjectName) value).getCanonicalName().length();
+		if (value instanceof CompositeData)
+			return estimateBytes(((CompositeData) value).values(), depth + 1);
+		if (value instanceof TabularData)
+			return estimateBytes(((TabularData) value).values(), depth + 1);
+		if (value instanceof Collection) {
+			long bytes = 0;
+			for (final Object element : (Collection<?>) value)
+				bytes += estimateBytes(element, depth + 1);
+			return bytes;
+		}
+		if (value instanceof Map) {
+			long bytes = 0;
+			for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+				bytes += estimateBytes(entry.getKey(), depth + 1) + estimateBytes(entry.getValue(), depth + 1);
+			return bytes;
+		}
+		if (value.getClass().isArray()) {
+			final int length = Array.getLength(value);
+			if (value.getClass().getComponentType().isPrimitive())
+				return 8L * length;
+			long bytes = 0;
+			for (int i = 0; i < length; ++i)
+				bytes += estimateBytes(Array.get(value, i), depth + 1);
+			return bytes;
+		}
+		return 8;
+	}
+
+	@Override
+	public void close() {
+		MBeans.unregister(objectName);
+	}
+
+	public ObjectName objectName() {
+		return objectName;
+	}
+
+	@Override
+	public int getProfiledCount() {
+		return profiledCount.get();
+	}
+
+	@Override
+	public long getCallCount() {
+		return callCount.get();
+	}
+
+	@Override
+	public Map<String, Long> getCallers() {
+		final Map<String, Long> snapshot = new TreeMap<String, Long>();
+		for (final Map.Entry<String, AtomicLong> caller : callers.entrySet())
+			snapshot.put(caller.getKey(), caller.getValue().get());
+		return snapshot;
+	}
+
+	@Override
+	public List<AccessStats> accessStats(final String objectName) {
+		final Map<String, Access> members = accesses.get(parse(objectName));
+		final List<AccessStats> stats = new ArrayList<AccessStats>();
+		if (members != null) {
+			for (final Access access : new TreeMap<String, Access>(members).values())
+				stats.add(access.snapshot());
+		}
+		return stats;
+	}
+
+	@Override
+	public List<AccessStats> topByCount(final int limit) {
+		return top(limit, BY_COUNT);
+	}
+
+	@Override
+	public List<AccessStats> topByTotalTime(final int limit) {
+		return top(limit, BY_TOTAL_TIME);
+	}
+
+	@Override
+	public List<AccessStats> topByResponseBytes(final int limit) {
+		return top(limit, BY_RESPONSE_BYTES);
+	}
+
+	private List<AccessStats> top(final int limit, final Comparator<Access> order) {
+		final TopN<Access> top = new TopN<Access>(limit, order);
+		for (final Map<String, Access> members : accesses.values()) {
+			for (final Access access : members.values())
+				top.offer(access);
+		}
+		final List<AccessStats> stats = new ArrayList<AccessStats>();
+		for (final Access access : top.largestFirst())
+			stats.add(access.snapshot());
+		return stats;
+	}
+
+	@Override
+	public void reset() {
+		accesses.clear();
+		callers.clear();
+		profiledCount.set(0);
+		callCount.set(0);
+	}
+
+	private static ObjectName parse(final String objectName) {
+		checkNotNull(objectName, "Object name must NOT be null.");
+		try {
+			return new ObjectName(objectName);
+		} catch (MalformedObjectNameException e) {
+			throw new IllegalArgumentException("Invalid object name: " + objectName, e);
+		}
+	}
+
+	private static final class Access {
+		private final ObjectName objectName;
+		private final String member;
+		private final String access;
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong errorCount = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong totalResponseBytes = new AtomicLong();
+		private final Histogram latencyNanos = new Histogram();
+		private final Histogram responseBytes = new Histogram();
+		private volatile String lastCaller;
+
+		Access(final ObjectName objectName, final String member, final String access) {
+			this.objectName = objectName;
+			this.member = member;
+			this.access = access;
+		}
+
+		void record(final long nanos, final long bytes, final boolean failed, final String caller) {
+			count.incrementAndGet();
+			if (failed)
+				errorCount.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			totalResponseBytes.addAndGet(bytes);
+			latencyNanos.record(nanos);
+			responseBytes.record(bytes);
+			lastCaller = caller;
+		}
+
+		AccessStats snapshot() {
+			return new AccessStats(objectName.toString(), member, access, count.get(), errorCount.get(), totalNanos.get(), totalResponseBytes.get(),
+					latencyNanos.snapshot(), responseBytes.snapshot(), lastCaller);
+		}
+	}
+
+	private static final class ProfilingHandler implements InvocationHandler {
+		private final MBeanServerProfiler profiler;
+		private volatile MBeanServer server;
+
+		ProfilingHandler(final MBeanServerProfiler profiler) {
+			this.profiler = profiler;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final String name = method.getName();
+			if ("getMBeanServer".equals(name))
+				return server;
+			if ("setMBeanServer".equals(name)) {
+				checkArgument(server == null, "MBean server has already been set.");
+				server = checkNotNull((MBeanServer) args[0], "MBean server must NOT be null.");
+				return null;
+			}
+			if (method.getDeclaringClass() == Object.class)
+				return invokeOn(this, method, args);
+
+			final MBeanServer target = checkNotNull(server, "MBean server must be set before using the profiling forwarder.");
+			if ("getAttribute".equals(name))
+				return profile(target, method, args, (String) args[1], "read");
+			if ("setAttribute".equals(name))
+				return profile(target, method, args, ((Attribute) args[1]).getName(), "write");
+			if ("invoke".equals(name))
+				return profile(target, method, args, (String) args[1], "invoke");
+			if ("getAttributes".equals(name))
+				return profileAll(target, method, args, "read");
+			if ("setAttributes".equals(name))
+				return profileAll(target, method, args, "write");
+			return invokeOn(target, method, args);
+		}
+
+		private Object profile(final MBeanServer target, final Method method, final Object[] args, final String member, final String access)
+				throws Throwable {
+			final String caller = profiler.called();
+			final long start = System.nanoTime();
+			boolean failed = true;
+			Object result = null;
+			try {
+				result = invokeOn(target, method, args);
+				failed = false;
+				return result;
+			} finally {
+				profiler.record((ObjectName) args[0], member, access, System.nanoTime() - start, result, failed, caller);
+			}
+		}
+
+		/**
+		 * Bulk accesses are recorded per attribute returned, sharing the call's latency evenly, so that bulk and single reads of the same
+		 * attribute add up.
+		 */
+		private Object profileAll(final MBeanServer target, final Method method, final Object[] args, final String access) throws Throwable {
+			final String caller = profiler.called();
+			final long start = System.nanoTime();
+			final Object result;
+			try {
+				result = invokeOn(target, method, args);
+			} catch (Throwable e) {
+				profiler.record((ObjectName) args[0], "*", access, System.nanoTime() - start, null, true, caller);
+				throw e;
+			}
+			final long nanos = System.nanoTime() - start;
+			final List<Attribute> attributes = ((AttributeList) result).asList();
+			if (attributes.isEmpty()) {
+				profiler.record((ObjectName) args[0], "*", access, nanos, null, false, caller);
+			} else {
+				for (final Attribute attribute : attributes)
+					profiler.record((ObjectName) args[0], attribute.getName(), access, nanos / attributes.size(), attribute, false, caller);
+			}
+			return result;
+		}
+
+		private static Object invokeOn(final Object target, final Method method, final Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.remote.MBeanServerForwarder;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Set of isolated {@link MBeanServer}s, each with its own repository, to spread MBeans registered via {@link MBeans.Builder#shards(MBeanServerShards)}
+ * according to their object name. Registering, unregistering and querying MBeans in a shard therefore neither contends with, nor slows down, the
+ * platform MBean server.
+ * <p>
+ * Shards are not visible from the platform connector by default: install {@link #aggregatingView()} on a
+ * {@link javax.management.remote.JMXConnectorServer} to see all MBeans as if they were registered in a single server.
+ */
+public final class MBeanServerShards {
+	private final ImmutableList<MBeanServer> shards;
+
+	/**
+	 * Creates {@code count} new, unreferenced (i.e. not findable via {@link MBeanServerFactory#findMBeanServer(String)}), MBean servers.
+	 */
+	public MBeanServerShards(final int count) {
+		checkArgument(count > 0, "Number of MBean server shards must be strictly positive, but was: " + count);
+		final ImmutableList.Builder<MBeanServer> builder = ImmutableList.builder();
+		for (int i = 0; i < count; ++i)
+			builder.add(MBeanServerFactory.newMBeanServer());
+		this.shards = builder.build();
+	}
+
+	public MBeanServerShards(final List<MBeanServer> shards) {
+		checkNotNull(shards, "MBean server shards must NOT be null.");
+		checkArgument(!shards.isEmpty(), "MBean server shards must NOT be empty.");
+		this.shards = ImmutableList.copyOf(shards);
+	}
+
+	public List<MBeanServer> shards() {
+		return shards;
+	}
+
+	public MBeanServer shardFor(final ObjectName objectName) {
+		checkNotNull(objectName, "Object name must NOT be null.");
+		final int index = (objectName.hashCode() & Integer.MAX_VALUE) % shards.size();
+		return shards.get(index);
+	}
+
+	/**
+	 * Creates a view aggregating the forwarder's underlying server (e.g. the platform MBean server, once set via
+	 * {@link MBeanServerForwarder#setMBeanServer(MBeanServer)}) and all shards:
+	 * <ul>
+	 * <li>operations targeting an MBean are routed to the server it is registered in, checking the underlying server first,</li>
+	 * <li>queries, {@code getMBeanCount} and {@code getDomains} merge the results of all servers,</li>
+	 * <li>all other operations, e.g. remote MBean creation, go to the underlying server.</li>
+	 * </ul>
+	 */
+	public MBeanServerForwarder aggregatingView() {
+		return (MBeanServerForwarder) Proxy.newProxyInstance(MBeanServerForwarder.class.getClassLoader(),
+				new Class<?>[] { MBeanServerForwarder.class }, new AggregatingHandler(shards));
+	}
+
+	private static final class AggregatingHandler implements InvocationHandler {
+		private final List<MBeanServer> shards;
+		private volatile MBeanServer server;
+
+		AggregatingHandler(final List<MBeanServer> shards) {
+			this.shards = shards;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final String name = method.getName();
+			if ("getMBeanServer".equals(name))
+				return server;
+			if ("setMBeanServer".equals(name)) {
+				checkArgument(server == null, "MBean server has already been set.");
+				server = checkNotNull((MBeanServer) args[0], "MBean server must NOT be null.");
+				return null;
+			}
+			if (method.getDeclaringClass() == Object.class)
+				return invokeOn(this, method, args);
+
+			final MBeanServer primary = checkNotNull(server, "MBean server must be set before using the aggregating view.");
+			if ("queryNames".equals(name) || "queryMBeans".equals(name) || "getDomains".equals(name))
+				return merge(primary, method, args);
+			if ("getMBeanCount".equals(name))
+				return count(primary);
+			if ("isRegistered".equals(name))
+				return locate(primary, (ObjectName) args[0]) != null;
+			if (args != null && args.length > 0 && args[0] instanceof ObjectName && !"registerMBean".equals(name)) {
+				final MBeanServer target = locate(primary, (ObjectName) args[0]);
+				return invokeOn((target == null) ? primary : target, method, args);
+			}
+			return invokeOn(primary, method, args);
+		}
+
+		private MBeanServer locate(final MBeanServer primary, final ObjectName objectName) {
+			if (primary.isRegistered(objectName))
+				return primary;
+			for (final MBeanServer shard : shards) {
+				if (shard.isRegistered(objectName))
+					return shard;
+			}
+			return null;
+		}
+
+		private Object merge(final MBeanServer primary, final Method method, final Object[] args) throws Throwable {
+			final Set<Object> merged = new LinkedHashSet<Object>();
+			for (final MBeanServer target : servers(primary)) {
+				final Object result = invokeOn(target, method, args);
+				if (result instanceof Object[]) {
+					for (final Object element : (Object[]) result)
+						merged.add(element);
+				} else {
+					merged.addAll((Set<?>) result);
+				}
+			}
+			return method.getReturnType().isArray() ? merged.toArray(new String[merged.size()]) : merged;
+		}
+
+		/**
+		 * Counts the merged names, rather than summing counts, as every shard registers its own {@code MBeanServerDelegate} under the same name.
+		 */
+		private Integer count(final MBeanServer primary) {
+			final Set<ObjectName> names = new HashSet<ObjectName>();
+			for (final MBeanServer target : servers(primary))
+				names.addAll(target.queryNames(null, null));
+			return names.size();
+		}
+
+		private List<MBeanServer> servers(final MBeanServer primary) {
+			final List<MBeanServer> servers = new ArrayList<MBeanServer>(shards.size() + 1);
+			servers.add(primary);
+			servers.addAll(shards);
+			return servers;
+		}
+
+		private static Object invokeOn(final Object target, final Method method, final Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -21,12 +21,15 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
 
+import javax.management.DynamicMBean;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanRegistrationException;
@@ -39,6 +42,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.util.concurrent.Striped;
 
 public final class MBeans {
 	private static final String DEFAULT_TYPE = "Object";
@@ -50,7 +55,9 @@ public final class MBeans {
 	private static final String DEFAULT_PACKAGE = "default";
 	private static final Logger LOGGER = LoggerFactory.getLogger(MBeans.class);
 	private static final MBeanServer MBEAN_SERVER = ManagementFactory.getPlatformMBeanServer();
-	private static final Collection<ObjectName> OBJECT_NAMES = new ConcurrentLinkedQueue<ObjectName>();
+	private static final ConcurrentMap<ObjectName, Set<MBeanServer>> REGISTRATIONS = new ConcurrentHashMap<ObjectName, Set<MBeanServer>>();
+	/** Serialises (un)registrations per object name, rather than globally, so that a slow MBean server rarely blocks unrelated ones. */
+	private static final Striped<Lock> LOCKS = Striped.lazyWeakLock(1024);
 	private static final Joiner.MapJoiner JOINER = Joiner.on(",").withKeyValueSeparator("=");
 
 	public static String getJmxPort() {
@@ -70,22 +77,105 @@ public final class MBeans {
 		}
 	}
 
-	public static synchronized ObjectName register(final Object mbean) throws InstanceAlreadyExistsException, MBeanRegistrationException,
+	public static ObjectName register(final Object mbean) throws InstanceAlreadyExistsException, MBeanRegistrationException,
 			NotCompliantMBeanException, MalformedObjectNameException {
 		checkNotNull(mbean, "MBean must NOT be null.");
 		return register(new Builder(mbean));
 	}
 
-	public static synchronized ObjectName register(final Builder builder) throws InstanceAlreadyExistsException, MBeanRegistrationException,
+	/**
+	 * Registers the builder's MBean, which is either a standard MBean, an MXBean, a {@link javax.management.DynamicMBean}, or any object with
+	 * members annotated with {@link com.carmatechnologies.commons.jmx.annotations.JmxAttribute},
+	 * {@link com.carmatechnologies.commons.jmx.annotations.JmxMetric} or {@link com.carmatechnologies.commons.jmx.annotations.JmxOperation}.
+	 */
+	public static ObjectName register(final Builder builder) throws InstanceAlreadyExistsException, MBeanRegistrationException,
 			NotCompliantMBeanException, MalformedObjectNameException {
 		checkNotNull(builder, "MBean builder must NOT be null.");
 		final ObjectName objectName = new ObjectName(builder.objectName());
-		MBEAN_SERVER.registerMBean(builder.mbean(), objectName);
-		OBJECT_NAMES.add(objectName);
+		final MBeanServer server = builder.serverFor(objectName);
+		final Object weakMBean = builder.isWeak() ? WeakMBeans.weaken(builder.mbean(), objectName) : null;
+		Object mbean = builder.mbean();
+		if (weakMBean != null)
+			mbean = weakMBean;
+		else if (AnnotatedMBean.isAnnotated(mbean))
+			mbean = new AnnotatedMBean(mbean);
+		if (builder.throttle() != null)
+			mbean = ThrottledMBean.throttle(mbean, builder.throttle());
+
+		final Lock lock = lockOf(objectName);
+		lock.lock();
+		try {
+			server.registerMBean(mbean, objectName);
+			if (weakMBean != null)
+				WeakMBeans.track(weakMBean);
+			track(objectName, server);
+		} finally {
+			lock.unlock();
+		}
+		LOGGER.info("Registered MBean '" + objectName + "'");
+		return objectName;
+	}
+
+	/**
+	 * Registers the provided MBean under the name the builder derives from its own MBean, e.g. a generated adapter (see
+	 * {@link com.carmatechnologies.commons.jmx.annotations.JmxMBean}) under the name of the object it adapts.
+	 */
+	public static ObjectName register(final Builder builder, final DynamicMBean mbean) throws InstanceAlreadyExistsException,
+			MBeanRegistrationException, NotCompliantMBeanException, MalformedObjectNameException {
+		checkNotNull(builder, "MBean builder must NOT be null.");
+		checkNotNull(mbean, "MBean must NOT be null.");
+		checkArgument(!builder.isWeak(), "Adapted MBeans can NOT be registered weakly.");
+		final ObjectName objectName = new ObjectName(builder.objectName());
+		final MBeanServer server = builder.serverFor(objectName);
+		final Lock lock = lockOf(objectName);
+		lock.lock();
+		try {
+			server.registerMBean((builder.throttle() == null) ? mbean : ThrottledMBean.throttle(mbean, builder.throttle()), objectName);
+			track(objectName, server);
+		} finally {
+			lock.unlock();
+		}
 		LOGGER.info("Registered MBean '" + objectName + "'");
 		return objectName;
 	}
 
+	/**
+	 * @return the (reentrant) lock held while (un)registering MBeans under the provided object name.
+	 */
+	static Lock lockOf(final ObjectName objectName) {
+		return LOCKS.get(objectName);
+	}
+
+	/**
+	 * Must be called while holding the lock of the provided object name.
+	 */
+	private static void track(final ObjectName objectName, final MBeanServer server) {
+		Set<MBeanServer> servers = REGISTRATIONS.get(objectName);
+		if (servers == null) {
+			servers = Collections.newSetFromMap(new ConcurrentHashMap<MBeanServer, Boolean>());
+			REGISTRATIONS.put(objectName, servers);
+		}
+		servers.add(server);
+	}
+
+	/**
+	 * @return the platform MBean server, used unless another server is provided to {@link Builder#server(MBeanServer)} or
+	 *         {@link Builder#shards(MBeanServerShards)}.
+	 */
+	public static MBeanServer platformServer() {
+		return MBEAN_SERVER;
+	}
+
+	/**
+	 * @return a snapshot of all MBeans currently registered using this class, along with the server(s) they are registered in.
+	 */
+	static ImmutableSetMultimap<ObjectName, MBeanServer> registrations() {
+		final ImmutableSetMultimap.Builder<ObjectName, MBeanServer> registrations = ImmutableSetMultimap.builder();
+		for (final Map.Entry<ObjectName, Set<MBeanServer>> registration : REGISTRATIONS.entrySet())
+			registrations.putAll(registration.getKey(), registration.getValue());
+		return registrations.build();
+	}
+
 	private static String getType(final Object mbean) {
 		return (mbean == null) ? DEFAULT_TYPE : mbean.getClass().getSimpleName();
 	}
@@ -108,26 +198,36 @@ public final class MBeans {
 	/**
 	 * Unregisters all registered MBeans. WARNING: If not called, may cause troubles on re-deployment or when trying to re-register the same MBean.
 	 */
-	public static synchronized void unregisterAll() {
-		final Iterator<ObjectName> iterator = OBJECT_NAMES.iterator();
-		while (iterator.hasNext()) {
-			tryUnregisterMBean(iterator.next());
-		}
-
-		OBJECT_NAMES.clear();
+	public static void unregisterAll() {
+		for (final ObjectName objectName : REGISTRATIONS.keySet())
+			unregister(objectName);
 	}
 
 	/**
 	 * Unregisters the specified MBean. NOTE: Consider calling {@link #unregisterAll()} before terminating your application.
 	 */
-	public static synchronized void unregister(final ObjectName objectName) {
-		tryUnregisterMBean(objectName);
-		OBJECT_NAMES.remove(objectName);
+	public static void unregister(final ObjectName objectName) {
+		final Lock lock = lockOf(objectName);
+		lock.lock();
+		try {
+			WeakMBeans.forget(objectName);
+			final Set<MBeanServer> servers = REGISTRATIONS.remove(objectName);
+			if (servers == null) {
+				tryUnregisterMBean(MBEAN_SERVER, objectName);
+				return;
+			}
+
+			for (final MBeanServer server : servers) {
+				tryUnregisterMBean(server, objectName);
+			}
+		} finally {
+			lock.unlock();
+		}
 	}
 
-	private static void tryUnregisterMBean(final ObjectName objectName) {
+	private static void tryUnregisterMBean(final MBeanServer server, final ObjectName objectName) {
 		try {
-			MBEAN_SERVER.unregisterMBean(objectName);
+			server.unregisterMBean(objectName);
 			LOGGER.info("Unregistered MBean '" + objectName + "'");
 		} catch (InstanceNotFoundException e) {
 			LOGGER.info("MBean '" + objectName + "' doesn't exist or has been already unregistered.");
@@ -143,6 +243,10 @@ public final class MBeans {
 		private String mbeanType;
 		private String packageName;
 		private boolean disabledType = false;
+		private MBeanServer server;
+		private MBeanServerShards shards;
+		private boolean weak = false;
+		private ReadThrottle throttle;
 
 		public Builder() {
 			properties.put(TYPE, DEFAULT_TYPE);
@@ -197,6 +301,58 @@ public final class MBeans {
 			return this;
 		}
 
+		/**
+		 * Registers the MBean in the provided server rather than in the platform MBean server.
+		 */
+		public Builder server(final MBeanServer server) {
+			checkNotNull(server, "MBean server for '" + mbeanType + "' must NOT be null.");
+			this.server = server;
+			this.shards = null;
+			return this;
+		}
+
+		/**
+		 * Registers the MBean in one of the provided shards, picked based on its object name, rather than in the platform MBean server.
+		 */
+		public Builder shards(final MBeanServerShards shards) {
+			checkNotNull(shards, "MBean server shards for '" + mbeanType + "' must NOT be null.");
+			this.shards = shards;
+			this.server = null;
+			return this;
+		}
+
+		MBeanServer serverFor(final ObjectName objectName) {
+			if (shards != null)
+				return shards.shardFor(objectName);
+			return (server == null) ? MBEAN_SERVER : server;
+		}
+
+		/**
+		 * Only weakly references the MBean from the MBean server, and automatically unregisters it once garbage-collected, e.g. for short-lived
+		 * decorated data structures. The MBean must implement exactly one most specific MBean or MXBean interface.
+		 */
+		public Builder weak() {
+			this.weak = true;
+			return this;
+		}
+
+		boolean isWeak() {
+			return weak;
+		}
+
+		/**
+		 * Subjects expensive reads of the MBean, e.g. {@code Items}, to the provided throttle, which may be shared between MBeans.
+		 */
+		public Builder throttle(final ReadThrottle throttle) {
+			checkNotNull(throttle, "Read throttle for '" + mbeanType + "' must NOT be null.");
+			this.throttle = throttle;
+			return this;
+		}
+
+		ReadThrottle throttle() {
+			return throttle;
+		}
+
 		public Builder disableType() {
 			properties.remove(TYPE);
 			checkArgument(!properties.isEmpty(), "Make sure you add other properties before you disable 'type' on '" + mbeanType + "'.");
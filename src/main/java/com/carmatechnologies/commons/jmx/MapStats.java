@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operation counters and latency histograms of a decorated map, honouring the current {@link Instrumentation} level. Callers are expected to
+ * bypass this class entirely when instrumentation is {@link InstrumentationLevel#OFF}.
+ */
+final class MapStats {
+	static final long NOT_TIMED = Long.MIN_VALUE;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong removals = new AtomicLong();
+	private final Histogram readLatency = new Histogram();
+	private final Histogram writeLatency = new Histogram();
+
+	static long start() {
+		return Instrumentation.isFull() ? System.nanoTime() : NOT_TIMED;
+	}
+
+	void recordRead(final boolean hit, final long start) {
+		(hit ? hits : misses).incrementAndGet();
+		if (start != NOT_TIMED)
+			readLatency.record(System.nanoTime() - start);
+	}
+
+	void recordWrite(final long start) {
+		writes.incrementAndGet();
+		if (start != NOT_TIMED)
+			writeLatency.record(System.nanoTime() - start);
+	}
+
+	void recordRemoval(final boolean removed, final long start) {
+		if (removed)
+			removals.incrementAndGet();
+		if (start != NOT_TIMED)
+			writeLatency.record(System.nanoTime() - start);
+	}
+
+	long hits() {
+		return hits.get();
+	}
+
+	long misses() {
+		return misses.get();
+	}
+
+	long writes() {
+		return writes.get();
+	}
+
+	long removals() {
+		return removals.get();
+	}
+
+	Histogram readLatency() {
+		return readLatency;
+	}
+
+	Histogram writeLatency() {
+		return writeLatency;
+	}
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Reads the numeric attributes of an MBean, in a single {@code getAttributes} call. Numeric items of {@link CompositeData}
+ * attributes, e.g. {@link com.carmatechnologies.commons.jmx.mbeans.HistogramSnapshot}s, are flattened as {@code Attribute.item}.
+ */
+final class NumericAttributes {
+	private static final Set<String> NUMERIC_TYPES = ImmutableSet.of("byte", "short", "int", "long", "float", "double", Byte.class.getName(),
+			Short.class.getName(), Integer.class.getName(), Long.class.getName(), Float.class.getName(), Double.class.getName(),
+			CompositeData.class.getName());
+
+	private NumericAttributes() {
+		// Pure utility class, do NOT instantiate.
+	}
+
+	/**
+	 * @return the names of the readable attributes of the provided MBean which may hold numeric values.
+	 */
+	static String[] namesOf(final MBeanInfo info) {
+		final List<String> names = new ArrayList<String>();
+		for (final MBeanAttributeInfo attribute : info.getAttributes()) {
+			if (attribute.isReadable() && NUMERIC_TYPES.contains(attribute.getType()))
+				names.add(attribute.getName());
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	static String[] namesOf(final MBeanServerConnection server, final ObjectName objectName) throws JMException, IOException {
+		return namesOf(server.getMBeanInfo(objectName));
+	}
+
+	/**
+	 * @return the values of the provided attributes, or of their numeric items, in the provided order. Attributes which could NOT be read or whose
+	 *         value is {@code null} are omitted.
+	 */
+	static Map<String, Number> collect(final MBeanServerConnection server, final ObjectName objectName, final String[] names) throws JMException,
+			IOException {
+		final Map<String, Number> values = new LinkedHashMap<String, Number>();
+		if (names.length == 0)
+			return values;
+
+		for (final Attribute attribute : server.getAttributes(objectName, names).asList())
+			flatten(attribute.getName(), attribute.getValue(), values);
+		return values;
+	}
+
+	private static void flatten(final String name, final Object value, final Map<String, Number> values) {
+		if (value instanceof Number) {
+			values.put(name, (Number) value);
+		} else if (value instanceof CompositeData) {
+			final CompositeData composite = (CompositeData) value;
+			for (final String item : composite.getCompositeType().keySet()) {
+				final Object itemValue = composite.get(item);
+				if (itemValue instanceof Number)
+					values.put(name + "." + item, (Number) itemValue);
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operation counters and latency histograms of a decorated queue, honouring the current {@link Instrumentation} level. Callers are expected to
+ * bypass this class entirely when instrumentation is {@link InstrumentationLevel#OFF}.
+ */
+final class QueueStats {
+	static final long NOT_TIMED = Long.MIN_VALUE;
+
+	private final AtomicLong insertions = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+	private final AtomicLong removals = new AtomicLong();
+	private final Histogram insertLatency = new Histogram();
+	private final Histogram removeLatency = new Histogram();
+	private final AtomicLong drains = new AtomicLong();
+	private final Histogram drainBatchSize = new Histogram();
+	private final Histogram drainWait = new Histogram();
+
+	static long start() {
+		return Instrumentation.isFull() ? System.nanoTime() : NOT_TIMED;
+	}
+
+	void recordInsert(final boolean inserted, final long start) {
+		(inserted ? insertions : rejections).incrementAndGet();
+		if (start != NOT_TIMED)
+			insertLatency.record(System.nanoTime() - start);
+	}
+
+	void recordRemove(final boolean removed, final long start) {
+		if (removed)
+			removals.incrementAndGet();
+		if (start != NOT_TIMED)
+			removeLatency.record(System.nanoTime() - start);
+	}
+
+	void recordRemovals(final int count) {
+		removals.addAndGet(count);
+	}
+
+	/**
+	 * Records a batch drain, always timed as draining already requires the current time to enforce its timeout.
+	 */
+	void recordDrain(final int drained, final long start) {
+		removals.addAndGet(drained);
+		drains.incrementAndGet();
+		drainBatchSize.record(drained);
+		drainWait.record(System.nanoTime() - start);
+	}
+
+	long insertions() {
+		return insertions.get();
+	}
+
+	long rejections() {
+		return rejections.get();
+	}
+
+	long removals() {
+		return removals.get();
+	}
+
+	Histogram insertLatency() {
+		return insertLatency;
+	}
+
+	Histogram removeLatency() {
+		return removeLatency;
+	}
+
+	long drains() {
+		return drains.get();
+	}
+
+	Histogram drainBatchSize() {
+		return drainBatchSize;
+	}
+
+	Histogram drainWait() {
+		return drainWait;
+	}
+}
@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.carmatechnologies.commons.jmx.mbeans.IReadThrottle;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Admission control for expensive reads, e.g. {@code Items} on large maps, of MBeans registered with {@link MBeans.Builder#throttle(ReadThrottle)}.
+ * Calls to guarded attributes and operations are rejected, cheaply and without traversing anything, when:
+ * <ul>
+ * <li>{@link Builder#maxConcurrent(int)} guarded calls are already running, across all MBeans sharing this throttle,</li>
+ * <li>the MBean's token bucket, refilled at {@link Builder#permitsPerSecond(double)}, is empty,</li>
+ * <li>the previous call to the same member exceeded its CPU or allocation budget less than {@link Builder#cooldown(long, TimeUnit)} ago. Calls
+ * can NOT be interrupted half-way, so a budget only protects the calls following an expensive one.</li>
+ * </ul>
+ * Rejected calls fail with an {@link IllegalStateException}. Register the throttle itself, e.g. via {@link MBeans#register(Object)}, to expose its
+ * statistics.
+ */
+public final class ReadThrottle implements IReadThrottle {
+	public static final Set<String> DEFAULT_GUARDED_MEMBERS = ImmutableSet.of("Items", "subMapItems", "headMapItems", "tailMapItems", "topByValue",
+			"topBy");
+	public static final int UNLIMITED = Integer.MAX_VALUE;
+	public static final long DEFAULT_COOLDOWN_MILLIS = 10000;
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private final Set<String> guardedMembers;
+	private final int maxConcurrent;
+	private final Semaphore concurrent;
+	private final double permitsPerSecond;
+	private final long maxCpuTimeNanos;
+	private final long maxAllocatedBytes;
+	private final long cooldownNanos;
+	private final AtomicLong admitCount = new AtomicLong();
+	private final AtomicLong concurrencyRejectCount = new AtomicLong();
+	private final AtomicLong rateRejectCount = new AtomicLong();
+	private final AtomicLong budgetRejectCount = new AtomicLong();
+	private final AtomicLong overBudgetCount = new AtomicLong();
+
+	private ReadThrottle(final Builder builder) {
+		this.guardedMembers = ImmutableSet.copyOf(builder.guardedMembers);
+		this.maxConcurrent = builder.maxConcurrent;
+		this.concurrent = new Semaphore(maxConcurrent);
+		this.permitsPerSecond = builder.permitsPerSecond;
+		this.maxCpuTimeNanos = builder.maxCpuTimeNanos;
+		this.maxAllocatedBytes = builder.maxAllocatedBytes;
+		this.cooldownNanos = builder.cooldownNanos;
+	}
+
+	boolean guards(final String member) {
+		return guardedMembers.contains(member);
+	}
+
+	/**
+	 * @return a new token bucket for a single MBean, or {@code null} if calls are not rate-limited.
+	 */
+	RateLimiter newRateLimiter() {
+		return (permitsPerSecond == Double.POSITIVE_INFINITY) ? null : RateLimiter.create(permitsPerSecond);
+	}
+
+	long cooldownNanos() {
+		return cooldownNanos;
+	}
+
+	boolean tryEnter() {
+		if (maxConcurrent == UNLIMITED || concurrent.tryAcquire())
+			return true;
+		concurrencyRejectCount.incrementAndGet();
+		return false;
+	}
+
+	void exit() {
+		if (maxConcurrent != UNLIMITED)
+			concurrent.release();
+	}
+
+	void admitted() {
+		admitCount.incrementAndGet();
+	}
+
+	void rateRejected() {
+		rateRejectCount.incrementAndGet();
+	}
+
+	void budgetRejected() {
+		budgetRejectCount.incrementAndGet();
+	}
+
+	/**
+	 * @return the current thread's CPU time, or {@code -1} if CPU time is not budgeted or not measurable.
+	 */
+	long cpuTime() {
+		if (maxCpuTimeNanos == Long.MAX_VALUE || !THREADS.isCurrentThreadCpuTimeSupported())
+			return -1;
+		return THREADS.getCurrentThreadCpuTime();
+	}
+
+	/**
+	 * @return the number of bytes allocated so far by the current thread, or {@code -1} if allocations are not budgeted or not measurable.
+	 */
+	long allocatedBytes() {
+		if (maxAllocatedBytes == Long.MAX_VALUE || !(THREADS instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @return {@code true} if the call started with the provided CPU time and allocated bytes exceeded its budget.
+	 */
+	boolean isOverBudget(final long startCpuTime, final long startAllocatedBytes) {
+		final boolean overBudget = (startCpuTime >= 0 && cpuTime() - startCpuTime > maxCpuTimeNanos)
+				|| (startAllocatedBytes >= 0 && allocatedBytes() - startAllocatedBytes > maxAllocatedBytes);
+		if (overBudget)
+			overBudgetCount.incrementAndGet();
+		return overBudget;
+	}
+
+	@Override
+	public Set<String> getGuardedMembers() {
+		return guardedMembers;
+	}
+
+	@Override
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	@Override
+	public int getActiveCount() {
+		return (maxConcurrent == UNLIMITED) ? 0 : maxConcurrent - concurrent.availablePermits();
+	}
+
+	@Override
+	public double getPermitsPerSecond() {
+		return permitsPerSecond;
+	}
+
+	@Override
+	public long getMaxCpuTimeNanos() {
+		return maxCpuTimeNanos;
+	}
+
+	@Override
+	public long getMaxAllocatedBytes() {
+		return maxAllocatedBytes;
+	}
+
+	@Override
+	public long getAdmitCount() {
+		return admitCount.get();
+	}
+
+	@Override
+	public long getConcurrencyRejectCount() {
+		return concurrencyRejectCount.get();
+	}
+
+	@Override
+	public long getRateRejectCount() {
+		return rateRejectCount.get();
+	}
+
+	@Override
+	public long getBudgetRejectCount() {
+		return budgetRejectCount.get();
+	}
+
+	@Override
+	public long getOverBudgetCount() {
+		return overBudgetCount.get();
+	}
+
+	public static final class Builder {
+		private Set<String> guardedMembers = DEFAULT_GUARDED_MEMBERS;
+		private int maxConcurrent = UNLIMITED;
+		private double permitsPerSecond = Double.POSITIVE_INFINITY;
+		private long maxCpuTimeNanos = Long.MAX_VALUE;
+		private long maxAllocatedBytes = Long.MAX_VALUE;
+		private long cooldownNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_COOLDOWN_MILLIS);
+
+		/**
+		 * Guards the provided attributes and operations instead of {@link ReadThrottle#DEFAULT_GUARDED_MEMBERS}.
+		 */
+		public Builder guard(final String... members) {
+			checkNotNull(members, "Guarded members must NOT be null.");
+			checkArgument(members.length > 0, "Guarded members must NOT be empty.");
+			this.guardedMembers = ImmutableSet.copyOf(members);
+			return this;
+		}
+
+		/**
+		 * Limits the number of guarded calls running at the same time, across all MBeans sharing the throttle.
+		 */
+		public Builder maxConcurrent(final int maxConcurrent) {
+			checkArgument(maxConcurrent > 0, "Maximum number of concurrent calls must be strictly positive, but was: " + maxConcurrent);
+			this.maxConcurrent = maxConcurrent;
+			return this;
+		}
+
+		/**
+		 * Limits the rate of guarded calls on each MBean.
+		 */
+		public Builder permitsPerSecond(final double permitsPerSecond) {
+			checkArgument(permitsPerSecond > 0, "Permits per second must be strictly positive, but was: " + permitsPerSecond);
+			this.permitsPerSecond = permitsPerSecond;
+			return this;
+		}
+
+		public Builder maxCpuTime(final long maxCpuTime, final TimeUnit unit) {
+			checkArgument(maxCpuTime > 0, "Maximum CPU time must be strictly positive, but was: " + maxCpuTime);
+			checkNotNull(unit, "Maximum CPU time's time unit must NOT be null.");
+			this.maxCpuTimeNanos = unit.toNanos(maxCpuTime);
+			return this;
+		}
+
+		public Builder maxAllocatedBytes(final long maxAllocatedBytes) {
+			checkArgument(maxAllocatedBytes > 0, "Maximum allocated bytes must be strictly positive, but was: " + maxAllocatedBytes);
+			this.maxAllocatedBytes = maxAllocatedBytes;
+			return this;
+		}
+
+		/**
+		 * Sets how long a member is rejected after one of its calls exceeded its budget.
+		 */
+		public Builder cooldown(final long cooldown, final TimeUnit unit) {
+			checkArgument(cooldown >= 0, "Cooldown must be positive, but was: " + cooldown);
+			checkNotNull(unit, "Cooldown's time unit must NOT be null.");
+			this.cooldownNanos = unit.toNanos(cooldown);
+			return this;
+		}
+
+		public ReadThrottle build() {
+			return new ReadThrottle(this);
+		}
+	}
+}
@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Counters and gauges backed by a memory-mapped file, in the spirit of HotSpot's {@code hsperfdata} files, so that local agents can read them using
+ * {@link SharedCountersReader}, i.e. without JMX, RMI, serialization or any lock in the monitored JVM. Values can be set directly via {@link Slot}s,
+ * and/or be periodically copied from the numeric attributes of all MBeans registered via {@link MBeans}, see {@link #mirror(long, TimeUnit)}.
+ * <p>
+ * File layout (big-endian):
+ * <ul>
+ * <li>header of {@value #HEADER_BYTES} bytes: magic, version, capacity (in slots), slot size (in bytes) and number of published slots,</li>
+ * <li>{@code capacity} slots of {@value #SLOT_BYTES} bytes: value (long, or double bits), type ({@value #LONG} for longs, {@value #DOUBLE} for
+ * doubles) and name (as an unsigned short length followed by UTF-8 bytes).</li>
+ * </ul>
+ * Values are 8-byte aligned, hence never torn, and each slot is padded to span whole cache lines, so that updating one value does NOT contend with
+ * updating another.
+ */
+public final class SharedCounters implements Closeable {
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	static final int MAGIC = 0x434A5343;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 64;
+	static final int SLOT_BYTES = 256;
+	static final int MAGIC_OFFSET = 0;
+	static final int VERSION_OFFSET = 4;
+	static final int CAPACITY_OFFSET = 8;
+	static final int SLOT_BYTES_OFFSET = 12;
+	static final int SLOT_COUNT_OFFSET = 16;
+	static final int VALUE_OFFSET = 0;
+	static final int TYPE_OFFSET = 8;
+	static final int NAME_OFFSET = 9;
+	static final int MAX_NAME_BYTES = SLOT_BYTES - NAME_OFFSET - 2;
+	static final byte LONG = 1;
+	static final byte DOUBLE = 2;
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+	private final File file;
+	private final int capacity;
+	private final RandomAccessFile raf;
+	private final MappedByteBuffer buffer;
+	private volatile int published = 0;
+	private volatile long droppedCount = 0;
+	private ScheduledExecutorService executor;
+
+	public SharedCounters(final File file) throws IOException {
+		this(file, DEFAULT_CAPACITY);
+	}
+
+	public SharedCounters(final File file, final int capacity) throws IOException {
+		checkNotNull(file, "Shared counters file must NOT be null.");
+		checkArgument(capacity > 0, "Capacity must be strictly positive, but was: " + capacity);
+		checkArgument(capacity <= (Integer.MAX_VALUE - HEADER_BYTES) / SLOT_BYTES, "Capacity is too large: " + capacity);
+		this.file = file;
+		this.capacity = capacity;
+		final int length = HEADER_BYTES + capacity * SLOT_BYTES;
+		// Never truncate an existing file in place, as readers still mapping it would crash (SIGBUS): a new file is renamed over it instead,
+		// readers of the previous one reading stale values until they reopen the file.
+		final File created = File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+		this.raf = new RandomAccessFile(created, "rw");
+		try {
+			raf.setLength(length);
+			this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+			buffer.putInt(VERSION_OFFSET, VERSION);
+			buffer.putInt(CAPACITY_OFFSET, capacity);
+			buffer.putInt(SLOT_BYTES_OFFSET, SLOT_BYTES);
+			buffer.putInt(SLOT_COUNT_OFFSET, 0);
+			publish();
+			buffer.putInt(MAGIC_OFFSET, MAGIC);
+			Files.move(created.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			// Closing the file also releases the mapping once the buffer is garbage-collected, as Java 7 cannot unmap it explicitly.
+			try {
+				raf.close();
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			if (!created.delete())
+				created.deleteOnExit();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the slot holding a {@code long} value under the provided name, created if needed.
+	 * @throws IllegalStateException if all slots are already used.
+	 */
+	public Slot longSlot(final String name) {
+		return slot(name, LONG);
+	}
+
+	/**
+	 * @return the slot holding a {@code double} value under the provided name, created if needed.
+	 * @throws IllegalStateException if all slots are already used.
+	 */
+	public Slot doubleSlot(final String name) {
+		return slot(name, DOUBLE);
+	}
+
+	private Slot slot(final String name, final byte type) {
+		checkNotNull(name, "Slot name must NOT be null.");
+		final Slot slot = slots.get(name);
+		return (slot != null) ? slot : newSlot(name, type);
+	}
+
+	private synchronized Slot newSlot(final String name, final byte type) {
+		Slot slot = slots.get(name);
+		if (slot != null)
+			return slot;
+
+		final byte[] bytes = name.getBytes(UTF_8);
+		checkArgument(bytes.length <= MAX_NAME_BYTES, "Slot name must NOT exceed " + MAX_NAME_BYTES + " UTF-8 bytes: " + name);
+		checkState(published < capacity, "All " + capacity + " slots of '" + file + "' are already used.");
+
+		final int offset = HEADER_BYTES + published * SLOT_BYTES;
+		buffer.putLong(offset + VALUE_OFFSET, 0L);
+		buffer.put(offset + TYPE_OFFSET, type);
+		buffer.putShort(offset + NAME_OFFSET, (short) bytes.length);
+		for (int i = 0; i < bytes.length; ++i)
+			buffer.put(offset + NAME_OFFSET + 2 + i, bytes[i]);
+		slot = new Slot(name, type, offset);
+		slots.put(name, slot);
+		++published;
+		publish();
+		return slot;
+	}
+
+	/**
+	 * Publishes the number of slots to readers. Java 7 has no API for ordered stores to mapped memory, so the volatile write of
+	 * {@code published} (in {@link #newSlot(String, byte)}) followed by its volatile read here keeps the stores of the new slot before this store.
+	 */
+	private void publish() {
+		buffer.putInt(SLOT_COUNT_OFFSET, published);
+	}
+
+	/**
+	 * Copies the numeric attributes of all MBeans registered via {@link MBeans} to slots named {@code <object name>#<attribute>}, every interval.
+	 * Attributes are skipped once all slots are used, see {@link #getDroppedCount()}.
+	 */
+	public synchronized SharedCounters mirror(final long interval, final TimeUnit unit) {
+		checkArgument(interval > 0, "Mirroring interval must be strictly positive, but was: " + interval);
+		checkNotNull(unit, "Mirroring interval's time unit must NOT be null.");
+		checkState(executor == null, "Shared counters are already mirroring MBeans.");
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat(
+				"commons-jmx-shared-counters-%d").build());
+		final AttributeCollector collector = new AttributeCollector(null);
+		executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				mirror(collector);
+			}
+		}, 0, interval, unit);
+		return this;
+	}
+
+	void mirror(final AttributeCollector collector) {
+		collector.collect(new AttributeCollector.Sink() {
+			@Override
+			public void accept(final ObjectName objectName, final String attribute, final Number value) {
+				final boolean floating = (value instanceof Double) || (value instanceof Float);
+				try {
+					final Slot slot = slot(objectName + "#" + attribute, floating ? DOUBLE : LONG);
+					if (floating)
+						slot.set(value.doubleValue());
+					else
+						slot.set(value.longValue());
+				} catch (IllegalStateException | IllegalArgumentException e) {
+					++droppedCount;
+				}
+			}
+		});
+	}
+
+	public File file() {
+		return file;
+	}
+
+	public int size() {
+		return published;
+	}
+
+	/**
+	 * @return the number of mirrored values NOT written because all slots are used, or because of a too long name.
+	 */
+	public long getDroppedCount() {
+		return droppedCount;
+	}
+
+	/**
+	 * Stops mirroring MBeans, if started, and flushes the file to disk. The file is NOT deleted, so that it can still be read.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (executor != null)
+			executor.shutdownNow();
+		buffer.force();
+		raf.close();
+	}
+
+	/**
+	 * A named value in the shared file. Writes are single plain 8-byte stores, hence cheap, but concurrent writers of the same slot should
+	 * coordinate, e.g. by writing the value of an {@link java.util.concurrent.atomic.AtomicLong}.
+	 */
+	public final class Slot {
+		private final String name;
+		private final byte type;
+		private final int offset;
+
+		Slot(final String name, final byte type, final int offset) {
+			this.name = name;
+			this.type = type;
+			this.offset = offset;
+		}
+
+		public String name() {
+			return name;
+		}
+
+		public void set(final long value) {
+			if (type == LONG)
+				buffer.putLong(offset + VALUE_OFFSET, value);
+			else
+				buffer.putDouble(offset + VALUE_OFFSET, value);
+		}
+
+		public void set(final double value) {
+			if (type == DOUBLE)
+				buffer.putDouble(offset + VALUE_OFFSET, value);
+			else
+				buffer.putLong(offset + VALUE_OFFSET, (long) value);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.carmatechnologies.commons.jmx.SharedCounters.CAPACITY_OFFSET;
+import static com.carmatechnologies.commons.jmx.SharedCounters.DOUBLE;
+import static com.carmatechnologies.commons.jmx.SharedCounters.HEADER_BYTES;
+import static com.carmatechnologies.commons.jmx.SharedCounters.MAGIC;
+import static com.carmatechnologies.commons.jmx.SharedCounters.MAGIC_OFFSET;
+import static com.carmatechnologies.commons.jmx.SharedCounters.NAME_OFFSET;
+import static com.carmatechnologies.commons.jmx.SharedCounters.SLOT_BYTES_OFFSET;
+import static com.carmatechnologies.commons.jmx.SharedCounters.SLOT_COUNT_OFFSET;
+import static com.carmatechnologies.commons.jmx.SharedCounters.TYPE_OFFSET;
+import static com.carmatechnologies.commons.jmx.SharedCounters.UTF_8;
+import static com.carmatechnologies.commons.jmx.SharedCounters.VALUE_OFFSET;
+import static com.carmatechnologies.commons.jmx.SharedCounters.VERSION;
+import static com.carmatechnologies.commons.jmx.SharedCounters.VERSION_OFFSET;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads files written by {@link SharedCounters}, e.g. from a local monitoring agent, by mapping them: reading values costs a few memory loads and
+ * does NOT involve the monitored JVM at all. Slot names are only read once. From the command line:
+ * 
+ * <pre>
+ * java -cp commons-jmx.jar com.carmatechnologies.commons.jmx.SharedCountersReader &lt;file&gt; [interval in seconds]
+ * </pre>
+ * 
+ * prints all values, once or every interval.
+ */
+public final class SharedCountersReader implements Closeable {
+	private final RandomAccessFile raf;
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private final int slotBytes;
+	private final List<String> names = new ArrayList<String>();
+	private final List<Byte> types = new ArrayList<Byte>();
+
+	public SharedCountersReader(final File file) throws IOException {
+		this.raf = new RandomAccessFile(file, "r");
+		this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		if (buffer.limit() < HEADER_BYTES || buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+			raf.close();
+			throw new IOException("'" + file + "' is NOT a shared counters file.");
+		}
+		if (buffer.getInt(VERSION_OFFSET) != VERSION) {
+			raf.close();
+			throw new IOException("Unsupported shared counters version: " + buffer.getInt(VERSION_OFFSET));
+		}
+		this.capacity = buffer.getInt(CAPACITY_OFFSET);
+		this.slotBytes = buffer.getInt(SLOT_BYTES_OFFSET);
+	}
+
+	/**
+	 * @return the current values of all published slots, by name, in publication order.
+	 */
+	public Map<String, Number> read() {
+		final int count = Math.min(buffer.getInt(SLOT_COUNT_OFFSET), capacity);
+		for (int i = names.size(); i < count; ++i) {
+			final int offset = HEADER_BYTES + i * slotBytes;
+			final byte[] bytes = new byte[buffer.getShort(offset + NAME_OFFSET) & 0xFFFF];
+			for (int j = 0; j < bytes.length; ++j)
+				bytes[j] = buffer.get(offset + NAME_OFFSET + 2 + j);
+			names.add(new String(bytes, UTF_8));
+			types.add(buffer.get(offset + TYPE_OFFSET));
+		}
+
+		final Map<String, Number> values = new LinkedHashMap<String, Number>();
+		for (int i = 0; i < count; ++i) {
+			final int offset = HEADER_BYTES + i * slotBytes + VALUE_OFFSET;
+			values.put(names.get(i), (types.get(i) == DOUBLE) ? (Number) buffer.getDouble(offset) : (Number) buffer.getLong(offset));
+		}
+		return values;
+	}
+
+	@Override
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	public static void main(final String[] args) throws IOException, InterruptedException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: " + SharedCountersReader.class.getName() + " <file> [interval in seconds]");
+			System.exit(1);
+		}
+
+		final SharedCountersReader reader = new SharedCountersReader(new File(args[0]));
+		try {
+			do {
+				for (final Map.Entry<String, Number> value : reader.read().entrySet())
+					System.out.println(value.getKey() + "=" + value.getValue());
+				if (args.length == 2) {
+					System.out.println();
+					TimeUnit.SECONDS.sleep(Long.parseLong(args[1]));
+				}
+			} while (args.length == 2);
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.JMX;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ReflectionException;
+import javax.management.StandardMBean;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Support for {@link MBeans.Builder#throttle(ReadThrottle)}: the MBean server gets this MBean, which subjects calls to guarded members of the actual
+ * MBean to the provided {@link ReadThrottle}, and passes all other calls through.
+ */
+final class ThrottledMBean implements DynamicMBean {
+	private final DynamicMBean mbean;
+	private final ReadThrottle throttle;
+	private final RateLimiter rateLimiter;
+	private final ConcurrentMap<String, Long> overBudgetSince = new ConcurrentHashMap<String, Long>();
+
+	private ThrottledMBean(final DynamicMBean mbean, final ReadThrottle throttle) {
+		this.mbean = mbean;
+		this.throttle = throttle;
+		this.rateLimiter = throttle.newRateLimiter();
+	}
+
+	/**
+	 * @return an MBean to register instead of the provided one, which is either a standard MBean, an MXBean or a {@link DynamicMBean}.
+	 */
+	static DynamicMBean throttle(final Object mbean, final ReadThrottle throttle) throws NotCompliantMBeanException {
+		final DynamicMBean dynamic = (mbean instanceof DynamicMBean) ? (DynamicMBean) mbean : standard(mbean, WeakMBeans.mbeanInterfaceOf(mbean
+				.getClass()));
+		return new ThrottledMBean(dynamic, throttle);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> DynamicMBean standard(final Object mbean, final Class<T> mbeanInterface) throws NotCompliantMBeanException {
+		return new StandardMBean((T) mbean, mbeanInterface, JMX.isMXBeanInterface(mbeanInterface));
+	}
+
+	private void admit(final String member) {
+		final Long since = overBudgetSince.get(member);
+		if (since != null) {
+			final long remaining = since + throttle.cooldownNanos() - System.nanoTime();
+			if (remaining > 0) {
+				throttle.budgetRejected();
+				throw throttled(member, "its previous call exceeded its CPU or allocation budget, retry in "
+						+ TimeUnit.NANOSECONDS.toMillis(remaining) + "ms");
+			}
+			overBudgetSince.remove(member, since);
+		}
+		if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+			throttle.rateRejected();
+			throw throttled(member, "its rate limit of " + rateLimiter.getRate() + " call(s) per second has been reached");
+		}
+		if (!throttle.tryEnter())
+			throw throttled(member, "too many expensive calls are already running");
+		throttle.admitted();
+	}
+
+	private static IllegalStateException throttled(final String member, final String reason) {
+		return new IllegalStateException("Throttled '" + member + "': " + reason + ".");
+	}
+
+	@Override
+	public Object getAttribute(final String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+		if (!throttle.guards(attribute))
+			return mbean.getAttribute(attribute);
+
+		admit(attribute);
+		final long cpuTime = throttle.cpuTime();
+		final long allocatedBytes = throttle.allocatedBytes();
+		try {
+			return mbean.getAttribute(attribute);
+		} finally {
+			exit(attribute, cpuTime, allocatedBytes);
+		}
+	}
+
+	/**
+	 * Guarded attributes which are throttled are omitted from the returned list, as if they could NOT be read.
+	 */
+	@Override
+	public AttributeList getAttributes(final String[] attributes) {
+		final AttributeList list = new AttributeList();
+		for (final String attribute : attributes) {
+			try {
+				list.add(new Attribute(attribute, getAttribute(attribute)));
+			} catch (Exception e) {
+				// Omitted, like any other attribute which can NOT be read.
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public Object invoke(final String actionName, final Object[] params, final String[] signature) throws MBeanException, ReflectionException {
+		if (!throttle.guards(actionName))
+			return mbean.invoke(actionName, params, signature);
+
+		admit(actionName);
+		final long cpuTime = throttle.cpuTime();
+		final long allocatedBytes = throttle.allocatedBytes();
+		try {
+			return mbean.invoke(actionName, params, signature);
+		} finally {
+			exit(actionName, cpuTime, allocatedBytes);
+		}
+	}
+
+	private void exit(final String member, final long cpuTime, final long allocatedBytes) {
+		throttle.exit();
+		if (throttle.isOverBudget(cpuTime, allocatedBytes))
+			overBudgetSince.put(member, System.nanoTime());
+	}
+
+	@Override
+	public void setAttribute(final Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException,
+			ReflectionException {
+		mbean.setAttribute(attribute);
+	}
+
+	@Override
+	public AttributeList setAttributes(final AttributeList attributes) {
+		return mbean.setAttributes(attributes);
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		return mbean.getMBeanInfo();
+	}
+}
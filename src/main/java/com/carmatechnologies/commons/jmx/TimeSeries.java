@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.carmatechnologies.commons.jmx.mbeans.Sample;
+
+/**
+ * Fixed-memory ring of compressed samples, using delta-of-delta encoding for timestamps and XOR encoding for values, as in Facebook's Gorilla. Samples
+ * taken at a regular interval and of slowly changing values only take a few bits each. Samples are appended to the current block until it is full,
+ * then the oldest block is overwritten, i.e. memory use is bounded by {@code blocks * blockBytes} bytes.
+ */
+final class TimeSeries {
+	private static final int HEADER_BITS = 2 * Long.SIZE;
+	private static final int MAX_SAMPLE_BITS = (4 + Long.SIZE) + (2 + 5 + 6 + Long.SIZE);
+
+	private final byte[][] blocks;
+	private final int[] sampleCounts;
+	private final int[] bitLengths;
+	private final int capacityBits;
+	private int current = 0;
+	private int filledBlocks = 0;
+
+	private long previousTimestamp;
+	private long previousDelta;
+	private long previousBits;
+	private int previousLeading;
+	private int previousTrailing;
+
+	TimeSeries(final int blocks, final int blockBytes) {
+		checkArgument(blocks > 1, "Number of blocks must be greater than 1, but was: " + blocks);
+		checkArgument(blockBytes * Byte.SIZE >= HEADER_BITS + MAX_SAMPLE_BITS, "Blocks must be at least " + (HEADER_BITS + MAX_SAMPLE_BITS) / Byte.SIZE
+				+ " bytes long, but were: " + blockBytes);
+		this.blocks = new byte[blocks][blockBytes];
+		this.sampleCounts = new int[blocks];
+		this.bitLengths = new int[blocks];
+		this.capacityBits = blockBytes * Byte.SIZE;
+	}
+
+	synchronized void add(final long timestamp, final double value) {
+		final long bits = Double.doubleToLongBits(value);
+		if (filledBlocks == 0) {
+			startBlock(0, timestamp, bits);
+			return;
+		}
+		if (bitLengths[current] + MAX_SAMPLE_BITS > capacityBits) {
+			startBlock((current + 1) % blocks.length, timestamp, bits);
+			return;
+		}
+
+		writeTimestamp(timestamp);
+		writeValue(bits);
+		++sampleCounts[current];
+	}
+
+	private void startBlock(final int block, final long timestamp, final long bits) {
+		current = block;
+		filledBlocks = Math.min(filledBlocks + 1, blocks.length);
+		bitLengths[block] = 0;
+		sampleCounts[block] = 1;
+		write(timestamp, Long.SIZE);
+		write(bits, Long.SIZE);
+		previousTimestamp = timestamp;
+		previousDelta = 0;
+		previousBits = bits;
+		previousLeading = -1;
+		previousTrailing = 0;
+	}
+
+	private void writeTimestamp(final long timestamp) {
+		final long delta = timestamp - previousTimestamp;
+		final long deltaOfDelta = delta - previousDelta;
+		if (deltaOfDelta == 0) {
+			write(0b0, 1);
+		} else if (-64 <= deltaOfDelta && deltaOfDelta < 64) {
+			write(0b10, 2);
+			write(deltaOfDelta, 7);
+		} else if (-256 <= deltaOfDelta && deltaOfDelta < 256) {
+			write(0b110, 3);
+			write(deltaOfDelta, 9);
+		} else if (-2048 <= deltaOfDelta && deltaOfDelta < 2048) {
+			write(0b1110, 4);
+			write(deltaOfDelta, 12);
+		} else {
+			write(0b1111, 4);
+			write(deltaOfDelta, Long.SIZE);
+		}
+		previousTimestamp = timestamp;
+		previousDelta = delta;
+	}
+
+	private void writeValue(final long bits) {
+		final long xor = bits ^ previousBits;
+		previousBits = bits;
+		if (xor == 0) {
+			write(0b0, 1);
+			return;
+		}
+
+		final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+		final int trailing = Long.numberOfTrailingZeros(xor);
+		if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+			write(0b10, 2);
+			write(xor >>> previousTrailing, Long.SIZE - previousLeading - previousTrailing);
+		} else {
+			final int significant = Long.SIZE - leading - trailing;
+			write(0b11, 2);
+			write(leading, 5);
+			write(significant - 1, 6);
+			write(xor >>> trailing, significant);
+			previousLeading = leading;
+			previousTrailing = trailing;
+		}
+	}
+
+	private void write(final long value, final int bits) {
+		final byte[] block = blocks[current];
+		int position = bitLengths[current];
+		for (int i = bits - 1; i >= 0; --i, ++position) {
+			if (((value >>> i) & 1L) != 0)
+				block[position >>> 3] |= (byte) (0x80 >>> (position & 7));
+			else
+				block[position >>> 3] &= (byte) ~(0x80 >>> (position & 7));
+		}
+		bitLengths[current] = position;
+	}
+
+	synchronized int size() {
+		int size = 0;
+		for (int i = 0; i < filledBlocks; ++i)
+			size += sampleCounts[i];
+		return size;
+	}
+
+	/**
+	 * @return all samples taken at or after the provided time, oldest first.
+	 */
+	synchronized List<Sample> samplesSince(final long timestamp) {
+		final List<Sample> samples = new ArrayList<Sample>();
+		final int oldest = (filledBlocks < blocks.length) ? 0 : (current + 1) % blocks.length;
+		for (int i = 0; i < filledBlocks; ++i)
+			new BlockReader(blocks[(oldest + i) % blocks.length]).readInto(samples, sampleCounts[(oldest + i) % blocks.length], timestamp);
+		return samples;
+	}
+
+	static int sizeInBytes(final int blocks, final int blockBytes) {
+		return blocks * (blockBytes + 2 * Integer.SIZE / Byte.SIZE);
+	}
+
+	private static final class BlockReader {
+		private final byte[] block;
+		private int position = 0;
+		private long timestamp;
+		private long delta = 0;
+		private long bits;
+		private int leading = -1;
+		private int trailing = 0;
+
+		BlockReader(final byte[] block) {
+			this.block = block;
+		}
+
+		void readInto(final List<Sample> samples, final int count, final long since) {
+			timestamp = read(Long.SIZE);
+			bits = read(Long.SIZE);
+			add(samples, since);
+			for (int i = 1; i < count; ++i) {
+				readTimestamp();
+				readValue();
+				add(samples, since);
+			}
+		}
+
+		private void add(final List<Sample> samples, final long since) {
+			if (timestamp >= since)
+				samples.add(new Sample(timestamp, Double.longBitsToDouble(bits)));
+		}
+
+		private void readTimestamp() {
+			final long deltaOfDelta;
+			if (read(1) == 0)
+				deltaOfDelta = 0;
+			else if (read(1) == 0)
+				deltaOfDelta = readSigned(7);
+			else if (read(1) == 0)
+				deltaOfDelta = readSigned(9);
+			else if (read(1) == 0)
+				deltaOfDelta = readSigned(12);
+			else
+				deltaOfDelta = read(Long.SIZE);
+			delta += deltaOfDelta;
+			timestamp += delta;
+		}
+
+		private void readValue() {
+			if (read(1) == 0)
+				return;
+			if (read(1) == 1) {
+				leading = (int) read(5);
+				final int significant = (int) read(6) + 1;
+				trailing = Long.SIZE - leading - significant;
+			}
+			bits ^= read(Long.SIZE - leading - trailing) << trailing;
+		}
+
+		private long readSigned(final int bits) {
+			final long value = read(bits);
+			return (value << (Long.SIZE - bits)) >> (Long.SIZE - bits);
+		}
+
+		private long read(final int bits) {
+			long value = 0;
+			for (int i = 0; i < bits; ++i, ++position)
+				value = (value << 1) | ((block[position >>> 3] >>> (7 - (position & 7))) & 1);
+			return value;
+		}
+	}
+}
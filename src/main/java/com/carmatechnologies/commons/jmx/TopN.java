@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Selects the {@code limit} largest items offered, in a single pass, keeping at most {@code limit} items in a heap whose head is the smallest
+ * item kept, so that selecting the largest items of a large collection neither copies nor sorts it.
+ */
+final class TopN<T> {
+	private final int limit;
+	private final Comparator<? super T> order;
+	private final PriorityQueue<T> smallestFirst;
+
+	TopN(final int limit, final Comparator<? super T> order) {
+		checkArgument(limit > 0, "Limit must be strictly positive, but was: " + limit);
+		this.limit = limit;
+		this.order = order;
+		this.smallestFirst = new PriorityQueue<T>(Math.min(limit, 1024) + 1, order);
+	}
+
+	void offer(final T item) {
+		if (smallestFirst.size() < limit) {
+			smallestFirst.add(item);
+		} else if (order.compare(smallestFirst.peek(), item) < 0) {
+			smallestFirst.poll();
+			smallestFirst.add(item);
+		}
+	}
+
+	List<T> largestFirst() {
+		final List<T> largestFirst = new ArrayList<T>(smallestFirst);
+		Collections.sort(largestFirst, Collections.reverseOrder(order));
+		return largestFirst;
+	}
+}
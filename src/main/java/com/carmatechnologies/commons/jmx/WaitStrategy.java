@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How blocking operations of lock-free queues, e.g. {@link JmxMpscArrayQueue#take()}, wait for an element or for free space, as these queues do NOT
+ * signal waiting threads, which would cost producers and consumers on every operation.
+ */
+public enum WaitStrategy {
+	/**
+	 * Lowest latency, but burns a CPU core while waiting.
+	 */
+	BUSY_SPIN {
+		@Override
+		void idle(final int attempt) {
+			// Spin.
+		}
+	},
+
+	/**
+	 * Yields the CPU to other threads while waiting.
+	 */
+	YIELDING {
+		@Override
+		void idle(final int attempt) {
+			Thread.yield();
+		}
+	},
+
+	/**
+	 * Spins briefly, then yields, then parks for exponentially longer periods, up to a millisecond.
+	 */
+	PARKING {
+		@Override
+		void idle(final int attempt) {
+			if (attempt < 100)
+				return;
+			if (attempt < 200)
+				Thread.yield();
+			else
+				LockSupport.parkNanos(Math.min(1000L << Math.min(attempt - 200, 10), 1000000L));
+		}
+	};
+
+	/**
+	 * Waits after the provided number of unsuccessful attempts.
+	 */
+	abstract void idle(int attempt);
+}
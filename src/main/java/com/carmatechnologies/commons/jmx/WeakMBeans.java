@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+
+import javax.management.JMX;
+import javax.management.MBeanInfo;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Support for {@link MBeans.Builder#weak()}: the MBean server only gets a proxy weakly referencing the actual MBean, and a daemon thread
+ * unregisters the MBean once the actual MBean has been garbage-collected.
+ */
+final class WeakMBeans {
+	private static final Logger LOGGER = LoggerFactory.getLogger(WeakMBeans.class);
+	private static final ReferenceQueue<Object> COLLECTED = new ReferenceQueue<Object>();
+	private static final ConcurrentMap<ObjectName, MBeanReference> REFERENCES = new ConcurrentHashMap<ObjectName, MBeanReference>();
+
+	static {
+		final Thread cleaner = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (true) {
+					try {
+						unregister((MBeanReference) COLLECTED.remove());
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					} catch (RuntimeException e) {
+						LOGGER.error("Failed to unregister garbage-collected MBean.", e);
+					}
+				}
+			}
+		}, "commons-jmx-mbean-cleaner");
+		cleaner.setDaemon(true);
+		cleaner.start();
+	}
+
+	private WeakMBeans() {
+		// Pure utility class, do NOT instantiate.
+	}
+
+	/**
+	 * @return an MBean to register under the provided name instead of the provided MBean, which it only weakly references.
+	 */
+	static Object weaken(final Object mbean, final ObjectName objectName) throws NotCompliantMBeanException {
+		final Class<?> type = mbean.getClass();
+		final Class<?> mbeanInterface = mbeanInterfaceOf(type);
+		final MBeanReference reference = new MBeanReference(mbean, objectName);
+		final Object proxy = Proxy.newProxyInstance(mbeanInterface.getClassLoader(), new Class<?>[] { mbeanInterface }, reference);
+		return new WeakStandardMBean(proxy, mbeanInterface, JMX.isMXBeanInterface(mbeanInterface), type.getName(), reference);
+	}
+
+	/**
+	 * Starts tracking the provided weakened MBean, once successfully registered, in order to unregister it once garbage-collected.
+	 */
+	static void track(final Object weakMBean) {
+		final MBeanReference reference = ((WeakStandardMBean) weakMBean).reference;
+		REFERENCES.put(reference.objectName, reference);
+	}
+
+	/**
+	 * Stops tracking the provided MBean, which has been explicitly unregistered.
+	 */
+	static void forget(final ObjectName objectName) {
+		final MBeanReference reference = REFERENCES.remove(objectName);
+		if (reference != null)
+			reference.clear();
+	}
+
+	private static void unregister(final MBeanReference reference) {
+		final Lock lock = MBeans.lockOf(reference.objectName);
+		lock.lock();
+		try {
+			// Only unregister if still tracked, i.e. NOT explicitly unregistered, and possibly replaced, in the meantime:
+			if (REFERENCES.remove(reference.objectName, reference)) {
+				LOGGER.info("MBean '" + reference.objectName + "' has been garbage-collected.");
+				MBeans.unregister(reference.objectName);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	static Class<?> mbeanInterfaceOf(final Class<?> type) {
+		final List<Class<?>> candidates = new ArrayList<Class<?>>();
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			for (final Class<?> i : c.getInterfaces()) {
+				if (JMX.isMXBeanInterface(i) || i.getName().equals(c.getName() + "MBean"))
+					candidates.add(i);
+			}
+		}
+
+		Class<?> mostSpecific = null;
+		for (final Class<?> candidate : candidates) {
+			if (mostSpecific == null || mostSpecific.isAssignableFrom(candidate))
+				mostSpecific = candidate;
+		}
+		checkArgument(mostSpecific != null, "Type '" + type.getName() + "' does NOT implement any MBean or MXBean interface.");
+		for (final Class<?> candidate : candidates)
+			checkArgument(candidate.isAssignableFrom(mostSpecific), "Type '" + type.getName() + "' implements several unrelated MBean interfaces: "
+					+ candidates);
+		return mostSpecific;
+	}
+
+	private static final class MBeanReference extends WeakReference<Object> implements InvocationHandler {
+		private final ObjectName objectName;
+
+		MBeanReference(final Object mbean, final ObjectName objectName) {
+			super(mbean, COLLECTED);
+			this.objectName = objectName;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final Object mbean = get();
+			if (mbean == null)
+				throw new IllegalStateException("MBean '" + objectName + "' has been garbage-collected.");
+			try {
+				return method.invoke(mbean, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	private static final class WeakStandardMBean extends StandardMBean {
+		private final String className;
+		private final MBeanReference reference;
+
+		WeakStandardMBean(final Object proxy, final Class<?> mbeanInterface, final boolean isMXBean, final String className,
+				final MBeanReference reference) {
+			super(proxy, cast(mbeanInterface), isMXBean);
+			this.className = className;
+			this.reference = reference;
+		}
+
+		@SuppressWarnings("unchecked")
+		private static Class<Object> cast(final Class<?> mbeanInterface) {
+			return (Class<Object>) mbeanInterface;
+		}
+
+		@Override
+		protected String getClassName(final MBeanInfo info) {
+			return className;
+		}
+	}
+}
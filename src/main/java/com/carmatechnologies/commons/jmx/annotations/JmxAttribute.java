@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Exposes a field, a getter ({@code getX()} or {@code isX()}) or a setter ({@code setX(value)}) as the attribute of an MBean, when registered via
+ * {@link com.carmatechnologies.commons.jmx.MBeans}. Fields and methods may be private.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.METHOD })
+public @interface JmxAttribute {
+	/**
+	 * @return the attribute's name, by default the field's name or the method's name without its {@code get}/{@code is}/{@code set} prefix.
+	 */
+	String name() default "";
+
+	String description() default "";
+
+	/**
+	 * @return whether an annotated, non-final, field can be set via JMX. Ignored for methods: annotate the setter instead.
+	 */
+	boolean writable() default false;
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Describes a class with {@link JmxAttribute}, {@link JmxMetric} or {@link JmxOperation} members, and makes
+ * {@link com.carmatechnologies.commons.jmx.processor.JmxMBeanProcessor} generate, at compile time, a {@code <ClassName>MBeanAdapter} class
+ * next to it. The adapter holds a static {@link javax.management.MBeanInfo}, accesses members directly instead of via reflection, and registers
+ * instances via {@code <ClassName>MBeanAdapter.register(instance, builder)}. Annotated members must therefore NOT be private.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface JmxMBean {
+	String description() default "";
+}
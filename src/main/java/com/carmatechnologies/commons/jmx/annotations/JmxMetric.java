@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Exposes a numeric field or getter as a read-only attribute of an MBean, when registered via {@link com.carmatechnologies.commons.jmx.MBeans}.
+ * Fields may also be {@link java.util.concurrent.atomic.AtomicInteger}s or {@link java.util.concurrent.atomic.AtomicLong}s, exposed as their
+ * current value. The metric's type and unit are part of the attribute's descriptor, for monitoring tools.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.METHOD })
+public @interface JmxMetric {
+	enum Type {
+		COUNTER, GAUGE
+	}
+
+	/**
+	 * @return the metric's name, by default the field's name or the method's name without its {@code get} prefix.
+	 */
+	String name() default "";
+
+	String description() default "";
+
+	Type type() default Type.GAUGE;
+
+	/**
+	 * @return the metric's unit, e.g. {@code bytes} or {@code ms}.
+	 */
+	String unit() default "";
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import javax.management.MBeanOperationInfo;
+
+/**
+ * Exposes a method as an operation of an MBean, when registered via {@link com.carmatechnologies.commons.jmx.MBeans}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface JmxOperation {
+	/**
+	 * @return the operation's name, by default the method's name.
+	 */
+	String name() default "";
+
+	String description() default "";
+
+	/**
+	 * @return one of {@link MBeanOperationInfo#INFO}, {@link MBeanOperationInfo#ACTION}, {@link MBeanOperationInfo#ACTION_INFO} or
+	 *         {@link MBeanOperationInfo#UNKNOWN}.
+	 */
+	int impact() default MBeanOperationInfo.UNKNOWN;
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Lazily connected, and reconnected once invalidated, connection to a single JMX endpoint.
+ * <p>
+ * Connecting, and closing, may block for as long as the OS' TCP timeouts, e.g. on a blackholed host, so neither is ever done while holding a
+ * lock callers could wait for: at most one thread connects at a time, others failing fast meanwhile, and stale connections are closed
+ * asynchronously.
+ */
+final class Endpoint implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(Endpoint.class);
+	private static final Executor CLOSER = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+			.setNameFormat("commons-jmx-closer-%d").build());
+
+	private final JMXServiceURL url;
+	private final Map<String, ?> environment;
+	private final AtomicReference<Connection> current = new AtomicReference<Connection>();
+	private final AtomicBoolean connecting = new AtomicBoolean();
+	private final AtomicBoolean querying = new AtomicBoolean();
+
+	Endpoint(final JMXServiceURL url, final Map<String, ?> environment) {
+		this.url = checkNotNull(url, "JMX service URL must NOT be null.");
+		this.environment = environment;
+	}
+
+	JMXServiceURL url() {
+		return url;
+	}
+
+	MBeanServerConnection connection() throws IOException {
+		final Connection connected = current.get();
+		if (connected != null)
+			return connected.connection;
+		if (!connecting.compareAndSet(false, true))
+			throw new IOException("Still connecting to '" + url + "'.");
+
+		try {
+			final JMXConnector connector = JMXConnectorFactory.connect(url, environment);
+			final Connection created = new Connection(connector, connector.getMBeanServerConnection());
+			if (!current.compareAndSet(null, created)) {
+				closeAsynchronously(created);
+				throw new IOException("Connection to '" + url + "' has been closed while connecting.");
+			}
+			return created.connection;
+		} finally {
+			connecting.set(false);
+		}
+	}
+
+	/**
+	 * @return {@code true} if no other query is running against this endpoint, in which case {@link #endQuery()} must be called once done, or
+	 *         {@code false} if a previous query is still running, e.g. blocked reading from a hung JVM.
+	 */
+	boolean startQuery() {
+		return querying.compareAndSet(false, true);
+	}
+
+	void endQuery() {
+		querying.set(false);
+	}
+
+	/**
+	 * Forgets the current connection, e.g. after it failed or hung, so that the next call reconnects, and closes it in the background.
+	 */
+	void invalidate() {
+		closeAsynchronously(current.getAndSet(null));
+	}
+
+	@Override
+	public void close() {
+		invalidate();
+	}
+
+	private void closeAsynchronously(final Connection stale) {
+		if (stale == null)
+			return;
+		CLOSER.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					stale.connector.close();
+				} catch (IOException e) {
+					LOGGER.debug("Failed to close connection to '" + url + "'.", e);
+				}
+			}
+		});
+	}
+
+	@Override
+	public String toString() {
+		return url.toString();
+	}
+
+	private static final class Connection {
+		private final JMXConnector connector;
+		private final MBeanServerConnection connection;
+
+		Connection(final JMXConnector connector, final MBeanServerConnection connection) {
+			this.connector = connector;
+			this.connection = connection;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.client;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Attributes fetched by {@link JmxFederation#query(ObjectName, String...)}, per node, i.e. per JMX service URL, along with the nodes which failed
+ * or timed out, and aggregations of numeric attributes across nodes.
+ */
+public final class FederatedAttributes {
+	private final Map<String, Map<ObjectName, Map<String, Object>>> values;
+	private final Map<String, Throwable> failures;
+
+	FederatedAttributes(final Map<String, Map<ObjectName, Map<String, Object>>> values, final Map<String, Throwable> failures) {
+		this.values = ImmutableMap.copyOf(values);
+		this.failures = ImmutableMap.copyOf(failures);
+	}
+
+	/**
+	 * @return the attributes of each matching MBean, per node which responded in time.
+	 */
+	public Map<String, Map<ObjectName, Map<String, Object>>> values() {
+		return values;
+	}
+
+	/**
+	 * @return the failure of each node which did NOT respond in time, e.g. a {@link java.util.concurrent.TimeoutException} or an
+	 *         {@link java.io.IOException}.
+	 */
+	public Map<String, Throwable> failures() {
+		return failures;
+	}
+
+	public int respondingCount() {
+		return values.size();
+	}
+
+	/**
+	 * @return the sum of the provided numeric attribute over all matching MBeans of all responding nodes.
+	 */
+	public double sum(final String attribute) {
+		double sum = 0;
+		for (final double nodeSum : perNode(attribute).values())
+			sum += nodeSum;
+		return sum;
+	}
+
+	/**
+	 * @return the maximum of the provided numeric attribute over all matching MBeans of all responding nodes, or {@link Double#NaN} if none has it.
+	 */
+	public double max(final String attribute) {
+		double max = Double.NaN;
+		for (final Map<ObjectName, Map<String, Object>> node : values.values()) {
+			for (final Map<String, Object> attributes : node.values()) {
+				final Object value = attributes.get(attribute);
+				if (value instanceof Number && (Double.isNaN(max) || ((Number) value).doubleValue() > max))
+					max = ((Number) value).doubleValue();
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return the sum of the provided numeric attribute over all matching MBeans, per responding node.
+	 */
+	public Map<String, Double> perNode(final String attribute) {
+		final Map<String, Double> perNode = new LinkedHashMap<String, Double>();
+		for (final Map.Entry<String, Map<ObjectName, Map<String, Object>>> node : values.entrySet()) {
+			double sum = 0;
+			for (final Map<String, Object> attributes : node.getValue().values()) {
+				final Object value = attributes.get(attribute);
+				if (value instanceof Number)
+					sum += ((Number) value).doubleValue();
+			}
+			perNode.put(node.getKey(), sum);
+		}
+		return Collections.unmodifiableMap(perNode);
+	}
+
+	@Override
+	public String toString() {
+		return "FederatedAttributes [values=" + values + ", failures=" + failures + "]";
+	}
+}
@@ -0,0 +1,350 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.remote.JMXServiceURL;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Client reading many attributes of a single JVM efficiently:
+ * <ul>
+ * <li>attributes requested in a {@link Batch} are coalesced into a single {@code getAttributes} call per MBean,</li>
+ * <li>these calls are sent concurrently over a pool of connections, instead of waiting for each round trip in turn,</li>
+ * <li>{@link MBeanInfo}s are cached, e.g. to read all readable attributes of an MBean without fetching its info every time,</li>
+ * <li>{@link #poll(Batch, long, TimeUnit, ChangeListener)} re-reads a batch periodically and only notifies the values which changed.</li>
+ * </ul>
+ * Each batch gets at most the reader's timeout to be read, connections which did NOT answer in time being reopened.
+ */
+public class JmxAttributeReader implements Closeable {
+	public static final int DEFAULT_CONNECTIONS = 2;
+	public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+	private static final Logger LOGGER = LoggerFactory.getLogger(JmxAttributeReader.class);
+
+	private final List<Endpoint> connections;
+	private final AtomicInteger next = new AtomicInteger();
+	private final ExecutorService executor;
+	private final ScheduledExecutorService scheduler;
+	private final ConcurrentMap<ObjectName, MBeanInfo> infos = new ConcurrentHashMap<ObjectName, MBeanInfo>();
+	private final AtomicLong roundTrips = new AtomicLong();
+	private final long timeoutNanos;
+
+	public JmxAttributeReader(final JMXServiceURL url) {
+		this(url, DEFAULT_CONNECTIONS, DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS, Collections.<String, Object> emptyMap());
+	}
+
+	/**
+	 * @param environment
+	 *            passed to {@link javax.management.remote.JMXConnectorFactory#connect(JMXServiceURL, Map)}, e.g. credentials.
+	 */
+	public JmxAttributeReader(final JMXServiceURL url, final int connections, final long timeout, final TimeUnit unit,
+			final Map<String, ?> environment) {
+		checkNotNull(url, "JMX service URL must NOT be null.");
+		checkArgument(connections > 0, "Number of connections must be strictly positive, but was: " + connections);
+		checkArgument(timeout > 0, "Timeout must be strictly positive, but was: " + timeout);
+		checkNotNull(unit, "Timeout's time unit must NOT be null.");
+		checkNotNull(environment, "JMX environment must NOT be null.");
+		final ImmutableList.Builder<Endpoint> builder = ImmutableList.builder();
+		for (int i = 0; i < connections; ++i)
+			builder.add(new Endpoint(url, environment));
+		this.connections = builder.build();
+		this.executor = Executors.newFixedThreadPool(connections, new ThreadFactoryBuilder().setDaemon(true)
+				.setNameFormat("commons-jmx-reader-%d").build());
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+				.setNameFormat("commons-jmx-poller-%d").build());
+		this.timeoutNanos = unit.toNanos(timeout);
+	}
+
+	private Endpoint nextConnection() {
+		return connections.get((next.getAndIncrement() & Integer.MAX_VALUE) % connections.size());
+	}
+
+	public Batch batch() {
+		return new Batch();
+	}
+
+	/**
+	 * @return the provided MBean's info, only fetched the first time it is requested, or after the MBean disappeared.
+	 */
+	public MBeanInfo mbeanInfo(final ObjectName name) throws Exception {
+		checkNotNull(name, "Object name must NOT be null.");
+		MBeanInfo info = infos.get(name);
+		if (info == null) {
+			final Endpoint endpoint = nextConnection();
+			try {
+				roundTrips.incrementAndGet();
+				info = endpoint.connection().getMBeanInfo(name);
+			} catch (IOException e) {
+				endpoint.invalidate();
+				throw e;
+			}
+			infos.put(name, info);
+		}
+		return info;
+	}
+
+	/**
+	 * @return the number of requests sent so far, i.e. {@code getAttributes} and {@code getMBeanInfo} calls.
+	 */
+	public long roundTrips() {
+		return roundTrips.get();
+	}
+
+	/**
+	 * Re-reads the provided batch every interval, and notifies the provided listener of each value which changed since the previous read, the first
+	 * read notifying all values. Values which disappeared, e.g. once their MBean got unregistered, are notified with a {@code null} current value.
+	 * Reads never overlap, and a failed read, or a failing listener, is notified, or logged, but does NOT stop polling.
+	 */
+	public Poller poll(final Batch batch, final long interval, final TimeUnit unit, final ChangeListener listener) {
+		checkNotNull(batch, "Batch must NOT be null.");
+		checkArgument(interval > 0, "Polling interval must be strictly positive, but was: " + interval);
+		checkNotNull(unit, "Polling interval's time unit must NOT be null.");
+		checkNotNull(listener, "Change listener must NOT be null.");
+		final Poller poller = new Poller(batch.copy(), listener);
+		poller.future = scheduler.scheduleWithFixedDelay(poller, 0, interval, unit);
+		return poller;
+	}
+
+	/**
+	 * Closes all connections and stops all polling.
+	 */
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+		executor.shutdownNow();
+		for (final Endpoint connection : connections)
+			connection.close();
+	}
+
+	public interface ChangeListener {
+		/**
+		 * @param previous
+		 *            the previous value, {@code null} on the first read.
+		 * @param current
+		 *            the current value, {@code null} if the attribute, or its MBean, could NOT be read anymore.
+		 */
+		void changed(ObjectName name, String attribute, Object previous, Object current);
+
+		void failed(Throwable cause);
+	}
+
+	/**
+	 * Attributes to read together. Attributes of the same MBean are read with a single call, and duplicates are only read once.
+	 */
+	public final class Batch {
+		private final SetMultimap<ObjectName, String> requests = LinkedHashMultimap.create();
+
+		private Batch() {
+		}
+
+		public synchronized Batch add(final ObjectName name, final String... attributes) {
+			checkNotNull(name, "Object name must NOT be null.");
+			checkNotNull(attributes, "Attributes must NOT be null.");
+			for (final String attribute : attributes)
+				requests.put(name, checkNotNull(attribute, "Attribute must NOT be null."));
+			return this;
+		}
+
+		/**
+		 * Adds all readable attributes of the provided MBean, as described by its cached {@link MBeanInfo}.
+		 */
+		public Batch addAll(final ObjectName name) throws Exception {
+			for (final MBeanAttributeInfo attribute : mbeanInfo(name).getAttributes()) {
+				if (attribute.isReadable())
+					add(name, attribute.getName());
+			}
+			return this;
+		}
+
+		private synchronized Batch copy() {
+			final Batch copy = new Batch();
+			copy.requests.putAll(requests);
+			return copy;
+		}
+
+		/**
+		 * @return the values read, per MBean, MBeans which do NOT exist anymore being omitted, as are attributes which could NOT be read.
+		 * @throws IOException
+		 *             if any connection failed, or did NOT answer within the reader's timeout.
+		 */
+		public Map<ObjectName, Map<String, Object>> execute() throws IOException, InterruptedException {
+			final Map<ObjectName, Endpoint> endpoints = new LinkedHashMap<ObjectName, Endpoint>();
+			final Map<ObjectName, Future<List<Attribute>>> futures = new LinkedHashMap<ObjectName, Future<List<Attribute>>>();
+			synchronized (this) {
+				for (final Map.Entry<ObjectName, Collection<String>> request : requests.asMap().entrySet()) {
+					final Endpoint endpoint = nextConnection();
+					endpoints.put(request.getKey(), endpoint);
+					futures.put(request.getKey(), executor.submit(read(endpoint, request.getKey(), request.getValue().toArray(new String[0]))));
+				}
+			}
+
+			final long deadline = System.nanoTime() + timeoutNanos;
+			final Map<ObjectName, Map<String, Object>> values = new LinkedHashMap<ObjectName, Map<String, Object>>();
+			IOException failure = null;
+			for (final Map.Entry<ObjectName, Future<List<Attribute>>> future : futures.entrySet()) {
+				try {
+					final Map<String, Object> beanValues = new LinkedHashMap<String, Object>();
+					for (final Attribute attribute : future.getValue().get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS))
+						beanValues.put(attribute.getName(), attribute.getValue());
+					values.put(future.getKey(), beanValues);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof InstanceNotFoundException)
+						infos.remove(future.getKey());
+					else if (e.getCause() instanceof IOException)
+						failure = (IOException) e.getCause();
+					else
+						throw new IOException("Failed to read attributes of '" + future.getKey() + "'.", e.getCause());
+				} catch (TimeoutException e) {
+					future.getValue().cancel(true);
+					endpoints.get(future.getKey()).invalidate();
+					failure = new IOException("Timed out reading attributes of '" + future.getKey() + "'.", e);
+				}
+			}
+			if (failure != null)
+				throw failure;
+			return values;
+		}
+
+		private Callable<List<Attribute>> read(final Endpoint endpoint, final ObjectName name, final String[] attributes) {
+			return new Callable<List<Attribute>>() {
+				@Override
+				public List<Attribute> call() throws Exception {
+					try {
+						roundTrips.incrementAndGet();
+						return endpoint.connection().getAttributes(name, attributes).asList();
+					} catch (IOException e) {
+						endpoint.invalidate();
+						throw e;
+					}
+				}
+			};
+		}
+	}
+
+	public final class Poller implements Runnable, Closeable {
+		private final Batch batch;
+		private final ChangeListener listener;
+		private Map<ObjectName, Map<String, Object>> previous = ImmutableMap.of();
+		private volatile ScheduledFuture<?> future;
+
+		private Poller(final Batch batch, final ChangeListener listener) {
+			this.batch = batch;
+			this.listener = listener;
+		}
+
+		@Override
+		public void run() {
+			final Map<ObjectName, Map<String, Object>> current;
+			try {
+				current = batch.execute();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				try {
+					listener.failed(e);
+				} catch (RuntimeException listenerFailure) {
+					LOGGER.error("Change listener failed, polling continues.", listenerFailure);
+				}
+				return;
+			}
+
+			notifyChanges(current);
+			previous = current;
+		}
+
+		private void notifyChanges(final Map<ObjectName, Map<String, Object>> current) {
+			for (final Map.Entry<ObjectName, Map<String, Object>> bean : current.entrySet()) {
+				final Map<String, Object> previousValues = valuesOf(previous, bean.getKey());
+				for (final Map.Entry<String, Object> value : bean.getValue().entrySet()) {
+					final Object previousValue = previousValues.get(value.getKey());
+					if (!previousValues.containsKey(value.getKey()) || !Objects.deepEquals(previousValue, value.getValue()))
+						notifyChange(bean.getKey(), value.getKey(), previousValue, value.getValue());
+				}
+			}
+			for (final Map.Entry<ObjectName, Map<String, Object>> bean : previous.entrySet()) {
+				final Map<String, Object> currentValues = valuesOf(current, bean.getKey());
+				for (final Map.Entry<String, Object> value : bean.getValue().entrySet()) {
+					if (!currentValues.containsKey(value.getKey()))
+						notifyChange(bean.getKey(), value.getKey(), value.getValue(), null);
+				}
+			}
+		}
+
+		private Map<String, Object> valuesOf(final Map<ObjectName, Map<String, Object>> values, final ObjectName name) {
+			final Map<String, Object> beanValues = values.get(name);
+			return (beanValues == null) ? Collections.<String, Object> emptyMap() : beanValues;
+		}
+
+		/**
+		 * Notifies each change on its own, so that a failing listener does NOT lose the other changes of the same read.
+		 */
+		private void notifyChange(final ObjectName name, final String attribute, final Object previousValue, final Object currentValue) {
+			try {
+				listener.changed(name, attribute, previousValue, currentValue);
+			} catch (RuntimeException e) {
+				LOGGER.error("Change listener failed on '" + name + "', attribute '" + attribute + "', polling continues.", e);
+			}
+		}
+
+		/**
+		 * Stops polling.
+		 */
+		@Override
+		public void close() {
+			final ScheduledFuture<?> scheduled = future;
+			if (scheduled != null)
+				scheduled.cancel(false);
+		}
+	}
+}
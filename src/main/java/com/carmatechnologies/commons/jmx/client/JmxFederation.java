@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.Attribute;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXServiceURL;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Client querying the MBeans of many JVMs at once, e.g. all instances of a service: each query is sent to all endpoints concurrently, using a
+ * bounded pool of threads, and each endpoint gets at most the query's timeout to answer. Attributes are fetched with a single
+ * {@code getAttributes} call per matching MBean. Connections are opened lazily, kept open between queries, and reopened after a failure.
+ * <p>
+ * Threads blocked reading from an endpoint, e.g. a hung JVM, can NOT be interrupted, and may remain blocked after the query timed out: such an
+ * endpoint is skipped, and reported as failed, until it answers, so that at most one thread per endpoint is ever stuck.
+ */
+public class JmxFederation implements Closeable {
+	public static final int DEFAULT_MAX_THREADS = 16;
+	public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+	private final List<Endpoint> endpoints;
+	private final ExecutorService executor;
+	private final long timeoutNanos;
+
+	public JmxFederation(final Collection<JMXServiceURL> urls) {
+		this(urls, Math.min(urls.size(), DEFAULT_MAX_THREADS), DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS, Collections.<String, Object> emptyMap());
+	}
+
+	/**
+	 * @param environment
+	 *            passed to {@link javax.management.remote.JMXConnectorFactory#connect(JMXServiceURL, Map)}, e.g. credentials.
+	 */
+	public JmxFederation(final Collection<JMXServiceURL> urls, final int maxThreads, final long timeout, final TimeUnit unit,
+			final Map<String, ?> environment) {
+		checkNotNull(urls, "JMX service URLs must NOT be null.");
+		checkArgument(!urls.isEmpty(), "JMX service URLs must NOT be empty.");
+		checkArgument(maxThreads > 0, "Maximum number of threads must be strictly positive, but was: " + maxThreads);
+		checkArgument(timeout > 0, "Timeout must be strictly positive, but was: " + timeout);
+		checkNotNull(unit, "Timeout's time unit must NOT be null.");
+		checkNotNull(environment, "JMX environment must NOT be null.");
+		final ImmutableList.Builder<Endpoint> builder = ImmutableList.builder();
+		for (final JMXServiceURL url : urls)
+			builder.add(new Endpoint(url, environment));
+		this.endpoints = builder.build();
+		this.executor = Executors.newFixedThreadPool(maxThreads, new ThreadFactoryBuilder().setDaemon(true)
+				.setNameFormat("commons-jmx-federation-%d").build());
+		this.timeoutNanos = unit.toNanos(timeout);
+	}
+
+	/**
+	 * Fetches the provided attributes of all MBeans matching the provided pattern, from all endpoints. Endpoints which fail or do NOT answer in
+	 * time are reported in {@link FederatedAttributes#failures()}, rather than failing the whole query.
+	 */
+	public FederatedAttributes query(final ObjectName pattern, final String... attributes) throws InterruptedException {
+		checkNotNull(pattern, "Object name pattern must NOT be null.");
+		checkNotNull(attributes, "Attributes must NOT be null.");
+		final Map<Endpoint, Future<Map<ObjectName, Map<String, Object>>>> futures = new LinkedHashMap<Endpoint, Future<Map<ObjectName, Map<String, Object>>>>();
+		for (final Endpoint endpoint : endpoints) {
+			futures.put(endpoint, executor.submit(new Callable<Map<ObjectName, Map<String, Object>>>() {
+				@Override
+				public Map<ObjectName, Map<String, Object>> call() throws Exception {
+					if (!endpoint.startQuery())
+						throw new IOException("'" + endpoint + "' is still answering a previous query.");
+					try {
+						return fetch(endpoint.connection(), pattern, attributes);
+					} finally {
+						endpoint.endQuery();
+					}
+				}
+			}));
+		}
+
+		final long deadline = System.nanoTime() + timeoutNanos;
+		final Map<String, Map<ObjectName, Map<String, Object>>> values = new LinkedHashMap<String, Map<ObjectName, Map<String, Object>>>();
+		final Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+		try {
+			for (final Map.Entry<Endpoint, Future<Map<ObjectName, Map<String, Object>>>> future : futures.entrySet()) {
+				final Endpoint endpoint = future.getKey();
+				try {
+					values.put(endpoint.toString(), future.getValue().get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS));
+				} catch (ExecutionException e) {
+					failures.put(endpoint.toString(), e.getCause());
+					endpoint.invalidate();
+				} catch (TimeoutException e) {
+					future.getValue().cancel(true);
+					failures.put(endpoint.toString(), e);
+					endpoint.invalidate();
+				}
+			}
+		} catch (InterruptedException e) {
+			for (final Future<?> future : futures.values())
+				future.cancel(true);
+			throw e;
+		}
+		return new FederatedAttributes(values, failures);
+	}
+
+	private static Map<ObjectName, Map<String, Object>> fetch(final MBeanServerConnection connection, final ObjectName pattern,
+			final String[] attributes) throws Exception {
+		final Map<ObjectName, Map<String, Object>> values = new LinkedHashMap<ObjectName, Map<String, Object>>();
+		for (final ObjectName name : connection.queryNames(pattern, null)) {
+			final List<Attribute> read;
+			try {
+				read = connection.getAttributes(name, attributes).asList();
+			} catch (InstanceNotFoundException e) {
+				// Unregistered since queried: skipped, like MBeans registered since.
+				continue;
+			}
+			final Map<String, Object> beanValues = new LinkedHashMap<String, Object>();
+			for (final Attribute attribute : read)
+				beanValues.put(attribute.getName(), attribute.getValue());
+			values.put(name, beanValues);
+		}
+		return values;
+	}
+
+	/**
+	 * Closes all connections and stops all threads.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		for (final Endpoint endpoint : endpoints)
+			endpoint.close();
+	}
+}
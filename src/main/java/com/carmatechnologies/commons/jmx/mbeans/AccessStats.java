@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.mbeans;
+
+import java.beans.ConstructorProperties;
+
+public class AccessStats {
+	private final String objectName;
+	private final String member;
+	private final String access;
+	private final long count;
+	private final long errorCount;
+	private final long totalNanos;
+	private final long totalResponseBytes;
+	private final HistogramSnapshot latencyNanos;
+	private final HistogramSnapshot responseBytes;
+	private final String lastCaller;
+
+	@ConstructorProperties({ "objectName", "member", "access", "count", "errorCount", "totalNanos", "totalResponseBytes", "latencyNanos",
+			"responseBytes", "lastCaller" })
+	public AccessStats(final String objectName, final String member, final String access, final long count, final long errorCount,
+			final long totalNanos, final long totalResponseBytes, final HistogramSnapshot latencyNanos, final HistogramSnapshot responseBytes,
+			final String lastCaller) {
+		this.objectName = objectName;
+		this.member = member;
+		this.access = access;
+		this.count = count;
+		this.errorCount = errorCount;
+		this.totalNanos = totalNanos;
+		this.totalResponseBytes = totalResponseBytes;
+		this.latencyNanos = latencyNanos;
+		this.responseBytes = responseBytes;
+		this.lastCaller = lastCaller;
+	}
+
+	public String getObjectName() {
+		return objectName;
+	}
+
+	/**
+	 * @return the name of the attribute or operation accessed.
+	 */
+	public String getMember() {
+		return member;
+	}
+
+	/**
+	 * @return {@code read}, {@code write} or {@code invoke}.
+	 */
+	public String getAccess() {
+		return access;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return the estimated size of all responses, i.e. roughly what the accesses cost to serialise and send.
+	 */
+	public long getTotalResponseBytes() {
+		return totalResponseBytes;
+	}
+
+	public HistogramSnapshot getLatencyNanos() {
+		return latencyNanos;
+	}
+
+	public HistogramSnapshot getResponseBytes() {
+		return responseBytes;
+	}
+
+	public String getLastCaller() {
+		return lastCaller;
+	}
+
+	@Override
+	public String toString() {
+		return "AccessStats [objectName=" + objectName + ", member=" + member + ", access=" + access + ", count=" + count + ", errorCount="
+				+ errorCount + ", totalNanos=" + totalNanos + ", totalResponseBytes=" + totalResponseBytes + ", lastCaller=" + lastCaller + "]";
+	}
+}
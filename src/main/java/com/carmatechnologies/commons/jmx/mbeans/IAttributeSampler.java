@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.mbeans;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.management.MXBean;
+
+@MXBean
+public interface IAttributeSampler {
+	long getIntervalMillis();
+
+	int getSeriesCount();
+
+	long getMemoryBytes();
+
+	/**
+	 * @return the names of all sampled MBeans.
+	 */
+	Set<String> sampledMBeans();
+
+	/**
+	 * @return the names of the sampled attributes of the provided MBean, e.g. {@code Size} or {@code InsertLatencyNanos.p99}.
+	 */
+	Set<String> sampledAttributes(String objectName);
+
+	/**
+	 * @return all retained samples of the provided attribute, oldest first.
+	 */
+	List<Sample> history(String objectName, String attribute);
+
+	/**
+	 * @return the retained samples of the provided attribute taken in the last {@code millis} milliseconds, oldest first.
+	 */
+	List<Sample> recentHistory(String objectName, String attribute, long millis);
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.mbeans;
+
+import java.util.Map;
+
+import javax.management.MXBean;
+
+/**
+ * Rolling summary of a JFR event type, e.g. {@code jdk.JavaMonitorEnter}, over the last {@link #getWindowMillis()} milliseconds.
+ */
+@MXBean
+public interface IJfrEventSummary {
+	String getEventName();
+
+	long getWindowMillis();
+
+	long getCount();
+
+	double getEventsPerSecond();
+
+	long getTotalDurationNanos();
+
+	long getMaxDurationNanos();
+
+	/**
+	 * @return the sum of the event's weight field, e.g. the bytes allocated represented by {@code jdk.ObjectAllocationSample} events, if any.
+	 */
+	long getTotalWeight();
+
+	/**
+	 * @return the {@code limit} keys, e.g. monitor or allocated classes, with the highest total weight, or total duration for events without
+	 *         weight, highest first.
+	 */
+	Map<String, Long> topKeys(int limit);
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.mbeans;
+
+import javax.management.MXBean;
+
+/**
+ * Statistics are those of Guava's {@code CacheStats}, hence only maintained if the cache has been built using {@code recordStats()}.
+ */
+@MXBean
+public interface IJmxCache extends IJmxMap {
+	long getEstimatedSize();
+
+	long getRequestCount();
+
+	long getHitCount();
+
+	double getHitRate();
+
+	long getMissCount();
+
+	double getMissRate();
+
+	long getLoadCount();
+
+	long getLoadSuccessCount();
+
+	long getLoadExceptionCount();
+
+	double getLoadExceptionRate();
+
+	long getTotalLoadTimeNanos();
+
+	double getAverageLoadPenaltyNanos();
+
+	long getEvictionCount();
+
+	void invalidateKey(String key);
+
+	void invalidateAll();
+}
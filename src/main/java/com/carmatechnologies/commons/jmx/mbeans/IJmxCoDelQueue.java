@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.mbeans;
+
+import javax.management.MXBean;
+
+/**
+ * Queue shedding elements based on how long they waited, i.e. their sojourn time, rather than on its depth, exposing its CoDel settings, which
+ * can be tuned at runtime, and how much it sheds.
+ */
+@MXBean
+public interface IJmxCoDelQueue extends IJmxQueue {
+	int getCapacity();
+
+	/**
+	 * @return the acceptable standing queue delay, i.e. the minimum sojourn time over an interval above which elements start being dropped.
+	 */
+	long getTargetMillis();
+
+	void setTargetMillis(long targetMillis);
+
+	/**
+	 * @return how long the sojourn time must stay above target before dropping starts, typically the worst expected round trip time.
+	 */
+	long getIntervalMillis();
+
+	void setIntervalMillis(long intervalMillis);
+
+	boolean isDropping();
+
+	long getDropCount();
+
+	/**
+	 * @return the ratio of dequeued elements which have been dropped, since creation.
+	 */
+	double getDropRatio();
+
+	/**
+	 * @return the number of elements dropped per second during the last complete interval.
+	 */
+	double getDropsPerSecond();
+
+	/**
+	 * @return the minimum sojourn time during the last complete interval, i.e. the delay no element escaped.
+	 */
+	long getStandingDelayNanos();
+
+	/**
+	 * @return the sojourn time of dequeued elements, dropped or not, unless instrumentation is {@code OFF}.
+	 */
+	HistogramSnapshot getSojournNanos();
+}
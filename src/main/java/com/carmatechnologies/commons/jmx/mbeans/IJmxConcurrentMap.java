@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.mbeans;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MXBean;
+
+@MXBean
+public interface IJmxConcurrentMap extends IJmxMap {
+	long getHitCount();
+
+	long getMissCount();
+
+	long getWriteCount();
+
+	long getRemoveCount();
+
+	HistogramSnapshot getReadLatencyNanos();
+
+	HistogramSnapshot getWriteLatencyNanos();
+
+	/**
+	 * @return the current version of this map, incremented on each change, if changes are tracked, or 0.
+	 */
+	long getChangeVersion();
+
+	/**
+	 * Reads the entries changed since the provided version, which is typically the version returned by the previous call, or 0 the first time.
+	 */
+	MapChanges getChangesSince(long version);
+
+	/**
+	 * Renders, largest first, at most {@code limit} entries with the largest numeric values. Entries with non-numeric values are ignored.
+	 */
+	Map<String, String> topByValue(int limit);
+
+	/**
+	 * Renders, largest first, at most {@code limit} entries with the largest values according to the provided comparator, see
+	 * {@link #getValueComparators()}.
+	 */
+	Map<String, String> topBy(String comparator, int limit);
+
+	/**
+	 * @return the names of comparators available to {@link #topBy(String, int)}.
+	 */
+	List<String> getValueComparators();
+}
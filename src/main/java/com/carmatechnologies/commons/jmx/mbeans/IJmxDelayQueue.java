@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.mbeans;
+
+import javax.management.MXBean;
+
+@MXBean
+public interface IJmxDelayQueue extends IJmxQueue {
+	/**
+	 * @return the remaining delay of the head of the queue, negative if already expired, or {@code null} if the queue is empty.
+	 */
+	Long getNextExpiryDelayMillis();
+
+	/**
+	 * @return the number of elements whose delay has expired, but which have not been taken yet.
+	 */
+	int getExpiredCount();
+
+	/**
+	 * @return the distribution of elements' lateness, i.e. the time elapsed between their expiry and their removal from the queue.
+	 */
+	HistogramSnapshot getLatenessNanos();
+}
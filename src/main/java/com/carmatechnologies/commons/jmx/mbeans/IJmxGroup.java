@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.mbeans;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MXBean;
+
+/**
+ * Single MBean standing for many data structures, its size being the sum of all members' sizes.
+ */
+@MXBean
+public interface IJmxGroup extends IJmxDataStructure {
+	int getMemberCount();
+
+	/**
+	 * @return the names and sizes of the {@code limit} largest members, largest first.
+	 */
+	Map<String, Integer> topMembers(int limit);
+
+	/**
+	 * @return the size of the provided member, or {@code null} if there is no such member.
+	 */
+	Integer memberSize(String member);
+
+	/**
+	 * @return the items of the provided member, as {@code key=value} for maps, or {@code null} if there is no such member.
+	 */
+	List<String> memberItems(String member);
+}
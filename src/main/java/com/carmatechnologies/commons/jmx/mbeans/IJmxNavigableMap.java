@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.mbeans;
+
+import java.util.Map;
+
+import javax.management.MXBean;
+
+@MXBean
+public interface IJmxNavigableMap extends IJmxConcurrentMap {
+	String getFirstKey();
+
+	String getLastKey();
+
+	/**
+	 * Counts entries with keys ranging from {@code fromKey} (inclusive) to {@code toKey} (exclusive).
+	 */
+	int countRange(String fromKey, String toKey);
+
+	/**
+	 * Renders, in key order, at most {@code limit} entries with keys ranging from {@code fromKey} (inclusive) to {@code toKey} (exclusive).
+	 */
+	Map<String, String> subMapItems(String fromKey, String toKey, int limit);
+
+	/**
+	 * Renders, in key order, at most {@code limit} entries with keys strictly less than {@code toKey}.
+	 */
+	Map<String, String> headMapItems(String toKey, int limit);
+
+	/**
+	 * Renders, in key order, at most {@code limit} entries with keys greater than or equal to {@code fromKey}.
+	 */
+	Map<String, String> tailMapItems(String fromKey, int limit);
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.mbeans;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MXBean;
+
+@MXBean
+public interface IMBeanServerProfiler {
+	/**
+	 * @return the number of profiled (MBean, member, access) triples.
+	 */
+	int getProfiledCount();
+
+	long getCallCount();
+
+	/**
+	 * @return the number of calls made by each caller, identified by its authenticated principal, its RMI client host, or {@code local}.
+	 */
+	Map<String, Long> getCallers();
+
+	/**
+	 * @return the statistics of all accesses to the provided MBean.
+	 */
+	List<AccessStats> accessStats(String objectName);
+
+	/**
+	 * @return the {@code limit} most frequent accesses, most frequent first.
+	 */
+	List<AccessStats> topByCount(int limit);
+
+	/**
+	 * @return the {@code limit} accesses which took the most time overall, most expensive first.
+	 */
+	List<AccessStats> topByTotalTime(int limit);
+
+	/**
+	 * @return the {@code limit} accesses which returned the most bytes overall, largest first.
+	 */
+	List<AccessStats> topByResponseBytes(int limit);
+
+	void reset();
+}
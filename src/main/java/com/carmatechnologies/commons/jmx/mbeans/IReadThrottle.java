@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.mbeans;
+
+import java.util.Set;
+
+import javax.management.MXBean;
+
+@MXBean
+public interface IReadThrottle {
+	/**
+	 * @return the names of the attributes and operations guarded by this throttle.
+	 */
+	Set<String> getGuardedMembers();
+
+	int getMaxConcurrent();
+
+	/**
+	 * @return the number of guarded calls currently running, across all MBeans.
+	 */
+	int getActiveCount();
+
+	double getPermitsPerSecond();
+
+	long getMaxCpuTimeNanos();
+
+	long getMaxAllocatedBytes();
+
+	long getAdmitCount();
+
+	long getConcurrencyRejectCount();
+
+	long getRateRejectCount();
+
+	/**
+	 * @return the number of calls rejected because a previous call to the same member exceeded its CPU or allocation budget.
+	 */
+	long getBudgetRejectCount();
+
+	/**
+	 * @return the number of admitted calls which exceeded their CPU or allocation budget.
+	 */
+	long getOverBudgetCount();
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.mbeans;
+
+import java.beans.ConstructorProperties;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entries of a map changed since a given version: upserted entries are rendered with their current value, removed entries as their key only. If
+ * {@code fullResync} is {@code true}, the changes since the given version are no longer known, and {@code upserted} holds all entries instead.
+ * If {@code truncated} is also {@code true}, the map was too large to render all its entries: the omitted ones are only sent once they change
+ * again, and should be read some other way, e.g. via {@code getItems()} with a larger budget or by key.
+ */
+public class MapChanges {
+	private final long version;
+	private final boolean fullResync;
+	private final boolean truncated;
+	private final Map<String, String> upserted;
+	private final List<String> removed;
+
+	@ConstructorProperties({ "version", "fullResync", "truncated", "upserted", "removed" })
+	public MapChanges(final long version, final boolean fullResync, final boolean truncated, final Map<String, String> upserted,
+			final List<String> removed) {
+		this.version = version;
+		this.fullResync = fullResync;
+		this.truncated = truncated;
+		this.upserted = upserted;
+		this.removed = removed;
+	}
+
+	/**
+	 * @return the version to provide when reading the next changes.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public boolean isFullResync() {
+		return fullResync;
+	}
+
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	public Map<String, String> getUpserted() {
+		return upserted;
+	}
+
+	public List<String> getRemoved() {
+		return removed;
+	}
+
+	@Override
+	public String toString() {
+		return "MapChanges [version=" + version + ", fullResync=" + fullResync + ", truncated=" + truncated + ", upserted=" + upserted + ", removed=" + removed + "]";
+	}
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.mbeans;
+
+import java.beans.ConstructorProperties;
+
+public class SubscriberStats {
+	private final long id;
+	private final String subscriber;
+	private final long requested;
+	private final long delivered;
+	private final long outstanding;
+
+	@ConstructorProperties({ "id", "subscriber", "requested", "delivered", "outstanding" })
+	public SubscriberStats(final long id, final String subscriber, final long requested, final long delivered, final long outstanding) {
+		this.id = id;
+		this.subscriber = subscriber;
+		this.requested = requested;
+		this.delivered = delivered;
+		this.outstanding = outstanding;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getSubscriber() {
+		return subscriber;
+	}
+
+	/**
+	 * @return the total demand ever requested, saturated at {@link Long#MAX_VALUE} for unbounded subscribers.
+	 */
+	public long getRequested() {
+		return requested;
+	}
+
+	public long getDelivered() {
+		return delivered;
+	}
+
+	/**
+	 * @return the demand requested but not delivered yet.
+	 */
+	public long getOutstanding() {
+		return outstanding;
+	}
+
+	@Override
+	public String toString() {
+		return "SubscriberStats [id=" + id + ", subscriber=" + subscriber + ", requested=" + requested + ", delivered=" + delivered
+				+ ", outstanding=" + outstanding + "]";
+	}
+}
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+import com.carmatechnologies.commons.jmx.annotations.JmxAttribute;
+import com.carmatechnologies.commons.jmx.annotations.JmxMBean;
+import com.carmatechnologies.commons.jmx.annotations.JmxMetric;
+import com.carmatechnologies.commons.jmx.annotations.JmxOperation;
+import com.carmatechnologies.commons.jmx.processor.MBeanAdapterWriter.ExportedAttribute;
+
+/**
+ * Generates a {@code <ClassName>MBeanAdapter} {@link javax.management.DynamicMBean} for each class annotated with {@link JmxMBean}, so that its
+ * {@link JmxAttribute}, {@link JmxMetric} and {@link JmxOperation} members are exposed without any reflection, neither when registering nor
+ * when reading attributes. Registered as a service, so that {@code javac} runs it whenever commons-jmx is on the compile classpath.
+ */
+@SupportedAnnotationTypes("com.carmatechnologies.commons.jmx.annotations.JmxMBean")
+public final class JmxMBeanProcessor extends AbstractProcessor {
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+		for (final Element element : roundEnv.getElementsAnnotatedWith(JmxMBean.class)) {
+			try {
+				generate(collect(element));
+			} catch (InvalidElementException e) {
+				processingEnv.getMessager().printMessage(Kind.ERROR, e.getMessage(), e.element);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Kind.ERROR, "Failed to generate MBean adapter: " + e, element);
+			}
+		}
+		return true;
+	}
+
+	private MBeanAdapterWriter collect(final Element element) throws InvalidElementException {
+		check(element.getKind() == ElementKind.CLASS, "@JmxMBean can only annotate classes.", element);
+		final TypeElement type = (TypeElement) element;
+		check(!type.getModifiers().contains(Modifier.PRIVATE), "@JmxMBean class must NOT be private.", type);
+		check(type.getNestingKind() == NestingKind.TOP_LEVEL
+				|| (type.getNestingKind() == NestingKind.MEMBER && type.getModifiers().contains(Modifier.STATIC)),
+				"@JmxMBean class must be a top-level or a static nested class.", type);
+
+		final Elements elements = processingEnv.getElementUtils();
+		final Types types = processingEnv.getTypeUtils();
+		final MBeanAdapterWriter writer = new MBeanAdapterWriter(elements, types, type, type.getAnnotation(JmxMBean.class).description());
+		final Map<String, ExportedAttribute> attributes = new LinkedHashMap<String, ExportedAttribute>();
+		for (TypeElement c = type; c != null && !c.getQualifiedName().contentEquals(Object.class.getName()); c = superclassOf(c, types)) {
+			for (final Element member : c.getEnclosedElements()) {
+				if (member.getKind() == ElementKind.FIELD)
+					addField((VariableElement) member, writer, attributes);
+				else if (member.getKind() == ElementKind.METHOD)
+					addMethod((ExecutableElement) member, writer, attributes);
+			}
+		}
+		for (final ExportedAttribute attribute : attributes.values())
+			writer.add(attribute);
+		return writer;
+	}
+
+	private void addField(final VariableElement field, final MBeanAdapterWriter writer, final Map<String, ExportedAttribute> attributes)
+			throws InvalidElementException {
+		final JmxAttribute attribute = field.getAnnotation(JmxAttribute.class);
+		final JmxMetric metric = field.getAnnotation(JmxMetric.class);
+		if (attribute == null && metric == null)
+			return;
+		checkAccessible(field, writer);
+
+		final TypeMirror type = field.asType();
+		final String read = "target." + field.getSimpleName();
+		if (metric != null) {
+			final TypeMirror atomicValue = writer.atomicValueOf(type);
+			final TypeMirror value = (atomicValue == null) ? type : atomicValue;
+			check(writer.isNumeric(value), "Metric must be numeric, but is: " + type, field);
+			attributeFor(nameOf(metric.name(), field.getSimpleName().toString()), attributes).metric(metric).getter(
+					(atomicValue == null) ? read : read + ".get()", value, field, writer);
+		} else {
+			final ExportedAttribute exported = attributeFor(nameOf(attribute.name(), field.getSimpleName().toString()), attributes).describe(
+					attribute.description());
+			exported.getter(read, type, field, writer);
+			if (attribute.writable()) {
+				check(!field.getModifiers().contains(Modifier.FINAL), "Final field can NOT be writable via JMX.", field);
+				exported.setter(read + " = ", type, field, writer);
+			}
+		}
+	}
+
+	private void addMethod(final ExecutableElement method, final MBeanAdapterWriter writer, final Map<String, ExportedAttribute> attributes)
+			throws InvalidElementException {
+		final JmxAttribute attribute = method.getAnnotation(JmxAttribute.class);
+		final JmxMetric metric = method.getAnnotation(JmxMetric.class);
+		final JmxOperation operation = method.getAnnotation(JmxOperation.class);
+		if (attribute == null && metric == null && operation == null)
+			return;
+		checkAccessible(method, writer);
+
+		final String name = method.getSimpleName().toString();
+		final List<? extends VariableElement> parameters = method.getParameters();
+		final TypeMirror returnType = method.getReturnType();
+		final boolean isVoid = returnType.getKind() == TypeKind.VOID;
+		if (operation != null) {
+			writer.add(operation, method);
+		} else if (metric != null) {
+			check(parameters.isEmpty(), "Metric must NOT take any parameter.", method);
+			check(writer.isNumeric(returnType), "Metric must be numeric, but is: " + returnType, method);
+			attributeFor(nameOf(metric.name(), propertyOf(name)), attributes).metric(metric).getter("target." + name + "()", returnType, method, writer);
+		} else if (parameters.isEmpty() && !isVoid) {
+			attributeFor(nameOf(attribute.name(), propertyOf(name)), attributes).describe(attribute.description())
+					.getter("target." + name + "()", returnType, method, writer).is(name.startsWith("is") && returnType.getKind() == TypeKind.BOOLEAN);
+		} else if (parameters.size() == 1 && isVoid) {
+			attributeFor(nameOf(attribute.name(), propertyOf(name)), attributes).describe(attribute.description())
+					.setter("target." + name + "(", parameters.get(0).asType(), method, writer);
+		} else {
+			throw new InvalidElementException("Method is neither a getter nor a setter, and can NOT be a JMX attribute.", method);
+		}
+	}
+
+	private void checkAccessible(final Element member, final MBeanAdapterWriter writer) throws InvalidElementException {
+		final Set<Modifier> modifiers = member.getModifiers();
+		check(!modifiers.contains(Modifier.STATIC), "Static members can NOT be exposed via JMX.", member);
+		final boolean samePackage = processingEnv.getElementUtils().getPackageOf(member).equals(writer.packageElement());
+		check(modifiers.contains(Modifier.PUBLIC) || (samePackage && !modifiers.contains(Modifier.PRIVATE)),
+				"Member must be public, or NOT private and in the same package as its @JmxMBean class, to be exposed via its generated adapter.",
+				member);
+	}
+
+	private void generate(final MBeanAdapterWriter writer) throws IOException {
+		final JavaFileObject file = processingEnv.getFiler().createSourceFile(writer.qualifiedAdapterName(), writer.type());
+		final Writer out = file.openWriter();
+		try {
+			out.write(writer.source());
+		} finally {
+			out.close();
+		}
+	}
+
+	private static TypeElement superclassOf(final TypeElement type, final Types types) {
+		final TypeMirror superclass = type.getSuperclass();
+		return (superclass.getKind() == TypeKind.DECLARED) ? (TypeElement) types.asElement(superclass) : null;
+	}
+
+	private static ExportedAttribute attributeFor(final String name, final Map<String, ExportedAttribute> attributes) {
+		ExportedAttribute attribute = attributes.get(name);
+		if (attribute == null) {
+			attribute = new ExportedAttribute(name);
+			attributes.put(name, attribute);
+		}
+		return attribute;
+	}
+
+	/**
+	 * Same naming rules as for annotated objects registered at runtime.
+	 */
+	private static String nameOf(final String annotated, final String property) {
+		final String name = annotated.isEmpty() ? property : annotated;
+		return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+	}
+
+	private static String propertyOf(final String name) {
+		for (final String prefix : new String[] { "get", "set", "is" }) {
+			if (name.startsWith(prefix) && name.length() > prefix.length() && Character.isUpperCase(name.charAt(prefix.length())))
+				return name.substring(prefix.length());
+		}
+		return name;
+	}
+
+	static void check(final boolean condition, final String message, final Element element) throws InvalidElementException {
+		if (!condition)
+			throw new InvalidElementException(message, element);
+	}
+
+	static final class InvalidElementException extends Exception {
+		private static final long serialVersionUID = 1L;
+		private final transient Element element;
+
+		InvalidElementException(final String message, final Element element) {
+			super(message);
+			this.element = element;
+		}
+	}
+}
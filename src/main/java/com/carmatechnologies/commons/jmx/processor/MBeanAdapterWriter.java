@@ -0,0 +1,403 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.processor;
+
+import static com.carmatechnologies.commons.jmx.processor.JmxMBeanProcessor.check;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import com.carmatechnologies.commons.jmx.annotations.JmxMetric;
+import com.carmatechnologies.commons.jmx.annotations.JmxOperation;
+import com.carmatechnologies.commons.jmx.processor.JmxMBeanProcessor.InvalidElementException;
+
+/**
+ * Writes the source of the {@link javax.management.DynamicMBean} adapter of a {@link com.carmatechnologies.commons.jmx.annotations.JmxMBean}
+ * class. Generated code only uses fully qualified names, so that it never clashes with the adapted class' own imports or nested types.
+ */
+final class MBeanAdapterWriter {
+	private static final Set<String> EXPOSED_AS_IS = new HashSet<String>(Arrays.asList("java.lang.Boolean", "java.lang.Byte", "java.lang.Short",
+			"java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double", "java.lang.Character", "java.lang.String", "java.util.Date",
+			"java.math.BigDecimal", "java.math.BigInteger", "javax.management.ObjectName"));
+
+	private final Elements elements;
+	private final Types types;
+	private final TypeElement type;
+	private final String description;
+	private final PackageElement packageElement;
+	private final String adapterName;
+	private final List<ExportedAttribute> attributes = new ArrayList<ExportedAttribute>();
+	private final List<String> operationKeys = new ArrayList<String>();
+	private final List<String> operationInvocations = new ArrayList<String>();
+	private final List<String> operationInfos = new ArrayList<String>();
+
+	MBeanAdapterWriter(final Elements elements, final Types types, final TypeElement type, final String description) {
+		this.elements = elements;
+		this.types = types;
+		this.type = type;
+		this.description = description;
+		this.packageElement = elements.getPackageOf(type);
+		this.adapterName = adapterNameOf(type);
+	}
+
+	private static String adapterNameOf(final TypeElement type) {
+		final StringBuilder name = new StringBuilder(type.getSimpleName());
+		for (Element e = type.getEnclosingElement(); e instanceof TypeElement; e = e.getEnclosingElement())
+			name.insert(0, '_').insert(0, e.getSimpleName());
+		return name.append("MBeanAdapter").toString();
+	}
+
+	TypeElement type() {
+		return type;
+	}
+
+	PackageElement packageElement() {
+		return packageElement;
+	}
+
+	String qualifiedAdapterName() {
+		return packageElement.isUnnamed() ? adapterName : packageElement.getQualifiedName() + "." + adapterName;
+	}
+
+	void add(final ExportedAttribute attribute) {
+		attributes.add(attribute);
+	}
+
+	void add(final JmxOperation operation, final ExecutableElement method) throws InvalidElementException {
+		final String name = operation.name().isEmpty() ? method.getSimpleName().toString() : operation.name();
+		final List<? extends VariableElement> parameters = method.getParameters();
+		final StringBuilder key = new StringBuilder(name).append('(');
+		final StringBuilder arguments = new StringBuilder();
+		final StringBuilder parameterInfos = new StringBuilder();
+		for (int i = 0; i < parameters.size(); ++i) {
+			final TypeMirror parameterType = parameters.get(i).asType();
+			key.append((i == 0) ? "" : ",").append(className(parameterType));
+			arguments.append((i == 0) ? "" : ", ").append('(').append(castName(parameterType)).append(") args[").append(i).append(']');
+			parameterInfos.append((i == 0) ? "" : ", ").append("new javax.management.MBeanParameterInfo(")
+					.append(literal(parameters.get(i).getSimpleName().toString())).append(", ").append(literal(className(parameterType)))
+					.append(", \"\")");
+		}
+		key.append(')');
+		check(!operationKeys.contains(key.toString()), "Duplicate JMX operation: " + key, method);
+
+		final TypeMirror returnType = method.getReturnType();
+		final String call = "target." + method.getSimpleName() + "(" + arguments + ")";
+		final boolean isVoid = returnType.getKind() == TypeKind.VOID;
+		operationKeys.add(key.toString());
+		operationInvocations.add(isVoid ? call + ";\n\t\t\t\treturn null;" : "return " + exposed(call, returnType) + ";");
+		final String signature = parameters.isEmpty() ? "new javax.management.MBeanParameterInfo[0]" : "new javax.management.MBeanParameterInfo[] { "
+				+ parameterInfos + " }";
+		operationInfos.add("new javax.management.MBeanOperationInfo(" + literal(name) + ", " + literal(operation.description()) + ", " + signature
+				+ ", " + literal(isVoid ? "void" : exposedTypeName(returnType))
+				+ ", " + operation.impact() + ")");
+	}
+
+	TypeMirror atomicValueOf(final TypeMirror type) {
+		final String name = types.erasure(type).toString();
+		if ("java.util.concurrent.atomic.AtomicLong".equals(name))
+			return types.getPrimitiveType(TypeKind.LONG);
+		if ("java.util.concurrent.atomic.AtomicInteger".equals(name))
+			return types.getPrimitiveType(TypeKind.INT);
+		return null;
+	}
+
+	boolean isNumeric(final TypeMirror type) {
+		switch (type.getKind()) {
+		case BYTE:
+		case SHORT:
+		case INT:
+		case LONG:
+		case FLOAT:
+		case DOUBLE:
+			return true;
+		case DECLARED:
+			return types.isAssignable(type, elements.getTypeElement(Number.class.getName()).asType());
+		default:
+			return false;
+		}
+	}
+
+	boolean isExposedAsIs(final TypeMirror type) {
+		return type.getKind().isPrimitive() || (type.getKind() == TypeKind.DECLARED && EXPOSED_AS_IS.contains(types.erasure(type).toString()));
+	}
+
+	boolean isSameType(final TypeMirror a, final TypeMirror b) {
+		return types.isSameType(types.erasure(a), types.erasure(b));
+	}
+
+	/**
+	 * Values of types a generic JMX client may NOT know are exposed as strings.
+	 */
+	String exposed(final String expression, final TypeMirror type) {
+		return isExposedAsIs(type) ? expression : "java.lang.String.valueOf(" + expression + ")";
+	}
+
+	String exposedTypeName(final TypeMirror type) {
+		return isExposedAsIs(type) ? className(type) : String.class.getName();
+	}
+
+	String castName(final TypeMirror type) {
+		return type.getKind().isPrimitive() ? types.boxedClass((PrimitiveType) type).getQualifiedName().toString() : types.erasure(type).toString();
+	}
+
+	/**
+	 * @return the name of the provided type, as per {@link Class#getName()}, as used in MBean infos and operation signatures.
+	 */
+	String className(final TypeMirror type) {
+		if (type.getKind().isPrimitive())
+			return type.getKind().name().toLowerCase();
+		if (type.getKind() == TypeKind.ARRAY)
+			return "[" + descriptor(((ArrayType) type).getComponentType());
+		return elements.getBinaryName((TypeElement) types.asElement(types.erasure(type))).toString();
+	}
+
+	private String descriptor(final TypeMirror type) {
+		switch (type.getKind()) {
+		case BOOLEAN:
+			return "Z";
+		case BYTE:
+			return "B";
+		case CHAR:
+			return "C";
+		case SHORT:
+			return "S";
+		case INT:
+			return "I";
+		case LONG:
+			return "J";
+		case FLOAT:
+			return "F";
+		case DOUBLE:
+			return "D";
+		case ARRAY:
+			return "[" + descriptor(((ArrayType) type).getComponentType());
+		default:
+			return "L" + className(type) + ";";
+		}
+	}
+
+	static String literal(final String value) {
+		final StringBuilder literal = new StringBuilder("\"");
+		for (final char c : value.toCharArray()) {
+			switch (c) {
+			case '"':
+				literal.append("\\\"");
+				break;
+			case '\\':
+				literal.append("\\\\");
+				break;
+			case '\n':
+				literal.append("\\n");
+				break;
+			case '\r':
+				literal.append("\\r");
+				break;
+			case '\t':
+				literal.append("\\t");
+				break;
+			default:
+				if (c < ' ' || c > '~')
+					literal.append(String.format("\\u%04x", (int) c));
+				else
+					literal.append(c);
+			}
+		}
+		return literal.append('"').toString();
+	}
+
+	String source() {
+		final String target = type.getQualifiedName().toString();
+		final StringBuilder out = new StringBuilder();
+		if (!packageElement.isUnnamed())
+			out.append("package ").append(packageElement.getQualifiedName()).append(";\n\n");
+		out.append("/**\n * MBean adapter for {@link ").append(target).append("}, generated by ").append(JmxMBeanProcessor.class.getName())
+				.append(": do NOT edit.\n */\n");
+		out.append("@java.lang.SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+		out.append("public final class ").append(adapterName).append(" implements javax.management.DynamicMBean {\n");
+
+		out.append("\tpublic static final javax.management.MBeanInfo MBEAN_INFO = new javax.management.MBeanInfo(").append(literal(target))
+				.append(", ").append(literal(description)).append(",\n\t\t\tnew javax.management.MBeanAttributeInfo[] {\n");
+		for (final ExportedAttribute attribute : attributes)
+			out.append("\t\t\t\t").append(attribute.info(this)).append(",\n");
+		out.append("\t\t\t}, new javax.management.MBeanConstructorInfo[0], new javax.management.MBeanOperationInfo[] {\n");
+		for (final String operationInfo : operationInfos)
+			out.append("\t\t\t\t").append(operationInfo).append(",\n");
+		out.append("\t\t\t}, new javax.management.MBeanNotificationInfo[0]);\n\n");
+
+		out.append("\tprivate final ").append(target).append(" target;\n\n");
+		out.append("\tpublic ").append(adapterName).append("(final ").append(target).append(" target) {\n");
+		out.append("\t\tif (target == null)\n\t\t\tthrow new java.lang.NullPointerException(\"MBean must NOT be null.\");\n");
+		out.append("\t\tthis.target = target;\n\t}\n\n");
+
+		out.append("\tpublic static javax.management.ObjectName register(final ").append(target)
+				.append(" target) throws javax.management.JMException {\n");
+		out.append("\t\treturn register(target, new com.carmatechnologies.commons.jmx.MBeans.Builder());\n\t}\n\n");
+		out.append("\tpublic static javax.management.ObjectName register(final ").append(target)
+				.append(" target, final com.carmatechnologies.commons.jmx.MBeans.Builder builder) throws javax.management.JMException {\n");
+		out.append("\t\treturn com.carmatechnologies.commons.jmx.MBeans.register(builder.mbean(target), new ").append(adapterName)
+				.append("(target));\n\t}\n\n");
+
+		out.append("\t@java.lang.Override\n\tpublic java.lang.Object getAttribute(final java.lang.String attribute) throws ")
+				.append("javax.management.AttributeNotFoundException, javax.management.MBeanException {\n");
+		out.append("\t\ttry {\n\t\t\tswitch (attribute) {\n");
+		for (final ExportedAttribute attribute : attributes) {
+			if (attribute.read != null)
+				out.append("\t\t\tcase ").append(literal(attribute.name)).append(":\n\t\t\t\treturn ").append(attribute.read).append(";\n");
+		}
+		out.append("\t\t\t}\n");
+		appendCatches(out);
+		out.append("\t\tthrow new javax.management.AttributeNotFoundException(\"No readable attribute '\" + attribute + \"' in ").append(target)
+				.append("\");\n\t}\n\n");
+
+		out.append("\t@java.lang.Override\n\tpublic void setAttribute(final javax.management.Attribute attribute) throws ")
+				.append("javax.management.AttributeNotFoundException, javax.management.InvalidAttributeValueException, ")
+				.append("javax.management.MBeanException {\n");
+		out.append("\t\tfinal java.lang.Object value = attribute.getValue();\n");
+		out.append("\t\ttry {\n\t\t\tswitch (attribute.getName()) {\n");
+		for (final ExportedAttribute attribute : attributes) {
+			if (attribute.write != null)
+				out.append("\t\t\tcase ").append(literal(attribute.name)).append(":\n\t\t\t\t").append(attribute.write).append(";\n\t\t\t\treturn;\n");
+		}
+		out.append("\t\t\t}\n");
+		out.append("\t\t} catch (final java.lang.ClassCastException | java.lang.NullPointerException e) {\n");
+		out.append("\t\t\tthrow new javax.management.InvalidAttributeValueException(\"Invalid value for attribute '\" + attribute.getName() ")
+				.append("+ \"': \" + value);\n");
+		appendCatches(out);
+		out.append("\t\tthrow new javax.management.AttributeNotFoundException(\"No writable attribute '\" + attribute.getName() + \"' in ")
+				.append(target).append("\");\n\t}\n\n");
+
+		out.append("\t@java.lang.Override\n\tpublic javax.management.AttributeList getAttributes(final java.lang.String[] attributes) {\n");
+		out.append("\t\tfinal javax.management.AttributeList list = new javax.management.AttributeList(attributes.length);\n");
+		out.append("\t\tfor (final java.lang.String attribute : attributes) {\n\t\t\ttry {\n");
+		out.append("\t\t\t\tlist.add(new javax.management.Attribute(attribute, getAttribute(attribute)));\n");
+		out.append("\t\t\t} catch (final java.lang.Exception e) {\n");
+		out.append("\t\t\t\t// As per DynamicMBean's contract, attributes which cannot be read are omitted.\n\t\t\t}\n\t\t}\n");
+		out.append("\t\treturn list;\n\t}\n\n");
+
+		out.append("\t@java.lang.Override\n\tpublic javax.management.AttributeList setAttributes(final javax.management.AttributeList attributes) {\n");
+		out.append("\t\tfinal javax.management.AttributeList list = new javax.management.AttributeList(attributes.size());\n");
+		out.append("\t\tfor (final javax.management.Attribute attribute : attributes.asList()) {\n\t\t\ttry {\n");
+		out.append("\t\t\t\tsetAttribute(attribute);\n\t\t\t\tlist.add(attribute);\n");
+		out.append("\t\t\t} catch (final java.lang.Exception e) {\n");
+		out.append("\t\t\t\t// As per DynamicMBean's contract, attributes which cannot be set are omitted.\n\t\t\t}\n\t\t}\n");
+		out.append("\t\treturn list;\n\t}\n\n");
+
+		out.append("\t@java.lang.Override\n\tpublic java.lang.Object invoke(final java.lang.String actionName, final java.lang.Object[] params, ")
+				.append("final java.lang.String[] signature) throws javax.management.MBeanException, javax.management.ReflectionException {\n");
+		out.append("\t\tfinal java.lang.Object[] args = (params == null) ? new java.lang.Object[0] : params;\n");
+		out.append("\t\tfinal java.lang.StringBuilder key = new java.lang.StringBuilder(actionName).append('(');\n");
+		out.append("\t\tfor (int i = 0; signature != null && i < signature.length; ++i)\n");
+		out.append("\t\t\tkey.append((i == 0) ? \"\" : \",\").append(signature[i]);\n");
+		out.append("\t\ttry {\n\t\t\tswitch (key.append(')').toString()) {\n");
+		for (int i = 0; i < operationKeys.size(); ++i)
+			out.append("\t\t\tcase ").append(literal(operationKeys.get(i))).append(":\n\t\t\t\t").append(operationInvocations.get(i)).append('\n');
+		out.append("\t\t\t}\n");
+		appendCatches(out);
+		out.append("\t\tthrow new javax.management.ReflectionException(new java.lang.NoSuchMethodException(actionName), \"No operation '\" + ")
+				.append("actionName + \"' in ").append(target).append("\");\n\t}\n\n");
+
+		out.append("\t@java.lang.Override\n\tpublic javax.management.MBeanInfo getMBeanInfo() {\n\t\treturn MBEAN_INFO;\n\t}\n}\n");
+		return out.toString();
+	}
+
+	/**
+	 * Unchecked exceptions are propagated as is, for the MBean server to wrap them, and checked exceptions are wrapped in MBeanExceptions.
+	 */
+	private static void appendCatches(final StringBuilder out) {
+		out.append("\t\t} catch (final java.lang.RuntimeException e) {\n\t\t\tthrow e;\n");
+		out.append("\t\t} catch (final java.lang.Exception e) {\n\t\t\tthrow new javax.management.MBeanException(e);\n\t\t}\n");
+	}
+
+	static final class ExportedAttribute {
+		private final String name;
+		private String description = "";
+		private TypeMirror type;
+		private String read;
+		private String write;
+		private boolean is = false;
+		private String descriptor = "javax.management.ImmutableDescriptor.EMPTY_DESCRIPTOR";
+
+		ExportedAttribute(final String name) {
+			this.name = name;
+		}
+
+		ExportedAttribute describe(final String description) {
+			if (!description.isEmpty())
+				this.description = description;
+			return this;
+		}
+
+		ExportedAttribute metric(final JmxMetric metric) {
+			describe(metric.description());
+			final StringBuilder fields = new StringBuilder(literal("metricType=" + metric.type().name().toLowerCase()));
+			if (!metric.unit().isEmpty())
+				fields.append(", ").append(literal("units=" + metric.unit()));
+			this.descriptor = "new javax.management.ImmutableDescriptor(" + fields + ")";
+			return this;
+		}
+
+		ExportedAttribute getter(final String expression, final TypeMirror type, final Element element, final MBeanAdapterWriter writer)
+				throws InvalidElementException {
+			check(read == null, "Duplicate getter for JMX attribute '" + name + "'", element);
+			setType(type, element, writer);
+			this.read = writer.exposed(expression, type);
+			return this;
+		}
+
+		/**
+		 * @param prefix either an assignment (e.g. {@code target.field = }) or the opening of a setter call (e.g. {@code target.setField(}).
+		 */
+		ExportedAttribute setter(final String prefix, final TypeMirror type, final Element element, final MBeanAdapterWriter writer)
+				throws InvalidElementException {
+			check(write == null, "Duplicate setter for JMX attribute '" + name + "'", element);
+			check(writer.isExposedAsIs(type), "Type of writable JMX attribute '" + name + "' is NOT supported: " + type, element);
+			setType(type, element, writer);
+			this.write = prefix + "(" + writer.castName(type) + ") value" + (prefix.endsWith("(") ? ")" : "");
+			return this;
+		}
+
+		ExportedAttribute is(final boolean is) {
+			this.is = is;
+			return this;
+		}
+
+		private void setType(final TypeMirror type, final Element element, final MBeanAdapterWriter writer) throws InvalidElementException {
+			check(this.type == null || writer.isSameType(this.type, type), "Getter and setter of JMX attribute '" + name + "' have different types: "
+					+ this.type + " and " + type, element);
+			this.type = type;
+		}
+
+		String info(final MBeanAdapterWriter writer) {
+			return "new javax.management.MBeanAttributeInfo(" + literal(name) + ", " + literal(writer.exposedTypeName(type)) + ", "
+					+ literal(description) + ", " + (read != null) + ", " + (write != null) + ", " + is + ", " + descriptor + ")";
+		}
+	}
+}
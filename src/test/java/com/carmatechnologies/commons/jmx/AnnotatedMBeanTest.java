@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.RuntimeMBeanException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.annotations.JmxAttribute;
+import com.carmatechnologies.commons.jmx.annotations.JmxMetric;
+import com.carmatechnologies.commons.jmx.annotations.JmxOperation;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class AnnotatedMBeanTest extends AbstractJmxTest {
+	public static class Server {
+		@JmxMetric(type = JmxMetric.Type.COUNTER, description = "Requests served.")
+		private final AtomicLong requests = new AtomicLong();
+
+		@JmxMetric(unit = "connections")
+		private final AtomicInteger connections = new AtomicInteger();
+
+		@JmxAttribute(writable = true)
+		private volatile int maxConnections = 10;
+
+		@JmxAttribute
+		private final File root = new File("/var/www");
+
+		private volatile String mode = "normal";
+		private volatile boolean started = true;
+
+		@JmxAttribute(description = "Serving mode.")
+		public String getMode() {
+			return mode;
+		}
+
+		@JmxAttribute
+		public void setMode(final String mode) {
+			this.mode = mode;
+		}
+
+		@JmxAttribute
+		private boolean isStarted() {
+			return started;
+		}
+
+		@JmxMetric(unit = "ms")
+		public double getAverageLatency() {
+			return 1.5;
+		}
+
+		@JmxOperation(impact = MBeanOperationInfo.ACTION)
+		public void stop() {
+			started = false;
+		}
+
+		@JmxOperation(name = "serve", description = "Serves the provided number of requests.")
+		public long serveRequests(final int count) {
+			return requests.addAndGet(count);
+		}
+
+		@JmxOperation
+		public void fail() {
+			throw new IllegalStateException("Failed on purpose.");
+		}
+	}
+
+	public static class SubServer extends Server {
+		@JmxMetric
+		private final long inherited = 42;
+	}
+
+	public static class Resolver {
+		@JmxOperation
+		public File resolve(final String child) {
+			return new File("/var/www", child);
+		}
+	}
+
+	public interface MixedMBean {
+		int getValue();
+	}
+
+	public static class Mixed implements MixedMBean {
+		@Override
+		public int getValue() {
+			return 1;
+		}
+
+		@JmxAttribute
+		public String getName() {
+			return "mixed";
+		}
+	}
+
+	public static class Invalid {
+		@JmxMetric
+		private final String notNumeric = "NaN";
+	}
+
+	@Test
+	public void annotatedFieldsAndGettersShouldBeExposedAsAttributes() throws Exception {
+		Server server = new Server();
+		server.connections.set(3);
+		ObjectName objectName = MBeans.register(new Builder(server).property("name", "Attributes"));
+
+		assertThat((Long) jmxClient.getAttribute(objectName, "Requests"), is(0L));
+		assertThat((Integer) jmxClient.getAttribute(objectName, "Connections"), is(3));
+		assertThat((Integer) jmxClient.getAttribute(objectName, "MaxConnections"), is(10));
+		assertThat((String) jmxClient.getAttribute(objectName, "Root"), is(new File("/var/www").toString()));
+		assertThat((String) jmxClient.getAttribute(objectName, "Mode"), is("normal"));
+		assertThat((Boolean) jmxClient.getAttribute(objectName, "Started"), is(true));
+		assertThat((Double) jmxClient.getAttribute(objectName, "AverageLatency"), is(1.5));
+	}
+
+	@Test
+	public void writableAttributesShouldBeSettable() throws Exception {
+		Server server = new Server();
+		ObjectName objectName = MBeans.register(new Builder(server).property("name", "Writable"));
+
+		jmxClient.setAttribute(objectName, new Attribute("MaxConnections", 20));
+		jmxClient.setAttribute(objectName, new Attribute("Mode", "maintenance"));
+
+		assertThat(server.maxConnections, is(20));
+		assertThat(server.getMode(), is("maintenance"));
+	}
+
+	@Test(expected = AttributeNotFoundException.class)
+	public void settingReadOnlyAttributeShouldThrowAttributeNotFoundException() throws Exception {
+		ObjectName objectName = MBeans.register(new Builder(new Server()).property("name", "ReadOnly"));
+		jmxClient.setAttribute(objectName, new Attribute("Requests", 1L));
+	}
+
+	@Test
+	public void annotatedMethodsShouldBeExposedAsOperations() throws Exception {
+		Server server = new Server();
+		ObjectName objectName = MBeans.register(new Builder(server).property("name", "Operations"));
+
+		Object served = jmxClient.invoke(objectName, "serve", new Object[] { 5 }, new String[] { int.class.getName() });
+		assertThat((Long) served, is(5L));
+		assertThat(jmxClient.invoke(objectName, "stop", null, null), is(nullValue()));
+		assertThat(server.isStarted(), is(false));
+		assertThat((Long) jmxClient.getAttribute(objectName, "Requests"), is(5L));
+	}
+
+	@Test
+	public void valuesReturnedByOperationsWhichAreNotOfAnOpenTypeShouldBeExposedAsStrings() throws Exception {
+		ObjectName objectName = MBeans.register(new Builder(new Resolver()).property("name", "Resolver"));
+
+		assertThat(jmxClient.getMBeanInfo(objectName).getOperations()[0].getReturnType(), is(String.class.getName()));
+		Object resolved = jmxClient.invoke(objectName, "resolve", new Object[] { "index.html" }, new String[] { String.class.getName() });
+		assertThat(resolved, is((Object) new File("/var/www", "index.html").toString()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void standardMBeanWithAnnotatedMembersShouldThrowIllegalArgumentException() throws Exception {
+		AnnotatedMBean.isAnnotated(new Mixed());
+	}
+
+	@Test
+	public void exceptionThrownByOperationShouldBePropagatedAsRuntimeMBeanException() throws Exception {
+		ObjectName objectName = MBeans.register(new Builder(new Server()).property("name", "Failing"));
+		try {
+			jmxClient.invoke(objectName, "fail", null, null);
+			fail("RuntimeMBeanException expected.");
+		} catch (RuntimeMBeanException e) {
+			assertThat(e.getTargetException(), is(instanceOf(IllegalStateException.class)));
+		}
+	}
+
+	@Test
+	public void mbeanInfoShouldDescribeAttributesOperationsAndMetrics() throws Exception {
+		ObjectName objectName = MBeans.register(new Builder(new Server()).property("name", "Info"));
+		MBeanInfo info = jmxClient.getMBeanInfo(objectName);
+
+		assertThat(info.getClassName(), is(Server.class.getName()));
+		assertThat(info.getAttributes().length, is(7));
+		assertThat(info.getOperations().length, is(3));
+
+		MBeanAttributeInfo requests = attribute(info, "Requests");
+		assertThat(requests.getType(), is("long"));
+		assertThat(requests.getDescription(), is("Requests served."));
+		assertThat(requests.isWritable(), is(false));
+		assertThat((String) requests.getDescriptor().getFieldValue("metricType"), is("counter"));
+		assertThat((String) attribute(info, "AverageLatency").getDescriptor().getFieldValue("units"), is("ms"));
+		assertThat(attribute(info, "Mode").isWritable(), is(true));
+		assertThat(attribute(info, "Mode").getDescription(), is("Serving mode."));
+		assertThat(attribute(info, "Started").isIs(), is(true));
+		assertThat(attribute(info, "Root").getType(), is(String.class.getName()));
+	}
+
+	@Test
+	public void annotatedMembersOfSuperclassesShouldBeExposed() throws Exception {
+		ObjectName objectName = MBeans.register(new Builder(new SubServer()).property("name", "Inherited"));
+
+		assertThat((Long) jmxClient.getAttribute(objectName, "Inherited"), is(42L));
+		assertThat((Long) jmxClient.getAttribute(objectName, "Requests"), is(0L));
+	}
+
+	@Test
+	public void notAnnotatedObjectsAndMBeansShouldNotBeConsideredAnnotated() throws Exception {
+		assertThat(AnnotatedMBean.isAnnotated(new Object()), is(false));
+		assertThat(AnnotatedMBean.isAnnotated(null), is(false));
+		assertThat(AnnotatedMBean.isAnnotated(new AnnotatedMBean(new Server())), is(false));
+		assertThat(AnnotatedMBean.isAnnotated(new Server()), is(true));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nonNumericMetricShouldThrowIllegalArgumentException() throws Exception {
+		new AnnotatedMBean(new Invalid());
+	}
+
+	private static MBeanAttributeInfo attribute(final MBeanInfo info, final String name) {
+		for (MBeanAttributeInfo attribute : info.getAttributes()) {
+			if (attribute.getName().equals(name))
+				return attribute;
+		}
+		throw new AssertionError("No attribute named " + name);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MBeans.unregisterAll();
+	}
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.openmbean.CompositeData;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.Sample;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class AttributeSamplerTest extends AbstractJmxTest {
+	private AttributeSampler sampler;
+
+	private static List<Double> valuesOf(final List<Sample> samples) {
+		List<Double> values = new ArrayList<Double>();
+		for (Sample sample : samples)
+			values.add(sample.getValue());
+		return values;
+	}
+
+	@Test
+	public void numericAttributesOfRegisteredMBeansShouldBeSampled() throws Exception {
+		sampler = new AttributeSampler(1, TimeUnit.HOURS);
+		JmxLinkedBlockingQueue<String> queue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>(), new Builder().property("name",
+				"SampledQueue"));
+		String name = queue.objectName().toString();
+
+		for (int i = 0; i < 3; ++i) {
+			queue.add("item" + i);
+			sampler.sample();
+		}
+
+		assertThat(sampler.sampledMBeans().contains(name), is(true));
+		assertThat(sampler.sampledMBeans().contains(sampler.objectName().toString()), is(false));
+		assertThat(sampler.sampledAttributes(name), hasItems("Size", "InsertCount", "InsertLatencyNanos.p99"));
+		assertThat(valuesOf(sampler.history(name, "Size")), contains(1.0, 2.0, 3.0));
+		assertThat(sampler.recentHistory(name, "Size", 60000).size(), is(3));
+		assertThat(sampler.getMemoryBytes() < 3 * 1024L * sampler.getSeriesCount(), is(true));
+	}
+
+	@Test
+	public void historyShouldBeExposedViaJmx() throws Exception {
+		sampler = new AttributeSampler(1, TimeUnit.HOURS, new Builder().property("name", "Sampler"));
+		JmxLinkedBlockingQueue<String> queue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		queue.add("A");
+		sampler.sample();
+
+		CompositeData[] history = (CompositeData[]) jmxClient.invoke(sampler.objectName(), "history", new Object[] { queue.objectName().toString(),
+				"Size" }, new String[] { String.class.getName(), String.class.getName() });
+		assertThat(history.length, is(1));
+		assertThat((Double) history[0].get("value"), is(1.0));
+	}
+
+	@Test
+	public void seriesOfUnregisteredMBeansShouldBeDropped() throws Exception {
+		sampler = new AttributeSampler(1, TimeUnit.HOURS);
+		JmxLinkedBlockingQueue<String> queue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		sampler.sample();
+		assertThat(sampler.getSeriesCount() > 0, is(true));
+
+		MBeans.unregister(queue.objectName());
+		sampler.sample();
+
+		assertThat(sampler.getSeriesCount(), is(0));
+		assertThat(sampler.history(queue.objectName().toString(), "Size").isEmpty(), is(true));
+	}
+
+	@Test
+	public void numberOfSeriesShouldBeBounded() throws Exception {
+		sampler = new AttributeSampler(1, TimeUnit.HOURS).maxSeries(3);
+		new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		sampler.sample();
+
+		assertThat(sampler.getSeriesCount(), is(3));
+	}
+
+	@Test
+	public void samplerShouldSampleAtTheProvidedInterval() throws Exception {
+		sampler = new AttributeSampler(10, TimeUnit.MILLISECONDS);
+		JmxLinkedBlockingQueue<String> queue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		for (int i = 0; i < 200 && sampler.history(queue.objectName().toString(), "Size").size() < 3; ++i)
+			Thread.sleep(10);
+
+		assertThat(sampler.history(queue.objectName().toString(), "Size").size() >= 3, is(true));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (sampler != null)
+			sampler.close();
+		MBeans.unregisterAll();
+	}
+}
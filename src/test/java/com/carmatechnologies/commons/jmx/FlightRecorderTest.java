@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.InstanceAlreadyExistsException;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.carmatechnologies.commons.jmx.FlightRecordingReader.Record;
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class FlightRecorderTest extends AbstractJmxTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	private FlightRecorder recorder;
+
+	private static List<Double> sizesOf(final List<Record> records, final String objectName) {
+		List<Double> sizes = new ArrayList<Double>();
+		for (Record record : records) {
+			if (record.getObjectName().equals(objectName) && record.getAttribute().equals("Size"))
+				sizes.add(record.getValue());
+		}
+		return sizes;
+	}
+
+	@Test
+	public void recordsShouldBeReadableWithoutClosingTheRecorder() throws Exception {
+		File file = folder.newFile("metrics.rec");
+		recorder = new FlightRecorder(file, 1, TimeUnit.HOURS);
+		JmxLinkedBlockingQueue<String> queue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		for (int i = 0; i < 3; ++i) {
+			queue.add("item" + i);
+			recorder.record();
+		}
+
+		List<Record> records = FlightRecordingReader.read(file, Long.MAX_VALUE);
+		assertThat(sizesOf(records, queue.objectName().toString()).toString(), is("[1.0, 2.0, 3.0]"));
+		assertThat(records.size(), is((int) recorder.getRecordCount()));
+		assertThat((Long) jmxClient.getAttribute(recorder.objectName(), "RecordCount"), is(recorder.getRecordCount()));
+	}
+
+	@Test
+	public void ringShouldOnlyKeepTheMostRecentRecords() throws Exception {
+		File file = folder.newFile("ring.rec");
+		recorder = new FlightRecorder(file, 1, TimeUnit.HOURS, 10, 4096, new Builder().property("name", "Ring"));
+		JmxLinkedBlockingQueue<String> queue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>(), new Builder().property("name",
+				"RingQueue"));
+		for (int i = 0; i < 20; ++i) {
+			queue.add("item" + i);
+			recorder.record();
+		}
+		recorder.close();
+
+		List<Record> records = FlightRecordingReader.read(file, Long.MAX_VALUE);
+		assertThat(records.size(), is(9));
+		List<Double> sizes = sizesOf(records, queue.objectName().toString());
+		assertThat(sizes.get(sizes.size() - 1), is(20.0));
+	}
+
+	@Test
+	public void fullDictionaryShouldDropNewSeries() throws Exception {
+		recorder = new FlightRecorder(folder.newFile("small.rec"), 1, TimeUnit.HOURS, 100, 128, new Builder().property("name", "Small"));
+		new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		recorder.record();
+
+		assertThat(recorder.getSeriesCount() > 0, is(true));
+		assertThat(recorder.getDroppedCount() > 0, is(true));
+	}
+
+	@Test
+	public void previousRecordingShouldBeKept() throws Exception {
+		File file = folder.newFile("previous.rec");
+		recorder = new FlightRecorder(file, 1, TimeUnit.HOURS);
+		new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		recorder.record();
+		recorder.close();
+
+		recorder = new FlightRecorder(file, 1, TimeUnit.HOURS);
+
+		assertThat(FlightRecordingReader.read(new File(file.getPath() + ".previous"), Long.MAX_VALUE).isEmpty(), is(false));
+		assertThat(FlightRecordingReader.read(file, Long.MAX_VALUE).isEmpty(), is(true));
+	}
+
+	@Test
+	public void dumpShouldPrintOneRecordPerLine() throws Exception {
+		File file = folder.newFile("dump.rec");
+		recorder = new FlightRecorder(file, 1, TimeUnit.HOURS);
+		new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		recorder.record();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FlightRecordingReader.dump(file, TimeUnit.MINUTES.toMillis(10), new PrintStream(out, true, "UTF-8"));
+		assertThat(out.toString("UTF-8"), containsString("com.carmatechnologies.commons.jmx:type=JmxLinkedBlockingQueue\tSize\t0.0"));
+	}
+
+	@Test(expected = IOException.class)
+	public void readingAnythingButAFlightRecordingShouldThrowIOException() throws Exception {
+		FlightRecordingReader.read(folder.newFile("empty.rec"), Long.MAX_VALUE);
+	}
+
+	@Test
+	public void recordingFileShouldBeClosedWhenRegistrationFails() throws Exception {
+		assumeTrue(new File("/proc/self/fd").isDirectory());
+		recorder = new FlightRecorder(folder.newFile("first.rec"), 1, TimeUnit.HOURS, 10, 4096, new Builder().property("name", "Duplicate"));
+		File file = folder.newFile("duplicate.rec");
+		try {
+			new FlightRecorder(file, 1, TimeUnit.HOURS, 10, 4096, new Builder().property("name", "Duplicate"));
+			fail("InstanceAlreadyExistsException expected.");
+		} catch (InstanceAlreadyExistsException e) {
+			assertThat(openDescriptorsOf(file), is(0));
+		}
+	}
+
+	private static int openDescriptorsOf(final File file) throws IOException {
+		int count = 0;
+		for (File descriptor : new File("/proc/self/fd").listFiles()) {
+			if (descriptor.getCanonicalFile().equals(file.getCanonicalFile()))
+				++count;
+		}
+		return count;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (recorder != null)
+			recorder.close();
+		MBeans.unregisterAll();
+	}
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.mbeans.HistogramSnapshot;
+
+public class HistogramTest {
+	@Test
+	public void emptyHistogramShouldHaveAnEmptySnapshot() {
+		HistogramSnapshot snapshot = new Histogram().snapshot();
+		assertThat(snapshot.getCount(), is(0L));
+		assertThat(snapshot.getMax(), is(0L));
+		assertThat(snapshot.getP99(), is(0L));
+	}
+
+	@Test
+	public void snapshotShouldExposeExactCountMinMaxAndMean() {
+		Histogram histogram = new Histogram();
+		for (long i = 1; i <= 100; ++i)
+			histogram.record(i);
+
+		HistogramSnapshot snapshot = histogram.snapshot();
+		assertThat(snapshot.getCount(), is(100L));
+		assertThat(snapshot.getMin(), is(1L));
+		assertThat(snapshot.getMax(), is(100L));
+		assertThat(snapshot.getMean(), is(50.5));
+	}
+
+	@Test
+	public void percentilesShouldBeApproximatedByTheUpperBoundOfTheirPowerOfTwoBucket() {
+		Histogram histogram = new Histogram();
+		for (int i = 0; i < 90; ++i)
+			histogram.record(10);
+		for (int i = 0; i < 10; ++i)
+			histogram.record(1000);
+
+		HistogramSnapshot snapshot = histogram.snapshot();
+		assertThat(snapshot.getP50(), is(15L));
+		assertThat(snapshot.getP90(), is(15L));
+		assertThat(snapshot.getP99(), is(1000L));
+	}
+
+	@Test
+	public void negativeValuesShouldBeRecordedAsZero() {
+		Histogram histogram = new Histogram();
+		histogram.record(-5);
+		assertThat(histogram.snapshot().getMin(), is(0L));
+		assertThat(histogram.count(), is(1L));
+	}
+
+	@Test
+	public void resetShouldClearAllRecordedValues() {
+		Histogram histogram = new Histogram();
+		histogram.record(42);
+		histogram.reset();
+		assertThat(histogram.count(), is(0L));
+		assertThat(histogram.snapshot().getCount(), is(0L));
+	}
+}
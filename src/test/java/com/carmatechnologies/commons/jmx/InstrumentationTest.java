@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.management.Attribute;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class InstrumentationTest extends AbstractJmxTest {
+	@Test
+	public void instrumentationShouldBeOffByDefault() {
+		assertThat(Instrumentation.level(), is(InstrumentationLevel.OFF));
+		assertThat(Instrumentation.isOff(), is(true));
+		assertThat(Instrumentation.isFull(), is(false));
+	}
+
+	@Test
+	public void instrumentationLevelShouldBeChangeableViaJmx() throws Exception {
+		ObjectName objectName = MBeans.register(new InstrumentationControl());
+		assertThat(objectName.toString(), is("com.carmatechnologies.commons.jmx:type=InstrumentationControl"));
+		assertThat(jmxClient.getAttribute(objectName, "Level").toString(), is("OFF"));
+
+		jmxClient.setAttribute(objectName, new Attribute("Level", "FULL"));
+		assertThat(Instrumentation.level(), is(InstrumentationLevel.FULL));
+		assertThat(Instrumentation.isFull(), is(true));
+
+		jmxClient.setAttribute(objectName, new Attribute("Level", "COUNTERS"));
+		assertThat(Instrumentation.level(), is(InstrumentationLevel.COUNTERS));
+		assertThat(jmxClient.getAttribute(objectName, "Level").toString(), is("COUNTERS"));
+	}
+
+	@Test
+	public void mapCountersShouldOnlyBeMaintainedWhenInstrumentationIsOn() throws Exception {
+		JmxConcurrentMap<String, Integer> jmxMap = new JmxConcurrentMap<String, Integer>(new ConcurrentHashMap<String, Integer>(), new Builder()
+				.property("name", "InstrumentedMap"));
+		jmxMap.put("A", 1);
+		jmxMap.get("A");
+		assertThat(jmxMap.getWriteCount(), is(0L));
+		assertThat(jmxMap.getHitCount(), is(0L));
+
+		Instrumentation.setLevel(InstrumentationLevel.COUNTERS);
+		jmxMap.put("B", 2);
+		jmxMap.get("A");
+		jmxMap.get("C");
+		jmxMap.remove("B");
+		assertThat(jmxMap.getWriteCount(), is(1L));
+		assertThat(jmxMap.getHitCount(), is(1L));
+		assertThat(jmxMap.getMissCount(), is(1L));
+		assertThat(jmxMap.getRemoveCount(), is(1L));
+		assertThat(jmxMap.getReadLatencyNanos().getCount(), is(0L));
+
+		Instrumentation.setLevel(InstrumentationLevel.FULL);
+		jmxMap.get("A");
+		jmxMap.put("D", 4);
+		assertThat(jmxMap.getHitCount(), is(2L));
+		assertThat(jmxMap.getReadLatencyNanos().getCount(), is(1L));
+		assertThat(jmxMap.getWriteLatencyNanos().getCount(), is(1L));
+
+		assertThat(((Long) jmxClient.getAttribute(jmxMap.objectName(), "HitCount")), is(2L));
+		CompositeData latency = (CompositeData) jmxClient.getAttribute(jmxMap.objectName(), "ReadLatencyNanos");
+		assertThat((Long) latency.get("count"), is(1L));
+	}
+
+	@Test
+	public void queueCountersShouldOnlyBeMaintainedWhenInstrumentationIsOn() throws Exception {
+		JmxLinkedBlockingQueue<String> jmxQueue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>(1), new Builder().property(
+				"name", "InstrumentedQueue"));
+		jmxQueue.offer("A");
+		jmxQueue.poll();
+		assertThat(jmxQueue.getInsertCount(), is(0L));
+		assertThat(jmxQueue.getRemoveCount(), is(0L));
+
+		Instrumentation.setLevel(InstrumentationLevel.COUNTERS);
+		jmxQueue.offer("A");
+		jmxQueue.offer("B");
+		jmxQueue.poll();
+		jmxQueue.poll();
+		assertThat(jmxQueue.getInsertCount(), is(1L));
+		assertThat(jmxQueue.getRejectCount(), is(1L));
+		assertThat(jmxQueue.getRemoveCount(), is(1L));
+
+		Instrumentation.setLevel(InstrumentationLevel.FULL);
+		jmxQueue.put("C");
+		jmxQueue.take();
+		assertThat(jmxQueue.getInsertCount(), is(2L));
+		assertThat(jmxQueue.getRemoveCount(), is(2L));
+		assertThat(jmxQueue.getInsertLatencyNanos().getCount(), is(1L));
+		assertThat(jmxQueue.getRemoveLatencyNanos().getCount(), is(1L));
+		assertThat(((Long) jmxClient.getAttribute(jmxQueue.objectName(), "RejectCount")), is(1L));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Instrumentation.setLevel(InstrumentationLevel.OFF);
+		MBeans.unregisterAll();
+	}
+}
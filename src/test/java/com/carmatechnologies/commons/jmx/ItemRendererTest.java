@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ItemRendererTest {
+	@Test
+	public void defaultRendererShouldUseToString() {
+		assertThat(ItemRenderer.DEFAULT.render(42), is("42"));
+		assertThat(ItemRenderer.DEFAULT.render(null), is("null"));
+		assertThat(ItemRenderer.DEFAULT.renderItems(Arrays.asList("A", "B", "C"), 3), contains("A", "B", "C"));
+	}
+
+	@Test
+	public void rendererShouldUseProvidedFormatter() {
+		ItemRenderer renderer = new ItemRenderer.Builder().formatter(new ItemFormatter() {
+			@Override
+			public String format(final Object item) {
+				return "<" + item + ">";
+			}
+		}).build();
+		assertThat(renderer.render("A"), is("<A>"));
+	}
+
+	@Test
+	public void itemsLongerThanMaxItemLengthShouldBeTruncated() {
+		ItemRenderer renderer = new ItemRenderer.Builder().maxItemLength(8).build();
+		assertThat(renderer.render("ABCDEFGH"), is("ABCDEFGH"));
+		assertThat(renderer.render("ABCDEFGHIJ"), is("ABCDE..."));
+	}
+
+	@Test
+	public void itemsShouldNoLongerBeRenderedOnceTotalBytesBudgetIsExceeded() {
+		ItemRenderer renderer = new ItemRenderer.Builder().maxTotalBytes(5).build();
+		List<String> items = renderer.renderItems(Arrays.asList("AA", "BB", "CC", "DD"), 4);
+		assertThat(items, contains("AA", "BB", "... 2 more item(s) omitted"));
+	}
+
+	@Test
+	public void entriesShouldNoLongerBeRenderedOnceTotalBytesBudgetIsExceeded() {
+		Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+		map.put("A", 1);
+		map.put("B", 2);
+		map.put("C", 3);
+		ItemRenderer renderer = new ItemRenderer.Builder().maxTotalBytes(4).build();
+		Map<String, String> entries = renderer.renderEntries(map.entrySet(), map.size());
+		assertThat(entries.size(), is(3));
+		assertThat(entries.get("A"), is("1"));
+		assertThat(entries.get("B"), is("2"));
+		assertThat(entries.get(ItemRenderer.ELLIPSIS), is("... 1 more item(s) omitted"));
+	}
+
+	@Test
+	public void entriesWhoseKeysAreRenderedTheSameShouldAllBeKept() {
+		Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+		map.put("Long key 1", 1);
+		map.put("Long key 2", 2);
+		map.put("Long...", 3);
+		map.put("...", 4);
+		ItemRenderer renderer = new ItemRenderer.Builder().maxItemLength(7).build();
+		Map<String, String> entries = renderer.renderEntries(map.entrySet(), map.size());
+		assertThat(entries.size(), is(4));
+		assertThat(entries.get("Long..."), is("1"));
+		assertThat(entries.get("Long...#2"), is("2"));
+		assertThat(entries.get("Long...#3"), is("3"));
+		assertThat(entries.get("...#2"), is("4"));
+		assertThat(entries.containsKey(ItemRenderer.ELLIPSIS), is(false));
+	}
+
+	@Test
+	public void cachedRenderingsShouldOnlyFormatEachItemOnce() {
+		final AtomicInteger formatted = new AtomicInteger();
+		ItemRenderer renderer = new ItemRenderer.Builder().formatter(new ItemFormatter() {
+			@Override
+			public String format(final Object item) {
+				formatted.incrementAndGet();
+				return item.toString();
+			}
+		}).cacheRenderings().build();
+
+		List<Object> items = Arrays.<Object> asList(new StringBuilder("A"), new StringBuilder("B"));
+		renderer.renderItems(items, 2);
+		renderer.renderItems(items, 2);
+		assertThat(formatted.get(), is(2));
+
+		// Cache is keyed by identity, not equality:
+		renderer.render(new StringBuilder("A"));
+		assertThat(formatted.get(), is(3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void maxItemLengthShouldBeLongerThanEllipsis() {
+		new ItemRenderer.Builder().maxItemLength(3);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void nullFormatterShouldThrowNullPointerException() {
+		new ItemRenderer.Builder().formatter(null);
+	}
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class JfrEventBridgeTest extends AbstractJmxTest {
+	private static final Object MONITOR = new JfrEventBridgeTest();
+	private JfrEventBridge bridge;
+
+	@Test
+	public void summaryShouldOnlyAggregateEventsOfItsRollingWindow() throws Exception {
+		JfrEventSummary summary = new JfrEventSummary("test.Event", 1000, 3);
+		summary.record("A", 10, 0, 0);
+		summary.record("B", 30, 0, 500);
+		summary.record("A", 5, 0, 1500);
+		summary.record("C", 1, 0, 2500);
+
+		assertThat(summary.count(2999), is(4L));
+		assertThat(new ArrayList<String>(summary.topKeys(2, 2999).keySet()), contains("B", "A"));
+		assertThat(summary.topKeys(2, 2999).get("A"), is(15L));
+
+		assertThat(summary.count(3000), is(2L));
+		assertThat(summary.topKeys(10, 3000).keySet().size(), is(2));
+		summary.record("D", 1, 0, 3000);
+		assertThat(summary.count(3000), is(3L));
+		assertThat(summary.topKeys(10, 3000), hasKey("D"));
+	}
+
+	@Test
+	public void summaryShouldDropEventsOlderThanItsRollingWindow() throws Exception {
+		JfrEventSummary summary = new JfrEventSummary("test.Late", 1000, 3);
+		summary.record("A", 10, 0, 3500);
+		summary.record("B", 10, 0, 500);
+
+		assertThat(summary.count(3500), is(1L));
+		assertThat(summary.topKeys(10, 3500).keySet(), contains("A"));
+	}
+
+	@Test
+	public void summaryShouldRankWeightedEventsByWeightAndBoundItsKeys() throws Exception {
+		JfrEventSummary summary = new JfrEventSummary("test.Weighted", 1000, 1);
+		for (int i = 0; i < JfrEventSummary.MAX_KEYS_PER_SLOT + 10; ++i)
+			summary.record("K" + i, 1000, i + 1, 0);
+
+		assertThat(summary.topKeys(100, 0).size(), is(JfrEventSummary.MAX_KEYS_PER_SLOT));
+		assertThat(summary.topKeys(1, 0), hasKey("K" + (JfrEventSummary.MAX_KEYS_PER_SLOT + 9)));
+	}
+
+	@Test
+	public void summaryShouldKeepHeavyKeysFirstSeenOnceItsKeysAreFull() throws Exception {
+		JfrEventSummary summary = new JfrEventSummary("test.HeavyHitter", 1000, 1);
+		for (int i = 0; i < JfrEventSummary.MAX_KEYS_PER_SLOT * 4; ++i)
+			summary.record("Light" + i, 1000, 1, 0);
+		for (int i = 0; i < 10; ++i)
+			summary.record("Heavy", 1000, 100, 0);
+
+		Map<String, Long> top = summary.topKeys(1, 0);
+		assertThat(top.keySet(), contains("Heavy"));
+		assertThat(top.get("Heavy"), is(greaterThanOrEqualTo(1000L)));
+		assertThat(summary.topKeys(100, 0).size(), is(JfrEventSummary.MAX_KEYS_PER_SLOT));
+	}
+
+	@Test
+	public void bridgeShouldExposeStreamedEventsAsMXBeans() throws Exception {
+		assumeTrue(JfrEventBridge.isAvailable());
+		bridge = new JfrEventBridge.Builder().defaults().event("jdk.JavaMonitorEnter", "monitorClass", null, 1, TimeUnit.MILLISECONDS).build();
+		assertThat(bridge.objectNames().size(), is(4));
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+		JfrEventSummary contention = bridge.summary("jdk.JavaMonitorEnter");
+		JfrEventSummary gc = bridge.summary("jdk.GarbageCollection");
+		while ((contention.getCount() == 0 || gc.getCount() == 0) && System.nanoTime() < deadline) {
+			if (contention.getCount() == 0)
+				contendMonitor();
+			System.gc();
+			Thread.sleep(200);
+		}
+
+		assertThat(gc.getCount(), greaterThan(0L));
+		assertThat(contention.getCount(), greaterThan(0L));
+		assertThat(contention.topKeys(1), hasKey(JfrEventBridgeTest.class.getName()));
+		ObjectName objectName = new ObjectName("com.carmatechnologies.commons.jmx:type=JfrEventSummary,name=jdk.GarbageCollection");
+		assertThat((Long) jmxClient.getAttribute(objectName, "Count"), greaterThan(0L));
+	}
+
+	private static void contendMonitor() throws InterruptedException {
+		final CountDownLatch locked = new CountDownLatch(1);
+		final Thread owner = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (MONITOR) {
+					locked.countDown();
+					try {
+						Thread.sleep(50);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		});
+		owner.start();
+		locked.await();
+		synchronized (MONITOR) {
+			// Blocks until the owner releases the monitor, i.e. for about 50ms.
+		}
+		owner.join();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void throttlingEventWhichWasNotAddedShouldThrowIllegalArgumentException() throws Exception {
+		new JfrEventBridge.Builder().throttle("jdk.ObjectAllocationSample", "150/s");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void buildingBridgeWithoutEventShouldThrowIllegalArgumentException() throws Exception {
+		new JfrEventBridge.Builder().build();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (bridge != null)
+			bridge.close();
+		MBeans.unregisterAll();
+	}
+}
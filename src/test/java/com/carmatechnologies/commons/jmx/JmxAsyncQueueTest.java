@@ -0,0 +1,129 @@
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.openmbean.CompositeData;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class JmxAsyncQueueTest extends AbstractJmxTest {
+	@Test
+	public void takeAsyncShouldCompleteImmediatelyIfQueueIsNotEmptyAndOtherwiseOnNextOffer() throws Exception {
+		JmxAsyncQueue<String> queue = new JmxAsyncQueue<String>(4);
+		assertThat(queue.objectName().toString(), is("com.carmatechnologies.commons.jmx:type=JmxAsyncQueue"));
+
+		queue.offer("A");
+		assertThat(queue.takeAsync().get(), is("A"));
+
+		ListenableFuture<String> first = queue.takeAsync();
+		ListenableFuture<String> second = queue.takeAsync();
+		assertThat(first.isDone(), is(false));
+		assertThat((Integer) jmxClient.getAttribute(queue.objectName(), "PendingTakeCount"), is(2));
+
+		assertThat(queue.offer("B"), is(true));
+		assertThat(queue.offerAsync("C").isDone(), is(true));
+		assertThat(first.get(), is("B"));
+		assertThat(second.get(), is("C"));
+		assertThat(queue.isEmpty(), is(true));
+		assertThat(queue.getPendingTakeCount(), is(0));
+	}
+
+	@Test
+	public void offerAsyncShouldCompleteOnceASlotBecomesAvailable() throws Exception {
+		JmxAsyncQueue<String> queue = new JmxAsyncQueue<String>(1, new Builder().property("name", "Full"));
+		assertThat(queue.offerAsync("A").isDone(), is(true));
+		assertThat(queue.offer("B"), is(false));
+
+		ListenableFuture<Void> pending = queue.offerAsync("B");
+		assertThat(pending.isDone(), is(false));
+		assertThat((Integer) jmxClient.getAttribute(queue.objectName(), "PendingOfferCount"), is(1));
+
+		assertThat(queue.poll(), is("A"));
+		assertThat(pending.get(), is(nullValue()));
+		assertThat(queue.getItems(), contains("B"));
+		assertThat(queue.takeAsync().get(), is("B"));
+	}
+
+	@Test
+	public void cancelledWaitersShouldNeitherReceiveNorInsertElements() throws Exception {
+		JmxAsyncQueue<String> queue = new JmxAsyncQueue<String>(1, new Builder().property("name", "Cancelled"));
+		ListenableFuture<String> cancelledTake = queue.takeAsync();
+		assertThat(cancelledTake.cancel(false), is(true));
+		assertThat(queue.getPendingTakeCount(), is(0));
+		queue.offer("A");
+		assertThat(queue.peek(), is("A"));
+
+		ListenableFuture<Void> cancelledOffer = queue.offerAsync("B");
+		assertThat(cancelledOffer.cancel(false), is(true));
+		assertThat(queue.poll(), is("A"));
+		assertThat(queue.poll(), is(nullValue()));
+	}
+
+	@Test
+	public void listenersShouldBeAbleToCallTheQueueAgain() throws Exception {
+		final JmxAsyncQueue<Integer> queue = new JmxAsyncQueue<Integer>(2, new Builder().property("name", "Reentrant"));
+		final List<Integer> consumed = new ArrayList<Integer>();
+		consume(queue, consumed, 5);
+
+		for (int i = 0; i < 5; ++i)
+			queue.offerAsync(i);
+		assertThat(consumed, contains(0, 1, 2, 3, 4));
+		assertThat(queue.getPendingTakeCount(), is(0));
+	}
+
+	private static void consume(final JmxAsyncQueue<Integer> queue, final List<Integer> consumed, final int remaining) {
+		if (remaining == 0)
+			return;
+		final ListenableFuture<Integer> next = queue.takeAsync();
+		next.addListener(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					consumed.add(next.get());
+				} catch (Exception e) {
+					throw new AssertionError(e);
+				}
+				consume(queue, consumed, remaining - 1);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	@Test
+	public void completionLatencyShouldBeRecordedWhenInstrumentationIsFull() throws Exception {
+		Instrumentation.setLevel(InstrumentationLevel.FULL);
+		try {
+			JmxAsyncQueue<String> queue = new JmxAsyncQueue<String>(1, new Builder().property("name", "Timed"));
+			ListenableFuture<String> take = queue.takeAsync();
+			queue.offer("A");
+			assertThat(take.get(1, TimeUnit.SECONDS), is("A"));
+
+			CompositeData latency = (CompositeData) jmxClient.getAttribute(queue.objectName(), "TakeCompletionNanos");
+			assertThat((Long) latency.get("count"), is(1L));
+		} finally {
+			Instrumentation.setLevel(InstrumentationLevel.OFF);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void creatingQueueWithZeroCapacityShouldThrowIllegalArgumentException() throws Exception {
+		new JmxAsyncQueue<String>(0);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MBeans.unregisterAll();
+	}
+}
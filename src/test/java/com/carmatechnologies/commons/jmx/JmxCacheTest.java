@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.concurrent.Callable;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+
+public class JmxCacheTest extends AbstractJmxTest {
+	private ObjectName objectName;
+
+	@Test
+	public void jmxCacheShouldBehaveLikeTheCacheItWrapsAndUseDefaultPackageNameAndType() throws Exception {
+		JmxCache<String, Integer> jmxCache = new JmxCache<String, Integer>(CacheBuilder.newBuilder().recordStats().<String, Integer> build(),
+				KeyParsers.strings());
+		objectName = jmxCache.objectName();
+		assertThat(objectName.toString(), is("com.carmatechnologies.commons.jmx:type=JmxCache"));
+
+		jmxCache.put("A", 1);
+		assertThat(jmxCache.getIfPresent("A"), is(1));
+		assertThat(jmxCache.getIfPresent("B"), is(nullValue()));
+		assertThat(jmxCache.get("B", new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return 2;
+			}
+		}), is(2));
+
+		assertThat((Long) jmxClient.getAttribute(objectName, "EstimatedSize"), is(2L));
+		assertThat((Long) jmxClient.getAttribute(objectName, "HitCount"), is(1L));
+		assertThat((Long) jmxClient.getAttribute(objectName, "MissCount"), is(2L));
+		assertThat((Long) jmxClient.getAttribute(objectName, "RequestCount"), is(3L));
+		assertThat((Double) jmxClient.getAttribute(objectName, "HitRate"), is(1.0 / 3));
+		assertThat((Long) jmxClient.getAttribute(objectName, "LoadSuccessCount"), is(1L));
+		assertThat((Double) jmxClient.getAttribute(objectName, "AverageLoadPenaltyNanos"), greaterThan(0.0));
+	}
+
+	@Test
+	public void evictionsShouldBeExposedViaJmx() throws Exception {
+		JmxCache<String, Integer> jmxCache = new JmxCache<String, Integer>(CacheBuilder.newBuilder().maximumSize(1).recordStats()
+				.<String, Integer> build(), KeyParsers.strings(), new Builder().property("name", "Evicting"));
+		objectName = jmxCache.objectName();
+		jmxCache.put("A", 1);
+		jmxCache.put("B", 2);
+
+		assertThat((Long) jmxClient.getAttribute(objectName, "EvictionCount"), is(1L));
+		assertThat((Integer) jmxClient.getAttribute(objectName, "Size"), is(1));
+	}
+
+	@Test
+	public void keysShouldBeInvalidatableViaJmx() throws Exception {
+		JmxCache<Long, String> jmxCache = new JmxCache<Long, String>(CacheBuilder.newBuilder().<Long, String> build(), KeyParsers.longs(),
+				new Builder().property("name", "Invalidated"));
+		objectName = jmxCache.objectName();
+		jmxCache.put(1L, "A");
+		jmxCache.put(2L, "B");
+		jmxCache.put(3L, "C");
+
+		jmxClient.invoke(objectName, "invalidateKey", new Object[] { "2" }, new String[] { String.class.getName() });
+		assertThat(jmxCache.getIfPresent(1L), is("A"));
+		assertThat(jmxCache.getIfPresent(2L), is(nullValue()));
+
+		jmxClient.invoke(objectName, "invalidateAll", new Object[0], new String[0]);
+		assertThat(jmxCache.size(), is(0L));
+	}
+
+	@Test
+	public void jmxLoadingCacheShouldExposeLoadStatistics() throws Exception {
+		JmxLoadingCache<String, Integer> jmxCache = new JmxLoadingCache<String, Integer>(CacheBuilder.newBuilder().recordStats()
+				.build(new CacheLoader<String, Integer>() {
+					@Override
+					public Integer load(final String key) throws Exception {
+						if (key.isEmpty())
+							throw new IllegalArgumentException("Empty key");
+						return key.length();
+					}
+				}), KeyParsers.strings());
+		objectName = jmxCache.objectName();
+		assertThat(objectName.toString(), is("com.carmatechnologies.commons.jmx:type=JmxLoadingCache"));
+
+		assertThat(jmxCache.get("ABC"), is(3));
+		assertThat(jmxCache.getUnchecked("ABC"), is(3));
+		try {
+			jmxCache.getUnchecked("");
+		} catch (RuntimeException e) {
+			// Expected, to record a load exception.
+		}
+
+		assertThat((Long) jmxClient.getAttribute(objectName, "LoadCount"), is(2L));
+		assertThat((Long) jmxClient.getAttribute(objectName, "LoadExceptionCount"), is(1L));
+		assertThat((Double) jmxClient.getAttribute(objectName, "LoadExceptionRate"), is(0.5));
+		assertThat(jmxCache.getItems().get("ABC"), is("3"));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void jmxDecoratingNullCacheShouldThrowNullPointerException() throws Exception {
+		new JmxCache<String, Integer>(null, KeyParsers.strings());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void jmxDecoratingCacheWithNullKeyParserShouldThrowNullPointerException() throws Exception {
+		new JmxCache<String, Integer>(CacheBuilder.newBuilder().<String, Integer> build(), null);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (objectName != null)
+			mbeanServer.unregisterMBean(objectName);
+	}
+}
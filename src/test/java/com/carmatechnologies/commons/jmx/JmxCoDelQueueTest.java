@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.ObjectName;
+import javax.management.RuntimeMBeanException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.JmxCoDelQueue.DropHandler;
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class JmxCoDelQueueTest extends AbstractJmxTest {
+	private final List<Integer> dropped = new CopyOnWriteArrayList<Integer>();
+
+	private JmxCoDelQueue<Integer> newQueue(final String name, final int size) throws Exception {
+		JmxCoDelQueue<Integer> queue = new JmxCoDelQueue<Integer>(10000, new Builder().property("name", name));
+		queue.setTargetMillis(5);
+		queue.setIntervalMillis(50);
+		queue.dropHandler(new DropHandler<Integer>() {
+			@Override
+			public void dropped(final Integer element, final long sojournNanos) {
+				dropped.add(element);
+			}
+		});
+		for (int i = 0; i < size; ++i)
+			queue.offer(i);
+		return queue;
+	}
+
+	private List<Integer> consumeSlowlyUntilDropping(final JmxCoDelQueue<Integer> queue) throws InterruptedException {
+		List<Integer> delivered = new ArrayList<Integer>();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!queue.isDropping() && System.nanoTime() < deadline) {
+			delivered.add(queue.poll());
+			Thread.sleep(5);
+		}
+		return delivered;
+	}
+
+	@Test
+	public void queueShouldBehaveLikeAFifoQueueWhenElementsDoNotWait() throws Exception {
+		JmxCoDelQueue<Integer> queue = newQueue("Fifo", 3);
+
+		assertThat(new ArrayList<Integer>(queue), contains(0, 1, 2));
+		assertThat(queue.peek(), is(0));
+		assertThat(queue.poll(), is(0));
+		assertThat(queue.take(), is(1));
+		assertThat(queue.poll(10, TimeUnit.MILLISECONDS), is(2));
+		assertThat(queue.poll(10, TimeUnit.MILLISECONDS) == null, is(true));
+		assertThat(queue.getDropCount(), is(0L));
+		assertThat(queue.isDropping(), is(false));
+	}
+
+	@Test
+	public void elementsShouldBeDroppedOnceSojournTimeStaysAboveTargetForAnInterval() throws Exception {
+		JmxCoDelQueue<Integer> queue = newQueue("Overloaded", 1000);
+		Thread.sleep(20);
+
+		List<Integer> delivered = consumeSlowlyUntilDropping(queue);
+		assertThat(queue.isDropping(), is(true));
+		assertThat(queue.getDropCount(), greaterThan(0L));
+		assertThat(dropped.size(), is((int) queue.getDropCount()));
+
+		Set<Integer> seen = new HashSet<Integer>(delivered);
+		seen.addAll(dropped);
+		seen.addAll(queue);
+		assertThat(seen.size(), is(1000));
+		assertThat(delivered.size() + dropped.size() + queue.size(), is(1000));
+		assertThat(queue.getStandingDelayNanos(), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(5)));
+		assertThat(queue.getDropRatio() > 0, is(true));
+	}
+
+	@Test
+	public void droppingShouldStopOnceTheQueueIsEmpty() throws Exception {
+		JmxCoDelQueue<Integer> queue = newQueue("Drained", 1000);
+		Thread.sleep(20);
+		consumeSlowlyUntilDropping(queue);
+
+		while (queue.poll() != null)
+			;
+		assertThat(queue.isDropping(), is(false));
+		assertThat(queue.isEmpty(), is(true));
+	}
+
+	@Test
+	public void offersShouldBeRejectedWhileDroppingIfRequested() throws Exception {
+		JmxCoDelQueue<Integer> queue = newQueue("Rejecting", 1000).rejectWhileDropping(true);
+		Thread.sleep(20);
+		consumeSlowlyUntilDropping(queue);
+
+		assertThat(queue.offer(-1), is(false));
+		queue.rejectWhileDropping(false);
+		assertThat(queue.offer(-1), is(true));
+	}
+
+	@Test
+	public void targetAndIntervalShouldBeSettableViaJmx() throws Exception {
+		JmxCoDelQueue<Integer> queue = newQueue("Tuned", 0);
+		ObjectName objectName = queue.objectName();
+
+		jmxClient.setAttribute(objectName, new Attribute("TargetMillis", 20L));
+		jmxClient.setAttribute(objectName, new Attribute("IntervalMillis", 500L));
+		assertThat(queue.getTargetMillis(), is(20L));
+		assertThat((Long) jmxClient.getAttribute(objectName, "IntervalMillis"), is(500L));
+		assertThat((Boolean) jmxClient.getAttribute(objectName, "Dropping"), is(false));
+		assertThat((Long) jmxClient.getAttribute(objectName, "DropCount"), is(0L));
+
+		try {
+			jmxClient.setAttribute(objectName, new Attribute("TargetMillis", 0L));
+			throw new AssertionError("Target should have been rejected.");
+		} catch (RuntimeMBeanException e) {
+			assertThat(e.getCause(), is(instanceOf(IllegalArgumentException.class)));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void creatingQueueWithZeroCapacityShouldThrowIllegalArgumentException() throws Exception {
+		new JmxCoDelQueue<Integer>(0, new Builder().property("name", "Empty"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MBeans.unregisterAll();
+	}
+}
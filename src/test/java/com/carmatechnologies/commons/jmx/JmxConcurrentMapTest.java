@@ -16,19 +16,28 @@
 package com.carmatechnologies.commons.jmx;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
 import javax.management.openmbean.TabularDataSupport;
 
 import org.junit.After;
 import org.junit.Test;
 
 import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.MapChanges;
 import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
 
 public class JmxConcurrentMapTest extends AbstractJmxTest {
@@ -129,6 +138,182 @@ public class JmxConcurrentMapTest extends AbstractJmxTest {
 		assertThat(clientItems, is(serverItems));
 	}
 
+	@Test
+	public void getItemsOnAJmxMapShouldUseTheProvidedRenderer() throws Exception {
+		ConcurrentMap<String, String> map = new ConcurrentHashMap<String, String>();
+		JmxConcurrentMap<String, String> jmxMap = new JmxConcurrentMap<String, String>(map, new Builder().packageName("my.custom.package"))
+				.renderer(new ItemRenderer.Builder().maxItemLength(5).build());
+		jmxMap.put("A", "0123456789");
+
+		objectName = jmxMap.objectName();
+		assertThat(jmxMap.getItems().get("A"), is("01..."));
+
+		TabularDataSupport clientItems = (TabularDataSupport) jmxClient.getAttribute(objectName, "Items");
+		assertThat(clientItems.values().toString(), containsString("{key=A, value=01...}"));
+	}
+
+	@Test
+	public void changesSinceAVersionShouldOnlyContainUpsertedAndRemovedEntries() throws Exception {
+		JmxConcurrentMap<String, Integer> jmxMap = new JmxConcurrentMap<String, Integer>(new ConcurrentHashMap<String, Integer>(), new Builder()
+				.packageName("my.custom.package"), 16);
+		objectName = jmxMap.objectName();
+		jmxMap.put("A", 1);
+		jmxMap.put("B", 2);
+		long version = jmxMap.getChangeVersion();
+		assertThat(version, is(2L));
+
+		jmxMap.put("A", 10);
+		jmxMap.put("C", 3);
+		jmxMap.put("C", 30);
+		jmxMap.remove("B");
+		jmxMap.remove("Missing");
+
+		CompositeData changes = (CompositeData) jmxClient.invoke(objectName, "getChangesSince", new Object[] { version }, new String[] { "long" });
+		assertThat((Long) changes.get("version"), is(6L));
+		assertThat((Boolean) changes.get("fullResync"), is(false));
+		TabularData upserted = (TabularData) changes.get("upserted");
+		assertThat(upserted.size(), is(2));
+		assertThat(upserted.values().toString(), containsString("{key=A, value=10}"));
+		assertThat(upserted.values().toString(), containsString("{key=C, value=30}"));
+		assertThat(Arrays.asList((String[]) changes.get("removed")), contains("B"));
+
+		MapChanges none = jmxMap.getChangesSince(6L);
+		assertThat(none.getVersion(), is(6L));
+		assertThat(none.getUpserted().isEmpty(), is(true));
+		assertThat(none.getRemoved().isEmpty(), is(true));
+	}
+
+	@Test
+	public void changesSinceAVersionNoLongerTrackedShouldTriggerAFullResync() throws Exception {
+		JmxConcurrentMap<String, Integer> jmxMap = new JmxConcurrentMap<String, Integer>(new ConcurrentHashMap<String, Integer>(), new Builder()
+				.packageName("my.custom.package"), 4);
+		objectName = jmxMap.objectName();
+		for (int i = 0; i < 10; ++i)
+			jmxMap.put("K" + (i % 6), i);
+
+		MapChanges overflowed = jmxMap.getChangesSince(2L);
+		assertThat(overflowed.isFullResync(), is(true));
+		assertThat(overflowed.isTruncated(), is(false));
+		assertThat(overflowed.getVersion(), is(10L));
+		assertThat(overflowed.getUpserted().size(), is(6));
+
+		assertThat(jmxMap.getChangesSince(6L).isFullResync(), is(false));
+		assertThat(jmxMap.getChangesSince(6L).getUpserted().keySet(), contains("K0", "K1", "K2", "K3"));
+
+		jmxMap.clear();
+		MapChanges cleared = jmxMap.getChangesSince(10L);
+		assertThat(cleared.isFullResync(), is(true));
+		assertThat(cleared.getUpserted().isEmpty(), is(true));
+	}
+
+	@Test
+	public void fullResyncExceedingTheByteBudgetShouldBeMarkedAsTruncated() throws Exception {
+		JmxConcurrentMap<String, Integer> jmxMap = new JmxConcurrentMap<String, Integer>(new ConcurrentHashMap<String, Integer>(), new Builder()
+				.packageName("my.custom.package"), 4).renderer(new ItemRenderer.Builder().maxTotalBytes(8).build());
+		objectName = jmxMap.objectName();
+		for (int i = 0; i < 10; ++i)
+			jmxMap.put("K" + i, i);
+
+		CompositeData resync = (CompositeData) jmxClient.invoke(objectName, "getChangesSince", new Object[] { 0L }, new String[] { "long" });
+		assertThat((Boolean) resync.get("fullResync"), is(true));
+		assertThat((Boolean) resync.get("truncated"), is(true));
+
+		jmxMap.put("K0", 0);
+		MapChanges delta = jmxMap.getChangesSince(10L);
+		assertThat(delta.isFullResync(), is(false));
+		assertThat(delta.isTruncated(), is(false));
+		assertThat(delta.getUpserted().get("K0"), is("0"));
+	}
+
+	@Test
+	public void changesOfAnUntrackedMapShouldAlwaysBeAFullResync() throws Exception {
+		JmxConcurrentMap<String, Integer> jmxMap = new JmxConcurrentMap<String, Integer>(new ConcurrentHashMap<String, Integer>(), new Builder()
+				.packageName("my.custom.package"));
+		objectName = jmxMap.objectName();
+		jmxMap.put("A", 1);
+
+		MapChanges changes = jmxMap.getChangesSince(0L);
+		assertThat(changes.isFullResync(), is(true));
+		assertThat(changes.getVersion(), is(0L));
+		assertThat(changes.getUpserted().get("A"), is("1"));
+	}
+
+	@Test
+	public void topByValueShouldRenderTheEntriesWithTheLargestNumericValuesLargestFirst() throws Exception {
+		JmxConcurrentMap<String, Object> jmxMap = new JmxConcurrentMap<String, Object>(new ConcurrentHashMap<String, Object>(), new Builder()
+				.packageName("my.custom.package"));
+		objectName = jmxMap.objectName();
+		for (int i = 0; i < 100; ++i)
+			jmxMap.put("K" + i, (i * 37) % 100);
+		jmxMap.put("Text", "not a number");
+		jmxMap.put("Atomic", new AtomicLong(1000));
+
+		assertThat(new ArrayList<String>(jmxMap.topByValue(4).keySet()), contains("Atomic", "K27", "K54", "K81"));
+		assertThat(jmxMap.topByValue(4).get("K27"), is("99"));
+		assertThat(jmxMap.topByValue(1000).size(), is(101));
+
+		TabularData remote = (TabularData) jmxClient.invoke(objectName, "topByValue", new Object[] { 3 }, new String[] { "int" });
+		assertThat(remote.size(), is(3));
+	}
+
+	@Test
+	public void topByValueShouldKeepEntriesWhoseKeysRenderTheSame() throws Exception {
+		JmxConcurrentMap<String, Integer> jmxMap = new JmxConcurrentMap<String, Integer>(new ConcurrentHashMap<String, Integer>(), new Builder()
+				.packageName("my.custom.package")).renderer(new ItemRenderer.Builder().maxItemLength(5).build());
+		objectName = jmxMap.objectName();
+		jmxMap.put("LongKeyA", 1);
+		jmxMap.put("LongKeyB", 2);
+
+		Map<String, String> top = jmxMap.topByValue(2);
+		assertThat(new ArrayList<String>(top.keySet()), contains("Lo...", "Lo...#2"));
+		assertThat(new ArrayList<String>(top.values()), contains("2", "1"));
+	}
+
+	@Test
+	public void changesSinceAVersionShouldKeepEntriesWhoseKeysRenderTheSame() throws Exception {
+		JmxConcurrentMap<String, Integer> jmxMap = new JmxConcurrentMap<String, Integer>(new ConcurrentHashMap<String, Integer>(), new Builder()
+				.packageName("my.custom.package"), 16).renderer(new ItemRenderer.Builder().maxItemLength(5).build());
+		objectName = jmxMap.objectName();
+		jmxMap.put("LongKeyA", 1);
+		jmxMap.put("LongKeyB", 2);
+		jmxMap.put("LongKeyC", 3);
+		jmxMap.remove("LongKeyA");
+
+		MapChanges changes = jmxMap.getChangesSince(0L);
+		assertThat(changes.isFullResync(), is(false));
+		assertThat(changes.getRemoved(), contains("Lo..."));
+		assertThat(new ArrayList<String>(changes.getUpserted().keySet()), contains("Lo...#2", "Lo...#3"));
+	}
+
+	@Test
+	public void topByShouldUseTheRegisteredComparator() throws Exception {
+		JmxConcurrentMap<String, String> jmxMap = new JmxConcurrentMap<String, String>(new ConcurrentHashMap<String, String>(), new Builder()
+				.packageName("my.custom.package")).valueComparator("length", new Comparator<String>() {
+			@Override
+			public int compare(final String left, final String right) {
+				return Integer.compare(left.length(), right.length());
+			}
+		});
+		objectName = jmxMap.objectName();
+		jmxMap.put("A", "x");
+		jmxMap.put("B", "xxx");
+		jmxMap.put("C", "xx");
+
+		assertThat(jmxMap.getValueComparators(), contains("length"));
+		assertThat(new ArrayList<String>(jmxMap.topBy("length", 2).keySet()), contains("B", "C"));
+		TabularData remote = (TabularData) jmxClient.invoke(objectName, "topBy", new Object[] { "length", 1 }, new String[] {
+				String.class.getName(), "int" });
+		assertThat(remote.values().toString(), containsString("{key=B, value=xxx}"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void topByWithUnknownComparatorShouldThrowIllegalArgumentException() throws Exception {
+		JmxConcurrentMap<String, String> jmxMap = new JmxConcurrentMap<String, String>(new ConcurrentHashMap<String, String>(), new Builder()
+				.packageName("my.custom.package"));
+		objectName = jmxMap.objectName();
+		jmxMap.topBy("unknown", 10);
+	}
+
 	@Test(expected = NullPointerException.class)
 	public void jmxDecoratingNullMapShouldThrowNullPointerException() throws Exception {
 		new JmxConcurrentMap<String, Integer>(null);
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class JmxConcurrentNavigableMapTest extends AbstractJmxTest {
+	private ObjectName objectName;
+
+	private JmxConcurrentNavigableMap<Long, String> newMap(final int size) throws Exception {
+		JmxConcurrentNavigableMap<Long, String> jmxMap = new JmxConcurrentNavigableMap<Long, String>(new ConcurrentSkipListMap<Long, String>(),
+				KeyParsers.longs(), new Builder().packageName("my.custom.package"));
+		objectName = jmxMap.objectName();
+		for (long i = 0; i < size; ++i)
+			jmxMap.put(i * 10, "V" + i);
+		return jmxMap;
+	}
+
+	@Test
+	public void jmxNavigableMapShouldBehaveLikeTheMapItWrapsAndUseDefaultType() throws Exception {
+		JmxConcurrentNavigableMap<Long, String> jmxMap = newMap(5);
+
+		assertThat(objectName.toString(), is("my.custom.package:type=JmxConcurrentNavigableMap"));
+		assertThat(jmxMap.firstKey(), is(0L));
+		assertThat(jmxMap.lastKey(), is(40L));
+		assertThat(jmxMap.ceilingKey(11L), is(20L));
+		assertThat(jmxMap.floorKey(11L), is(10L));
+		assertThat(new ArrayList<Long>(jmxMap.headMap(20L).keySet()), contains(0L, 10L));
+		assertThat(jmxMap.pollFirstEntry().getKey(), is(0L));
+		assertThat(jmxMap.size(), is(4));
+	}
+
+	@Test
+	public void firstAndLastKeysShouldBeExposedViaJmx() throws Exception {
+		newMap(5);
+
+		assertThat((String) jmxClient.getAttribute(objectName, "FirstKey"), is("0"));
+		assertThat((String) jmxClient.getAttribute(objectName, "LastKey"), is("40"));
+		assertThat(Integer.parseInt(jmxClient.getAttribute(objectName, "Size").toString()), is(5));
+	}
+
+	@Test
+	public void firstAndLastKeysOfAnEmptyMapShouldBeNull() throws Exception {
+		JmxConcurrentNavigableMap<Long, String> jmxMap = newMap(0);
+
+		assertThat(jmxMap.getFirstKey(), is(nullValue()));
+		assertThat(jmxMap.getLastKey(), is(nullValue()));
+	}
+
+	@Test
+	public void countRangeShouldCountKeysFromInclusiveToExclusive() throws Exception {
+		newMap(100);
+
+		Object count = jmxClient.invoke(objectName, "countRange", new Object[] { "100", "200" }, new String[] { String.class.getName(),
+				String.class.getName() });
+		assertThat((Integer) count, is(10));
+	}
+
+	@Test
+	public void rangeViewsShouldOnlyRenderTheRequestedWindowInKeyOrder() throws Exception {
+		JmxConcurrentNavigableMap<Long, String> jmxMap = newMap(100);
+
+		Map<String, String> subMap = jmxMap.subMapItems("100", "200", 3);
+		assertThat(new ArrayList<String>(subMap.keySet()), contains("100", "110", "120", ItemRenderer.ELLIPSIS));
+		assertThat(subMap.get("110"), is("V11"));
+		assertThat(subMap.get(ItemRenderer.ELLIPSIS), is("... more item(s) omitted"));
+
+		assertThat(new ArrayList<String>(jmxMap.headMapItems("30", 10).keySet()), contains("0", "10", "20"));
+		assertThat(new ArrayList<String>(jmxMap.tailMapItems("975", 10).keySet()), contains("980", "990"));
+
+		TabularData remote = (TabularData) jmxClient.invoke(objectName, "tailMapItems", new Object[] { "500", 5 }, new String[] {
+				String.class.getName(), int.class.getName() });
+		assertThat(remote.size(), is(6));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rangeViewsShouldRejectNonPositiveLimits() throws Exception {
+		newMap(1).tailMapItems("0", 0);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void jmxDecoratingMapWithNullKeyParserShouldThrowNullPointerException() throws Exception {
+		new JmxConcurrentNavigableMap<Long, String>(new ConcurrentSkipListMap<Long, String>(), null, new Builder().property("name", "NullParser"));
+	}
+
+	@Test
+	public void rangeViewsExceedingTheByteBudgetShouldTellItemsWereOmitted() throws Exception {
+		JmxConcurrentNavigableMap<Long, String> jmxMap = newMap(100);
+		jmxMap.renderer(new ItemRenderer.Builder().maxTotalBytes(11).build());
+
+		Map<String, String> tailMap = jmxMap.tailMapItems("0", 50);
+		assertThat(new ArrayList<String>(tailMap.keySet()), contains("0", "10", "20", ItemRenderer.ELLIPSIS));
+		assertThat(tailMap.get(ItemRenderer.ELLIPSIS), is("... more item(s) omitted"));
+	}
+
+	@Test
+	public void jmxDecoratingMapWithNullKeyParserShouldNotRegisterAnything() throws Exception {
+		ObjectName name = new ObjectName("com.carmatechnologies.commons.jmx:type=JmxConcurrentNavigableMap,name=NullParser");
+		try {
+			new JmxConcurrentNavigableMap<Long, String>(new ConcurrentSkipListMap<Long, String>(), null, new Builder().property("name", "NullParser"));
+			fail("NullPointerException expected.");
+		} catch (NullPointerException e) {
+			assertThat(mbeanServer.isRegistered(name), is(false));
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MBeans.unregisterAll();
+	}
+}
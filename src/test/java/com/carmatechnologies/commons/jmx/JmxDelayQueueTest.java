@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class JmxDelayQueueTest extends AbstractJmxTest {
+	private ObjectName objectName;
+
+	@Test
+	public void jmxDelayQueueShouldBehaveLikeTheQueueItWrapsAndUseDefaultPackageNameAndType() throws Exception {
+		JmxDelayQueue<Task> jmxQueue = new JmxDelayQueue<Task>(new DelayQueue<Task>());
+		objectName = jmxQueue.objectName();
+		assertThat(objectName.toString(), is("com.carmatechnologies.commons.jmx:type=JmxDelayQueue"));
+
+		jmxQueue.put(new Task("A", -10));
+		jmxQueue.put(new Task("B", 60000));
+		assertThat(Integer.parseInt(jmxClient.getAttribute(objectName, "Size").toString()), is(2));
+		assertThat(jmxQueue.poll().name, is("A"));
+		assertThat(jmxQueue.poll(), is(nullValue()));
+	}
+
+	@Test
+	public void nextExpiryDelayAndExpiredCountShouldBeExposedViaJmx() throws Exception {
+		JmxDelayQueue<Task> jmxQueue = new JmxDelayQueue<Task>(new DelayQueue<Task>(), new Builder().property("name", "Expiries"));
+		objectName = jmxQueue.objectName();
+		assertThat(jmxClient.getAttribute(objectName, "NextExpiryDelayMillis"), is(nullValue()));
+
+		jmxQueue.put(new Task("A", -1000));
+		jmxQueue.put(new Task("B", -500));
+		jmxQueue.put(new Task("C", 60000));
+
+		assertThat((Integer) jmxClient.getAttribute(objectName, "ExpiredCount"), is(2));
+		assertThat((Long) jmxClient.getAttribute(objectName, "NextExpiryDelayMillis"), lessThanOrEqualTo(-1000L));
+	}
+
+	@Test
+	public void latenessOfTakenElementsShouldBeRecordedWhenInstrumentationIsOn() throws Exception {
+		JmxDelayQueue<Task> jmxQueue = new JmxDelayQueue<Task>(new DelayQueue<Task>(), new Builder().property("name", "Lateness"));
+		objectName = jmxQueue.objectName();
+		jmxQueue.put(new Task("A", -1000));
+		jmxQueue.take();
+		assertThat(jmxQueue.getLatenessNanos().getCount(), is(0L));
+
+		Instrumentation.setLevel(InstrumentationLevel.COUNTERS);
+		jmxQueue.put(new Task("B", -1000));
+		jmxQueue.put(new Task("C", -2000));
+		jmxQueue.put(new Task("D", -3000));
+		jmxQueue.take();
+		List<Task> drained = new ArrayList<Task>();
+		assertThat(jmxQueue.drainTo(drained), is(2));
+
+		CompositeData lateness = (CompositeData) jmxClient.getAttribute(objectName, "LatenessNanos");
+		assertThat((Long) lateness.get("count"), is(3L));
+		assertThat((Long) lateness.get("min"), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(1000)));
+		assertThat((Long) lateness.get("max"), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(3000)));
+		assertThat(jmxQueue.getRemoveCount(), is(3L));
+		assertThat(jmxQueue.getInsertCount(), greaterThan(0L));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void jmxDecoratingNullQueueShouldThrowNullPointerException() throws Exception {
+		new JmxDelayQueue<Task>(null);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void jmxDecoratingQueueWithNullBuilderShouldThrowNullPointerException() throws Exception {
+		new JmxDelayQueue<Task>(new DelayQueue<Task>(), null);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Instrumentation.setLevel(InstrumentationLevel.OFF);
+		if (objectName != null)
+			mbeanServer.unregisterMBean(objectName);
+	}
+
+	private static final class Task implements Delayed {
+		private final String name;
+		private final long deadline;
+
+		private Task(final String name, final long delayMillis) {
+			this.name = name;
+			this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+		}
+
+		@Override
+		public long getDelay(final TimeUnit unit) {
+			return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(final Delayed other) {
+			return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class JmxGroupTest extends AbstractJmxTest {
+	private JmxGroup newTenantGroup(final int tenants) throws Exception {
+		JmxGroup group = new JmxGroup(new Builder().packageName("my.custom.package").property("name", "Tenants"));
+		for (int i = 0; i < tenants; ++i) {
+			JmxConcurrentMap<String, String> map = new JmxConcurrentMap<String, String>(new ConcurrentHashMap<String, String>(), group, "tenant" + i);
+			for (int j = 0; j < i; ++j)
+				map.put("k" + j, "v" + j);
+		}
+		return group;
+	}
+
+	@Test
+	public void groupedStructuresShouldShareASingleMBean() throws Exception {
+		int registered = mbeanServer.getMBeanCount();
+		JmxGroup group = newTenantGroup(100);
+
+		assertThat(mbeanServer.getMBeanCount(), is(registered + 1));
+		assertThat(group.objectName().toString(), is("my.custom.package:type=JmxGroup,name=Tenants"));
+		assertThat((Integer) jmxClient.getAttribute(group.objectName(), "MemberCount"), is(100));
+		assertThat((Integer) jmxClient.getAttribute(group.objectName(), "Size"), is(99 * 100 / 2));
+	}
+
+	@Test
+	public void topMembersShouldReturnTheLargestMembersLargestFirst() throws Exception {
+		JmxGroup group = newTenantGroup(50);
+
+		Map<String, Integer> top = group.topMembers(3);
+		assertThat(new ArrayList<String>(top.keySet()), contains("tenant49", "tenant48", "tenant47"));
+		assertThat(top.get("tenant48"), is(48));
+
+		TabularData remote = (TabularData) jmxClient.invoke(group.objectName(), "topMembers", new Object[] { 5 }, new String[] { int.class.getName() });
+		assertThat(remote.size(), is(5));
+	}
+
+	@Test
+	public void membersShouldBeLookedUpByName() throws Exception {
+		JmxGroup group = newTenantGroup(3);
+		LinkedBlockingQueue<String> queue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>(), group, "queue");
+		queue.add("A");
+		queue.add("B");
+
+		assertThat(group.memberSize("tenant2"), is(2));
+		assertThat(group.memberItems("tenant2"), containsInAnyOrder("k0=v0", "k1=v1"));
+		assertThat(group.memberItems("queue"), contains("A", "B"));
+		assertThat(group.memberSize("unknown"), is(nullValue()));
+		assertThat(group.memberItems("unknown"), is(nullValue()));
+
+		Object size = jmxClient.invoke(group.objectName(), "memberSize", new Object[] { "queue" }, new String[] { String.class.getName() });
+		assertThat((Integer) size, is(2));
+	}
+
+	@Test
+	public void removedMembersShouldNoLongerBeExposed() throws Exception {
+		JmxGroup group = newTenantGroup(3);
+
+		assertThat(group.remove("tenant2"), is(true));
+		assertThat(group.remove("tenant2"), is(false));
+		assertThat(group.getMemberCount(), is(2));
+		assertThat(group.getSize(), is(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void joiningGroupTwiceWithSameNameShouldThrowIllegalArgumentException() throws Exception {
+		JmxGroup group = newTenantGroup(1);
+		new JmxConcurrentMap<String, String>(new ConcurrentHashMap<String, String>(), group, "tenant0");
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void decoratingMapWithNullGroupShouldThrowNullPointerException() throws Exception {
+		new JmxConcurrentMap<String, String>(new ConcurrentHashMap<String, String>(), (JmxGroup) null, "tenant");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MBeans.unregisterAll();
+	}
+}
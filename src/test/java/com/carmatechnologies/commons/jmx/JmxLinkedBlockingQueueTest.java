@@ -16,14 +16,19 @@
 package com.carmatechnologies.commons.jmx;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
 
 import org.junit.After;
 import org.junit.Test;
@@ -123,6 +128,97 @@ public class JmxLinkedBlockingQueueTest extends AbstractJmxTest {
 		assertThat(jmxClient.getAttribute(objectName, "Items"), is(not(nullValue())));
 	}
 
+	@Test
+	public void getItemsOnAJmxQueueShouldUseTheProvidedRenderer() throws Exception {
+		LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+		JmxLinkedBlockingQueue<String> jmxQueue = new JmxLinkedBlockingQueue<String>(queue, new Builder().packageName("my.custom.package"))
+				.renderer(new ItemRenderer.Builder().maxTotalBytes(2).build());
+		jmxQueue.put("A");
+		jmxQueue.put("B");
+		jmxQueue.put("C");
+
+		objectName = jmxQueue.objectName();
+		List<String> items = jmxQueue.getItems();
+		assertThat(items.size(), is(3));
+		assertThat(items.get(0), is("A"));
+		assertThat(items.get(1), is("B"));
+		assertThat(items.get(2), is("... 1 more item(s) omitted"));
+	}
+
+	@Test
+	public void drainShouldTransferAvailableElementsUpToMaxWithoutWaiting() throws Exception {
+		JmxLinkedBlockingQueue<String> jmxQueue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		objectName = jmxQueue.objectName();
+		jmxQueue.addAll(Arrays.asList("A", "B", "C", "D"));
+
+		List<String> batch = new ArrayList<String>();
+		assertThat(jmxQueue.drain(batch, 1, 3, 1, TimeUnit.HOURS), is(3));
+		assertThat(batch, contains("A", "B", "C"));
+		assertThat(jmxQueue.size(), is(1));
+	}
+
+	@Test
+	public void drainShouldWaitForMinElements() throws Exception {
+		final JmxLinkedBlockingQueue<String> jmxQueue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		objectName = jmxQueue.objectName();
+		jmxQueue.add("A");
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+					jmxQueue.add("B");
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}).start();
+
+		List<String> batch = new ArrayList<String>();
+		assertThat(jmxQueue.drain(batch, 2, 10, 10, TimeUnit.SECONDS), is(2));
+		assertThat(batch, contains("A", "B"));
+	}
+
+	@Test
+	public void drainShouldReturnFewerThanMinElementsOnceTimeoutElapsed() throws Exception {
+		JmxLinkedBlockingQueue<String> jmxQueue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		objectName = jmxQueue.objectName();
+		jmxQueue.add("A");
+
+		List<String> batch = new ArrayList<String>();
+		long start = System.nanoTime();
+		assertThat(jmxQueue.drain(batch, 5, 10, 20, TimeUnit.MILLISECONDS), is(1));
+		assertThat(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20), is(true));
+	}
+
+	@Test
+	public void drainStatisticsShouldBeExposedViaJmxWhenInstrumentationIsOn() throws Exception {
+		JmxLinkedBlockingQueue<String> jmxQueue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		objectName = jmxQueue.objectName();
+		Instrumentation.setLevel(InstrumentationLevel.COUNTERS);
+		try {
+			jmxQueue.addAll(Arrays.asList("A", "B", "C", "D"));
+			jmxQueue.drain(new ArrayList<String>(), 1, 3, 1, TimeUnit.SECONDS);
+			jmxQueue.drain(new ArrayList<String>(), 1, 3, 1, TimeUnit.SECONDS);
+		} finally {
+			Instrumentation.setLevel(InstrumentationLevel.OFF);
+		}
+
+		assertThat((Long) jmxClient.getAttribute(objectName, "DrainCount"), is(2L));
+		assertThat((Long) jmxClient.getAttribute(objectName, "RemoveCount"), is(4L));
+		CompositeData batchSize = (CompositeData) jmxClient.getAttribute(objectName, "DrainBatchSize");
+		assertThat((Long) batchSize.get("min"), is(1L));
+		assertThat((Long) batchSize.get("max"), is(3L));
+		assertThat((Long) ((CompositeData) jmxClient.getAttribute(objectName, "DrainWaitNanos")).get("count"), is(2L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void drainWithMinGreaterThanMaxShouldThrowIllegalArgumentException() throws Exception {
+		JmxLinkedBlockingQueue<String> jmxQueue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		objectName = jmxQueue.objectName();
+		jmxQueue.drain(new ArrayList<String>(), 3, 2, 1, TimeUnit.SECONDS);
+	}
+
 	@Test(expected = NullPointerException.class)
 	public void jmxDecoratingNullQueueShouldThrowNullPointerException() throws Exception {
 		new JmxLinkedBlockingQueue<String>(null);
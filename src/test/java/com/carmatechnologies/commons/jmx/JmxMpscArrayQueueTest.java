@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class JmxMpscArrayQueueTest extends AbstractJmxTest {
+	@Test
+	public void jmxQueueShouldBeBoundedAndExposeItsStateViaJmx() throws Exception {
+		JmxMpscArrayQueue<String> queue = new JmxMpscArrayQueue<String>(3, new Builder().packageName("my.custom.package"));
+
+		assertThat(queue.objectName().toString(), is("my.custom.package:type=JmxMpscArrayQueue"));
+		assertThat(queue.getCapacity(), is(4));
+		for (String item : new String[] { "A", "B", "C", "D" })
+			assertThat(queue.offer(item), is(true));
+		assertThat(queue.offer("E"), is(false));
+		assertThat(queue.remainingCapacity(), is(0));
+		assertThat(queue.poll(), is("A"));
+
+		assertThat((Integer) jmxClient.getAttribute(queue.objectName(), "Size"), is(3));
+		assertThat((Integer) jmxClient.getAttribute(queue.objectName(), "Capacity"), is(4));
+		assertThat((Long) jmxClient.getAttribute(queue.objectName(), "ProducerIndex"), is(4L));
+		assertThat((Long) jmxClient.getAttribute(queue.objectName(), "ConsumerIndex"), is(1L));
+		assertThat(queue.getItems(), contains("B", "C", "D"));
+	}
+
+	@Test
+	public void elementsOfAllProducersShouldBeConsumedExactlyOnce() throws Exception {
+		final JmxMpscArrayQueue<Integer> queue = new JmxMpscArrayQueue<Integer>(64, WaitStrategy.YIELDING, new Builder().property("name",
+				"Concurrent"));
+		final int producers = 4;
+		final int perProducer = 25000;
+		final CountDownLatch start = new CountDownLatch(1);
+		for (int p = 0; p < producers; ++p) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 1; i <= perProducer; ++i)
+							queue.put(i);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}).start();
+		}
+
+		start.countDown();
+		long sum = 0;
+		for (int i = 0; i < producers * perProducer; ++i)
+			sum += queue.take();
+
+		assertThat(sum, is((long) producers * perProducer * (perProducer + 1) / 2));
+		assertThat(queue.poll(), is(nullValue()));
+		assertThat(queue.getConsumerIndex(), is((long) producers * perProducer));
+	}
+
+	@Test
+	public void timedOperationsShouldGiveUpOnceTimeoutElapsed() throws Exception {
+		JmxMpscArrayQueue<String> queue = new JmxMpscArrayQueue<String>(1, new Builder().property("name", "Timed"));
+
+		assertThat(queue.poll(10, TimeUnit.MILLISECONDS), is(nullValue()));
+		assertThat(queue.offer("A", 10, TimeUnit.MILLISECONDS), is(true));
+		assertThat(queue.offer("B", 10, TimeUnit.MILLISECONDS), is(false));
+
+		List<String> drained = new ArrayList<String>();
+		assertThat(queue.drainTo(drained), is(1));
+		assertThat(drained, contains("A"));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void offeringNullShouldThrowNullPointerException() throws Exception {
+		new JmxMpscArrayQueue<String>(4).offer(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nonPositiveCapacityShouldThrowIllegalArgumentException() throws Exception {
+		new JmxMpscArrayQueue<String>(0);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MBeans.unregisterAll();
+	}
+}
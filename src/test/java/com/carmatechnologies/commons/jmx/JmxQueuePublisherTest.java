@@ -0,0 +1,217 @@
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.openmbean.CompositeData;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.JmxQueuePublisher.Subscriber;
+import com.carmatechnologies.commons.jmx.JmxQueuePublisher.Subscription;
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class JmxQueuePublisherTest extends AbstractJmxTest {
+	private JmxQueuePublisher<Integer> publisher;
+
+	private static final class RecordingSubscriber implements Subscriber<Integer> {
+		private final List<Integer> items = new CopyOnWriteArrayList<Integer>();
+		private final CountDownLatch completed = new CountDownLatch(1);
+		private volatile CountDownLatch received;
+		private volatile Subscription subscription;
+		private volatile Throwable error;
+
+		RecordingSubscriber(final int expected) {
+			this.received = new CountDownLatch(expected);
+		}
+
+		@Override
+		public void onSubscribe(final Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(final Integer item) {
+			items.add(item);
+			received.countDown();
+		}
+
+		@Override
+		public void onError(final Throwable throwable) {
+			error = throwable;
+			completed.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			completed.countDown();
+		}
+
+		void await() throws InterruptedException {
+			assertThat(received.await(5, TimeUnit.SECONDS), is(true));
+		}
+	}
+
+	private JmxLinkedBlockingQueue<Integer> newQueue(final String name, final int size) throws Exception {
+		JmxLinkedBlockingQueue<Integer> queue = new JmxLinkedBlockingQueue<Integer>(new LinkedBlockingQueue<Integer>(), new Builder().property(
+				"name", name));
+		for (int i = 0; i < size; ++i)
+			queue.offer(i);
+		return queue;
+	}
+
+	@Test
+	public void elementsShouldOnlyBeDeliveredAsRequested() throws Exception {
+		JmxLinkedBlockingQueue<Integer> queue = newQueue("Requested", 10);
+		publisher = new JmxQueuePublisher<Integer>(queue, 4, new Builder().property("name", "Requested"));
+		RecordingSubscriber subscriber = new RecordingSubscriber(3);
+		publisher.subscribe(subscriber);
+
+		subscriber.subscription.request(3);
+		subscriber.await();
+		Thread.sleep(50);
+		assertThat(subscriber.items, contains(0, 1, 2));
+		assertThat(queue.size(), is(7));
+		assertThat((Integer) jmxClient.getAttribute(publisher.objectName(), "Backlog"), is(7));
+
+		subscriber.received = new CountDownLatch(7);
+		subscriber.subscription.request(Long.MAX_VALUE);
+		subscriber.await();
+		assertThat(subscriber.items, contains(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+
+		subscriber.received = new CountDownLatch(1);
+		queue.offer(10);
+		subscriber.await();
+		assertThat(subscriber.items.get(10), is(10));
+
+		CompositeData[] stats = (CompositeData[]) jmxClient.getAttribute(publisher.objectName(), "Subscribers");
+		assertThat(stats.length, is(1));
+		assertThat((Long) stats[0].get("delivered"), is(11L));
+		assertThat((Long) stats[0].get("requested"), is(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void elementsShouldBeSpreadAcrossSubscribersAndNeverDuplicated() throws Exception {
+		JmxLinkedBlockingQueue<Integer> queue = newQueue("Spread", 100);
+		publisher = new JmxQueuePublisher<Integer>(queue, 8, new Builder().property("name", "Spread"));
+		RecordingSubscriber first = new RecordingSubscriber(40);
+		RecordingSubscriber second = new RecordingSubscriber(60);
+		publisher.subscribe(first);
+		publisher.subscribe(second);
+		first.subscription.request(40);
+		second.subscription.request(60);
+		first.await();
+		second.await();
+
+		assertThat(first.items.size(), is(40));
+		assertThat(second.items.size(), is(60));
+		assertThat(queue.isEmpty(), is(true));
+		List<Integer> all = new CopyOnWriteArrayList<Integer>(first.items);
+		all.addAll(second.items);
+		assertThat(new java.util.HashSet<Integer>(all).size(), is(100));
+	}
+
+	@Test
+	public void cancelledSubscribersShouldNoLongerReceiveElements() throws Exception {
+		JmxLinkedBlockingQueue<Integer> queue = newQueue("Cancelled", 5);
+		publisher = new JmxQueuePublisher<Integer>(queue, 4, new Builder().property("name", "Cancelled"));
+		RecordingSubscriber subscriber = new RecordingSubscriber(2);
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(2);
+		subscriber.await();
+		subscriber.subscription.cancel();
+		subscriber.subscription.request(10);
+		Thread.sleep(300);
+
+		assertThat(subscriber.items.size(), is(2));
+		assertThat(queue.size(), is(3));
+		assertThat(publisher.getSubscriberCount(), is(0));
+	}
+
+	@Test
+	public void elementsLeftByAFailingSubscriberShouldBeDeliveredInOrderToTheNextOne() throws Exception {
+		JmxLinkedBlockingQueue<Integer> queue = newQueue("Failing", 6);
+		publisher = new JmxQueuePublisher<Integer>(queue, 4, new Builder().property("name", "Failing"));
+		final CountDownLatch failed = new CountDownLatch(1);
+		Subscriber<Integer> failing = new Subscriber<Integer>() {
+			@Override
+			public void onSubscribe(final Subscription subscription) {
+				subscription.request(4);
+			}
+
+			@Override
+			public void onNext(final Integer item) {
+				if (item == 1) {
+					failed.countDown();
+					throw new IllegalStateException("Failed on purpose.");
+				}
+			}
+
+			@Override
+			public void onError(final Throwable throwable) {
+			}
+
+			@Override
+			public void onComplete() {
+			}
+		};
+		publisher.subscribe(failing);
+		assertThat(failed.await(5, TimeUnit.SECONDS), is(true));
+
+		RecordingSubscriber next = new RecordingSubscriber(4);
+		publisher.subscribe(next);
+		next.subscription.request(4);
+		next.await();
+		assertThat(next.items, contains(2, 3, 4, 5));
+		assertThat(queue.isEmpty(), is(true));
+	}
+
+	@Test
+	public void requestingNonPositiveDemandShouldSignalAnError() throws Exception {
+		publisher = new JmxQueuePublisher<Integer>(newQueue("Invalid", 1), 4, new Builder().property("name", "Invalid"));
+		RecordingSubscriber subscriber = new RecordingSubscriber(1);
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(0);
+
+		assertThat(subscriber.completed.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(subscriber.error, is(instanceOf(IllegalArgumentException.class)));
+		assertThat(subscriber.items.isEmpty(), is(true));
+	}
+
+	@Test
+	public void closingShouldCompleteSubscribersAndKeepUndeliveredElementsInTheQueue() throws Exception {
+		JmxLinkedBlockingQueue<Integer> queue = newQueue("Closed", 5);
+		publisher = new JmxQueuePublisher<Integer>(queue, 4, new Builder().property("name", "Closed"));
+		RecordingSubscriber subscriber = new RecordingSubscriber(1);
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(1);
+		subscriber.await();
+		publisher.close();
+
+		assertThat(subscriber.completed.getCount(), is(0L));
+		assertThat(subscriber.items, contains(0));
+		assertThat(queue.size(), is(4));
+		assertThat(queue.peek(), is(1));
+
+		RecordingSubscriber late = new RecordingSubscriber(0);
+		publisher.subscribe(late);
+		assertThat(late.completed.getCount(), is(0L));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (publisher != null)
+			publisher.close();
+		MBeans.unregisterAll();
+	}
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class JmxSpscArrayQueueTest extends AbstractJmxTest {
+	@Test
+	public void jmxQueueShouldBeBoundedAndExposeItsStateViaJmx() throws Exception {
+		JmxSpscArrayQueue<String> queue = new JmxSpscArrayQueue<String>(2);
+
+		assertThat(queue.objectName().toString(), is("com.carmatechnologies.commons.jmx:type=JmxSpscArrayQueue"));
+		assertThat(queue.offer("A"), is(true));
+		assertThat(queue.offer("B"), is(true));
+		assertThat(queue.offer("C"), is(false));
+		assertThat(queue.peek(), is("A"));
+		assertThat((Integer) jmxClient.getAttribute(queue.objectName(), "Size"), is(2));
+		assertThat((Long) jmxClient.getAttribute(queue.objectName(), "ProducerIndex"), is(2L));
+	}
+
+	@Test
+	public void elementsShouldBeConsumedInOrder() throws Exception {
+		final JmxSpscArrayQueue<Integer> queue = new JmxSpscArrayQueue<Integer>(16, WaitStrategy.YIELDING, new Builder().property("name",
+				"Ordered"));
+		final int count = 100000;
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < count; ++i)
+						queue.put(i);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}).start();
+
+		for (int i = 0; i < count; ++i)
+			assertThat(queue.take(), is(i));
+		assertThat(queue.poll(), is(nullValue()));
+		assertThat(queue.isEmpty(), is(true));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MBeans.unregisterAll();
+	}
+}
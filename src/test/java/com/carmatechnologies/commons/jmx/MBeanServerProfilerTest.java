@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.mbeans.AccessStats;
+
+public class MBeanServerProfilerTest {
+	private MBeanServerProfiler profiler;
+	private JmxConcurrentMap<String, Integer> map;
+	private JMXConnectorServer connectorServer;
+	private JMXConnector connector;
+	private MBeanServerConnection remoteClient;
+
+	@Before
+	public void setUp() throws Exception {
+		profiler = new MBeanServerProfiler(new Builder().property("name", "Profiler"));
+		map = new JmxConcurrentMap<String, Integer>(new ConcurrentHashMap<String, Integer>(), new Builder().property("name", "Profiled"));
+		for (int i = 0; i < 100; ++i)
+			map.put("K" + i, i);
+
+		connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://"), null, MBeans.platformServer());
+		connectorServer.setMBeanServerForwarder(profiler.forwarder());
+		connectorServer.start();
+		connector = JMXConnectorFactory.connect(connectorServer.getAddress());
+		remoteClient = connector.getMBeanServerConnection();
+	}
+
+	@Test
+	public void remoteReadsShouldBeCountedAndSizedPerAttribute() throws Exception {
+		for (int i = 0; i < 5; ++i)
+			remoteClient.getAttribute(map.objectName(), "Items");
+		remoteClient.getAttribute(map.objectName(), "Size");
+
+		List<AccessStats> stats = profiler.accessStats(map.objectName().toString());
+		assertThat(members(stats), contains("Items", "Size"));
+		assertThat(stats.get(0).getAccess(), is("read"));
+		assertThat(stats.get(0).getCount(), is(5L));
+		assertThat(stats.get(0).getLatencyNanos().getCount(), is(5L));
+		assertThat(stats.get(0).getTotalResponseBytes(), greaterThan(5 * 100 * 4L));
+		assertThat(stats.get(1).getCount(), is(1L));
+		assertThat(stats.get(1).getTotalResponseBytes(), is(8L));
+
+		assertThat(members(profiler.topByCount(1)), contains("Items"));
+		assertThat(members(profiler.topByResponseBytes(2)), contains("Items", "Size"));
+		assertThat(profiler.getCallCount(), is(6L));
+		assertThat(profiler.getCallers().size(), is(1));
+		assertThat(profiler.getCallers(), not(hasKey(MBeanServerProfiler.LOCAL_CALLER)));
+	}
+
+	@Test
+	public void bulkReadsShouldBeRecordedPerAttributeButCountedAsASingleCall() throws Exception {
+		remoteClient.getAttributes(map.objectName(), new String[] { "Size", "Items" });
+
+		assertThat(members(profiler.accessStats(map.objectName().toString())), contains("Items", "Size"));
+		assertThat(profiler.getProfiledCount(), is(2));
+		assertThat(profiler.getCallCount(), is(1L));
+	}
+
+	@Test
+	public void wrappedServerShouldRecordLocalCallsOperationsAndErrors() throws Exception {
+		MBeanServer server = profiler.wrap(MBeans.platformServer());
+		server.invoke(map.objectName(), "topByValue", new Object[] { 1 }, new String[] { int.class.getName() });
+		try {
+			server.getAttribute(map.objectName(), "Unknown");
+		} catch (AttributeNotFoundException e) {
+			// Expected, recorded as an error.
+		}
+
+		List<AccessStats> stats = profiler.accessStats(map.objectName().toString());
+		assertThat(members(stats), contains("topByValue", "Unknown"));
+		assertThat(stats.get(0).getAccess(), is("invoke"));
+		assertThat(stats.get(0).getTotalResponseBytes(), greaterThan(0L));
+		assertThat(stats.get(1).getErrorCount(), is(1L));
+		assertThat(stats.get(1).getLastCaller(), is(MBeanServerProfiler.LOCAL_CALLER));
+		assertThat(profiler.getCallers().get(MBeanServerProfiler.LOCAL_CALLER), is(2L));
+	}
+
+	@Test
+	public void profilerShouldBeExposedViaJmxWithoutProfilingItself() throws Exception {
+		remoteClient.getAttribute(map.objectName(), "Items");
+		ObjectName objectName = profiler.objectName();
+
+		CompositeData[] top = (CompositeData[]) remoteClient.invoke(objectName, "topByTotalTime", new Object[] { 10 },
+				new String[] { int.class.getName() });
+		assertThat(top.length, is(1));
+		assertThat((String) top[0].get("member"), is("Items"));
+		assertThat((Integer) remoteClient.getAttribute(objectName, "ProfiledCount"), is(1));
+		assertThat(profiler.accessStats(objectName.toString()).isEmpty(), is(true));
+
+		remoteClient.invoke(objectName, "reset", new Object[0], new String[0]);
+		assertThat(profiler.getProfiledCount(), is(0));
+	}
+
+	@Test
+	public void accessesBeyondTheMaximumShouldOnlyBeCounted() throws Exception {
+		profiler.maxProfiled(1);
+		remoteClient.getAttribute(map.objectName(), "Items");
+		remoteClient.getAttribute(map.objectName(), "Size");
+
+		assertThat(profiler.getProfiledCount(), is(1));
+		assertThat(profiler.getCallCount(), is(2L));
+	}
+
+	@Test
+	public void responseSizeShouldBeEstimatedFromStringsAndValues() throws Exception {
+		assertThat(MBeanServerProfiler.estimateBytes(null, 0), is(0L));
+		assertThat(MBeanServerProfiler.estimateBytes("abc", 0), is(6L));
+		assertThat(MBeanServerProfiler.estimateBytes(new long[4], 0), is(32L));
+		assertThat(MBeanServerProfiler.estimateBytes(Arrays.asList("ab", 1), 0), is(12L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void settingNonPositiveMaximumShouldThrowIllegalArgumentException() throws Exception {
+		profiler.maxProfiled(0);
+	}
+
+	private static List<String> members(final List<AccessStats> stats) {
+		final List<String> members = new ArrayList<String>();
+		for (final AccessStats access : stats)
+			members.add(access.getMember());
+		return members;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MBeans.unregisterAll();
+		if (connector != null)
+			connector.close();
+		if (connectorServer != null)
+			connectorServer.stop();
+	}
+}
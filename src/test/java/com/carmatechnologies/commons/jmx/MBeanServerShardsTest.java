@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.MonitoredResource;
+
+public class MBeanServerShardsTest {
+	private final MBeanServer platformServer = ManagementFactory.getPlatformMBeanServer();
+	private final MBeanServerShards shards = new MBeanServerShards(4);
+	private JMXConnectorServer connectorServer;
+	private JMXConnector connector;
+	private MBeanServerConnection jmxClient;
+
+	@Before
+	public void setUp() throws Exception {
+		connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://"), null, platformServer);
+		connectorServer.setMBeanServerForwarder(shards.aggregatingView());
+		connectorServer.start();
+		connector = JMXConnectorFactory.connect(connectorServer.getAddress());
+		jmxClient = connector.getMBeanServerConnection();
+	}
+
+	@Test
+	public void registeringMBeanInProvidedServerShouldNotRegisterItInPlatformServer() throws Exception {
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		ObjectName objectName = MBeans.register(new Builder(new MonitoredResource("Isolated")).server(server));
+
+		assertThat(server.isRegistered(objectName), is(true));
+		assertThat(platformServer.isRegistered(objectName), is(false));
+
+		MBeans.unregister(objectName);
+		assertThat(server.isRegistered(objectName), is(false));
+	}
+
+	@Test
+	public void registeringMBeansInShardsShouldSpreadThemAcrossShardsBasedOnTheirName() throws Exception {
+		for (int i = 0; i < 40; ++i) {
+			ObjectName objectName = MBeans.register(new Builder(new MonitoredResource("Tenant" + i)).shards(shards).property("name", "Tenant" + i));
+			assertThat(shards.shardFor(objectName).isRegistered(objectName), is(true));
+			assertThat(platformServer.isRegistered(objectName), is(false));
+		}
+
+		for (MBeanServer shard : shards.shards())
+			assertThat(shard.queryNames(new ObjectName("com.carmatechnologies.commons.jmx.utils:*"), null).isEmpty(), is(false));
+	}
+
+	@Test
+	public void decoratorsShouldBeRegistrableInShards() throws Exception {
+		JmxConcurrentMap<String, String> map = new JmxConcurrentMap<String, String>(new ConcurrentHashMap<String, String>(), new Builder()
+				.shards(shards).property("name", "ShardedMap"));
+		map.put("k", "v");
+
+		assertThat(shards.shardFor(map.objectName()).getAttribute(map.objectName(), "Size").toString(), is("1"));
+		assertThat(platformServer.isRegistered(map.objectName()), is(false));
+	}
+
+	@Test
+	public void aggregatingViewShouldMakePlatformAndShardedMBeansVisibleThroughTheConnector() throws Exception {
+		ObjectName sharded = MBeans.register(new Builder(new MonitoredResource("Sharded")).shards(shards).property("name", "Sharded"));
+		ObjectName platform = MBeans.register(new Builder(new MonitoredResource("Platform")).property("name", "Platform"));
+
+		assertThat(jmxClient.isRegistered(sharded), is(true));
+		assertThat(jmxClient.isRegistered(platform), is(true));
+		assertThat(jmxClient.getAttribute(sharded, "Name").toString(), is("Sharded"));
+		assertThat(jmxClient.getAttribute(platform, "Name").toString(), is("Platform"));
+		assertThat(jmxClient.queryNames(new ObjectName("com.carmatechnologies.commons.jmx.utils:*"), null), hasItems(sharded, platform));
+		assertThat(jmxClient.queryNames(null, null), hasItem(new ObjectName(ManagementFactory.RUNTIME_MXBEAN_NAME)));
+		assertThat(jmxClient.getMBeanCount(), is(platformServer.getMBeanCount() + 1));
+		assertThat(jmxClient.getMBeanCount(), is(jmxClient.queryNames(null, null).size()));
+		assertThat(Arrays.asList(jmxClient.getDomains()), hasItems("java.lang", "com.carmatechnologies.commons.jmx.utils"));
+
+		MBeans.unregister(sharded);
+		assertThat(jmxClient.isRegistered(sharded), is(false));
+		assertThat(jmxClient.queryNames(new ObjectName("com.carmatechnologies.commons.jmx.utils:*"), null), not(hasItem(sharded)));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void registeringMBeanWithNullServerShouldThrowNullPointerException() throws Exception {
+		new Builder(new MonitoredResource("Null")).server(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void creatingZeroShardsShouldThrowIllegalArgumentException() throws Exception {
+		new MBeanServerShards(0);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MBeans.unregisterAll();
+		if (connector != null)
+			connector.close();
+		if (connectorServer != null)
+			connectorServer.stop();
+	}
+}
@@ -18,8 +18,12 @@ package com.carmatechnologies.commons.jmx;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 
+import java.util.concurrent.CountDownLatch;
+
 import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import org.junit.After;
 import org.junit.Test;
@@ -155,6 +159,40 @@ public class MBeansTest extends AbstractJmxTest {
 		objectName = MBeans.register(new Builder(mbean2).property("name", "2ndLevel"));
 	}
 
+	@Test(timeout = 10000)
+	public void registeringAnMBeanShouldNotWaitForTheOngoingRegistrationOfAnotherOne() throws Exception {
+		final CountDownLatch registering = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final StandardMBean slow = new StandardMBean(new MonitoredResource("Slow"), IMonitoredResource.class) {
+			@Override
+			public ObjectName preRegister(final MBeanServer server, final ObjectName name) throws Exception {
+				registering.countDown();
+				release.await();
+				return super.preRegister(server, name);
+			}
+		};
+		final Thread slowRegistration = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					MBeans.register(new Builder(slow).type("Slow"));
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		slowRegistration.start();
+		try {
+			registering.await();
+			objectName = MBeans.register(new Builder(new MonitoredResource("Fast")).type("Fast"));
+			assertThat(mbeanServer.isRegistered(objectName), is(true));
+		} finally {
+			release.countDown();
+			slowRegistration.join();
+			MBeans.unregister(new ObjectName("com.carmatechnologies.commons.jmx:type=Slow"));
+		}
+	}
+
 	@Test
 	public void getJmxPortWhenSystemNotSetUpShouldDefaultToNotAvailable() {
 		assertThat(MBeans.getJmxPort(), is("N/A"));
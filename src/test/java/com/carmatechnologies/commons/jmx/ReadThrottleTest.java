@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.AttributeList;
+import javax.management.ObjectName;
+import javax.management.RuntimeMBeanException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class ReadThrottleTest extends AbstractJmxTest {
+	private JmxConcurrentMap<String, Integer> newMap(final String name, final ReadThrottle throttle) throws Exception {
+		JmxConcurrentMap<String, Integer> map = new JmxConcurrentMap<String, Integer>(new ConcurrentHashMap<String, Integer>(), new Builder()
+				.property("name", name).throttle(throttle));
+		for (int i = 0; i < 1000; ++i)
+			map.put("K" + i, i);
+		return map;
+	}
+
+	private void assertThrottled(final ObjectName objectName, final String attribute) throws Exception {
+		try {
+			jmxClient.getAttribute(objectName, attribute);
+			throw new AssertionError("'" + attribute + "' should have been throttled.");
+		} catch (RuntimeMBeanException e) {
+			assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+			assertThat(e.getCause().getMessage(), containsString("Throttled '" + attribute + "'"));
+		}
+	}
+
+	@Test
+	public void guardedReadsBeyondTheRateShouldBeThrottledWhileOtherReadsShouldNot() throws Exception {
+		ReadThrottle throttle = new ReadThrottle.Builder().permitsPerSecond(0.01).build();
+		ObjectName first = newMap("First", throttle).objectName();
+		ObjectName second = newMap("Second", throttle).objectName();
+
+		jmxClient.getAttribute(first, "Items");
+		assertThrottled(first, "Items");
+		assertThat((Integer) jmxClient.getAttribute(first, "Size"), is(1000));
+		jmxClient.getAttribute(second, "Items");
+
+		assertThat(throttle.getAdmitCount(), is(2L));
+		assertThat(throttle.getRateRejectCount(), is(1L));
+	}
+
+	@Test
+	public void guardedReadsBeyondTheMaximumConcurrencyShouldBeThrottled() throws Exception {
+		final CountDownLatch rendering = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ReadThrottle throttle = new ReadThrottle.Builder().maxConcurrent(1).build();
+		final JmxConcurrentMap<String, Integer> map = newMap("Concurrent", throttle);
+		map.renderer(new ItemRenderer.Builder().formatter(new ItemFormatter() {
+			@Override
+			public String format(final Object item) {
+				rendering.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return String.valueOf(item);
+			}
+		}).build());
+
+		final AtomicReference<Object> items = new AtomicReference<Object>();
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					items.set(jmxClient.getAttribute(map.objectName(), "Items"));
+				} catch (Exception e) {
+					items.set(e);
+				}
+			}
+		});
+		reader.start();
+		assertThat(rendering.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(throttle.getActiveCount(), is(1));
+		assertThrottled(map.objectName(), "Items");
+		release.countDown();
+		reader.join(5000);
+
+		assertThat(items.get() instanceof Exception, is(false));
+		assertThat(throttle.getActiveCount(), is(0));
+		assertThat(throttle.getConcurrencyRejectCount(), is(1L));
+	}
+
+	@Test
+	public void guardedReadsShouldBeThrottledDuringCooldownOnceOverBudget() throws Exception {
+		ReadThrottle throttle = new ReadThrottle.Builder().maxAllocatedBytes(1).cooldown(1, TimeUnit.HOURS).build();
+		ObjectName objectName = newMap("OverBudget", throttle).objectName();
+
+		jmxClient.getAttribute(objectName, "Items");
+		assertThrottled(objectName, "Items");
+		Object top = jmxClient.invoke(objectName, "topByValue", new Object[] { 1 }, new String[] { int.class.getName() });
+
+		assertThat(top == null, is(false));
+		assertThat(throttle.getOverBudgetCount(), is(2L));
+		assertThat(throttle.getBudgetRejectCount(), is(1L));
+	}
+
+	@Test
+	public void throttledAttributesShouldBeOmittedFromBulkReads() throws Exception {
+		ReadThrottle throttle = new ReadThrottle.Builder().guard("Items").permitsPerSecond(0.01).build();
+		ObjectName objectName = newMap("Bulk", throttle).objectName();
+
+		assertThat(jmxClient.getAttributes(objectName, new String[] { "Size", "Items" }).size(), is(2));
+		AttributeList attributes = jmxClient.getAttributes(objectName, new String[] { "Size", "Items" });
+		assertThat(attributes.size(), is(1));
+		assertThat(attributes.asList().get(0).getName(), is("Size"));
+	}
+
+	@Test
+	public void throttleStatisticsShouldBeExposedViaJmx() throws Exception {
+		ReadThrottle throttle = new ReadThrottle.Builder().maxConcurrent(4).build();
+		ObjectName objectName = MBeans.register(throttle);
+		jmxClient.getAttribute(newMap("Exposed", throttle).objectName(), "Items");
+
+		assertThat((Long) jmxClient.getAttribute(objectName, "AdmitCount"), is(1L));
+		assertThat((Integer) jmxClient.getAttribute(objectName, "MaxConcurrent"), is(4));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void settingNonPositiveRateShouldThrowIllegalArgumentException() throws Exception {
+		new ReadThrottle.Builder().permitsPerSecond(0);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void registeringMBeanWithNullThrottleShouldThrowNullPointerException() throws Exception {
+		new Builder().throttle(null);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MBeans.unregisterAll();
+	}
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.carmatechnologies.commons.jmx.SharedCounters.Slot;
+
+public class SharedCountersTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	private SharedCounters counters;
+	private SharedCountersReader reader;
+
+	@Test
+	public void slotsShouldBeReadableFromTheFileWhileBeingUpdated() throws Exception {
+		File file = folder.newFile("counters.dat");
+		counters = new SharedCounters(file, 16);
+		Slot requests = counters.longSlot("requests");
+		Slot load = counters.doubleSlot("load");
+		requests.set(41L);
+		load.set(0.75);
+
+		reader = new SharedCountersReader(file);
+		Map<String, Number> values = reader.read();
+		assertThat(new ArrayList<String>(values.keySet()), contains("requests", "load"));
+		assertThat((Long) values.get("requests"), is(41L));
+		assertThat((Double) values.get("load"), is(0.75));
+
+		requests.set(42L);
+		counters.longSlot("errors").set(1L);
+		values = reader.read();
+		assertThat((Long) values.get("requests"), is(42L));
+		assertThat((Long) values.get("errors"), is(1L));
+	}
+
+	@Test
+	public void slotsShouldBeCreatedOncePerName() throws Exception {
+		counters = new SharedCounters(folder.newFile("once.dat"), 16);
+
+		assertThat(counters.longSlot("requests") == counters.longSlot("requests"), is(true));
+		assertThat(counters.size(), is(1));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void creatingMoreSlotsThanCapacityShouldThrowIllegalStateException() throws Exception {
+		counters = new SharedCounters(folder.newFile("full.dat"), 2);
+		counters.longSlot("a");
+		counters.longSlot("b");
+		counters.longSlot("c");
+	}
+
+	@Test
+	public void mirroringShouldCopyAttributesOfRegisteredMBeans() throws Exception {
+		File file = folder.newFile("mirror.dat");
+		counters = new SharedCounters(file);
+		JmxLinkedBlockingQueue<String> queue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		queue.add("A");
+		queue.add("B");
+		counters.mirror(new AttributeCollector(null));
+
+		reader = new SharedCountersReader(file);
+		Map<String, Number> values = reader.read();
+		assertThat((Long) values.get(queue.objectName() + "#Size"), is(2L));
+		assertThat(values.get(queue.objectName() + "#InsertLatencyNanos.mean") instanceof Double, is(true));
+	}
+
+	@Test
+	public void mirroringShouldRunEveryInterval() throws Exception {
+		File file = folder.newFile("scheduled.dat");
+		counters = new SharedCounters(file).mirror(10, TimeUnit.MILLISECONDS);
+		JmxLinkedBlockingQueue<String> queue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>());
+		queue.add("A");
+
+		reader = new SharedCountersReader(file);
+		String size = queue.objectName() + "#Size";
+		for (int i = 0; i < 200 && !Long.valueOf(1L).equals(reader.read().get(size)); ++i)
+			Thread.sleep(10);
+		assertThat((Long) reader.read().get(size), is(1L));
+	}
+
+	@Test
+	public void recreatingAFileStillMappedByAReaderShouldNotAffectThatReader() throws Exception {
+		File file = folder.newFile("recreated.dat");
+		counters = new SharedCounters(file, 16);
+		counters.longSlot("requests").set(41L);
+		reader = new SharedCountersReader(file);
+		counters.close();
+
+		counters = new SharedCounters(file, 4);
+		counters.longSlot("errors").set(1L);
+		assertThat((Long) reader.read().get("requests"), is(41L));
+
+		SharedCountersReader reopened = new SharedCountersReader(file);
+		try {
+			assertThat(new ArrayList<String>(reopened.read().keySet()), contains("errors"));
+		} finally {
+			reopened.close();
+		}
+		assertThat(folder.getRoot().list().length, is(1));
+	}
+
+	@Test(expected = IOException.class)
+	public void readingAnythingButASharedCountersFileShouldThrowIOException() throws Exception {
+		reader = new SharedCountersReader(folder.newFile("empty.dat"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (reader != null)
+			reader.close();
+		if (counters != null)
+			counters.close();
+		MBeans.unregisterAll();
+	}
+}
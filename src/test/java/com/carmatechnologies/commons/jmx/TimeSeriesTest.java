@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.mbeans.Sample;
+
+public class TimeSeriesTest {
+	@Test
+	public void samplesShouldBeDecodedExactlyAsTheyWereAdded() {
+		TimeSeries series = new TimeSeries(4, 4096);
+		Random random = new Random(42);
+		long[] timestamps = new long[500];
+		double[] values = new double[500];
+		long timestamp = 1400000000000L;
+		for (int i = 0; i < 500; ++i) {
+			timestamp += (i % 50 == 0) ? random.nextInt(100000) - 50000 : 1000 + random.nextInt(3);
+			timestamps[i] = timestamp;
+			values[i] = (i % 3 == 0) ? random.nextGaussian() * 1e6 : (i % 3 == 1) ? i : values[i - 1];
+			series.add(timestamps[i], values[i]);
+		}
+
+		List<Sample> samples = series.samplesSince(Long.MIN_VALUE);
+		assertThat(samples.size(), is(500));
+		for (int i = 0; i < 500; ++i) {
+			assertThat(samples.get(i).getTimestamp(), is(timestamps[i]));
+			assertThat(samples.get(i).getValue(), is(values[i]));
+		}
+	}
+
+	@Test
+	public void regularSamplesOfSlowlyChangingValuesShouldOnlyTakeAFewBitsEach() {
+		TimeSeries series = new TimeSeries(2, 256);
+		for (int i = 0; series.size() == i; ++i)
+			series.add(1000L * i, i / 100);
+
+		// A 256 bytes block holds 2048 bits, minus a 128 bits header:
+		assertThat(2048 / series.size(), lessThan(4));
+	}
+
+	@Test
+	public void oldestBlockShouldBeOverwrittenOnceAllBlocksAreFull() {
+		TimeSeries series = new TimeSeries(2, 64);
+		for (int i = 0; i < 10000; ++i)
+			series.add(i, Math.sqrt(i));
+
+		List<Sample> samples = series.samplesSince(Long.MIN_VALUE);
+		assertThat(samples.size(), is(series.size()));
+		assertThat(samples.size(), lessThan(10000));
+		assertThat(samples.get(samples.size() - 1).getTimestamp(), is(9999L));
+		for (int i = 1; i < samples.size(); ++i) {
+			assertThat(samples.get(i).getTimestamp(), is(samples.get(i - 1).getTimestamp() + 1));
+			assertThat(samples.get(i).getValue(), is(Math.sqrt(samples.get(i).getTimestamp())));
+		}
+	}
+
+	@Test
+	public void samplesSinceShouldOnlyReturnRecentSamples() {
+		TimeSeries series = new TimeSeries(2, 1024);
+		for (int i = 0; i < 100; ++i)
+			series.add(i * 10, i);
+
+		assertThat(series.samplesSince(950).size(), is(5));
+		assertThat(series.samplesSince(950).get(0).getValue(), is(95.0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tooSmallBlocksShouldThrowIllegalArgumentException() {
+		new TimeSeries(2, 16);
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+import com.carmatechnologies.commons.jmx.utils.MonitoredResource;
+
+public class WeakMBeansTest extends AbstractJmxTest {
+	private static final ObjectName WEAK_MAP = objectName("com.carmatechnologies.commons.jmx:type=JmxConcurrentMap,name=WeakMap");
+
+	private static ObjectName objectName(final String name) {
+		try {
+			return new ObjectName(name);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static WeakReference<Object> registerWeakMap() throws Exception {
+		JmxConcurrentMap<String, String> map = new JmxConcurrentMap<String, String>(new ConcurrentHashMap<String, String>(), new Builder().weak()
+				.property("name", "WeakMap"));
+		map.put("key", "value");
+		return new WeakReference<Object>(map);
+	}
+
+	private static void awaitCollection(final WeakReference<?> reference) throws InterruptedException {
+		for (int i = 0; i < 100 && reference.get() != null; ++i) {
+			System.gc();
+			Thread.sleep(20);
+		}
+	}
+
+	@Test
+	public void weaklyRegisteredMBeanShouldBehaveLikeStronglyRegisteredOne() throws Exception {
+		JmxLinkedBlockingQueue<String> queue = new JmxLinkedBlockingQueue<String>(new LinkedBlockingQueue<String>(), new Builder().weak().property(
+				"name", "WeakQueue"));
+		queue.add("A");
+
+		assertThat(jmxClient.getAttribute(queue.objectName(), "Size").toString(), is("1"));
+		assertThat(jmxClient.getMBeanInfo(queue.objectName()).getClassName(), is(JmxLinkedBlockingQueue.class.getName()));
+	}
+
+	@Test
+	public void weaklyRegisteredMBeanShouldBeUnregisteredOnceGarbageCollected() throws Exception {
+		WeakReference<Object> reference = registerWeakMap();
+		assertThat(mbeanServer.isRegistered(WEAK_MAP), is(true));
+
+		awaitCollection(reference);
+		for (int i = 0; i < 100 && mbeanServer.isRegistered(WEAK_MAP); ++i)
+			Thread.sleep(10);
+
+		assertThat(reference.get() == null, is(true));
+		assertThat(mbeanServer.isRegistered(WEAK_MAP), is(false));
+		assertThat(MBeans.registrations().containsKey(WEAK_MAP), is(false));
+	}
+
+	@Test
+	public void garbageCollectingExplicitlyUnregisteredMBeanShouldNotUnregisterItsReplacement() throws Exception {
+		WeakReference<Object> reference = registerWeakMap();
+		MBeans.unregister(WEAK_MAP);
+		MonitoredResource replacement = new MonitoredResource("Replacement");
+		MBeans.register(new Builder(replacement).packageName("com.carmatechnologies.commons.jmx").type("JmxConcurrentMap").property("name", "WeakMap"));
+
+		awaitCollection(reference);
+		Thread.sleep(100);
+
+		assertThat(reference.get() == null, is(true));
+		assertThat(mbeanServer.getAttribute(WEAK_MAP, "Name").toString(), is("Replacement"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void weaklyRegisteringObjectWithoutMBeanInterfaceShouldThrowIllegalArgumentException() throws Exception {
+		MBeans.register(new Builder(new Object()).weak());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MBeans.unregisterAll();
+	}
+}
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.client;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.ItemFormatter;
+import com.carmatechnologies.commons.jmx.ItemRenderer;
+import com.carmatechnologies.commons.jmx.JmxLinkedBlockingQueue;
+import com.carmatechnologies.commons.jmx.MBeans;
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.client.JmxAttributeReader.ChangeListener;
+import com.carmatechnologies.commons.jmx.client.JmxAttributeReader.Poller;
+
+public class JmxAttributeReaderTest {
+	private final MBeanServer server = MBeanServerFactory.newMBeanServer();
+	private JMXConnectorServer connectorServer;
+	private JmxAttributeReader reader;
+	private JmxLinkedBlockingQueue<Integer> first;
+	private JmxLinkedBlockingQueue<Integer> second;
+
+	private static class RecordingListener implements ChangeListener {
+		private final BlockingQueue<String> changes = new LinkedBlockingQueue<String>();
+
+		@Override
+		public void changed(final ObjectName name, final String attribute, final Object previous, final Object current) {
+			changes.add(name.getKeyProperty("name") + "." + attribute + ": " + previous + " -> " + current);
+		}
+
+		@Override
+		public void failed(final Throwable cause) {
+			changes.add("failed: " + cause);
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		first = new JmxLinkedBlockingQueue<Integer>(new LinkedBlockingQueue<Integer>(), new Builder().server(server).property("name", "First"));
+		second = new JmxLinkedBlockingQueue<Integer>(new LinkedBlockingQueue<Integer>(), new Builder().server(server).property("name", "Second"));
+		first.offer(1);
+		first.offer(2);
+		connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://"), null, server);
+		connectorServer.start();
+		reader = new JmxAttributeReader(connectorServer.getAddress());
+	}
+
+	@Test
+	public void attributesOfTheSameMBeanShouldBeReadInASingleCall() throws Exception {
+		Map<ObjectName, Map<String, Object>> values = reader.batch().add(first.objectName(), "Size").add(first.objectName(), "Size", "Items")
+				.add(second.objectName(), "Size").execute();
+
+		assertThat(reader.roundTrips(), is(2L));
+		assertThat(values.size(), is(2));
+		assertThat((Integer) values.get(first.objectName()).get("Size"), is(2));
+		assertThat(((String[]) values.get(first.objectName()).get("Items")).length, is(2));
+		assertThat((Integer) values.get(second.objectName()).get("Size"), is(0));
+	}
+
+	@Test
+	public void mbeanInfoShouldOnlyBeFetchedOnceUntilTheMBeanDisappears() throws Exception {
+		reader.batch().addAll(first.objectName());
+		Map<ObjectName, Map<String, Object>> values = reader.batch().addAll(first.objectName()).execute();
+		assertThat(reader.roundTrips(), is(2L));
+		assertThat((Integer) values.get(first.objectName()).get("Size"), is(2));
+
+		MBeans.unregister(first.objectName());
+		assertThat(reader.batch().add(first.objectName(), "Size").execute().isEmpty(), is(true));
+		try {
+			reader.mbeanInfo(first.objectName());
+			throw new AssertionError("MBean info should have been fetched again.");
+		} catch (InstanceNotFoundException e) {
+			assertThat(reader.roundTrips(), is(4L));
+		}
+	}
+
+	@Test
+	public void pollingShouldOnlyNotifyValuesWhichChanged() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		Poller poller = reader.poll(reader.batch().add(first.objectName(), "Size").add(second.objectName(), "Size"), 50, TimeUnit.MILLISECONDS,
+				listener);
+
+		assertThat(listener.changes.poll(5, TimeUnit.SECONDS), is("First.Size: null -> 2"));
+		assertThat(listener.changes.poll(5, TimeUnit.SECONDS), is("Second.Size: null -> 0"));
+		assertThat(listener.changes.poll(200, TimeUnit.MILLISECONDS), is(nullValue()));
+
+		second.offer(3);
+		assertThat(listener.changes.poll(5, TimeUnit.SECONDS), is("Second.Size: 0 -> 1"));
+		poller.close();
+	}
+
+	@Test
+	public void pollingShouldNotifyTheOtherChangesWhenTheListenerFailsOnOne() throws Exception {
+		final BlockingQueue<String> changes = new LinkedBlockingQueue<String>();
+		Poller poller = reader.poll(reader.batch().add(first.objectName(), "Size").add(second.objectName(), "Size"), 50, TimeUnit.MILLISECONDS,
+				new RecordingListener() {
+					@Override
+					public void changed(final ObjectName name, final String attribute, final Object previous, final Object current) {
+						if ("First".equals(name.getKeyProperty("name")))
+							throw new IllegalStateException("Listener failure.");
+						changes.add(name.getKeyProperty("name") + "." + attribute + ": " + previous + " -> " + current);
+					}
+				});
+
+		assertThat(changes.poll(5, TimeUnit.SECONDS), is("Second.Size: null -> 0"));
+		assertThat(changes.poll(200, TimeUnit.MILLISECONDS), is(nullValue()));
+		second.offer(3);
+		assertThat(changes.poll(5, TimeUnit.SECONDS), is("Second.Size: 0 -> 1"));
+		poller.close();
+	}
+
+	@Test
+	public void pollingShouldNotifyValuesWhichDisappearedAsNull() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		Poller poller = reader.poll(reader.batch().add(first.objectName(), "Size"), 50, TimeUnit.MILLISECONDS, listener);
+		assertThat(listener.changes.poll(5, TimeUnit.SECONDS), is("First.Size: null -> 2"));
+
+		MBeans.unregister(first.objectName());
+		assertThat(listener.changes.poll(5, TimeUnit.SECONDS), is("First.Size: 2 -> null"));
+		assertThat(listener.changes.poll(200, TimeUnit.MILLISECONDS), is(nullValue()));
+		poller.close();
+	}
+
+	@Test
+	public void pollingShouldNotifyFailuresAndCarryOn() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		reader.poll(reader.batch().add(first.objectName(), "Size"), 50, TimeUnit.MILLISECONDS, listener);
+		assertThat(listener.changes.poll(5, TimeUnit.SECONDS), is("First.Size: null -> 2"));
+
+		connectorServer.stop();
+		String failure = listener.changes.poll(5, TimeUnit.SECONDS);
+		assertThat(failure.startsWith("failed: "), is(true));
+		assertThat(listener.changes.poll(5, TimeUnit.SECONDS).startsWith("failed: "), is(true));
+	}
+
+	@Test
+	public void pollingShouldCarryOnWhenTheListenerFailsToHandleAFailure() throws Exception {
+		final BlockingQueue<Throwable> failures = new LinkedBlockingQueue<Throwable>();
+		connectorServer.stop();
+		reader.poll(reader.batch().add(first.objectName(), "Size"), 50, TimeUnit.MILLISECONDS, new RecordingListener() {
+			@Override
+			public void failed(final Throwable cause) {
+				failures.add(cause);
+				throw new IllegalStateException("Listener failure.");
+			}
+		});
+		assertThat(failures.poll(5, TimeUnit.SECONDS), is(notNullValue()));
+		assertThat(failures.poll(5, TimeUnit.SECONDS), is(notNullValue()));
+	}
+
+	@Test
+	public void readsWhichDoNotAnswerInTimeShouldFailWithinTheTimeout() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		second.renderer(new ItemRenderer.Builder().formatter(new ItemFormatter() {
+			@Override
+			public String format(final Object item) {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return String.valueOf(item);
+			}
+		}).build());
+		second.offer(42);
+		reader.close();
+		reader = new JmxAttributeReader(connectorServer.getAddress(), 2, 300, TimeUnit.MILLISECONDS, Collections.<String, Object> emptyMap());
+
+		long start = System.nanoTime();
+		try {
+			reader.batch().add(first.objectName(), "Size").add(second.objectName(), "Items").execute();
+			fail("Read should have timed out.");
+		} catch (IOException e) {
+			assertThat(e.getCause(), is(instanceOf(TimeoutException.class)));
+		} finally {
+			release.countDown();
+		}
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(3000L));
+		assertThat(reader.batch().add(first.objectName(), "Size").execute().get(first.objectName()).get("Size"), is((Object) 2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void creatingReaderWithoutConnectionShouldThrowIllegalArgumentException() throws Exception {
+		new JmxAttributeReader(connectorServer.getAddress(), 0, 1, TimeUnit.SECONDS, Collections.<String, Object> emptyMap());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		reader.close();
+		connectorServer.stop();
+		MBeans.unregisterAll();
+	}
+}
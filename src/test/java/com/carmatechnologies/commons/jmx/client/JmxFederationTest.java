@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.client;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.carmatechnologies.commons.jmx.ItemFormatter;
+import com.carmatechnologies.commons.jmx.ItemRenderer;
+import com.carmatechnologies.commons.jmx.JmxLinkedBlockingQueue;
+import com.carmatechnologies.commons.jmx.MBeans;
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+
+public class JmxFederationTest {
+	private static final ObjectName QUEUES = pattern("com.carmatechnologies.commons.jmx:type=JmxLinkedBlockingQueue,*");
+
+	private final List<JMXConnectorServer> connectorServers = new ArrayList<JMXConnectorServer>();
+	private final List<JMXServiceURL> urls = new ArrayList<JMXServiceURL>();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private JmxFederation federation;
+
+	private static ObjectName pattern(final String pattern) {
+		try {
+			return new ObjectName(pattern);
+		} catch (Exception e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private MBeanServer startNode(final int... queueSizes) throws Exception {
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		for (int i = 0; i < queueSizes.length; ++i) {
+			JmxLinkedBlockingQueue<Integer> queue = new JmxLinkedBlockingQueue<Integer>(new LinkedBlockingQueue<Integer>(100), new Builder().server(
+					server).property("name", "Queue" + i));
+			for (int j = 0; j < queueSizes[i]; ++j)
+				queue.offer(j);
+		}
+		JMXConnectorServer connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://"), null, server);
+		connectorServer.start();
+		connectorServers.add(connectorServer);
+		urls.add(connectorServer.getAddress());
+		return server;
+	}
+
+	@Test
+	public void queryShouldMergeAttributesOfMatchingMBeansAcrossAllNodes() throws Exception {
+		startNode(1, 2);
+		startNode(3);
+		startNode(10, 0, 5);
+		federation = new JmxFederation(urls);
+
+		FederatedAttributes result = federation.query(QUEUES, "Size", "Unknown");
+		assertThat(result.respondingCount(), is(3));
+		assertThat(result.failures().isEmpty(), is(true));
+		assertThat(result.sum("Size"), is(21.0));
+		assertThat(result.max("Size"), is(10.0));
+		assertThat(result.sum("Unknown"), is(0.0));
+		assertThat(result.perNode("Size").get(urls.get(0).toString()), is(3.0));
+		assertThat(result.perNode("Size").get(urls.get(2).toString()), is(15.0));
+		assertThat(result.values().get(urls.get(2).toString()).size(), is(3));
+		assertThat(Double.isNaN(result.max("Unknown")), is(true));
+	}
+
+	@Test
+	public void nodesWhichDoNotAnswerInTimeShouldBeReportedWithoutFailingTheQuery() throws Exception {
+		startNode(1);
+		MBeanServer slow = startNode();
+		JmxLinkedBlockingQueue<Integer> slowQueue = new JmxLinkedBlockingQueue<Integer>(new LinkedBlockingQueue<Integer>(100), new Builder().server(
+				slow).property("name", "Slow"));
+		slowQueue.renderer(new ItemRenderer.Builder().formatter(new ItemFormatter() {
+			@Override
+			public String format(final Object item) {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return String.valueOf(item);
+			}
+		}).build());
+		slowQueue.offer(42);
+		federation = new JmxFederation(urls, 2, 300, TimeUnit.MILLISECONDS, Collections.<String, Object> emptyMap());
+
+		long start = System.nanoTime();
+		FederatedAttributes result = federation.query(QUEUES, "Size", "Items");
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(3000L));
+		assertThat(result.respondingCount(), is(1));
+		assertThat(result.sum("Size"), is(1.0));
+		assertThat(result.failures().get(urls.get(1).toString()), is(instanceOf(TimeoutException.class)));
+	}
+
+	@Test
+	public void nodesStillAnsweringAPreviousQueryShouldBeSkipped() throws Exception {
+		startNode(1);
+		MBeanServer slow = startNode();
+		JmxLinkedBlockingQueue<Integer> slowQueue = new JmxLinkedBlockingQueue<Integer>(new LinkedBlockingQueue<Integer>(100), new Builder().server(
+				slow).property("name", "Slow"));
+		slowQueue.renderer(new ItemRenderer.Builder().formatter(new ItemFormatter() {
+			@Override
+			public String format(final Object item) {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return String.valueOf(item);
+			}
+		}).build());
+		slowQueue.offer(42);
+		federation = new JmxFederation(urls, 2, 300, TimeUnit.MILLISECONDS, Collections.<String, Object> emptyMap());
+
+		assertThat(federation.query(QUEUES, "Size", "Items").failures().get(urls.get(1).toString()), is(instanceOf(TimeoutException.class)));
+		for (int i = 0; i < 3; ++i) {
+			FederatedAttributes result = federation.query(QUEUES, "Size", "Items");
+			assertThat(result.sum("Size"), is(1.0));
+			assertThat(result.failures().get(urls.get(1).toString()), is(instanceOf(IOException.class)));
+		}
+	}
+
+	@Test
+	public void nodesWhichAcceptConnectionsButNeverAnswerShouldNotBlockQueries() throws Exception {
+		startNode(1);
+		final ServerSocket silent = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		final List<Socket> accepted = Collections.synchronizedList(new ArrayList<Socket>());
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true)
+						accepted.add(silent.accept());
+				} catch (IOException e) {
+					// Closed by the test.
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+		String silentUrl = "service:jmx:rmi:///jndi/rmi://localhost:" + silent.getLocalPort() + "/jmxrmi";
+		urls.add(new JMXServiceURL(silentUrl));
+		federation = new JmxFederation(urls, 2, 300, TimeUnit.MILLISECONDS, Collections.<String, Object> emptyMap());
+
+		try {
+			for (int i = 0; i < 3; ++i) {
+				long start = System.nanoTime();
+				FederatedAttributes result = federation.query(QUEUES, "Size");
+				assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(3000L));
+				assertThat(result.sum("Size"), is(1.0));
+				assertThat(result.failures(), hasKey(silentUrl));
+			}
+		} finally {
+			silent.close();
+			for (Socket socket : accepted)
+				socket.close();
+		}
+	}
+
+	@Test
+	public void unreachableNodesShouldBeReportedAndReconnectedOnceBack() throws Exception {
+		startNode(1);
+		startNode(2);
+		federation = new JmxFederation(urls);
+		assertThat(federation.query(QUEUES, "Size").sum("Size"), is(3.0));
+
+		connectorServers.get(1).stop();
+		FederatedAttributes result = federation.query(QUEUES, "Size");
+		assertThat(result.sum("Size"), is(1.0));
+		assertThat(result.failures(), hasKey(urls.get(1).toString()));
+		assertThat(result.failures().get(urls.get(1).toString()), is(instanceOf(IOException.class)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void federatingNoEndpointShouldThrowIllegalArgumentException() throws Exception {
+		new JmxFederation(Collections.<JMXServiceURL> emptyList());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		release.countDown();
+		if (federation != null)
+			federation.close();
+		for (JMXConnectorServer connectorServer : connectorServers)
+			connectorServer.stop();
+		MBeans.unregisterAll();
+	}
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright 2013 Marc CARRE (https://github.com/marccarre/commons-jmx)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.carmatechnologies.commons.jmx.processor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.management.Attribute;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.carmatechnologies.commons.jmx.MBeans;
+import com.carmatechnologies.commons.jmx.MBeans.Builder;
+import com.carmatechnologies.commons.jmx.utils.AbstractJmxTest;
+
+public class JmxMBeanProcessorTest extends AbstractJmxTest {
+	private static final String SERVER = "package my.app;\n" //
+			+ "import java.util.concurrent.atomic.AtomicLong;\n" //
+			+ "import com.carmatechnologies.commons.jmx.annotations.*;\n" //
+			+ "@JmxMBean(description = \"An \\\"app\\\" server.\")\n" //
+			+ "public class Server {\n" //
+			+ "  @JmxMetric(type = JmxMetric.Type.COUNTER, unit = \"requests\") final AtomicLong requests = new AtomicLong();\n" //
+			+ "  @JmxAttribute(writable = true) public int maxConnections = 10;\n" //
+			+ "  @JmxAttribute java.io.File root = new java.io.File(\"/var/www\");\n" //
+			+ "  private String mode = \"normal\";\n" //
+			+ "  @JmxAttribute public String getMode() { return mode; }\n" //
+			+ "  @JmxAttribute public void setMode(String mode) { this.mode = mode; }\n" //
+			+ "  @JmxAttribute boolean isStarted() { return true; }\n" //
+			+ "  @JmxOperation(name = \"serve\") public long serveRequests(int count) { return requests.addAndGet(count); }\n" //
+			+ "  @JmxOperation public void reset() throws java.io.IOException { requests.set(0); }\n" //
+			+ "  @JmxOperation public String join(String[] parts, char separator) { return parts[0] + separator + parts[1]; }\n" //
+			+ "  public static class Nested { @JmxMetric public long getValue() { return 7; } }\n" //
+			+ "}\n";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void generatedAdapterShouldExposeAnnotatedMembersWithoutReflection() throws Exception {
+		ClassLoader loader = compile("my/app/Server.java", SERVER.replace("  public static class Nested", "  @JmxMBean public static class Nested"));
+		Object server = loader.loadClass("my.app.Server").getDeclaredConstructor().newInstance();
+		Class<?> adapter = loader.loadClass("my.app.ServerMBeanAdapter");
+		ObjectName objectName = (ObjectName) adapter.getMethod("register", server.getClass(), Builder.class).invoke(null, server,
+				new Builder().property("name", "Generated"));
+
+		assertThat((Long) jmxClient.getAttribute(objectName, "Requests"), is(0L));
+		assertThat((Integer) jmxClient.getAttribute(objectName, "MaxConnections"), is(10));
+		assertThat((String) jmxClient.getAttribute(objectName, "Root"), is(new File("/var/www").toString()));
+		assertThat((Boolean) jmxClient.getAttribute(objectName, "Started"), is(true));
+
+		jmxClient.setAttribute(objectName, new Attribute("MaxConnections", 20));
+		jmxClient.setAttribute(objectName, new Attribute("Mode", "maintenance"));
+		assertThat((String) jmxClient.getAttribute(objectName, "Mode"), is("maintenance"));
+		assertThat(server.getClass().getField("maxConnections").getInt(server), is(20));
+
+		assertThat((Long) jmxClient.invoke(objectName, "serve", new Object[] { 3 }, new String[] { "int" }), is(3L));
+		assertThat((Long) jmxClient.getAttribute(objectName, "Requests"), is(3L));
+		jmxClient.invoke(objectName, "reset", null, null);
+		assertThat((Long) jmxClient.getAttribute(objectName, "Requests"), is(0L));
+		Object joined = jmxClient.invoke(objectName, "join", new Object[] { new String[] { "a", "b" }, ',' }, new String[] {
+				String[].class.getName(), char.class.getName() });
+		assertThat((String) joined, is("a,b"));
+
+		Object nested = loader.loadClass("my.app.Server$Nested").getDeclaredConstructor().newInstance();
+		ObjectName nestedName = (ObjectName) loader.loadClass("my.app.Server_NestedMBeanAdapter").getMethod("register", nested.getClass())
+				.invoke(null, nested);
+		assertThat((Long) jmxClient.getAttribute(nestedName, "Value"), is(7L));
+	}
+
+	@Test
+	public void generatedMBeanInfoShouldMatchTheOneBuiltAtRuntime() throws Exception {
+		ClassLoader loader = compile("my/app/Server.java", SERVER);
+		MBeanInfo info = (MBeanInfo) loader.loadClass("my.app.ServerMBeanAdapter").getField("MBEAN_INFO").get(null);
+
+		assertThat(info.getClassName(), is("my.app.Server"));
+		assertThat(info.getDescription(), is("An \"app\" server."));
+		assertThat(info.getAttributes().length, is(5));
+		assertThat(info.getOperations().length, is(3));
+		MBeanAttributeInfo requests = info.getAttributes()[0];
+		assertThat(requests.getName(), is("Requests"));
+		assertThat(requests.getType(), is("long"));
+		assertThat((String) requests.getDescriptor().getFieldValue("metricType"), is("counter"));
+		assertThat((String) requests.getDescriptor().getFieldValue("units"), is("requests"));
+		assertThat(info.getOperations()[0].getSignature()[0].getName(), is("count"));
+	}
+
+	@Test
+	public void privateAnnotatedMembersShouldFailTheCompilation() throws Exception {
+		String source = SERVER.replace("@JmxAttribute java.io.File root", "@JmxAttribute private java.io.File root");
+		String errors = compileWithErrors("my/app/Server.java", source);
+		assertThat(errors, containsString("NOT private"));
+	}
+
+	@Test
+	public void nonNumericMetricsShouldFailTheCompilation() throws Exception {
+		String source = SERVER.replace("@JmxAttribute java.io.File root", "@JmxMetric java.io.File root");
+		String errors = compileWithErrors("my/app/Server.java", source);
+		assertThat(errors, containsString("Metric must be numeric"));
+	}
+
+	private ClassLoader compile(final String path, final String source) throws IOException {
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		File classes = compile(path, source, diagnostics);
+		assertThat(diagnostics.getDiagnostics().toString(), errorsOf(diagnostics), is(""));
+		return new URLClassLoader(new URL[] { classes.toURI().toURL() }, getClass().getClassLoader());
+	}
+
+	private String compileWithErrors(final String path, final String source) throws IOException {
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		compile(path, source, diagnostics);
+		return errorsOf(diagnostics);
+	}
+
+	private File compile(final String path, final String source, final DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+		File sources = folder.newFolder("src");
+		File classes = folder.newFolder("classes");
+		File file = new File(sources, path);
+		file.getParentFile().mkdirs();
+		try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			writer.write(source);
+		}
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+			JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, Arrays.asList("-d", classes.getPath(), "-s",
+					sources.getPath(), "-classpath", System.getProperty("java.class.path")), null, fileManager.getJavaFileObjects(file));
+			task.setProcessors(Arrays.asList(new JmxMBeanProcessor()));
+			task.call();
+		}
+		return classes;
+	}
+
+	private static String errorsOf(final DiagnosticCollector<JavaFileObject> diagnostics) {
+		StringBuilder errors = new StringBuilder();
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+				errors.append(diagnostic.getMessage(Locale.ROOT)).append('\n');
+		}
+		return errors.toString();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MBeans.unregisterAll();
+	}
+}